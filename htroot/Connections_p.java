@@ -76,7 +76,7 @@ public final class Connections_p {
         int idx = 0, numActiveRunning = 0, numActivePending = 0;
         boolean dark = true;
         for (final Session s: ((serverCore) httpd).getJobList()) {
-            if (!s.isAlive()) continue;
+            if (!s.isAlive() && !s.isRunning()) continue;
             
             // get the session runtime
             final long sessionTime = s.getTime();
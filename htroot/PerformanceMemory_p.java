@@ -32,13 +32,16 @@ import java.util.Map;
 
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.index.Cache;
 import net.yacy.kelondro.index.RAMIndex;
+import net.yacy.kelondro.rwi.HotTermCache;
 import net.yacy.kelondro.table.Table;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.search.Switchboard;
+import net.yacy.search.index.Segments;
 import net.yacy.search.query.SearchEventCache;
 import de.anomic.server.serverObjects;
 import de.anomic.server.serverSwitch;
@@ -215,6 +218,14 @@ public class PerformanceMemory_p {
         prop.putNum("searchevent.miss", SearchEventCache.cacheMiss);
         prop.putNum("searchevent.insert", SearchEventCache.cacheInsert);
         prop.putNum("searchevent.delete", SearchEventCache.cacheDelete);
+        final HotTermCache<WordReference> termCache = ((Switchboard) env).indexSegments.termIndex(Segments.Process.PUBLIC).getHotTermCache();
+        prop.putNum("termcache.size", termCache.size());
+        prop.put("termcache.mem", Formatter.bytesToString(termCache.mem()));
+        prop.put("termcache.maxmem", Formatter.bytesToString(termCache.maxMem()));
+        prop.putNum("termcache.hit", termCache.hits());
+        prop.putNum("termcache.miss", termCache.misses());
+        prop.putNum("termcache.insert", termCache.inserts());
+        prop.putNum("termcache.delete", termCache.deletes());
         // return rewrite values for templates
         return prop;
     }
@@ -1,7 +1,10 @@
 
 
 import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.io.ByteCount;
+import net.yacy.kelondro.rwi.HotTermCache;
+import net.yacy.kelondro.rwi.IODispatcher;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.search.Switchboard;
@@ -34,6 +37,42 @@ public class status_p {
         prop.putNum("wordCacheSize", segment.termIndex().getBufferSize());
         prop.putNum("wordCacheMaxSize", cacheMaxSize);
 
+        // key filter of the RWI BLOB files
+        final long keyFilterHits = segment.termIndex().getKeyFilterHits();
+        final long keyFilterMisses = segment.termIndex().getKeyFilterMisses();
+        prop.putNum("keyFilterHits", keyFilterHits);
+        prop.putNum("keyFilterMisses", keyFilterMisses);
+        prop.putNum("keyFilterFalsePositives", segment.termIndex().getKeyFilterFalsePositives());
+        prop.putNum("keyFilterMissRate", keyFilterHits + keyFilterMisses == 0 ? 0.0d : ((double) keyFilterMisses) / ((double) (keyFilterHits + keyFilterMisses)));
+
+        // hot term cache
+        final HotTermCache<WordReference> termCache = segment.termIndex().getHotTermCache();
+        prop.putNum("termCacheHits", termCache.hits());
+        prop.putNum("termCacheMisses", termCache.misses());
+        prop.putNum("termCacheHitRatio", termCache.hits() + termCache.misses() == 0 ? 0.0d : ((double) termCache.hits()) / ((double) (termCache.hits() + termCache.misses())));
+        prop.putNum("termCacheSize", termCache.size());
+        prop.putNum("termCacheMem", termCache.mem());
+        prop.putNum("termCacheMaxMem", termCache.maxMem());
+
+        // io dispatcher
+        final IODispatcher.Lane[] lanes = new IODispatcher.Lane[]{segment.termIndex().getDumpLane(), segment.termIndex().getMergeLane()};
+        for (int i = 0; i < lanes.length; i++) {
+            prop.put("lanes_" + i + "_name", lanes[i].name());
+            prop.putNum("lanes_" + i + "_queue", lanes[i].queueSize());
+            prop.putNum("lanes_" + i + "_active", lanes[i].activeCount());
+            prop.putNum("lanes_" + i + "_jobs", lanes[i].jobCount());
+            prop.putNum("lanes_" + i + "_bytes", lanes[i].bytes());
+            prop.putNum("lanes_" + i + "_throughput", lanes[i].throughput());
+        }
+        prop.put("lanes", lanes.length);
+
+        // compaction
+        prop.put("compactionStrategy", segment.termIndex().getCompactionStrategy().name());
+        prop.putNum("compactionMerges", segment.termIndex().getCompactionStrategy().mergeCount());
+        prop.putNum("compactionFiles", segment.termIndex().getBLOBCount());
+        prop.putNum("compactionWriteAmplification", segment.termIndex().getWriteAmplification());
+        prop.putNum("compactionFilesPerLookup", segment.termIndex().getFilesPerLookup());
+
         // crawl queues
         prop.putNum("localCrawlSize", sb.getThread(SwitchboardConstants.CRAWLJOB_LOCAL_CRAWL).getJobCount());
         prop.putNum("limitCrawlSize", sb.crawlQueues.limitCrawlJobSize());
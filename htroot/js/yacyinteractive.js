@@ -30,6 +30,10 @@ function search(search, count, offset) {
   if (query == null || query == "") {
     return;
   }
+  if (window.EventSource) {
+    stream();
+    return;
+  }
   var self = this;
   if (window.XMLHttpRequest) { // Mozilla/Safari
     self.xmlHttpReq = new XMLHttpRequest(); 
@@ -46,6 +50,43 @@ function search(search, count, offset) {
   self.xmlHttpReq.send(null);
 }
 
+// read the search result as server-sent events from yacysearch.stream;
+// every item is shown as soon as the server sends it, the navigation follows at the end
+function stream() {
+  searchresult = [];
+  totalResults = 0;
+  topics = null;
+  filetypes = {};
+  script = "";
+  preparemodifier();
+  var rows = "";
+  var source = new EventSource("yacysearch.stream?verify=false&resource=local&nav=all&maximumRecords=" + maximumRecords + "&startRecord=" + startRecord + "&query=" + query);
+  source.addEventListener("item", function(e) {
+    var item = eval("(" + e.data + ")");
+    searchresult.push(item);
+    if (modifiertype == "png" || modifiertype == "gif" || modifiertype == "jpg") {
+      rows += resultLine("image", item);
+      document.getElementById("searchresults").innerHTML = rows;
+    } else {
+      rows += resultLine("row", item, searchresult.length);
+      document.getElementById("searchresults").innerHTML = resultTable(rows);
+    }
+    document.getElementById("searchnavigation").innerHTML = "<div>found " + searchresult.length + " documents...</div>";
+  }, false);
+  source.addEventListener("navigation", function(e) {
+    source.close();
+    var nav = eval("(" + e.data + ")");
+    totalResults = nav.totalResults.replace(/[,.]/,"");
+    topics = navget(nav.navigation, "topics");
+    finishpage();
+  }, false);
+  source.onerror = function(e) {
+    // the server closes the stream after the navigation; without a navigation show what we have
+    source.close();
+    finishpage();
+  };
+}
+
 function navget(list, name) {
   for (var i = 0; i < list.length; i++) {
     if (list[i].facetname == name) return list[i];
@@ -65,11 +106,7 @@ function preparepage(str) {
   topics = navget(firstChannel.navigation, "topics");
   filetypes = {};
   script = "";
-  if (query.length >= 13 && query.substring(query.length - 13, query.length - 3) == " filetype:") {
-    modifier = query.substring(query.length - 12);
-  }
-  if (modifier != "") modifiertype = modifier.substring(modifier.length - 3)
-
+  preparemodifier();
 
   if (modifiertype == "png" || modifiertype == "gif" || modifiertype == "jpg") {
     var tt = resultImages();
@@ -78,6 +115,17 @@ function preparepage(str) {
     var tt = resultList();
     document.getElementById("searchresults").innerHTML = tt;
   }
+  finishpage();
+}
+
+function preparemodifier() {
+  if (query.length >= 13 && query.substring(query.length - 13, query.length - 3) == " filetype:") {
+    modifier = query.substring(query.length - 12);
+  }
+  if (modifier != "") modifiertype = modifier.substring(modifier.length - 3)
+}
+
+function finishpage() {
   var tt = resultNavigation();
   document.getElementById("searchnavigation").innerHTML = tt;
   document.getElementById("serverlist").innerHTML = "";
@@ -151,14 +199,22 @@ function resultList() {
   var html = "";
   if (searchresult.length > 0) {
     document.getElementById("searchnavigation").innerHTML = "<div>found " + searchresult.length + " documents, preparing table...</div>";
-    html += "<table class=\"sortable\" id=\"sortable\" border=\"0\" cellpadding=\"0\" cellspacing=\"1\" width=\"99%\">";
-    html += "<tr class=\"TableHeader\" valign=\"bottom\"><td width=\"10\">count</td><td width=\"40\">Protocol</td><td width=\"60\">Host</td><td width=\"260\">Path</td><td width=\"360\">Name</td><td width=\"60\">Size</td><td width=\"75\">Date</td></tr>";
-    for (var i = 0; i < searchresult.length; i++) { html += resultLine("row", searchresult[i], i + 1); }
-    html += "</table>";
+    var rows = "";
+    for (var i = 0; i < searchresult.length; i++) { rows += resultLine("row", searchresult[i], i + 1); }
+    html += resultTable(rows);
   }
   return html;
 }
 
+function resultTable(rows) {
+  var html = "";
+  html += "<table class=\"sortable\" id=\"sortable\" border=\"0\" cellpadding=\"0\" cellspacing=\"1\" width=\"99%\">";
+  html += "<tr class=\"TableHeader\" valign=\"bottom\"><td width=\"10\">count</td><td width=\"40\">Protocol</td><td width=\"60\">Host</td><td width=\"260\">Path</td><td width=\"360\">Name</td><td width=\"60\">Size</td><td width=\"75\">Date</td></tr>";
+  html += rows;
+  html += "</table>";
+  return html;
+}
+
 function resultImages() {
   var html = "";
   document.getElementById("searchnavigation").innerHTML = "<div>found " + searchresult.length + " images, preparing...</div>";
@@ -27,8 +27,12 @@
 // javac -classpath .:../classes transferRWI.java
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import net.yacy.cora.document.ASCII;
 import net.yacy.cora.document.RSSMessage;
@@ -38,17 +42,22 @@ import net.yacy.kelondro.data.meta.URIMetadataRow;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.index.HandleSet;
+import net.yacy.kelondro.index.RowSpaceExceededException;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.rwi.IndexCell;
+import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.peers.EventChannel;
 import net.yacy.peers.Network;
 import net.yacy.peers.Protocol;
 import net.yacy.peers.Seed;
 import net.yacy.peers.dht.FlatWordPartitionScheme;
+import net.yacy.peers.dht.RWIBinaryFormat;
+import net.yacy.peers.dht.Transmission;
 import net.yacy.repository.Blacklist;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
+import net.yacy.search.index.Segment;
 import net.yacy.search.index.Segments;
 import de.anomic.server.serverCore;
 import de.anomic.server.serverObjects;
@@ -86,6 +95,7 @@ public final class transferRWI {
         final int wordc       = post.getInt("wordc", 0);                  // number of different words
         final int entryc      = post.getInt("entryc", 0);                 // number of entries in indexes
         byte[] indexes        = post.get("indexes", "").getBytes();       // the indexes, as list of word entries
+        String indexesBinary  = post.get("indexesBinary", null);          // the indexes in the binary transfer format
         boolean granted       = sb.getConfigBool("allowReceiveIndex", false);
         final boolean blockBlacklist = sb.getConfigBool("indexReceiveBlockBlacklist", false);
         final long cachelimit = sb.getConfigLong(SwitchboardConstants.WORDCACHE_MAX_COUNT, 100000);
@@ -130,86 +140,107 @@ public final class transferRWI {
         } else {
             // we want and can receive indexes
             // log value status (currently added to find outOfMemory error
-            if (sb.getLog().isFine()) sb.getLog().logFine("Processing " + indexes.length + " bytes / " + wordc + " words / " + entryc + " entries from " + otherPeerName);
+            if (sb.getLog().isFine()) sb.getLog().logFine("Processing " + (indexesBinary == null ? indexes.length : indexesBinary.length()) + " bytes / " + wordc + " words / " + entryc + " entries from " + otherPeerName);
             final long startProcess = System.currentTimeMillis();
 
-            // decode request
-            System.out.println("STRINGS " + UTF8.String(indexes));
-            final Iterator<String> it = FileUtils.strings(indexes);
-
-            // free memory
-            indexes = null;
-
-            // now parse the Strings in the value-vector and write index entries
-            String estring;
-            int p;
-            String wordHash;
-            byte[] urlHash;
-            WordReferenceRow iEntry;
-            final HandleSet unknownURL = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0);
-            final HandleSet knownURL = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0);
             final ArrayList<String> wordhashes = new ArrayList<String>();
             int received = 0;
             int blocked = 0;
             int receivedURL = 0;
             final IndexCell<WordReference> cell = sb.indexSegments.termIndex(Segments.Process.DHTIN);
-            int count = 0;
-            while (it.hasNext()) {
-                serverCore.checkInterruption();
-                estring = it.next();
-                count++;
-                if (count > 1000) break; // protection against flooding
-
-                // check if RWI entry is well-formed
-                p = estring.indexOf('{',0);
-                if (p < 0 || estring.indexOf("x=",0) < 0 || !(estring.indexOf("[B@",0) < 0)) {
-                    blocked++;
-                    continue;
-                }
-                wordHash = estring.substring(0, p);
-                wordhashes.add(wordHash);
-                iEntry = new WordReferenceRow(estring.substring(p));
-                urlHash = iEntry.urlhash();
-
-                // block blacklisted entries
-                if ((blockBlacklist) && (Switchboard.urlBlacklist.hashInBlacklistedCache(Blacklist.BLACKLIST_DHT, urlHash))) {
-                    if (Network.log.isFine()) Network.log.logFine("transferRWI: blocked blacklisted URLHash '" + ASCII.String(urlHash) + "' from peer " + otherPeerName);
-                    blocked++;
-                    continue;
-                }
 
-                // check if the entry is in our network domain
-                final String urlRejectReason = sb.crawlStacker.urlInAcceptedDomainHash(urlHash);
-                if (urlRejectReason != null) {
-                    Network.log.logWarning("transferRWI: blocked URL hash '" + ASCII.String(urlHash) + "' (" + urlRejectReason + ") from peer " + otherPeerName + "; peer is suspected to be a spam-peer (or something is wrong)");
-                    //if (yacyCore.log.isFine()) yacyCore.log.logFine("transferRWI: blocked URL hash '" + urlHash + "' (" + urlRejectReason + ") from peer " + otherPeerName);
-                    blocked++;
-                    continue;
+            List<ReferenceContainer<WordReference>> containers;
+            if (indexesBinary != null) {
+                // the rows are already in their native layout and grouped per term
+                try {
+                    containers = RWIBinaryFormat.decodeString(indexesBinary, Transmission.maxRWIsCountBinary);
+                } catch (final IOException e) {
+                    logWarning(contentType, "bad binary index stream from " + otherPeerName + ": " + e.getMessage());
+                    containers = new ArrayList<ReferenceContainer<WordReference>>(0);
                 }
+                indexesBinary = null;
+            } else {
+                // decode request
+                final Iterator<String> it = FileUtils.strings(indexes);
 
-                // learn entry
-                try {
-                    cell.add(wordHash.getBytes(), iEntry);
-                } catch (final Exception e) {
-                    Log.logException(e);
+                // free memory
+                indexes = null;
+
+                // now parse the Strings in the value-vector and group the index entries per term
+                containers = new ArrayList<ReferenceContainer<WordReference>>();
+                final Map<String, ReferenceContainer<WordReference>> terms = new HashMap<String, ReferenceContainer<WordReference>>();
+                String estring;
+                int p;
+                String wordHash;
+                ReferenceContainer<WordReference> container;
+                int count = 0;
+                while (it.hasNext()) {
+                    estring = it.next();
+                    count++;
+                    if (count > 1000) break; // protection against flooding
+
+                    // check if RWI entry is well-formed
+                    p = estring.indexOf('{',0);
+                    if (p < 0 || estring.indexOf("x=",0) < 0 || !(estring.indexOf("[B@",0) < 0)) {
+                        blocked++;
+                        continue;
+                    }
+                    wordHash = estring.substring(0, p);
+                    container = terms.get(wordHash);
+                    if (container == null) {
+                        container = ReferenceContainer.emptyContainer(Segment.wordReferenceFactory, ASCII.getBytes(wordHash));
+                        terms.put(wordHash, container);
+                        containers.add(container);
+                    }
+                    try {
+                        container.add(new WordReferenceRow(estring.substring(p)));
+                    } catch (final RowSpaceExceededException e) {
+                        Log.logException(e);
+                    }
                 }
-                serverCore.checkInterruption();
-
-                // check if we need to ask for the corresponding URL
-                if (!(knownURL.has(urlHash) || unknownURL.has(urlHash)))  try {
-                    if (sb.indexSegments.urlMetadata(Segments.Process.DHTIN).exists(urlHash)) {
-                        knownURL.put(urlHash);
-                    } else {
-                        unknownURL.put(urlHash);
+            }
+            serverCore.checkInterruption();
+
+            // collect the referenced urls; blacklist and network domain are checked once for each url
+            final HandleSet urls = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0);
+            final HandleSet rejected = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0);
+            byte[] urlHash;
+            try {
+                for (final ReferenceContainer<WordReference> container: containers) {
+                    final Iterator<WordReference> i = container.entries();
+                    while (i.hasNext()) {
+                        urlHash = i.next().urlhash();
+                        if (urls.has(urlHash) || rejected.has(urlHash)) continue;
+                        if (rejectURL(sb, urlHash, blockBlacklist, otherPeerName)) rejected.put(urlHash); else urls.put(urlHash);
                     }
-                    receivedURL++;
-                } catch (final Exception ex) {
-                    sb.getLog().logWarning(
-                                "transferRWI: DB-Error while trying to determine if URL with hash '" +
-                                ASCII.String(urlHash) + "' is known.", ex);
                 }
-                received++;
+            } catch (final RowSpaceExceededException e) {
+                Log.logException(e);
+            }
+            for (final ReferenceContainer<WordReference> container: containers) {
+                if (!rejected.isEmpty()) blocked += container.removeEntries(rejected);
+                if (container.isEmpty()) continue;
+                received += container.size();
+                wordhashes.add(ASCII.String(container.getTermHash()));
+            }
+            serverCore.checkInterruption();
+
+            // learn all entries in one step
+            try {
+                cell.add(containers);
+            } catch (final Exception e) {
+                Log.logException(e);
+            }
+
+            // check with one batch which urls we need to ask for
+            final HandleSet knownURL = sb.indexSegments.urlMetadata(Segments.Process.DHTIN).exists(urls);
+            final HandleSet unknownURL = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, Math.max(0, urls.size() - knownURL.size()));
+            try {
+                for (final byte[] u: urls) if (!knownURL.has(u)) unknownURL.put(u);
+            } catch (final RowSpaceExceededException e) {
+                Log.logException(e);
             }
+            receivedURL = urls.size();
             sb.peers.mySeed().incRI(received);
 
             // finally compose the unknownURL hash list
@@ -241,6 +272,27 @@ public final class transferRWI {
         return prop;
     }
 
+    /**
+     * check if a referenced url is blacklisted or outside of our network domain
+     * @return true if the reference must not be stored
+     */
+    private static boolean rejectURL(final Switchboard sb, final byte[] urlHash, final boolean blockBlacklist, final String otherPeerName) {
+        // block blacklisted entries
+        if ((blockBlacklist) && (Switchboard.urlBlacklist.hashInBlacklistedCache(Blacklist.BLACKLIST_DHT, urlHash))) {
+            if (Network.log.isFine()) Network.log.logFine("transferRWI: blocked blacklisted URLHash '" + ASCII.String(urlHash) + "' from peer " + otherPeerName);
+            return true;
+        }
+
+        // check if the entry is in our network domain
+        final String urlRejectReason = sb.crawlStacker.urlInAcceptedDomainHash(urlHash);
+        if (urlRejectReason != null) {
+            Network.log.logWarning("transferRWI: blocked URL hash '" + ASCII.String(urlHash) + "' (" + urlRejectReason + ") from peer " + otherPeerName + "; peer is suspected to be a spam-peer (or something is wrong)");
+            //if (yacyCore.log.isFine()) yacyCore.log.logFine("transferRWI: blocked URL hash '" + urlHash + "' (" + urlRejectReason + ") from peer " + otherPeerName);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * @param requestIdentifier
      * @param msg
@@ -27,7 +27,10 @@
 // javac -classpath .:../classes yacysearch.java
 // if the shell's current path is HTROOT
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -55,7 +58,9 @@ import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.HandleSet;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Bitfield;
+import net.yacy.kelondro.util.ByteBuffer;
 import net.yacy.kelondro.util.EventTracker;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.ISO639;
 import net.yacy.kelondro.util.MemoryControl;
@@ -76,6 +81,7 @@ import net.yacy.search.snippet.ContentDomain;
 import de.anomic.data.DidYouMean;
 import de.anomic.data.UserDB;
 import de.anomic.data.ymark.YMarkTables;
+import de.anomic.http.server.TemplateEngine;
 import de.anomic.server.serverCore;
 import de.anomic.server.serverObjects;
 import de.anomic.server.serverSwitch;
@@ -669,6 +675,7 @@ public class yacysearch {
                     "local-unfiltered(" + theSearch.getRankingResult().getLocalIndexCount() + "), " +
                     "local_miss(" + theSearch.getRankingResult().getMissCount() + "), " +
                     "local_sortout(" + theSearch.getRankingResult().getSortOutCount() + "), " +
+                    "local_pruned(" + theSearch.getRankingResult().getPrunedCount() + "), " +
                     "remote(" + theSearch.getRankingResult().getRemoteResourceSize() + ") links found, " +
                     (System.currentTimeMillis() - timestamp) + " ms");
 
@@ -873,4 +880,72 @@ public class yacysearch {
         // return rewrite properties
         return prop;
     }
+
+    /**
+     * stream the search result as server-sent events, i.e. /yacysearch.stream?query=...
+     * The search is started with the same arguments as the search page. Then the result queue of the
+     * search event is read directly: every result item is sent as event 'item' as soon as a snippet worker
+     * puts it into the queue. The items are numbered in the order of their arrival, not re-sorted by a
+     * ranking that arrives later; the event id is the item position. The content is the same as in
+     * yacysearchitem.json. At the end the navigation from yacysearchtrailer.json is sent as event 'navigation'.
+     * A search page needs only this one request instead of one request for each item.
+     */
+    public static void respond(final RequestHeader header, final serverObjects post, final serverSwitch env, final OutputStream out) throws IOException {
+        final serverObjects prop = respond(header, post, env);
+        final SearchEvent theSearch = SearchEventCache.getEvent(prop.get("eventID", ""));
+        if (theSearch == null) return;
+        final QueryParams theQuery = theSearch.getQuery();
+        final File htroot = env.getAppPath("htDefaultPath", "htroot");
+
+        // the item and trailer servlets produce json properties if they are called with a json path
+        final RequestHeader jsonHeader = new RequestHeader();
+        jsonHeader.putAll(header);
+        jsonHeader.put(HeaderFramework.CONNECTION_PROP_EXT, "json");
+        final serverObjects eventPost = new serverObjects();
+        eventPost.put("eventID", theQuery.id(false));
+
+        try {
+            jsonHeader.put(HeaderFramework.CONNECTION_PROP_PATH, "/yacysearchitem.json");
+            final byte[] itemTemplate = FileUtils.read(new File(htroot, "yacysearchitem.json"));
+            final int offset = theQuery.neededResults() - theQuery.displayResults();
+            final long timeout = theQuery.isLocal() ? 1000 : 5000;
+            for (int i = 0; i < theQuery.displayResults(); i++) {
+                // wait for the next entry in the result queue; this fixes its position, so the item servlet gets it without waiting
+                if (theSearch.result().arrivedResult(offset + i, timeout) == null) break; // no more results
+                eventPost.put("item", offset + i);
+                final serverObjects itemProp = yacysearchitem.respond(jsonHeader, eventPost, env);
+                if (itemProp.get("content", "0").equals("0")) break; // no more results
+                itemProp.put("content_nl", 0);
+                itemProp.put("content_item_nl", 0);
+                writeEvent(out, "item", offset + i, itemTemplate, itemProp, "", "");
+            }
+
+            jsonHeader.put(HeaderFramework.CONNECTION_PROP_PATH, "/yacysearchtrailer.json");
+            final byte[] trailerTemplate = FileUtils.read(new File(htroot, "yacysearchtrailer.json"));
+            eventPost.remove("item");
+            writeEvent(out, "navigation", -1, trailerTemplate, yacysearchtrailer.respond(jsonHeader, eventPost, env), "{", "}");
+        } catch (final IOException e) {
+            // the client closed the connection
+            Log.logFine("yacysearch", "search result stream terminated: " + e.getMessage());
+        }
+    }
+
+    private static void writeEvent(final OutputStream out, final String event, final int id, final byte[] template, final serverObjects prop, final String prefix, final String suffix) throws IOException {
+        final ByteBuffer o = new ByteBuffer();
+        TemplateEngine.writeTemplate(new ByteArrayInputStream(template), o, prop, ASCII.getBytes(""));
+        final String data = (prefix + UTF8.String(o.getBytes()).trim() + suffix);
+        o.close();
+
+        // each line of the data is sent in a separate data field; the client joins them again
+        final StringBuilder sb = new StringBuilder(data.length() + 100);
+        sb.append("event: ").append(event).append('\n');
+        if (id >= 0) sb.append("id: ").append(id).append('\n');
+        for (final String line: data.split("\n")) {
+            if (line.trim().length() == 0) continue;
+            sb.append("data: ").append(line).append('\n');
+        }
+        sb.append('\n');
+        out.write(UTF8.getBytes(sb.toString()));
+        out.flush();
+    }
 }
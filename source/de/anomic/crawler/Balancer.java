@@ -29,15 +29,12 @@ package de.anomic.crawler;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 
 import net.yacy.cora.document.ASCII;
 import net.yacy.cora.document.UTF8;
@@ -51,17 +48,24 @@ import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Base64Order;
 import net.yacy.kelondro.order.CloneableIterator;
 import net.yacy.kelondro.table.Table;
-import net.yacy.kelondro.util.ByteBuffer;
 import net.yacy.kelondro.util.MemoryControl;
 import de.anomic.crawler.retrieval.Request;
 import de.anomic.http.client.Cache;
 
+/**
+ * the balancer is the crawl frontier of one crawl stack. All requests are stored in a table;
+ * the url hashes are distributed to one queue per host. The host queues are ordered in a schedule by
+ * the time when the host may be accessed next, so pop() takes the next host in O(log hosts) and
+ * many threads can pop concurrently without waiting for each other: a host queue that is worked on by
+ * one thread is not in the schedule, so no other thread can access the same host at the same time.
+ * pop() never sleeps; if no host may be accessed yet it returns null.
+ */
 public class Balancer {
 
     private static final String indexSuffix           = "9.db";
     private static final int    EcoFSBufferSize       = 1000;
     private static final int    objectIndexBufferSize = 1000;
-    private static final String localhost             = "localhost";
+    private static final int    maxHostHops           = 100; // maximum number of host queues that one pop tries
 
     // class variables filled with external values
     private final File                 cacheStacksPath;
@@ -71,13 +75,9 @@ public class Balancer {
     private       BufferedObjectIndex  urlFileIndex;
 
     // class variables computed during operation
-    private final ConcurrentMap<String, HandleSet> domainStacks; // a map from host name to lists with url hashs
-    private final ConcurrentLinkedQueue<byte[]>    top; // a list of url-hashes that shall be taken next
-    private final SortedMap<Long, byte[]>          delayed;
-    private final HandleSet                        ddc;
-    private final HandleSet                        double_push_check; // for debugging
-    private long                                   lastDomainStackFill;
-    private int                                    domStackInitSize;
+    private final Map<String, HostQueue>   hostQueues; // a map from host hashes to the url hashes of the host
+    private final PriorityQueue<HostQueue> schedule;   // the host queues that are not empty and not taken, ordered by next access time
+    private final HandleSet                double_push_check; // for debugging
 
     public Balancer(
             final File cachePath,
@@ -88,14 +88,11 @@ public class Balancer {
             final boolean useTailCache,
             final boolean exceed134217727) {
         this.cacheStacksPath = cachePath;
-        this.domainStacks = new ConcurrentHashMap<String, HandleSet>();
-        this.top = new ConcurrentLinkedQueue<byte[]>();
-        this.delayed = new TreeMap<Long, byte[]>();
+        this.hostQueues = new HashMap<String, HostQueue>();
+        this.schedule = new PriorityQueue<HostQueue>();
         this.minimumLocalDelta = minimumLocalDelta;
         this.minimumGlobalDelta = minimumGlobalDelta;
         this.myAgentIDs = myAgentIDs;
-        this.domStackInitSize = Integer.MAX_VALUE;
-        this.ddc = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0);
         this.double_push_check = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0);
 
         // create a stack for newly entered entries
@@ -111,8 +108,15 @@ public class Balancer {
                 Log.logException(e1);
             }
         }
-        this.lastDomainStackFill = 0;
-        Log.logInfo("Balancer", "opened balancer file with " + this.urlFileIndex.size() + " entries from " + f.toString());
+
+        // distribute the stored requests to the host queues; the host is identified by the url hash, so the requests need not to be read
+        try {
+            final CloneableIterator<byte[]> i = this.urlFileIndex.keys(true, null);
+            while (i.hasNext()) pushHashToHostQueue(i.next());
+        } catch (final IOException e) {
+            Log.logException(e);
+        }
+        Log.logInfo("Balancer", "opened balancer file with " + this.urlFileIndex.size() + " entries for " + this.hostQueues.size() + " hosts from " + f.toString());
     }
 
     public long getMinimumLocalDelta() {
@@ -142,13 +146,13 @@ public class Balancer {
         } catch (final IOException e) {
             Log.logException(e);
         }
-        this.domainStacks.clear();
-        this.top.clear();
-        synchronized (this.delayed) {
-        	this.delayed.clear();
+        synchronized (this.schedule) {
+            // host queues that are taken by a pop are dropped when they are released
+            for (final HostQueue queue: this.hostQueues.values()) queue.clear();
+            this.hostQueues.clear();
+            this.schedule.clear();
         }
         this.double_push_check.clear();
-        this.ddc.clear();
     }
 
     public Request get(final byte[] urlhash) throws IOException {
@@ -167,16 +171,14 @@ public class Balancer {
         // first find a list of url hashes that shall be deleted
         final HandleSet urlHashes = new HandleSet(this.urlFileIndex.row().primaryKeyLength, Base64Order.enhancedCoder, 100);
         final long terminate = (timeout > 0) ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
-        synchronized (this) {
-            final Iterator<Row.Entry> i = this.urlFileIndex.rows();
-            Row.Entry rowEntry;
-            Request crawlEntry;
-            while (i.hasNext() && (System.currentTimeMillis() < terminate)) {
-                rowEntry = i.next();
-                crawlEntry = new Request(rowEntry);
-                if (crawlEntry.profileHandle().equals(profileHandle)) {
-                    urlHashes.put(crawlEntry.url().hash());
-                }
+        final Iterator<Row.Entry> i = this.urlFileIndex.rows();
+        Row.Entry rowEntry;
+        Request crawlEntry;
+        while (i.hasNext() && (System.currentTimeMillis() < terminate)) {
+            rowEntry = i.next();
+            crawlEntry = new Request(rowEntry);
+            if (crawlEntry.profileHandle().equals(profileHandle)) {
+                urlHashes.put(crawlEntry.url().hash());
             }
         }
 
@@ -192,56 +194,26 @@ public class Balancer {
      * @return number of entries that had been removed
      * @throws IOException
      */
-    public synchronized int remove(final HandleSet urlHashes) throws IOException {
-        final int s = this.urlFileIndex.size();
+    public int remove(final HandleSet urlHashes) throws IOException {
         int removedCounter = 0;
         for (final byte[] urlhash: urlHashes) {
             final Row.Entry entry = this.urlFileIndex.remove(urlhash);
             if (entry != null) removedCounter++;
 
             // remove from double-check caches
-            this.ddc.remove(urlhash);
             this.double_push_check.remove(urlhash);
         }
-        if (removedCounter == 0) return 0;
-        assert this.urlFileIndex.size() + removedCounter == s : "urlFileIndex.size() = " + this.urlFileIndex.size() + ", s = " + s;
-
-        // iterate through the top list
-        final Iterator<byte[]> j = this.top.iterator();
-        byte[] urlhash;
-        while (j.hasNext()) {
-            urlhash = j.next();
-            if (urlHashes.has(urlhash)) j.remove();
-        }
-
-        // remove from delayed
-        synchronized (this.delayed) {
-            final Iterator<Map.Entry<Long, byte[]>> k = this.delayed.entrySet().iterator();
-            while (k.hasNext()) {
-                if (urlHashes.has(k.next().getValue())) k.remove();
-            }
-        }
-
-        // iterate through the domain stacks
-        final Iterator<Map.Entry<String, HandleSet>> q = this.domainStacks.entrySet().iterator();
-        HandleSet stack;
-        while (q.hasNext()) {
-            stack = q.next().getValue();
-            for (final byte[] handle: urlHashes) stack.remove(handle);
-            if (stack.isEmpty()) q.remove();
-        }
-
+        // the hashes in the host queues are skipped by pop() because they are not in the file index any more
         return removedCounter;
     }
 
     public boolean has(final byte[] urlhashb) {
-        return this.urlFileIndex.has(urlhashb) || this.ddc.has(urlhashb);
+        return this.urlFileIndex.has(urlhashb);
     }
 
     public boolean notEmpty() {
         // alternative method to the property size() > 0
-        // this is better because it may avoid synchronized access to domain stack summarization
-        return domainStacksNotEmpty();
+        return !this.urlFileIndex.isEmpty();
     }
 
     public int size() {
@@ -252,16 +224,6 @@ public class Balancer {
         return this.urlFileIndex.isEmpty();
     }
 
-    private boolean domainStacksNotEmpty() {
-        if (this.domainStacks == null) return false;
-        synchronized (this.domainStacks) {
-            for (final HandleSet l: this.domainStacks.values()) {
-                if (!l.isEmpty()) return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * push a crawl request on the balancer stack
      * @param entry
@@ -275,7 +237,6 @@ public class Balancer {
         synchronized (this) {
             // double-check
             if (this.double_push_check.has(hash)) return "double occurrence in double_push_check";
-            if (this.ddc.has(hash)) return "double occurrence in ddc";
             if (this.urlFileIndex.has(hash)) return "double occurrence in urlFileIndex";
 
             if (this.double_push_check.size() > 10000 || MemoryControl.shortStatus()) this.double_push_check.clear();
@@ -287,300 +248,162 @@ public class Balancer {
 	        assert s < this.urlFileIndex.size() : "hash = " + ASCII.String(hash) + ", s = " + s + ", size = " + this.urlFileIndex.size();
 	        assert this.urlFileIndex.has(hash) : "hash = " + ASCII.String(hash);
 
-	        // add the hash to a queue
-	        pushHashToDomainStacks(entry.url().getHost(), entry.url().hash());
+	        // add the hash to the queue of its host
+	        pushHashToHostQueue(hash);
 	        return null;
         }
     }
 
-    private void pushHashToDomainStacks(String host, final byte[] urlhash) throws RowSpaceExceededException {
-        // extend domain stack
-        if (host == null) host = localhost;
-        HandleSet domainList = this.domainStacks.get(host);
-        if (domainList == null) {
-            // create new list
-            domainList = new HandleSet(12, Base64Order.enhancedCoder, 1);
-            domainList.put(urlhash);
-            this.domainStacks.put(host, domainList);
-        } else {
-            // extend existent domain list
-        	domainList.put(urlhash);
+    private void pushHashToHostQueue(final byte[] urlhash) {
+        final String hosthash = ASCII.String(urlhash, 6, 6);
+        synchronized (this.schedule) {
+            HostQueue queue = this.hostQueues.get(hosthash);
+            if (queue == null) {
+                queue = new HostQueue(hosthash, urlhash.length);
+                this.hostQueues.put(hosthash, queue);
+            }
+            queue.add(urlhash);
+            if (!queue.scheduled && !queue.taken) {
+                queue.scheduled = true;
+                this.schedule.add(queue);
+            }
         }
     }
 
-    private void removeHashFromDomainStacks(String host, final byte[] urlhash) {
-        // reduce domain stack
-        if (host == null) host = localhost;
-        final HandleSet domainList = this.domainStacks.get(host);
-        if (domainList == null) {
-            this.domainStacks.remove(host);
-            return;
+    /**
+     * take the host queue with the earliest access time out of the schedule
+     * @param delay if true, only a host queue is taken that may be accessed now
+     * @return the host queue or null if there is no host that can be accessed
+     */
+    private HostQueue takeHostQueue(final boolean delay) {
+        synchronized (this.schedule) {
+            final HostQueue queue = this.schedule.peek();
+            if (queue == null) return null;
+            if (delay && queue.nextAccess > System.currentTimeMillis()) return null;
+            this.schedule.poll();
+            queue.scheduled = false;
+            queue.taken = true;
+            return queue;
         }
-        domainList.remove(urlhash);
-        if (domainList.isEmpty()) this.domainStacks.remove(host);
     }
 
-    private byte[] nextFromDelayed() {
-        if (this.delayed.isEmpty()) return null;
-        final Long first = this.delayed.firstKey();
-        if (first.longValue() < System.currentTimeMillis()) {
-            return this.delayed.remove(first);
+    /**
+     * give a host queue back after a pop and schedule it for the next access
+     * @param queue
+     * @param nextAccess the time when the host may be accessed again
+     */
+    private void releaseHostQueue(final HostQueue queue, final long nextAccess) {
+        synchronized (this.schedule) {
+            queue.taken = false;
+            if (queue.isEmpty()) {
+                if (this.hostQueues.get(queue.hosthash) == queue) this.hostQueues.remove(queue.hosthash);
+                return;
+            }
+            if (this.hostQueues.get(queue.hosthash) != queue) return; // the balancer was cleared meanwhile
+            queue.nextAccess = nextAccess;
+            queue.scheduled = true;
+            this.schedule.add(queue);
         }
-    	return null;
-    }
-
-    private byte[] anyFromDelayed() {
-        if (this.delayed.isEmpty()) return null;
-        final Long first = this.delayed.firstKey();
-        return this.delayed.remove(first);
     }
 
     /**
      * get the next entry in this crawl queue in such a way that the domain access time delta is maximized
      * and always above the given minimum delay time. An additional delay time is computed using the robots.txt
-     * crawl-delay time which is always respected. In case the minimum time cannot ensured, this method pauses
-     * the necessary time until the url is released and returned as CrawlEntry object. In case that a profile
-     * for the computed Entry does not exist, null is returned
-     * @param delay true if the requester demands forced delays using explicit thread sleep
+     * crawl-delay time which is always respected. In case that no host can be accessed without a delay,
+     * null is returned; this method never waits. Entries without an existing profile are removed.
+     * @param delay true if the requester demands forced delays
      * @param profile
-     * @return a url in a CrawlEntry object
+     * @return a url in a CrawlEntry object or null if no host may be accessed now
      * @throws IOException
-     * @throws RowSpaceExceededException
      */
     public Request pop(final boolean delay, final CrawlSwitchboard cs) throws IOException {
         // returns a crawl entry from the stack and ensures minimum delta times
+        for (int hop = 0; hop < maxHostHops; hop++) {
+            final HostQueue queue = takeHostQueue(delay);
+            if (queue == null) return null;
+            long nextAccess = System.currentTimeMillis();
+            Request crawlEntry = null;
+            try {
+                byte[] urlhash;
+                while ((urlhash = queue.peek()) != null) {
+                    final Row.Entry rowEntry = this.urlFileIndex.get(urlhash, false);
+                    if (rowEntry == null) {
+                        // the entry had been removed from the balancer
+                        queue.poll();
+                        continue;
+                    }
+                    final Request request = new Request(rowEntry);
+                    queue.hostname = request.url().getHost();
+
+                    // at this point we must check if the crawlEntry has relevance because the crawl profile still exists
+                    final CrawlProfile profileEntry = cs.getActive(UTF8.getBytes(request.profileHandle()));
+                    if (profileEntry == null) {
+                        Log.logWarning("Balancer", "no profile entry for handle " + request.profileHandle());
+                        queue.poll();
+                        this.urlFileIndex.remove(urlhash);
+                        continue;
+                    }
 
-    	try {
-            filltop(delay, -600000, false);
-            filltop(delay, -60000, false);
-            filltop(delay, -10000, false);
-            filltop(delay, -6000, false);
-            filltop(delay, -4000, false);
-            filltop(delay, -3000, false);
-            filltop(delay, -2000, false);
-            filltop(delay, -1000, false);
-            filltop(delay, -500, false);
-            filltop(delay, 0, true);
-            filltop(delay, 500, true);
-            filltop(delay, 1000, true);
-            filltop(delay, 2000, true);
-            filltop(delay, 3000, true);
-            filltop(delay, 4000, true);
-            filltop(delay, 6000, true);
-            filltop(delay, Long.MAX_VALUE, true);
-        } catch (final RowSpaceExceededException e) {}
-
-    	long sleeptime = 0;
-    	Request crawlEntry = null;
-    	synchronized (this) {
-    	    byte[] failhash = null;
-    		while (!this.urlFileIndex.isEmpty()) {
-		    	// first simply take one of the entries in the top list, that should be one without any delay
-    		    byte[] nexthash = nextFromDelayed();
-		        //System.out.println("*** nextFromDelayed=" + nexthash);
-		        if (nexthash == null && !this.top.isEmpty()) {
-		            nexthash = this.top.remove();
-		            //System.out.println("*** top.remove()=" + nexthash);
-		        }
-		        if (nexthash == null) {
-		            nexthash = anyFromDelayed();
-		        }
-
-		        // check minimumDelta and if necessary force a sleep
-		        //final int s = urlFileIndex.size();
-		        Row.Entry rowEntry = (nexthash == null) ? null : this.urlFileIndex.remove(nexthash);
-		        if (rowEntry == null) {
-		            //System.out.println("*** rowEntry=null, nexthash=" + UTF8.String(nexthash));
-		        	rowEntry = this.urlFileIndex.removeOne();
-		        	if (rowEntry == null) {
-		        	    nexthash = null;
-		        	} else {
-		        	    nexthash = rowEntry.getPrimaryKeyBytes();
-		        	    //System.out.println("*** rowEntry.getPrimaryKeyBytes()=" + UTF8.String(nexthash));
-		        	}
-
-		        }
-		        if (rowEntry == null) {
-		        	Log.logWarning("Balancer", "removeOne() failed - size = " + size());
-		        	return null;
-		        }
-		        //assert urlFileIndex.size() + 1 == s : "urlFileIndex.size() = " + urlFileIndex.size() + ", s = " + s + ", result = " + result;
-
-		        crawlEntry = new Request(rowEntry);
-		        //Log.logInfo("Balancer", "fetched next url: " + crawlEntry.url().toNormalform(true, false));
-
-		        // at this point we must check if the crawlEntry has relevance because the crawl profile still exists
-		        // if not: return null. A calling method must handle the null value and try again
-		        final CrawlProfile profileEntry = cs.getActive(UTF8.getBytes(crawlEntry.profileHandle()));
-		        if (profileEntry == null) {
-		        	Log.logWarning("Balancer", "no profile entry for handle " + crawlEntry.profileHandle());
-		        	return null;
-		        }
-		        // depending on the caching policy we need sleep time to avoid DoS-like situations
-		        sleeptime = (
-		                profileEntry.cacheStrategy() == CacheStrategy.CACHEONLY ||
-		                (profileEntry.cacheStrategy() == CacheStrategy.IFEXIST && Cache.has(crawlEntry.url()))
-		                ) ? 0 : Latency.waitingRemaining(crawlEntry.url(), this.myAgentIDs, this.minimumLocalDelta, this.minimumGlobalDelta); // this uses the robots.txt database and may cause a loading of robots.txt from the server
-
-		        assert Base64Order.enhancedCoder.equal(nexthash, rowEntry.getPrimaryKeyBytes()) : "result = " + ASCII.String(nexthash) + ", rowEntry.getPrimaryKeyBytes() = " + ASCII.String(rowEntry.getPrimaryKeyBytes());
-		        assert Base64Order.enhancedCoder.equal(nexthash, crawlEntry.url().hash()) : "result = " + ASCII.String(nexthash) + ", crawlEntry.url().hash() = " + ASCII.String(crawlEntry.url().hash());
-
-		        if (failhash != null && Base64Order.enhancedCoder.equal(failhash, nexthash)) break; // prevent endless loops
-
-		        if (delay && sleeptime > 0 && this.domStackInitSize > 1) {
-		            //System.out.println("*** putback: nexthash=" + nexthash + ", failhash="+failhash);
-		        	// put that thing back to omit a delay here
-		            if (!ByteBuffer.contains(this.delayed.values(), nexthash)) {
-		                //System.out.println("*** delayed +=" + nexthash);
-		                this.delayed.put(Long.valueOf(System.currentTimeMillis() + sleeptime + 1), nexthash);
-		            }
-		        	try {
-                        this.urlFileIndex.put(rowEntry);
-                        String host = crawlEntry.url().getHost();
-                        if (host == null) host = localhost;
-                        this.domainStacks.remove(host);
-                        failhash = nexthash;
-                    } catch (final RowSpaceExceededException e) {
-                        Log.logException(e);
+                    if (delay) {
+                        // depending on the caching policy we need sleep time to avoid DoS-like situations
+                        final long sleeptime = (
+                                profileEntry.cacheStrategy() == CacheStrategy.CACHEONLY ||
+                                (profileEntry.cacheStrategy() == CacheStrategy.IFEXIST && Cache.has(request.url()))
+                                ) ? 0 : Latency.waitingRemaining(request.url(), this.myAgentIDs, this.minimumLocalDelta, this.minimumGlobalDelta); // this uses the robots.txt database and may cause a loading of robots.txt from the server
+                        if (sleeptime > 0) {
+                            // the host must wait; it is scheduled for later and the next host is tried
+                            nextAccess += sleeptime;
+                            break;
+                        }
                     }
-                    continue;
-		        }
-		        break;
-	    	}
-    		if (crawlEntry != null) {
-                if (this.ddc.size() > 10000 || MemoryControl.shortStatus()) this.ddc.clear();
-                try { this.ddc.put(crawlEntry.url().hash()); } catch (final RowSpaceExceededException e) {}
-    		}
-    	}
-    	if (crawlEntry == null) return null;
-
-        if (delay && sleeptime > 0) {
-            // force a busy waiting here
-            // in best case, this should never happen if the balancer works propertly
-            // this is only to protection against the worst case, where the crawler could
-            // behave in a DoS-manner
-            Log.logInfo("BALANCER", "forcing crawl-delay of " + sleeptime + " milliseconds for " + crawlEntry.url().getHost() + ": " + Latency.waitingRemainingExplain(crawlEntry.url(), this.myAgentIDs, this.minimumLocalDelta, this.minimumGlobalDelta) + ", top.size() = " + this.top.size() + ", delayed.size() = " + this.delayed.size() + ", domainStacks.size() = " + this.domainStacks.size() + ", domainStacksInitSize = " + this.domStackInitSize);
-            long loops = sleeptime / 1000;
-            long rest = sleeptime % 1000;
-            if (loops < 3) {
-            	rest = rest + 1000 * loops;
-            	loops = 0;
-            }
-            if (rest > 0) {try {this.wait(rest); } catch (final InterruptedException e) {}}
-            for (int i = 0; i < loops; i++) {
-            	Log.logInfo("BALANCER", "waiting for " + crawlEntry.url().getHost() + ": " + (loops - i) + " seconds remaining...");
-                try {this.wait(1000); } catch (final InterruptedException e) {}
-            }
-        }
-        this.ddc.remove(crawlEntry.url().hash());
-        Latency.update(crawlEntry.url());
-        return crawlEntry;
-    }
 
-    private void filltop(final boolean delay, final long maximumwaiting, final boolean acceptonebest) throws RowSpaceExceededException {
-    	if (!this.top.isEmpty()) return;
-
-    	//System.out.println("*** DEBUG started filltop delay=" + ((delay) ? "true":"false") + ", maximumwaiting=" + maximumwaiting + ", acceptonebest=" + ((acceptonebest) ? "true":"false"));
-
-    	// check if we need to get entries from the file index
-    	try {
-			fillDomainStacks();
-		} catch (final IOException e) {
-		    Log.logException(e);
-		}
-
-    	// iterate over the domain stacks
-    	final Iterator<Map.Entry<String, HandleSet>> i = this.domainStacks.entrySet().iterator();
-    	Map.Entry<String, HandleSet> entry;
-    	long smallestWaiting = Long.MAX_VALUE;
-    	byte[] besturlhash = null;
-    	String besthost = null;
-    	while (i.hasNext()) {
-            entry = i.next();
-
-            // clean up empty entries
-            if (entry.getValue().isEmpty()) {
-                i.remove();
-                continue;
-            }
+                    queue.poll();
+                    if (this.urlFileIndex.remove(urlhash) == null) continue; // removed concurrently
+                    Latency.update(request.url());
+                    crawlEntry = request;
 
-            final byte[] n = entry.getValue().removeOne();
-            if (n == null) continue;
-            if (delay) {
-                final long w = Latency.waitingRemainingGuessed(entry.getKey(), this.minimumLocalDelta, this.minimumGlobalDelta);
-                if (w > maximumwaiting) {
-                    if (w < smallestWaiting) {
-                        smallestWaiting = w;
-                        besturlhash = n;
-                        besthost = entry.getKey();
-                    }
-                    entry.getValue().put(n); // put entry back
-                    continue;
+                    // guess the next access time of the host; the exact time is checked when the host is taken the next time
+                    if (delay) nextAccess += Math.max(0, Latency.waitingRemainingGuessed(queue.hostname, this.minimumLocalDelta, this.minimumGlobalDelta));
+                    break;
                 }
+            } finally {
+                releaseHostQueue(queue, nextAccess);
             }
-
-            this.top.add(n);
-            if (entry.getValue().isEmpty()) i.remove();
-    	}
-
-    	// if we could not find any entry, then take the best we have seen so far
-    	if (acceptonebest && !this.top.isEmpty() && besturlhash != null) {
-            removeHashFromDomainStacks(besthost, besturlhash);
-            this.top.add(besturlhash);
-    	}
+            if (crawlEntry != null) return crawlEntry;
+        }
+        return null;
     }
 
-    private void fillDomainStacks() throws IOException {
-    	if (!this.domainStacks.isEmpty() && System.currentTimeMillis() - this.lastDomainStackFill < 120000L) return;
-    	this.domainStacks.clear();
-    	this.top.clear();
-    	this.lastDomainStackFill = System.currentTimeMillis();
-    	final HandleSet handles = this.urlFileIndex.keysFromBuffer(objectIndexBufferSize / 2);
-        final CloneableIterator<byte[]> i = handles.keys(true, null);
-        byte[] handle;
-        String host;
-        Request request;
-    	while (i.hasNext()) {
-    	    handle = i.next();
-    	    final Row.Entry entry = this.urlFileIndex.get(handle, false);
-    	    if (entry == null) continue;
-    	    request = new Request(entry);
-    	    host = request.url().getHost();
-    		try {
-                pushHashToDomainStacks(host, handle);
-            } catch (final RowSpaceExceededException e) {
-                break;
-            }
-    	}
-    	Log.logInfo("BALANCER", "re-fill of domain stacks; fileIndex.size() = " + this.urlFileIndex.size() + ", domainStacks.size = " + this.domainStacks.size() + ", collection time = " + (System.currentTimeMillis() - this.lastDomainStackFill) + " ms");
-        this.domStackInitSize = this.domainStacks.size();
+    /**
+     * the number of host queues
+     * @return the number of hosts that have urls in this balancer
+     */
+    public int hostCount() {
+        synchronized (this.schedule) {
+            return this.hostQueues.size();
+        }
     }
 
     public List<Request> top(int count) {
     	final List<Request> cel = new ArrayList<Request>();
     	if (count == 0) return cel;
-    	byte[][] ta = new byte[Math.min(count, this.top.size())][];
-        ta = this.top.toArray(ta);
-    	for (final byte[] n: ta) {
-    	    if (n == null) break;
-    		try {
-                    final Row.Entry rowEntry = this.urlFileIndex.get(n, false);
-                    if (rowEntry == null) continue;
-                    final Request crawlEntry = new Request(rowEntry);
-                    cel.add(crawlEntry);
-                    count--;
-                    if (count <= 0) break;
-                } catch (final IOException e) {}
+
+    	// show the hosts in the order of their access time
+    	final List<HostQueue> queues;
+    	synchronized (this.schedule) {
+    	    final PriorityQueue<HostQueue> s = new PriorityQueue<HostQueue>(this.schedule);
+    	    queues = new ArrayList<HostQueue>(s.size());
+    	    while (!s.isEmpty()) queues.add(s.poll());
     	}
 
     	int depth = 0;
     	loop: while (count > 0) {
-	    	// iterate over the domain stacks
-    	    final int celsize = cel.size();
-	        ll: for (final HandleSet list: this.domainStacks.values()) {
-	            if (list.size() <= depth) continue ll;
-	            final byte[] n = list.getOne(depth);
-	            if (n == null) continue ll;
+	    	// iterate over the host queues
+    	    boolean found = false;
+	        for (final HostQueue queue: queues) {
+	            final byte[] n = queue.get(depth);
+	            if (n == null) continue;
+	            found = true;
                 try {
                     final Row.Entry rowEntry = this.urlFileIndex.get(n, false);
                     if (rowEntry == null) continue;
@@ -590,12 +413,12 @@ public class Balancer {
                     if (count <= 0) break loop;
                 } catch (final IOException e) {}
 	        }
-    	    if (cel.size() == celsize) break loop;
+    	    if (!found) break loop;
 	        depth++;
     	}
 
-    	if (cel.size() < count) try {
-            final List<Row.Entry> list = this.urlFileIndex.top(count - cel.size());
+    	if (count > 0 && cel.isEmpty()) try {
+            final List<Row.Entry> list = this.urlFileIndex.top(count);
             for (final Row.Entry entry: list) cel.add(new Request(entry));
         } catch (final IOException e) { }
     	return cel;
@@ -605,6 +428,15 @@ public class Balancer {
         return new EntryIterator();
     }
 
+    /**
+     * iterate the url hashes of all stacked requests without reading the request entries
+     * @return an iterator of url hashes
+     * @throws IOException
+     */
+    public CloneableIterator<byte[]> keys() throws IOException {
+        return this.urlFileIndex.keys(true, null);
+    }
+
     private class EntryIterator implements Iterator<Request> {
 
         private Iterator<Row.Entry> rowIterator;
@@ -634,4 +466,88 @@ public class Balancer {
 
     }
 
+    /**
+     * the url hashes of one host in the order of their arrival.
+     * The hashes are stored in a ring buffer without an object for each hash.
+     * The fields scheduled, taken and nextAccess are guarded by the schedule of the balancer.
+     */
+    private static final class HostQueue implements Comparable<HostQueue> {
+
+        private final String hosthash;
+        private final int keylength;
+        private String hostname;  // known after the first request of the host had been read
+        private long nextAccess;  // the time when the host may be accessed next
+        private boolean scheduled; // true if the queue is in the schedule
+        private boolean taken;     // true if a pop works on the queue
+        private byte[] ring;
+        private int head, count;
+
+        private HostQueue(final String hosthash, final int keylength) {
+            this.hosthash = hosthash;
+            this.keylength = keylength;
+            this.hostname = null;
+            this.nextAccess = 0;
+            this.scheduled = false;
+            this.taken = false;
+            this.ring = new byte[keylength * 4];
+            this.head = 0;
+            this.count = 0;
+        }
+
+        private synchronized void add(final byte[] urlhash) {
+            final int capacity = this.ring.length / this.keylength;
+            if (this.count == capacity) {
+                // double the size of the ring and move the content to the start
+                final byte[] r = new byte[this.ring.length * 2];
+                final int first = Math.min(this.count, capacity - this.head);
+                System.arraycopy(this.ring, this.head * this.keylength, r, 0, first * this.keylength);
+                System.arraycopy(this.ring, 0, r, first * this.keylength, (this.count - first) * this.keylength);
+                this.ring = r;
+                this.head = 0;
+            }
+            final int p = (this.head + this.count) % (this.ring.length / this.keylength);
+            System.arraycopy(urlhash, 0, this.ring, p * this.keylength, this.keylength);
+            this.count++;
+        }
+
+        private synchronized byte[] get(final int i) {
+            if (i >= this.count) return null;
+            final int p = (this.head + i) % (this.ring.length / this.keylength);
+            final byte[] urlhash = new byte[this.keylength];
+            System.arraycopy(this.ring, p * this.keylength, urlhash, 0, this.keylength);
+            return urlhash;
+        }
+
+        private byte[] peek() {
+            return get(0);
+        }
+
+        private synchronized void poll() {
+            if (this.count == 0) return;
+            this.head = (this.head + 1) % (this.ring.length / this.keylength);
+            this.count--;
+            if (this.count == 0) {
+                this.head = 0;
+                if (this.ring.length > this.keylength * 4) this.ring = new byte[this.keylength * 4];
+            }
+        }
+
+        private synchronized boolean isEmpty() {
+            return this.count == 0;
+        }
+
+        private synchronized void clear() {
+            this.ring = new byte[this.keylength * 4];
+            this.head = 0;
+            this.count = 0;
+        }
+
+        @Override
+        public int compareTo(final HostQueue other) {
+            if (this.nextAccess < other.nextAccess) return -1;
+            if (this.nextAccess > other.nextAccess) return 1;
+            return this.hosthash.compareTo(other.hosthash);
+        }
+    }
+
 }
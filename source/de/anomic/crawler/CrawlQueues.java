@@ -238,7 +238,7 @@ public class CrawlQueues {
                 if (this.noticeURL.stackSize(NoticedURL.StackType.NOLOAD) > 0) {
                     // get one entry that will not be loaded, just indexed
                     urlEntry = this.noticeURL.pop(NoticedURL.StackType.NOLOAD, true, this.sb.crawler);
-                    if (urlEntry == null) continue;
+                    if (urlEntry == null) return true; // entries without profile had been removed; try again after the busy sleep
                     final String profileHandle = urlEntry.profileHandle();
                     if (profileHandle == null) {
                         this.log.logSevere(stats + ": NULL PROFILE HANDLE '" + urlEntry.profileHandle() + "' for URL " + urlEntry.url());
@@ -259,7 +259,7 @@ public class CrawlQueues {
                 }
 
                 urlEntry = this.noticeURL.pop(NoticedURL.StackType.CORE, true, this.sb.crawler);
-                if (urlEntry == null) continue;
+                if (urlEntry == null) return true; // no host in the stack may be accessed now; try again after the busy sleep
                 final String profileHandle = urlEntry.profileHandle();
                 // System.out.println("DEBUG plasmaSwitchboard.processCrawling:
                 // profileHandle = " + profileHandle + ", urlEntry.url = " + urlEntry.url());
@@ -524,6 +524,7 @@ public class CrawlQueues {
                         + this.noticeURL.stackSize(NoticedURL.StackType.REMOTE) + "]";
         try {
             final Request urlEntry = this.noticeURL.pop(NoticedURL.StackType.REMOTE, true, this.sb.crawler);
+            if (urlEntry == null) return true; // no host in the stack may be accessed now; try again after the busy sleep
             final String profileHandle = urlEntry.profileHandle();
             // System.out.println("DEBUG plasmaSwitchboard.processCrawling:
             // profileHandle = " + profileHandle + ", urlEntry.url = " +
@@ -28,15 +28,18 @@
 
 package de.anomic.crawler;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.document.ASCII;
 import net.yacy.cora.document.MultiProtocolURI;
@@ -45,8 +48,11 @@ import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.ftp.FTPClient;
 import net.yacy.kelondro.data.meta.DigestURI;
 import net.yacy.kelondro.data.meta.URIMetadataRow;
+import net.yacy.kelondro.index.BloomFilter;
+import net.yacy.kelondro.index.ScalableBloomFilter;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.peers.SeedDB;
 import net.yacy.repository.Blacklist;
@@ -63,6 +69,8 @@ import de.anomic.crawler.retrieval.SMBLoader;
 
 public final class CrawlStacker {
 
+    public static long seenFilterMaxBytes = 64L * 1024L * 1024L; // the maximum size of the url seen filter
+
     private final Log log = new Log("STACKCRAWL");
 
     private final WorkflowProcessor<Request>  fastQueue, slowQueue;
@@ -74,6 +82,14 @@ public final class CrawlStacker {
     private final boolean           acceptLocalURLs, acceptGlobalURLs;
     private final FilterEngine      domainList;
 
+    // the seen filter contains the hashes of all urls that are stacked, rejected, delegated or stored in the url metadata.
+    // urls that are not in the filter are new and need no lookup in those tables
+    private final ScalableBloomFilter seenFilter;
+    private final File              seenFilterFile;
+    private volatile boolean        seenFilterReady;
+    private Thread                  seenFilterInit;
+    private final AtomicLong        seenFilterMiss, seenFilterHit; // counted concurrently by the fast and the slow queue
+
     // this is the process that checks url for double-occurrences and for allowance/disallowance by robots.txt
 
     public CrawlStacker(
@@ -83,7 +99,8 @@ public final class CrawlStacker {
             final SeedDB peers,
             final boolean acceptLocalURLs,
             final boolean acceptGlobalURLs,
-            final FilterEngine domainList) {
+            final FilterEngine domainList,
+            final File seenFilterFile) {
         this.nextQueue = cq;
         this.crawler = cs;
         this.indexSegment = indexSegment;
@@ -94,12 +111,100 @@ public final class CrawlStacker {
         this.acceptGlobalURLs = acceptGlobalURLs;
         this.domainList = domainList;
 
+        // load the seen filter from the snapshot that was written during the last shutdown.
+        // the snapshot is deleted after loading because it is not updated while the crawler runs;
+        // if the application is not shut down properly, the filter must be computed again
+        this.seenFilterFile = seenFilterFile;
+        ScalableBloomFilter filter = null;
+        if (seenFilterFile != null && seenFilterFile.exists()) {
+            try {
+                filter = new ScalableBloomFilter(seenFilterFile, seenFilterMaxBytes);
+                this.log.logInfo("loaded url seen filter with " + filter.size() + " entries, " + (filter.mem() / 1024 / 1024) + " MB");
+            } catch (final IOException e) {
+                this.log.logWarning("cannot load url seen filter: " + e.getMessage());
+                filter = null;
+            }
+            FileUtils.deletedelete(seenFilterFile);
+        }
+        this.seenFilterReady = filter != null;
+        if (filter == null) {
+            final long expected = (long) ((this.indexSegment.urlMetadata().size() + cq.noticeURL.size()) * 1.2);
+            filter = new ScalableBloomFilter((int) Math.min(expected, seenFilterMaxBytes * 8 / BloomFilter.defaultBitsPerKey), BloomFilter.defaultBitsPerKey, seenFilterMaxBytes);
+        }
+        this.seenFilter = filter;
+        this.seenFilterMiss = new AtomicLong(0);
+        this.seenFilterHit = new AtomicLong(0);
+
+        // the filter must be connected to all sources before the sources are enumerated
+        this.nextQueue.noticeURL.connectSeenFilter(this.seenFilter);
+        this.nextQueue.errorURL.connectSeenFilter(this.seenFilter);
+        this.nextQueue.delegatedURL.connectSeenFilter(this.seenFilter);
+        this.indexSegment.urlMetadata().connectSeenFilter(this.seenFilter);
+        if (this.seenFilterReady) {
+            this.seenFilterInit = null;
+        } else {
+            this.seenFilterInit = new Thread("CrawlStacker.seenFilterInit") {
+                @Override
+                public void run() {
+                    initSeenFilter();
+                }
+            };
+            this.seenFilterInit.setPriority(Thread.MIN_PRIORITY);
+            this.seenFilterInit.start();
+        }
+
         this.fastQueue = new WorkflowProcessor<Request>("CrawlStackerFast", "This process checks new urls before they are enqueued into the balancer (proper, double-check, correct domain, filter)", new String[]{"Balancer"}, this, "job", 10000, null, 2);
         this.slowQueue = new WorkflowProcessor<Request>("CrawlStackerSlow", "This is like CrawlStackerFast, but does additionaly a DNS lookup. The CrawlStackerFast does not need this because it can use the DNS cache.", new String[]{"Balancer"}, this, "job",  1000, null, 5);
         this.log.logInfo("STACKCRAWL thread initialized.");
     }
 
 
+    /**
+     * fill the seen filter with the url hashes of all stacks and tables that are checked for double occurrences.
+     * Until this is finished, all urls are checked with the exact lookups.
+     */
+    private void initSeenFilter() {
+        final long start = System.currentTimeMillis();
+        this.log.logInfo("computing url seen filter");
+        try {
+            for (final NoticedURL.StackType stackType: new NoticedURL.StackType[]{NoticedURL.StackType.CORE, NoticedURL.StackType.LIMIT, NoticedURL.StackType.REMOTE, NoticedURL.StackType.NOLOAD}) {
+                if (!addToSeenFilter(this.nextQueue.noticeURL.keys(stackType))) return;
+            }
+            if (!addToSeenFilter(this.nextQueue.errorURL.keys())) return;
+            if (!addToSeenFilter(this.nextQueue.delegatedURL.keys())) return;
+            if (!addToSeenFilter(this.indexSegment.urlMetadata().keys(true, null))) return;
+        } catch (final Exception e) {
+            // this happens i.e. if the tables are closed during shutdown
+            this.log.logWarning("computation of url seen filter failed: " + e.getMessage());
+            return;
+        }
+        this.seenFilterReady = true;
+        this.log.logInfo("computed url seen filter with " + this.seenFilter.size() + " entries, " + (this.seenFilter.mem() / 1024 / 1024) + " MB in " + this.seenFilter.stages() + " stages, " + ((System.currentTimeMillis() - start) / 1000) + " seconds");
+    }
+
+    private boolean addToSeenFilter(final Iterator<byte[]> keys) {
+        if (keys == null) return true;
+        while (keys.hasNext()) {
+            if (Thread.currentThread().isInterrupted()) return false;
+            this.seenFilter.add(keys.next());
+        }
+        return true;
+    }
+
+    /**
+     * the number of urls that were found to be new with the seen filter without any further lookup
+     */
+    public long seenFilterMisses() {
+        return this.seenFilterMiss.get();
+    }
+
+    /**
+     * the number of urls that were possibly seen before and had to be checked with the exact lookups
+     */
+    public long seenFilterHits() {
+        return this.seenFilterHit.get();
+    }
+
     public int size() {
         return this.fastQueue.queueSize() + this.slowQueue.queueSize();
     }
@@ -130,6 +235,28 @@ public final class CrawlStacker {
         this.log.logInfo("Shutdown. Closing stackCrawl queue.");
 
         clear();
+
+        // stop the computation of the seen filter; an incomplete filter is not written
+        if (this.seenFilterInit != null && this.seenFilterInit.isAlive()) {
+            this.seenFilterInit.interrupt();
+            try {this.seenFilterInit.join(2000);} catch (final InterruptedException e) {}
+        }
+    }
+
+    /**
+     * write a snapshot of the seen filter. The noticed, error and delegated url stacks and the
+     * url metadata add their urls to the filter, so this must be called after these are closed;
+     * otherwise urls that are added after the snapshot are missing in the next session.
+     */
+    public void dumpSeenFilter() {
+        if (this.seenFilterReady && this.seenFilterFile != null) {
+            try {
+                this.seenFilter.dump(this.seenFilterFile);
+                this.log.logInfo("Shutdown. Wrote url seen filter with " + this.seenFilter.size() + " entries; " + this.seenFilterMiss.get() + " urls were accepted as new without lookup, " + this.seenFilterHit.get() + " needed a lookup.");
+            } catch (final IOException e) {
+                this.log.logWarning("cannot write url seen filter: " + e.getMessage());
+            }
+        }
     }
 
     private boolean prefetchHost(final String host) {
@@ -433,39 +560,13 @@ public final class CrawlStacker {
             return "post url not allowed";
         }
 
-        // check if the url is double registered
-        final String dbocc = this.nextQueue.urlExists(url.hash()); // returns the name of the queue if entry exists
-        final URIMetadataRow oldEntry = this.indexSegment.urlMetadata().load(url.hash());
-        if (oldEntry == null) {
-            if (dbocc != null) {
-                // do double-check
-                if (this.log.isFine()) this.log.logFine("URL '" + urlstring + "' is double registered in '" + dbocc + "'.");
-                if (dbocc.equals("errors")) {
-                    final ZURL.Entry errorEntry = this.nextQueue.errorURL.get(url.hash());
-                    return "double in: errors (" + errorEntry.anycause() + ")";
-                } else {
-                    return "double in: " + dbocc;
-                }
-            }
+        // check if the url is double registered; if the seen filter does not know the url, it is new
+        if (this.seenFilterReady && !this.seenFilter.contains(url.hash())) {
+            this.seenFilterMiss.incrementAndGet();
         } else {
-            final boolean recrawl = profile.recrawlIfOlder() > oldEntry.loaddate().getTime();
-            if (recrawl) {
-                if (this.log.isInfo())
-                    this.log.logInfo("RE-CRAWL of URL '" + urlstring + "': this url was crawled " +
-                        ((System.currentTimeMillis() - oldEntry.loaddate().getTime()) / 60000 / 60 / 24) + " days ago.");
-            } else {
-                if (dbocc == null) {
-                    return "double in: LURL-DB";
-                } else {
-                    if (this.log.isInfo()) this.log.logInfo("URL '" + urlstring + "' is double registered in '" + dbocc + "'. " + "Stack processing time:");
-                    if (dbocc.equals("errors")) {
-                        final ZURL.Entry errorEntry = this.nextQueue.errorURL.get(url.hash());
-                        return "double in: errors (" + errorEntry.anycause() + ")";
-                    } else {
-                        return "double in: " + dbocc;
-                    }
-                }
-            }
+            this.seenFilterHit.incrementAndGet();
+            final String doubleReason = checkDouble(url, urlstring, profile);
+            if (doubleReason != null) return doubleReason;
         }
 
         // deny urls that exceed allowed number of occurrences
@@ -521,6 +622,47 @@ public final class CrawlStacker {
         return null;
     }
 
+    /**
+     * check if the url is already in one of the crawl stacks, the error and delegated tables or in the url metadata
+     * @return null if the url may be stacked or a string with the reason why it is a double
+     */
+    private String checkDouble(final DigestURI url, final String urlstring, final CrawlProfile profile) {
+        final String dbocc = this.nextQueue.urlExists(url.hash()); // returns the name of the queue if entry exists
+        final URIMetadataRow oldEntry = this.indexSegment.urlMetadata().load(url.hash());
+        if (oldEntry == null) {
+            if (dbocc != null) {
+                // do double-check
+                if (this.log.isFine()) this.log.logFine("URL '" + urlstring + "' is double registered in '" + dbocc + "'.");
+                if (dbocc.equals("errors")) {
+                    final ZURL.Entry errorEntry = this.nextQueue.errorURL.get(url.hash());
+                    return "double in: errors (" + errorEntry.anycause() + ")";
+                } else {
+                    return "double in: " + dbocc;
+                }
+            }
+        } else {
+            final boolean recrawl = profile.recrawlIfOlder() > oldEntry.loaddate().getTime();
+            if (recrawl) {
+                if (this.log.isInfo())
+                    this.log.logInfo("RE-CRAWL of URL '" + urlstring + "': this url was crawled " +
+                        ((System.currentTimeMillis() - oldEntry.loaddate().getTime()) / 60000 / 60 / 24) + " days ago.");
+            } else {
+                if (dbocc == null) {
+                    return "double in: LURL-DB";
+                } else {
+                    if (this.log.isInfo()) this.log.logInfo("URL '" + urlstring + "' is double registered in '" + dbocc + "'. " + "Stack processing time:");
+                    if (dbocc.equals("errors")) {
+                        final ZURL.Entry errorEntry = this.nextQueue.errorURL.get(url.hash());
+                        return "double in: errors (" + errorEntry.anycause() + ")";
+                    } else {
+                        return "double in: " + dbocc;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
 
     /**
      * Test a url if it can be used for crawling/indexing
@@ -169,11 +169,11 @@ public class Latency {
 
         // find the minimum waiting time based on the network domain (local or global)
         final boolean local = url.isLocal();
-        if (local) return minimumLocalDelta;
         long waiting = (local) ? minimumLocalDelta : minimumGlobalDelta;
 
         // the time since last access to the domain is the basis of the remaining calculation
         final long timeSinceLastAccess = System.currentTimeMillis() - host.lastacc();
+        if (local) return Math.max(0, waiting - timeSinceLastAccess);
 
         // for CGI accesses, we double the minimum time
         // mostly there is a database access in the background
@@ -36,8 +36,10 @@ import java.util.Set;
 
 import net.yacy.kelondro.index.HandleSet;
 import net.yacy.kelondro.index.RowSpaceExceededException;
+import net.yacy.kelondro.index.ScalableBloomFilter;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.order.CloneableIterator;
 import de.anomic.crawler.retrieval.Request;
 
 public class NoticedURL {
@@ -53,6 +55,7 @@ public class NoticedURL {
     private Balancer limitStack;     // links found by crawling at target depth
     private Balancer remoteStack;    // links from remote crawl orders
     private Balancer noloadStack;    // links that are not passed to a loader; the index will be generated from the Request entry
+    private ScalableBloomFilter seenFilter; // if not null, all pushed urls are added to this filter
 
     public NoticedURL(
             final File cachePath,
@@ -65,6 +68,15 @@ public class NoticedURL {
         //overhangStack = new plasmaCrawlBalancer(overhangStackFile);
         this.remoteStack = new Balancer(cachePath, "urlNoticeRemoteStack", minimumLocalDeltaInit, minimumGlobalDeltaInit, myAgentIDs, useTailCache, exceed134217727);
         this.noloadStack = new Balancer(cachePath, "urlNoticeNoLoadStack", minimumLocalDeltaInit, minimumGlobalDeltaInit, myAgentIDs, useTailCache, exceed134217727);
+        this.seenFilter = null;
+    }
+
+    /**
+     * connect a filter that is informed about all urls that are pushed to the stacks
+     * @param seenFilter
+     */
+    public void connectSeenFilter(final ScalableBloomFilter seenFilter) {
+        this.seenFilter = seenFilter;
     }
 
     public long getMinimumLocalDelta() {
@@ -169,6 +181,7 @@ public class NoticedURL {
      * @return null if this was successful or a String explaining what went wrong in case of an error
      */
     public String push(final StackType stackType, final Request entry) {
+        if (this.seenFilter != null) this.seenFilter.add(entry.url().hash());
         try {
             switch (stackType) {
                 case CORE:
@@ -274,25 +287,9 @@ public class NoticedURL {
     }
 
     private Request pop(final Balancer balancer, final boolean delay, final CrawlSwitchboard cs) throws IOException {
-        // this is a filo - pop
-        int s;
-        Request entry;
-        int errors = 0;
-        synchronized (balancer) {
-            while ((s = balancer.size()) > 0) {
-                entry = balancer.pop(delay, cs);
-                if (entry == null) {
-                    if (s > balancer.size()) continue;
-                    errors++;
-                    if (errors < 100) continue;
-                    final int aftersize = balancer.size();
-                    balancer.clear(); // the balancer is broken and cannot shrink
-                    Log.logWarning("BALANCER", "entry is null, balancer cannot shrink (bevore pop = " + s + ", after pop = " + aftersize + "); reset of balancer");
-                }
-                return entry;
-            }
-        }
-        return null;
+        // the balancer is thread-safe; it returns null if the stack is empty or no host may be accessed now
+        if (balancer.isEmpty()) return null;
+        return balancer.pop(delay, cs);
     }
 
     private List<Request> top(final Balancer balancer, int count) {
@@ -314,4 +311,15 @@ public class NoticedURL {
         }
     }
 
+    public CloneableIterator<byte[]> keys(final StackType stackType) throws IOException {
+        // returns an iterator of the url hashes on the stack
+        switch (stackType) {
+            case CORE:     return this.coreStack.keys();
+            case LIMIT:    return this.limitStack.keys();
+            case REMOTE:   return this.remoteStack.keys();
+            case NOLOAD:   return this.noloadStack.keys();
+            default: return null;
+        }
+    }
+
 }
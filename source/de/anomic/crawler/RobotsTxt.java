@@ -32,7 +32,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import net.yacy.cora.document.MultiProtocolURI;
@@ -42,6 +41,8 @@ import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.protocol.ResponseHeader;
 import net.yacy.cora.protocol.http.HTTPClient;
+import net.yacy.cora.storage.ARC;
+import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.kelondro.blob.BEncodedHeap;
 import net.yacy.kelondro.index.RowSpaceExceededException;
 import net.yacy.kelondro.io.ByteCount;
@@ -58,16 +59,32 @@ public class RobotsTxt {
     protected static final String ROBOTS_DB_PATH_SEPARATOR = ";";
     protected static final Pattern ROBOTS_DB_PATH_SEPARATOR_MATCHER = Pattern.compile(ROBOTS_DB_PATH_SEPARATOR);
 
-    private final ConcurrentHashMap<String, DomSync> syncObjects;
+    private static final long MAX_ENTRY_AGE = 7L * 24L * 60L * 60L * 1000L; // entries that are older are loaded again from the remote server
+    private static final int CACHE_SIZE = 20000; // number of parsed entries that are held in RAM
+    private static final int LOCK_STRIPES = 256; // number of locks for the download of robots.txt files; must be a power of 2
+
+    private final Object[] syncObjects;
     //private static final HashSet<String> loadedRobots = new HashSet<String>(); // only for debugging
     private final WorkTables tables;
 
-    private static class DomSync {
-    	private DomSync() {}
+    // the cache holds the parsed entries for the host:port keys of the robots table.
+    // This also includes entries for hosts that do not have a robots.txt file, therefore
+    // the robots check for all hosts that had been checked before is only a hash lookup
+    private final ARC<String, CachedEntry> cache;
+
+    private static class CachedEntry {
+        private final RobotsTxtEntry entry;
+        private final long expires;
+        private CachedEntry(final RobotsTxtEntry entry, final long expires) {
+            this.entry = entry;
+            this.expires = expires;
+        }
     }
 
     public RobotsTxt(final WorkTables worktables) {
-        this.syncObjects = new ConcurrentHashMap<String, DomSync>();
+        this.syncObjects = new Object[LOCK_STRIPES];
+        for (int i = 0; i < this.syncObjects.length; i++) this.syncObjects[i] = new Object();
+        this.cache = new ConcurrentARC<String, CachedEntry>(CACHE_SIZE, Math.max(32, 4 * Runtime.getRuntime().availableProcessors()));
         this.tables = worktables;
         try {
             log.info("initiated robots table: " + this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME).getFile());
@@ -82,7 +99,7 @@ public class RobotsTxt {
     public void clear() throws IOException {
         log.info("clearing robots table");
         this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME).clear();
-        this.syncObjects.clear();
+        this.cache.clear();
     }
 
     public int size() throws IOException {
@@ -96,8 +113,27 @@ public class RobotsTxt {
     }
 
     private RobotsTxtEntry getEntry(final MultiProtocolURI theURL, final Set<String> thisAgents, final boolean fetchOnlineIfNotAvailableOrNotFresh) throws IOException {
-            // this method will always return a non-null value
         final String urlHostPort = getHostPort(theURL);
+
+        // try the cache first; cached entries expire at the time when they must be loaded again
+        final CachedEntry cached = this.cache.get(urlHostPort);
+        if (cached != null) {
+            if (cached.expires > System.currentTimeMillis()) return cached.entry;
+            this.cache.remove(urlHostPort);
+        }
+
+        final RobotsTxtEntry robotsTxt4Host = loadEntry(urlHostPort, thisAgents, fetchOnlineIfNotAvailableOrNotFresh);
+        if (robotsTxt4Host != null) {
+            final Date loadedDate = robotsTxt4Host.getLoadedDate();
+            if (loadedDate != null && loadedDate.getTime() + MAX_ENTRY_AGE > System.currentTimeMillis()) {
+                this.cache.put(urlHostPort, new CachedEntry(robotsTxt4Host, loadedDate.getTime() + MAX_ENTRY_AGE));
+            }
+        }
+        return robotsTxt4Host;
+    }
+
+    private RobotsTxtEntry loadEntry(final String urlHostPort, final Set<String> thisAgents, final boolean fetchOnlineIfNotAvailableOrNotFresh) throws IOException {
+            // this method will always return a non-null value
         RobotsTxtEntry robotsTxt4Host = null;
         Map<String, byte[]> record;
         final BEncodedHeap robotsTable = this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME);
@@ -112,15 +148,11 @@ public class RobotsTxt {
         if (fetchOnlineIfNotAvailableOrNotFresh && (
              robotsTxt4Host == null ||
              robotsTxt4Host.getLoadedDate() == null ||
-             System.currentTimeMillis() - robotsTxt4Host.getLoadedDate().getTime() > 7*24*60*60*1000
+             System.currentTimeMillis() - robotsTxt4Host.getLoadedDate().getTime() > MAX_ENTRY_AGE
            )) {
 
-            // make or get a synchronization object
-        	DomSync syncObj = this.syncObjects.get(urlHostPort);
-            if (syncObj == null) {
-                syncObj = new DomSync();
-                this.syncObjects.put(urlHostPort, syncObj);
-            }
+            // get a synchronization object; hosts share a fixed number of locks
+            final Object syncObj = this.syncObjects[urlHostPort.hashCode() & (this.syncObjects.length - 1)];
 
             // we can now synchronize for each host separately
             synchronized (syncObj) {
@@ -43,8 +43,10 @@ import net.yacy.kelondro.index.Index;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowSet;
 import net.yacy.kelondro.index.RowSpaceExceededException;
+import net.yacy.kelondro.index.ScalableBloomFilter;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.order.CloneableIterator;
 import net.yacy.kelondro.table.SplitTable;
 import net.yacy.kelondro.table.Table;
 import net.yacy.kelondro.util.FileUtils;
@@ -78,6 +80,7 @@ public class ZURL implements Iterable<ZURL.Entry> {
     private Index urlIndex;
     private final ConcurrentLinkedQueue<byte[]> stack;
     private final SolrConnector solrConnector;
+    private ScalableBloomFilter seenFilter;
 
     public ZURL(
             final SolrConnector solrConnector,
@@ -106,6 +109,7 @@ public class ZURL implements Iterable<ZURL.Entry> {
         }
         //urlIndex = new kelondroFlexTable(cachePath, tablename, -1, rowdef, 0, true);
         this.stack = new ConcurrentLinkedQueue<byte[]>();
+        this.seenFilter = null;
     }
 
     public ZURL(final SolrShardingConnector solrConnector) {
@@ -113,6 +117,15 @@ public class ZURL implements Iterable<ZURL.Entry> {
         // creates a new ZUR in RAM
         this.urlIndex = new RowSet(rowdef);
         this.stack = new ConcurrentLinkedQueue<byte[]>();
+        this.seenFilter = null;
+    }
+
+    /**
+     * connect a filter that is informed about all urls that are pushed to this stack
+     * @param seenFilter
+     */
+    public void connectSeenFilter(final ScalableBloomFilter seenFilter) {
+        this.seenFilter = seenFilter;
     }
 
     public void clear() throws IOException {
@@ -149,6 +162,7 @@ public class ZURL implements Iterable<ZURL.Entry> {
         if (anycause == null) anycause = "unknown";
         final String reason = anycause + ((httpcode >= 0) ? " (http return code = " + httpcode + ")" : "");
         final Entry entry = new Entry(bentry, executor, workdate, workcount, reason);
+        if (this.seenFilter != null) this.seenFilter.add(entry.hash());
         put(entry);
         this.stack.add(entry.hash());
         Log.logInfo("Rejected URL", bentry.url().toNormalform(false, false) + " - " + reason);
@@ -167,6 +181,15 @@ public class ZURL implements Iterable<ZURL.Entry> {
         return new EntryIterator();
     }
 
+    /**
+     * iterate the url hashes of all entries in the table
+     * @return an iterator of url hashes
+     * @throws IOException
+     */
+    public CloneableIterator<byte[]> keys() throws IOException {
+        return this.urlIndex.keys(true, null);
+    }
+
     public ArrayList<ZURL.Entry> list(int max) {
         final ArrayList<ZURL.Entry> l = new ArrayList<ZURL.Entry>();
         DigestURI url;
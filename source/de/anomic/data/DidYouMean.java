@@ -2,19 +2,27 @@ package de.anomic.data;
 
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.yacy.cora.ranking.ClusteredScoreMap;
 import net.yacy.cora.ranking.ReversibleScoreMap;
 import net.yacy.document.LibraryProvider;
+import net.yacy.document.SpellingIndex;
 import net.yacy.document.StringBuilderComparator;
+import net.yacy.document.WordCache;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.rwi.IndexCell;
+import net.yacy.kelondro.util.MemoryControl;
 
 
 /**
@@ -29,6 +37,8 @@ import net.yacy.kelondro.rwi.IndexCell;
  * DidYouMean provides producer threads, that feed a blocking queue with word variations according to
  * the above mentioned four categories. Consumer threads check then the generated word variations against a term index.
  * Only words contained in the term index are return by the getSuggestion method.<p/>
+ * If a spelling index for the term index has been computed with updateSpellingIndex(), the suggestions are
+ * taken from the spelling index instead; this needs neither producer and consumer threads nor index IO.<p/>
  * @author apfelmaennchen
  * @author orbiter (extensions for multi-language support)
  */
@@ -58,6 +68,14 @@ public class DidYouMean {
     public    static final int AVAILABLE_CPU = Runtime.getRuntime().availableProcessors();
     private static final wordLengthComparator WORD_LENGTH_COMPARATOR = new wordLengthComparator();
 
+    // the spelling index contains the dictionary words and the learned common words together with their count in the term index
+    private static final int SPELLING_RECOUNT_ROUNDS = 16; // in each update, one of that many parts of the known words is counted again
+    private static final AtomicBoolean spellingIndexUpdate = new AtomicBoolean(false);
+    private static SpellingIndex spellingIndex = null;
+    private static IndexCell<WordReference> spellingIndexSource = null;
+    private static Map<String, Integer> spellingFrequencies = new HashMap<String, Integer>();
+    private static int spellingRound = 0;
+
     private final IndexCell<WordReference> index;
     private final StringBuilder word;
     private final int wordLen;
@@ -129,6 +147,8 @@ public class DidYouMean {
         final long startTime = System.currentTimeMillis();
         final long timelimit = startTime + timeout;
         if (StringBuilderComparator.CASE_INSENSITIVE_ORDER.indexOf(this.word, ' ') > 0) return getSuggestions(StringBuilderComparator.CASE_INSENSITIVE_ORDER.split(this.word, ' '), timeout, preSortSelection, this.index);
+        final SpellingIndex spelling = spellingIndex(this.index);
+        if (spelling != null) return getSuggestions(spelling, preSortSelection, startTime);
         final SortedSet<StringBuilder> preSorted = getSuggestions(timeout);
         if (System.currentTimeMillis() > timelimit) {
             Log.logInfo("DidYouMean", "found and returned " + preSorted.size() + " unsorted suggestions (1); execution time: "
@@ -163,6 +183,96 @@ public class DidYouMean {
         return countSorted;
     }
 
+    /**
+     * get suggestions from the spelling index. The words that are known in the spelling index and start or end with the given word,
+     * and the words that have an edit distance of one to the given word are ordered by their count in the term index
+     * @param spelling the spelling index of the term index
+     * @param preSortSelection the maximum number of suggestions
+     * @param startTime
+     * @return
+     */
+    private SortedSet<StringBuilder> getSuggestions(final SpellingIndex spelling, final int preSortSelection, final long startTime) {
+        final SortedSet<StringBuilder> countSorted = new TreeSet<StringBuilder>(new headMatchingComparator(this.word, new frequencyComparator(spelling)));
+        final int wc = spelling.frequency(this.word.toString()); // all counts must be greater than this
+        for (final String s: spelling.suggest(this.word.toString())) {
+            if (s.length() >= MinimumOutputWordLength && spelling.frequency(s) > wc) countSorted.add(new StringBuilder(s));
+        }
+        for (final StringBuilder s: LibraryProvider.dymLib.recommend(this.word)) {
+            if (s.length() >= MinimumOutputWordLength && spelling.frequency(s.toString()) > wc) countSorted.add(s);
+        }
+        countSorted.remove(this.word);
+        while (countSorted.size() > preSortSelection) countSorted.remove(countSorted.last());
+        Log.logInfo("DidYouMean", "returned " + countSorted.size() + " suggestions from spelling index; execution time: "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        return countSorted;
+    }
+
+    /**
+     * get the spelling index if it was computed for the given term index
+     * @param index
+     * @return the spelling index or null if there is no spelling index for the term index
+     */
+    private static synchronized SpellingIndex spellingIndex(final IndexCell<WordReference> index) {
+        return spellingIndexSource == index ? spellingIndex : null;
+    }
+
+    /**
+     * compute the spelling index for a term index in a background thread. The index contains the words from the
+     * did-you-mean dictionaries and the words that had been learned from indexed texts and queries, each with its count
+     * in the term index. Words which had been counted in a previous update are only counted again in every
+     * SPELLING_RECOUNT_ROUNDS'th update, so an update needs only few index lookups.
+     * Nothing is done if an update is still running.
+     * @param index the term index which is used to count the words
+     */
+    public static void updateSpellingIndex(final IndexCell<WordReference> index) {
+        if (!spellingIndexUpdate.compareAndSet(false, true)) return;
+        final Thread t = new Thread("DidYouMean.updateSpellingIndex") {
+            @Override
+            public void run() {
+                try {
+                    final long start = System.currentTimeMillis();
+                    final Map<String, Integer> known;
+                    final int round;
+                    synchronized (DidYouMean.class) {
+                        known = spellingIndexSource == index ? spellingFrequencies : new HashMap<String, Integer>();
+                        round = spellingRound++;
+                    }
+                    final Set<String> words = new HashSet<String>();
+                    for (final StringBuilder w: LibraryProvider.dymLib.words()) words.add(w.toString());
+                    words.addAll(WordCache.commonWords());
+                    final Map<String, Integer> frequencies = new HashMap<String, Integer>(words.size());
+                    int counted = 0;
+                    final Iterator<String> i = words.iterator();
+                    String w;
+                    Integer f;
+                    while (i.hasNext()) {
+                        w = i.next();
+                        if (w.length() < MinimumOutputWordLength) continue;
+                        f = known.get(w);
+                        if (f == null || (w.hashCode() & Integer.MAX_VALUE) % SPELLING_RECOUNT_ROUNDS == round % SPELLING_RECOUNT_ROUNDS) {
+                            f = index.count(Word.word2hash(w));
+                            counted++;
+                        }
+                        frequencies.put(w, f);
+                    }
+                    if (MemoryControl.shortStatus()) return;
+                    final SpellingIndex spelling = new SpellingIndex(frequencies);
+                    synchronized (DidYouMean.class) {
+                        spellingIndex = spelling;
+                        spellingIndexSource = index;
+                        spellingFrequencies = frequencies;
+                    }
+                    Log.logInfo("DidYouMean", "updated spelling index: " + spelling.size() + " words, " + counted + " words counted, " +
+                            (spelling.mem() / 1024 / 1024) + " MB; time: " + (System.currentTimeMillis() - start) + "ms");
+                } finally {
+                    spellingIndexUpdate.set(false);
+                }
+            }
+        };
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
     /**
      * return a string that is a suggestion list for the list of given words
      * @param words
@@ -385,6 +495,23 @@ public class DidYouMean {
         }
     }
 
+    /**
+     * frequencyComparator is used by DidYouMean to order terms by their count that is stored in the spelling index
+     */
+    private static class frequencyComparator implements Comparator<StringBuilder> {
+        private final SpellingIndex spelling;
+        public frequencyComparator(final SpellingIndex spelling) {
+            this.spelling = spelling;
+        }
+
+        public int compare(final StringBuilder o1, final StringBuilder o2) {
+            final int i1 = this.spelling.frequency(o1.toString());
+            final int i2 = this.spelling.frequency(o2.toString());
+            if (i1 == i2) return WORD_LENGTH_COMPARATOR.compare(o1, o2);
+            return (i1 < i2) ? 1 : -1; // '<' is correct, because the largest count shall be ordered to be the first position in the result
+        }
+    }
+
     /**
      * wordLengthComparator is used by DidYouMean to order terms by the term length
      * This is the default order if the indexSizeComparator is not used
@@ -0,0 +1,472 @@
+/**
+ *  CompiledTemplate
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.anomic.http.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.yacy.cora.document.ASCII;
+import net.yacy.cora.document.UTF8;
+import net.yacy.kelondro.logging.Log;
+import net.yacy.kelondro.util.ByteBuffer;
+import de.anomic.server.serverCore;
+
+/**
+ * A template that has been parsed once into an immutable node tree.
+ * The syntax and the rendering result are the same as with TemplateEngine.writeTemplate
+ * (except where TemplateEngine reads beyond the end of its input and writes a 0xFF byte,
+ * or does not terminate with an unterminated #( tag), but literal text is kept as slices of the source array and the positions of
+ * #[key]#, #{key}#, #(key)# and #%file%# are computed only once when the template is compiled.
+ * Static includes are compiled together with the including template; a compiled template
+ * knows the files it was made of, so a cache can find out with isModified() if it must be compiled again.
+ */
+public final class CompiledTemplate {
+
+    private final static byte[] mClose = ASCII.getBytes("}#");
+    private final static byte[] pClose = ASCII.getBytes("]#");
+    private final static byte[] aClose = ASCII.getBytes(")#");
+    private final static byte[] iClose = ASCII.getBytes("%#");
+    private final static byte[] dpdp   = ASCII.getBytes("::");
+    private final static byte[] PP     = ASCII.getBytes("%%");
+    private final static int maxIncludeDepth = 16;
+
+    // compiled include files, shared by all templates that include them
+    private final static ConcurrentHashMap<File, SoftReference<CompiledTemplate>> includeCache = new ConcurrentHashMap<File, SoftReference<CompiledTemplate>>();
+
+    private final byte[] source;
+    private final int end; // the position of the first zero byte or the length of the source
+    private final Node[] nodes;
+    private final String includeName; // null for the top-level template
+    private final File includeFile;
+    private final long lastModified;
+    private final List<CompiledTemplate> includes; // static includes and by-name sections, checked by isModified()
+
+    private CompiledTemplate(final byte[] source, final String includeName, final File includeFile, final int depth) {
+        this.includeName = includeName;
+        this.includeFile = includeFile;
+        this.lastModified = includeFile == null ? 0 : includeFile.lastModified();
+        this.source = source;
+        this.includes = new CopyOnWriteArrayList<CompiledTemplate>();
+        // the stream-based engine stops reading at the first zero byte
+        int end = 0;
+        while (end < source.length && source[end] != 0) end++;
+        this.end = end;
+        this.nodes = parse(source, 0, end, depth);
+    }
+
+    /**
+     * compile a template
+     * @param source the content of the template file
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(final byte[] source) {
+        return new CompiledTemplate(source, null, null, 0);
+    }
+
+    /**
+     * write the template with replaced patterns to an output stream
+     * @param out
+     * @param pattern the template properties; if null, the template is written unchanged
+     * @param dflt the replacement for missing properties
+     * @throws IOException
+     */
+    public void writeTemplate(final OutputStream out, final Map<String, String> pattern, final byte[] dflt) throws IOException {
+        if (pattern == null) {
+            out.write(this.source);
+        } else {
+            renderNodes(this.nodes, out, pattern, dflt, "");
+        }
+    }
+
+    /**
+     * check if any of the files that were included during compilation has been changed,
+     * or would be taken from another location now (i.e. after a change of the locale).
+     * The file of the top-level template itself must be checked by the caller.
+     * @return true if the template must be compiled again
+     */
+    public boolean isModified() {
+        if (this.includeFile != null) {
+            if (this.includeFile.lastModified() != this.lastModified) return true;
+            if (!this.includeFile.equals(HTTPDFileHandler.getLocalizedFile(this.includeName))) return true;
+        }
+        for (final CompiledTemplate include: this.includes) {
+            if (include.isModified()) return true;
+        }
+        return false;
+    }
+
+    public static void clearCache() {
+        includeCache.clear();
+    }
+
+    private static CompiledTemplate include(final String name, final int depth) {
+        final File file = HTTPDFileHandler.getLocalizedFile(name);
+        final SoftReference<CompiledTemplate> ref = includeCache.get(file);
+        CompiledTemplate template = ref == null ? null : ref.get();
+        if (template != null && !template.isModified()) return template;
+
+        // read the include line by line; line endings are normalized to CRLF
+        final ByteBuffer include = new ByteBuffer();
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = "";
+            while ((line = br.readLine()) != null) {
+                include.append(UTF8.getBytes(line)).append(ASCII.getBytes(serverCore.CRLF_STRING));
+            }
+        } catch (final IOException e) {
+            //file not found?
+            Log.logSevere("FILEHANDLER","Include Error with file " + name + ": " + e.getMessage());
+        } finally {
+            if (br != null) try { br.close(); br = null; } catch (final Exception e) {}
+        }
+        template = new CompiledTemplate(include.getBytes(), name, file, depth);
+        includeCache.put(file, new SoftReference<CompiledTemplate>(template));
+        return template;
+    }
+
+    private static void renderNodes(final Node[] nodes, final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+        for (final Node node: nodes) {
+            if (!node.render(out, pattern, dflt, prefix)) return;
+        }
+    }
+
+    /**
+     * parse the template text within the given boundaries into a list of nodes
+     */
+    private Node[] parse(final byte[] b, final int from, final int to, final int depth) {
+        final List<Node> nodes = new ArrayList<Node>();
+        int literal = from;
+        int p = from;
+        while (p < to) {
+            if (b[p] != '#' || p + 1 >= to) {
+                p++;
+                continue;
+            }
+            final byte c = b[p + 1];
+            if (c != '{' && c != '(' && c != '[' && c != '%') {
+                // a single hash without meaning; the following character is not interpreted
+                p += 2;
+                continue;
+            }
+            if (p > literal) nodes.add(new Literal(b, literal, p - literal));
+            final int keyStart = p + 2;
+
+            if (c == '{') { //multi
+                final int keyEnd = indexOf(b, mClose, keyStart, to);
+                if (keyEnd < 0) return toArray(nodes);
+                final byte[] key = Arrays.copyOfRange(b, keyStart, keyEnd);
+                final int bodyStart = killNewline(b, keyEnd + 2, to);
+                final byte[] close = concat(ASCII.getBytes("#{/"), key, mClose);
+                final int bodyEnd = indexOf(b, close, bodyStart, to);
+                if (bodyEnd < 0) {
+                    Log.logSevere("TEMPLATE", "No Close Key found for #{" + UTF8.String(key) + "}#");
+                    return toArray(nodes);
+                }
+                nodes.add(new Multi(UTF8.String(key), parse(b, bodyStart, bodyEnd, depth)));
+                p = killNewline(b, bodyEnd + close.length, to);
+
+            } else if (c == '(') { //alternative
+                final int keyEnd = indexOf(b, aClose, keyStart, to);
+                if (keyEnd < 0) return toArray(nodes);
+                final byte[] key = Arrays.copyOfRange(b, keyStart, keyEnd);
+                final byte[] close = concat(ASCII.getBytes("/"), key, new byte[0]);
+                final List<Node[]> sections = new ArrayList<Node[]>();
+                final int bodyStart = keyEnd + 2;
+                int sectionStart = bodyStart;
+                int bodyEnd = to;
+                int others = 0;
+                int q = bodyStart;
+                while (q < to) {
+                    if (b[q] == '#' && q + 1 < to && b[q + 1] == '(') {
+                        final int nestedEnd = indexOf(b, aClose, q + 2, to);
+                        if (nestedEnd < 0) {
+                            q = to;
+                            break;
+                        }
+                        if (equals(b, q + 2, nestedEnd, close)) {
+                            bodyEnd = q;
+                            q = nestedEnd + 2;
+                            break;
+                        } else if (others > 0 && b[q + 2] == '/') { //close nested
+                            others--;
+                        } else { //nested
+                            others++;
+                        }
+                        q = nestedEnd + 2;
+                    } else if (b[q] == ':' && others == 0) { //ignore :: in nested expressions
+                        if (q + 1 < to && b[q + 1] == ':') {
+                            sections.add(parse(b, sectionStart, q, depth));
+                            sectionStart = q + 2;
+                        }
+                        q += 2;
+                    } else {
+                        q++;
+                    }
+                }
+                if (q > to) q = to;
+                sections.add(parse(b, sectionStart, bodyEnd, depth));
+                nodes.add(new Alternative(this, UTF8.String(key), sections.toArray(new Node[sections.size()][]), b, bodyStart, bodyEnd, depth));
+                p = q;
+
+            } else if (c == '[') { //normal
+                final int keyEnd = indexOf(b, pClose, keyStart, to);
+                if (keyEnd < 0) {
+                    // inconsistency, simply finalize this; like the stream-based engine, copy the bytes after a zero byte
+                    if (to == this.end && this.end < this.source.length) nodes.add(new Literal(this.source, this.end + 1, this.source.length - this.end - 1));
+                    return toArray(nodes);
+                }
+                nodes.add(new Placeholder(UTF8.String(b, keyStart, keyEnd - keyStart)));
+                p = keyEnd + 2;
+
+            } else { //include
+                final int keyEnd = indexOf(b, iClose, keyStart, to);
+                if (keyEnd < 0) return toArray(nodes);
+                if (keyEnd > keyStart) {
+                    if (b[keyStart] == '[' && b[keyEnd - 1] == ']') {
+                        // simple pattern for filename, resolved when the template is written
+                        nodes.add(new DynamicInclude(UTF8.String(b, keyStart + 1, keyEnd - keyStart - 2), depth));
+                    } else if (depth < maxIncludeDepth) {
+                        final CompiledTemplate include = include(UTF8.String(b, keyStart, keyEnd - keyStart), depth + 1);
+                        this.includes.add(include);
+                        nodes.add(new Include(include));
+                    } else {
+                        Log.logSevere("TEMPLATE", "include depth exceeded for " + UTF8.String(b, keyStart, keyEnd - keyStart));
+                    }
+                }
+                p = keyEnd + 2;
+            }
+            literal = p;
+        }
+        if (to > literal) nodes.add(new Literal(b, literal, to - literal));
+        return toArray(nodes);
+    }
+
+    private static Node[] toArray(final List<Node> nodes) {
+        return nodes.toArray(new Node[nodes.size()]);
+    }
+
+    private static int killNewline(final byte[] b, final int p, final int to) {
+        return (p < to && b[p] == 10) ? p + 1 : p;
+    }
+
+    private static int indexOf(final byte[] b, final byte[] pattern, final int from, final int to) {
+        final int last = to - pattern.length;
+        search: for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (b[i + j] != pattern[j]) continue search;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean equals(final byte[] b, final int from, final int to, final byte[] pattern) {
+        if (to - from != pattern.length) return false;
+        for (int i = 0; i < pattern.length; i++) {
+            if (b[from + i] != pattern[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] concat(final byte[] b1, final byte[] b2, final byte[] b3) {
+        final byte[] b = new byte[b1.length + b2.length + b3.length];
+        System.arraycopy(b1, 0, b, 0, b1.length);
+        System.arraycopy(b2, 0, b, b1.length, b2.length);
+        System.arraycopy(b3, 0, b, b1.length + b2.length, b3.length);
+        return b;
+    }
+
+    private static abstract class Node {
+        /**
+         * write the node
+         * @return false if the remaining nodes on the same level must not be written
+         */
+        abstract boolean render(OutputStream out, Map<String, String> pattern, byte[] dflt, String prefix) throws IOException;
+    }
+
+    private final static class Literal extends Node {
+        private final byte[] b;
+        private final int offset, length;
+        private Literal(final byte[] b, final int offset, final int length) {
+            this.b = b;
+            this.offset = offset;
+            this.length = length;
+        }
+        @Override
+        boolean render(final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+            out.write(this.b, this.offset, this.length);
+            return true;
+        }
+    }
+
+    private final static class Placeholder extends Node {
+        private final String key;
+        private Placeholder(final String key) {
+            this.key = key;
+        }
+        @Override
+        boolean render(final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+            out.write(TemplateEngine.replacePattern(prefix + this.key, pattern, dflt));
+            return true;
+        }
+    }
+
+    private final static class Multi extends Node {
+        private final String key;
+        private final Node[] body;
+        private Multi(final String key, final Node[] body) {
+            this.key = key;
+            this.body = body;
+        }
+        @Override
+        boolean render(final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+            final String patternKey = prefix + this.key;
+            final String value = pattern.get(patternKey);
+            int num = 0;
+            if (value != null) {
+                try {
+                    num = Integer.parseInt(value); // Key contains the iteration number as string
+                } catch (final NumberFormatException e) {
+                    Log.logException(e);
+                    num = 0;
+                }
+            }
+            for (int i = 0; i < num; i++) {
+                renderNodes(this.body, out, pattern, dflt, patternKey + "_" + i + "_");
+            }
+            return true;
+        }
+    }
+
+    private final static class Alternative extends Node {
+        private final CompiledTemplate owner;
+        private final String key;
+        private final Node[][] sections;
+        private final byte[] b;
+        private final int bodyStart, bodyEnd, depth;
+        private final Map<String, Node[]> byName;
+        private Alternative(final CompiledTemplate owner, final String key, final Node[][] sections, final byte[] b, final int bodyStart, final int bodyEnd, final int depth) {
+            this.owner = owner;
+            this.key = key;
+            this.sections = sections;
+            this.b = b;
+            this.bodyStart = bodyStart;
+            this.bodyEnd = bodyEnd;
+            this.depth = depth;
+            this.byName = new ConcurrentHashMap<String, Node[]>();
+        }
+        @Override
+        boolean render(final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+            final String patternKey = prefix + this.key;
+            final String value = pattern.get(patternKey);
+            int which = 0;
+            if (value != null) {
+                try {
+                    which = Integer.parseInt(value); //index
+                } catch (final NumberFormatException e) {
+                    // select the alternative by the name %%value
+                    final Node[] section = section(value);
+                    if (section == null) {
+                        Log.logSevere("TEMPLATE", "No such Template: %%" + value);
+                        return false;
+                    }
+                    renderNodes(section, out, pattern, dflt, patternKey + "_");
+                    return true;
+                }
+            }
+            // a number out of range selects the last alternative
+            final int last = this.sections.length - 1;
+            renderNodes(this.sections[which >= 0 && which < last ? which : last], out, pattern, dflt, patternKey + "_");
+            return true;
+        }
+        private Node[] section(final String name) {
+            Node[] section = this.byName.get(name);
+            if (section != null) return section;
+            final byte[] needle = concat(PP, UTF8.getBytes(name), new byte[0]);
+            final int p = indexOf(this.b, needle, this.bodyStart, this.bodyEnd);
+            if (p < 0) return null;
+            final int start = p + needle.length;
+            int end = indexOf(this.b, dpdp, start, this.bodyEnd);
+            if (end < 0) end = this.bodyEnd;
+            final CompiledTemplate template = new CompiledTemplate(Arrays.copyOfRange(this.b, start, end), null, null, this.depth);
+            this.owner.includes.add(template);
+            section = template.nodes;
+            this.byName.put(name, section);
+            return section;
+        }
+    }
+
+    private final static class Include extends Node {
+        private final CompiledTemplate template;
+        private Include(final CompiledTemplate template) {
+            this.template = template;
+        }
+        @Override
+        boolean render(final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+            renderNodes(this.template.nodes, out, pattern, dflt, prefix);
+            return true;
+        }
+    }
+
+    private final static class DynamicInclude extends Node {
+        private final String key;
+        private final int depth;
+        private DynamicInclude(final String key, final int depth) {
+            this.key = key;
+            this.depth = depth;
+        }
+        @Override
+        boolean render(final OutputStream out, final Map<String, String> pattern, final byte[] dflt, final String prefix) throws IOException {
+            final byte[] filename = TemplateEngine.replacePattern(prefix + this.key, pattern, dflt);
+            if (filename.length > 0 && !Arrays.equals(filename, dflt) && this.depth < maxIncludeDepth) {
+                renderNodes(include(UTF8.String(filename), this.depth + 1).nodes, out, pattern, dflt, prefix);
+            }
+            return true;
+        }
+    }
+
+    public static void main(final String[] args) {
+        // arg1 = test input; arg2 = replacement for pattern 'test'; arg3 = default replacement
+        try {
+            final Map<String, String> h = new HashMap<String, String>();
+            h.put("test", args[1]);
+            compile(UTF8.getBytes(args[0])).writeTemplate(System.out, h, UTF8.getBytes(args[2]));
+            System.out.flush();
+        } catch (final Exception e) {
+            Log.logException(e);
+        }
+    }
+}
@@ -76,6 +76,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -138,6 +139,7 @@ public final class HTTPDFileHandler {
     protected static final class TemplateCacheEntry {
         Date lastModified;
         byte[] content;
+        CompiledTemplate template; // compiled when the file is first used as template
     }
     private static final ConcurrentHashMap<File, SoftReference<TemplateCacheEntry>> templateCache;
     private static final ConcurrentHashMap<File, SoftReference<Method>> templateMethodCache;
@@ -879,6 +881,23 @@ public final class HTTPDFileHandler {
                 //requestHeader.put(httpHeader.CONNECTION_PROP_INPUTSTREAM, body);
                 //requestHeader.put(httpHeader.CONNECTION_PROP_OUTPUTSTREAM, out);
 
+                final Method streamMethod = rewriteStreamMethod(targetClass);
+                if (streamMethod != null) {
+                    // the servlet writes server-sent events directly to the client;
+                    // the end of the stream is signalled by closing the connection
+                    forceConnectionClose(conProp);
+                    HTTPDemon.sendRespondHeader(conProp, out, httpVersion, 200, null, "text/event-stream; charset=UTF-8", -1, new Date(), null, new ResponseHeader(), null, null, true);
+                    if (!method.equals(HeaderFramework.METHOD_HEAD)) {
+                        try {
+                            streamMethod.invoke(null, new Object[] {requestHeader, args, switchboard, out});
+                        } catch (final OutOfMemoryError e) {
+                            Log.logException(e);
+                        }
+                        out.flush();
+                    }
+                    return;
+                }
+
                 HTTPDemon.sendRespondHeader(conProp, out, httpVersion, 200, null);
 
                 // in case that there are no args given, args = null or empty hashmap
@@ -904,7 +923,7 @@ public final class HTTPDFileHandler {
                         path.endsWith("vcf") ||
                         path.endsWith("kml") ||
                         path.endsWith("gpx") ||
-                        path.endsWith("css") ||
+                        (path.endsWith("css") && targetClass != null) ||
                         path.endsWith("/") ||
                         path.equals("/robots.txt")) {
 
@@ -1000,6 +1019,7 @@ public final class HTTPDFileHandler {
 
                     // read the file/template
                     TemplateCacheEntry templateCacheEntry = null;
+                    CompiledTemplate template = null;
                     final long fileSize = targetFile.length();
                     if (useTemplateCache && fileSize <= 512 * 1024) {
                         // read from cache
@@ -1010,7 +1030,8 @@ public final class HTTPDFileHandler {
                         }
 
                         final Date targetFileDate = new Date(targetFile.lastModified());
-                        if (templateCacheEntry == null || targetFileDate.after(templateCacheEntry.lastModified)) {
+                        if (templateCacheEntry == null || targetFileDate.after(templateCacheEntry.lastModified) ||
+                            (templateCacheEntry.template != null && templateCacheEntry.template.isModified())) {
                             // loading the content of the template file into
                             // a byte array
                             templateCacheEntry = new TemplateCacheEntry();
@@ -1019,13 +1040,22 @@ public final class HTTPDFileHandler {
 
                             // storing the content into the cache
                             ref = new SoftReference<TemplateCacheEntry>(templateCacheEntry);
-                            if (MemoryControl.shortStatus()) templateCache.clear();
+                            if (MemoryControl.shortStatus()) {
+                                templateCache.clear();
+                                CompiledTemplate.clearCache();
+                            }
                             templateCache.put(targetFile, ref);
                             if (theLogger.isFinest()) theLogger.logFinest("Cache MISS for file " + targetFile);
                         } else {
                             if (theLogger.isFinest()) theLogger.logFinest("Cache HIT for file " + targetFile);
                         }
 
+                        // the template is parsed only once; later requests only write the compiled nodes
+                        if (templatePatterns != null) {
+                            if (templateCacheEntry.template == null) templateCacheEntry.template = CompiledTemplate.compile(templateCacheEntry.content);
+                            template = templateCacheEntry.template;
+                        }
+
                         // creating an inputstream needed by the template
                         // rewrite function
                         fis = new ByteArrayInputStream(templateCacheEntry.content);
@@ -1066,7 +1096,11 @@ public final class HTTPDFileHandler {
                         // send page in chunks and parse SSIs
                         final ByteBuffer o = new ByteBuffer();
                         // apply templates
-                        TemplateEngine.writeTemplate(fis, o, templatePatterns, UNRESOLVED_PATTERN);
+                        if (template == null) {
+                            TemplateEngine.writeTemplate(fis, o, templatePatterns, UNRESOLVED_PATTERN);
+                        } else {
+                            template.writeTemplate(o, templatePatterns, UNRESOLVED_PATTERN);
+                        }
                         fis.close();
                         HTTPDemon.sendRespondHeader(conProp, out,
                                 httpVersion, 200, null, mimeType, -1,
@@ -1084,7 +1118,11 @@ public final class HTTPDFileHandler {
                         final String contentEncoding = (zipContent) ? "gzip" : null;
                         // apply templates
                         final ByteBuffer o1 = new ByteBuffer();
-                        TemplateEngine.writeTemplate(fis, o1, templatePatterns, ASCII.getBytes("-UNRESOLVED_PATTERN-"));
+                        if (template == null) {
+                            TemplateEngine.writeTemplate(fis, o1, templatePatterns, UNRESOLVED_PATTERN);
+                        } else {
+                            template.writeTemplate(o1, templatePatterns, UNRESOLVED_PATTERN);
+                        }
                         fis.close();
                         final ByteBuffer o = new ByteBuffer();
 
@@ -1116,6 +1154,9 @@ public final class HTTPDFileHandler {
                     }
                 } else { // no html
 
+                    // static style sheets are delivered here, but declared as UTF-8 like the templates
+                    if (path.endsWith("css")) mimeType = mimeType + "; charset=UTF-8";
+
                     int statusCode = 200;
                     int rangeStartOffset = 0;
                     final ResponseHeader header = new ResponseHeader();
@@ -1143,6 +1184,21 @@ public final class HTTPDFileHandler {
                         Log.logException(e);
                     }
 
+                    // without a md5 file the ETAG is computed from the file date and size
+                    final String etag = (targetMD5 == null) ? StaticFileCache.etag(targetFile) : targetMD5;
+                    if (targetMD5 == null) header.put(HeaderFramework.ETAG, etag);
+                    targetDate = new Date(targetFile.lastModified());
+                    // cache file for one month in browser (but most browsers won't cache for that long)
+                    final Date expireDate = new Date(new Date().getTime() + (31l * 24 * 60 * 60 * 1000));
+
+                    // the client already has the current version of the file: answer without opening it
+                    if (!requestHeader.containsKey(HeaderFramework.RANGE) && StaticFileCache.notModified(requestHeader, targetDate.getTime(), etag)) {
+                        header.put(HeaderFramework.LAST_MODIFIED, HeaderFramework.formatRFC1123(targetDate));
+                        header.put(HeaderFramework.EXPIRES, HeaderFramework.formatRFC1123(expireDate));
+                        HTTPDemon.sendRespondHeader(conProp, out, httpVersion, 304, header);
+                        return;
+                    }
+
                     if (requestHeader.containsKey(HeaderFramework.RANGE)) {
                         final Object ifRange = requestHeader.ifRange();
                         if ((ifRange == null)||
@@ -1162,9 +1218,16 @@ public final class HTTPDFileHandler {
                     }
 
                     // write the file to the client
-                    targetDate = new Date(targetFile.lastModified());
-                    // cache file for one month in browser (but most browsers won't cache for that long)
-                    final Date expireDate = new Date(new Date().getTime() + (31l * 24 * 60 * 60 * 1000));
+                    final byte[] gzipped = (zipContent && rangeStartOffset == 0) ? StaticFileCache.gzipped(targetFile) : null;
+                    if (gzipped != null) {
+                        // the compressed variant is cached and has a known length, so no chunked encoding is needed
+                        HTTPDemon.sendRespondHeader(conProp, out, httpVersion, statusCode, null, mimeType, gzipped.length, targetDate, expireDate, header, "gzip", null, nocache);
+                        if (!method.equals(HeaderFramework.METHOD_HEAD)) {
+                            out.write(gzipped);
+                            out.flush();
+                        }
+                        return;
+                    }
                     final long   contentLength    = (zipContent)?-1:targetFile.length()-rangeStartOffset;
                     final String contentEncoding  = (zipContent) ? "gzip" : null;
                     final String transferEncoding = (httpVersion.equals(HeaderFramework.HTTP_VERSION_1_1) && zipContent) ? "chunked" : null;
@@ -1172,7 +1235,12 @@ public final class HTTPDFileHandler {
 
                     HTTPDemon.sendRespondHeader(conProp, out, httpVersion, statusCode, null, mimeType, contentLength, targetDate, expireDate, header, contentEncoding, transferEncoding, nocache);
 
-                    if (!method.equals(HeaderFramework.METHOD_HEAD)) {
+                    final Object channel = conProp.get(HeaderFramework.CONNECTION_PROP_CHANNEL);
+                    if (!method.equals(HeaderFramework.METHOD_HEAD) && contentEncoding == null && channel instanceof WritableByteChannel) {
+                        // plain connection without transformation: let the operating system copy the file into the socket
+                        out.flush();
+                        StaticFileCache.transfer(targetFile, rangeStartOffset, (WritableByteChannel) channel);
+                    } else if (!method.equals(HeaderFramework.METHOD_HEAD)) {
                         ChunkedOutputStream chunkedOut = null;
                         GZIPOutputStream zipped = null;
                         OutputStream newOut = out;
@@ -1375,6 +1443,29 @@ public final class HTTPDFileHandler {
         return m;
     }
 
+    /**
+     * find the method of a servlet that writes its result directly to the client.
+     * These servlets are called with the extension '.stream' and implement
+     * public static void respond(RequestHeader, serverObjects, serverSwitch, OutputStream)
+     * @param classFile
+     * @return the method or null if the servlet does not implement a stream method
+     */
+    private static final Method rewriteStreamMethod(final File classFile) {
+        try {
+            final Class<?> c = provider.loadClass(classFile);
+            final Class<?>[] params = new Class[] {
+                    RequestHeader.class,
+                    serverObjects.class,
+                    serverSwitch.class,
+                    OutputStream.class };
+            return c.getMethod("respond", params);
+        } catch (final ClassNotFoundException e) {
+            return null;
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     private static final Object invokeServlet(final File targetClass, final RequestHeader request, final serverObjects args) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
         try {
             return rewriteMethod(targetClass).invoke(null, new Object[] {request, args, switchboard});
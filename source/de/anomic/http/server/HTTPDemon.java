@@ -650,6 +650,11 @@ public final class HTTPDemon implements serverHandler, Cloneable {
         // setting the client-IP
         p.put(HeaderFramework.CONNECTION_PROP_CLIENTIP, session.userAddress.getHostAddress());
 
+        // the socket channel is used for zero-copy transfers of static files; only sockets of the nio connector have one
+        if (session.controlSocket != null && session.controlSocket.getChannel() != null) {
+            p.put(HeaderFramework.CONNECTION_PROP_CHANNEL, session.controlSocket.getChannel());
+        }
+
         return p;
     }
 
@@ -0,0 +1,146 @@
+/**
+ *  StaticFileCache
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.anomic.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.util.MemoryControl;
+
+/**
+ * Helper for the delivery of static files by the HTTPDFileHandler:
+ * validators for conditional requests that are computed from the file attributes only,
+ * a cache of gzip-compressed variants keyed by file and modification date,
+ * and the zero-copy transfer of a file into a socket channel.
+ */
+public final class StaticFileCache {
+
+    /**
+     * files larger than this are compressed on the fly and not cached
+     */
+    public final static int maxGzipFileSize = 1024 * 1024;
+
+    private final static class GzipEntry {
+        private final long lastModified, length;
+        private final byte[] content;
+        private GzipEntry(final long lastModified, final long length, final byte[] content) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.content = content;
+        }
+    }
+
+    private final static ConcurrentHashMap<File, SoftReference<GzipEntry>> gzipCache = new ConcurrentHashMap<File, SoftReference<GzipEntry>>();
+
+    /**
+     * compute an entity tag from the modification date and the size of a file;
+     * this does not open the file
+     * @param file
+     * @return a quoted entity tag
+     */
+    public static String etag(final File file) {
+        return "\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
+    }
+
+    /**
+     * check the conditional headers of a request: If-None-Match has precedence over If-Modified-Since
+     * @param requestHeader
+     * @param lastModified the modification date of the requested file
+     * @param etag the entity tag of the requested file
+     * @return true if the client has a valid copy and a 304 can be sent
+     */
+    public static boolean notModified(final RequestHeader requestHeader, final long lastModified, final String etag) {
+        final String ifNoneMatch = requestHeader.get(RequestHeader.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (etag == null) return false;
+            for (String tag: ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+        final Date ifModifiedSince = requestHeader.ifModifiedSince();
+        // http dates have a resolution of one second
+        return ifModifiedSince != null && lastModified / 1000 <= ifModifiedSince.getTime() / 1000;
+    }
+
+    /**
+     * get the gzip-compressed content of a file. The compressed content is cached until the file changes.
+     * @param file
+     * @return the compressed content or null if the file is too large to be cached
+     * @throws IOException
+     */
+    public static byte[] gzipped(final File file) throws IOException {
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+        if (length > maxGzipFileSize) return null;
+        final SoftReference<GzipEntry> ref = gzipCache.get(file);
+        GzipEntry entry = ref == null ? null : ref.get();
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) return entry.content;
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream((int) length / 3 + 64);
+        final GZIPOutputStream zipped = new GZIPOutputStream(bos);
+        zipped.write(FileUtils.read(file));
+        zipped.finish();
+        zipped.close();
+        entry = new GzipEntry(lastModified, length, bos.toByteArray());
+        if (MemoryControl.shortStatus()) gzipCache.clear();
+        gzipCache.put(file, new SoftReference<GzipEntry>(entry));
+        return entry.content;
+    }
+
+    /**
+     * write a file into a channel with FileChannel.transferTo, which lets the operating system
+     * copy the data without passing it through user space
+     * @param file
+     * @param start the offset of the first byte to write
+     * @param out a blocking channel
+     * @return the number of written bytes
+     * @throws IOException
+     */
+    public static long transfer(final File file, final long start, final WritableByteChannel out) throws IOException {
+        final FileInputStream fis = new FileInputStream(file);
+        try {
+            final FileChannel fc = fis.getChannel();
+            final long size = fc.size();
+            long position = start;
+            while (position < size) {
+                position += fc.transferTo(position, size - position, out);
+            }
+            return position - start;
+        } finally {
+            fis.close();
+        }
+    }
+}
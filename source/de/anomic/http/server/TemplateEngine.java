@@ -430,7 +430,7 @@ public final class TemplateEngine {
         return structure.getBytes();
     }
 
-    private final static byte[] replacePattern(final String key, final Map<String, String> pattern, final byte dflt[]) {
+    final static byte[] replacePattern(final String key, final Map<String, String> pattern, final byte dflt[]) {
         byte[] replacement;
         Object value;
         if (pattern.containsKey(key)) {
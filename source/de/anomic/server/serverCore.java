@@ -43,6 +43,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedSelectorException;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
@@ -129,6 +130,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
     protected Log log;
     private SSLSocketFactory sslSocketFactory = null;
     private ServerSocket socket;           // listener
+    private serverSelector selector;       // listener if the nio connector is used
     private final int timeout;             // connection time-out of the socket
     serverHandler handlerPrototype;        // the command class (a serverHandler)
 
@@ -210,12 +212,33 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
         return this.sslSocketFactory != null;
     }
 
+    boolean isDenied(final String clientIP) {
+        return this.denyHost != null && this.denyHost.get(clientIP) != null;
+    }
+
     public synchronized void init() {
         this.log.logInfo("Initializing serverCore ...");
 
         // read some config values
         this.extendedPort = this.switchboard.getConfig("port", "8090").trim();
         this.bindPort = this.switchboard.getConfig("bindPort", "").trim();
+        final String port = (this.bindPort == null || this.bindPort.equals("")) ? this.extendedPort : this.bindPort;
+
+        // the selector based connector; falls back to the blocking connector for SSL
+        if (this.switchboard.getConfig("httpdConnector", "blocking").equals("nio")) {
+            if (this.sslSocketFactory != null) {
+                this.log.logWarning("the nio connector does not support SSL, using the blocking connector");
+            } else try {
+                this.log.logInfo("Trying to bind nio connector to port " + port);
+                this.selector = new serverSelector(this, generateSocketAddress(port), this.timeout, this.maxBusySessions, this.commandMaxLength + 32 * 1024);
+                return;
+            } catch (final Exception e) {
+                final String errorMsg = "FATAL ERROR: " + e.getMessage() + " - probably root access rights needed. check port number";
+                this.log.logSevere(errorMsg);
+                System.out.println(errorMsg);
+                System.exit(0);
+            }
+        }
 
         // Open a new server-socket channel
         try {
@@ -308,6 +331,23 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
 
     // class body
     public boolean job() throws Exception {
+        if (this.selector != null) {
+            try {
+                this.switchboard.handleBusyState(getJobCount());
+                announceThreadBlockApply();
+                this.selector.select();
+                announceThreadBlockRelease();
+                return true;
+            } catch (final ClosedSelectorException e) {
+                if (this.forceRestart) {
+                    // reinitialize serverCore
+                    init();
+                    this.forceRestart = false;
+                    return true;
+                }
+                throw e;
+            }
+        }
         try {
             // prepare for new connection
             // idleThreadCheck();
@@ -426,7 +466,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
         // close the serverchannel and socket
         try {
             this.log.logInfo("Closing server socket ...");
-            this.socket.close();
+            if (this.selector != null) this.selector.close(); else this.socket.close();
         } catch (final Exception e) {
             this.log.logWarning("Unable to close the server socket.");
         }
@@ -453,6 +493,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
             }
             l.add((Session) t);
         }
+        if (this.selector != null) l.addAll(this.selector.sessions());
         return l;
     }
 
@@ -468,12 +509,14 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
             }
             c++;
         }
+        if (this.selector != null) c += this.selector.sessionCount();
         return c;
     }
 
     // idle sensor: the thread is idle if there are no sessions running
     public boolean idle() {
         // idleThreadCheck();
+        if (this.selector != null && this.selector.sessionCount() > 0) return false;
         final Thread[] threadList = new Thread[sessionThreadGroup.activeCount()];
         serverCore.sessionThreadGroup.enumerate(threadList, false);
         for (final Thread t: threadList) {
@@ -494,6 +537,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
 
     public void setMaxSessionCount(final int count) {
         this.maxBusySessions = count;
+        if (this.selector != null) this.selector.setMaxWorkers(count);
     }
 
     public final class Session extends Thread {
@@ -501,6 +545,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
         //boolean destroyed = false;
         private boolean runningsession = false;
         private boolean stopped = false;
+        private boolean resume = false;    // true if the last request allows to keep the connection alive
 
         private long start;                // startup time
         private serverHandler commandObj;
@@ -527,6 +572,22 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
             sessionCounter++;
         }
 
+        /**
+         * create a session that is not started as thread; its requests are processed
+         * by the workers of the serverSelector, see serve()
+         */
+        Session(final Socket controlSocket, final int socketTimeout) {
+            super("Session_" + controlSocket.getInetAddress().getHostAddress() + ":" + controlSocket.getPort());
+            this.socketTimeout = socketTimeout;
+            this.controlSocket = controlSocket;
+            this.hashIndex = sessionCounter;
+            sessionCounter++;
+            this.identity = "-";
+            this.userAddress = controlSocket.getInetAddress();
+            this.userPort = controlSocket.getPort();
+            this.commandCounter = 0;
+        }
+
         public int hashCode() {
             // return a hash code so it is possible to store objects of httpc objects in a HashSet
             return this.hashIndex;
@@ -654,31 +715,56 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
             } catch (final Exception e) {
                 Log.logException(e);
             } finally {
-                try {
-                    if ((this.controlSocket != null) && (! this.controlSocket.isClosed())) {
-                        // flush data
-                        this.out.flush();
+                closeConnection();
+            }
 
-                        // maybe this doesn't work for all SSL socket implementations
-                        if (!(this.controlSocket instanceof SSLSocket)) {
-                            this.controlSocket.shutdownInput();
-                            this.controlSocket.shutdownOutput();
-                        }
+        }
 
-                        // close streams
-                        this.in.close();
-                        this.out.close();
+        /**
+         * process the next request from the given stream in the current thread.
+         * This is used by the serverSelector, which reads the request header without blocking
+         * and hands the connection to a worker when the header is complete.
+         * @param in the buffered request header, followed by the socket input stream
+         * @return true if the connection can be kept alive for another request
+         * @throws IOException
+         */
+        boolean serve(final PushbackInputStream in) throws IOException {
+            if (this.out == null) this.out = this.controlSocket.getOutputStream();
+            this.in = in;
+            this.start = System.currentTimeMillis();
+            this.runningsession = true;
+            try {
+                listen();
+            } finally {
+                this.runningsession = false;
+            }
+            return this.resume && this.controlSocket != null && !this.controlSocket.isClosed();
+        }
 
-                        // close everything
-                        this.controlSocket.close();
+        void closeConnection() {
+            try {
+                if ((this.controlSocket != null) && (! this.controlSocket.isClosed())) {
+                    // flush data
+                    if (this.out != null) this.out.flush();
+
+                    // maybe this doesn't work for all SSL socket implementations
+                    if (!(this.controlSocket instanceof SSLSocket)) {
+                        this.controlSocket.shutdownInput();
+                        this.controlSocket.shutdownOutput();
                     }
-                } catch (final IOException e) {
-                    Log.logException(e);
-                } finally {
-                    this.controlSocket = null;
+
+                    // close streams
+                    if (this.in != null) this.in.close();
+                    if (this.out != null) this.out.close();
+
+                    // close everything
+                    this.controlSocket.close();
                 }
+            } catch (final IOException e) {
+                Log.logException(e);
+            } finally {
+                this.controlSocket = null;
             }
-
         }
 
         private void listen() {
@@ -692,6 +778,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
                 Object[] parameter;
                 Method commandMethod;
                 final long situationDependentKeepAliveTimeout = keepAliveTimeout;
+                this.resume = false;
                 while (this.in != null &&
                        this.controlSocket != null &&
                        this.controlSocket.isConnected() &&
@@ -775,6 +862,7 @@ public final class serverCore extends AbstractBusyThread implements BusyThread {
                         if (result != null) {
                             if (result instanceof Boolean) {
                                 if (((Boolean) result).equals(TERMINATE_CONNECTION)) break;
+                                this.resume = true;
 
                                 /*
                                  * setting timeout to a very high level.
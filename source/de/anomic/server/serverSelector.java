@@ -0,0 +1,412 @@
+/**
+ *  serverSelector
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.anomic.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.yacy.cora.document.ASCII;
+import net.yacy.kelondro.logging.Log;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * A connector for the serverCore that is based on a java.nio selector.
+ * One thread accepts the connections and reads the request headers without blocking.
+ * When the header of a request is complete, the connection is handed over to a bounded
+ * pool of workers which drive the usual serverCore.Session and HTTPDemon handlers with the
+ * buffered header bytes followed by the socket stream.
+ * Connections that shall be kept alive return to the selector after the request and wait
+ * there for the next request; they do not occupy any thread or read buffer while they are idle.
+ * SSL connections are not supported by this connector.
+ */
+public final class serverSelector {
+
+    private final static int headBufferSize = 8 * 1024;   // size of the pooled header buffers
+    private final static int maxPooledBuffers = 64;
+    private final static long keepAliveTimeout = 60000;
+    private final static byte[] BUSY = ASCII.getBytes("HTTP/1.0 503 Service Unavailable\r\nRetry-After: 5\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+    private final static byte[] TOO_LARGE = ASCII.getBytes("HTTP/1.0 413 Request Entity Too Large\r\nContent-Length: 0\r\nConnection: close\r\n\r\n");
+
+    private final serverCore core;
+    private final Log log;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ThreadPoolExecutor workers;
+    private final int timeout;
+    private final int maxHeadLength;
+    private final Queue<ByteBuffer> bufferPool;                  // used only by the selector thread
+    private final Queue<Connection> resumed;                     // connections that return from a worker
+    private final ConcurrentHashMap<serverCore.Session, Connection> active; // sessions that are currently served
+    private long lastIdleCheck;
+
+    /**
+     * state of a connection while it is registered at the selector
+     */
+    private final static class Connection {
+        private final SocketChannel channel;
+        private final String clientIP;
+        private serverCore.Session session; // created with the first request
+        private ByteBuffer head;            // header bytes read so far, null while idle
+        private int lineEnds;               // number of consecutive line ends at the end of head
+        private long lastActivity;
+
+        private Connection(final SocketChannel channel, final String clientIP) {
+            this.channel = channel;
+            this.clientIP = clientIP;
+            this.session = null;
+            this.head = null;
+            this.lineEnds = 0;
+            this.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * open the server channel and start the worker pool
+     * @param core the server that owns the sessions
+     * @param address the address to bind to
+     * @param timeout the socket timeout in milliseconds
+     * @param maxWorkers the maximum number of requests that are processed at the same time
+     * @param maxHeadLength the maximum length of a request header
+     * @throws IOException if the address cannot be bound
+     */
+    public serverSelector(final serverCore core, final InetSocketAddress address, final int timeout, final int maxWorkers, final int maxHeadLength) throws IOException {
+        this.core = core;
+        this.log = core.log;
+        this.timeout = timeout;
+        this.maxHeadLength = maxHeadLength;
+        this.bufferPool = new ArrayDeque<ByteBuffer>();
+        this.resumed = new ConcurrentLinkedQueue<Connection>();
+        this.active = new ConcurrentHashMap<serverCore.Session, Connection>();
+        this.lastIdleCheck = System.currentTimeMillis();
+        this.workers = new ThreadPoolExecutor(
+                maxWorkers, maxWorkers,
+                10, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxWorkers * 4),
+                new NamePrefixThreadFactory("serverSelector.worker"));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.socket().setReuseAddress(true);
+        this.server.socket().bind(address);
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * one turn of the selector loop: accept new connections, read request headers,
+     * dispatch complete requests to the workers and close idle connections.
+     * This blocks at most one second.
+     * @throws IOException
+     * @throws ClosedSelectorException if the connector has been closed
+     */
+    public void select() throws IOException {
+        if (!this.server.isOpen()) {
+            shutdown();
+            throw new ClosedSelectorException();
+        }
+
+        // register connections that the workers returned for keep-alive
+        Connection c;
+        while ((c = this.resumed.poll()) != null) {
+            try {
+                c.channel.configureBlocking(false);
+                c.channel.register(this.selector, SelectionKey.OP_READ, c);
+            } catch (final IOException e) {
+                close(c);
+            }
+        }
+
+        this.selector.select(1000);
+        if (!this.server.isOpen()) {
+            shutdown();
+            throw new ClosedSelectorException();
+        }
+        final List<Connection> complete = new ArrayList<Connection>();
+        final Iterator<SelectionKey> i = this.selector.selectedKeys().iterator();
+        SelectionKey key;
+        while (i.hasNext()) {
+            key = i.next();
+            i.remove();
+            if (!key.isValid()) continue;
+            if (key.isAcceptable()) {
+                accept();
+            } else if (key.isReadable()) {
+                c = (Connection) key.attachment();
+                if (read(c)) {
+                    key.cancel();
+                    complete.add(c);
+                } else if (!c.channel.isOpen()) {
+                    key.cancel();
+                }
+            }
+        }
+
+        if (!complete.isEmpty()) {
+            // a channel can only be switched to blocking mode after its cancelled key has been
+            // removed from the selector, which is done during the next selection
+            this.selector.selectNow();
+            for (final Connection connection: complete) dispatch(connection);
+        }
+
+        final long now = System.currentTimeMillis();
+        if (now - this.lastIdleCheck > 1000) {
+            this.lastIdleCheck = now;
+            closeIdle(now);
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = this.server.accept();
+        if (channel == null) return;
+        final Socket socket = channel.socket();
+        final String clientIP = serverCore.clientAddress(socket);
+        if (this.core.isDenied(clientIP)) {
+            this.log.logWarning("ACCESS FROM " + clientIP + " DENIED");
+            channel.close();
+            return;
+        }
+        // the same socket settings as for the blocking connector
+        socket.setSoTimeout(this.timeout);
+        socket.setKeepAlive(false);
+        socket.setSoLinger(false, this.timeout);
+        channel.configureBlocking(false);
+        channel.register(this.selector, SelectionKey.OP_READ, new Connection(channel, clientIP));
+    }
+
+    /**
+     * read available bytes of a request header
+     * @return true if the header is complete
+     */
+    private boolean read(final Connection c) {
+        if (c.head == null) {
+            c.head = this.bufferPool.poll();
+            if (c.head == null) c.head = ByteBuffer.allocate(headBufferSize);
+        }
+        try {
+            if (!c.head.hasRemaining()) {
+                if (c.head.capacity() >= this.maxHeadLength) {
+                    this.log.logWarning("request header from " + c.clientIP + " exceeds " + this.maxHeadLength + " bytes, closing connection");
+                    c.channel.write(ByteBuffer.wrap(TOO_LARGE));
+                    close(c);
+                    return false;
+                }
+                // grow the buffer; the larger buffer is not pooled
+                final ByteBuffer larger = ByteBuffer.allocate(Math.min(this.maxHeadLength, c.head.capacity() * 2));
+                c.head.flip();
+                larger.put(c.head);
+                recycle(c.head);
+                c.head = larger;
+            }
+            final int start = c.head.position();
+            final int n = c.channel.read(c.head);
+            if (n < 0) {
+                close(c);
+                return false;
+            }
+            c.lastActivity = System.currentTimeMillis();
+
+            // look for the empty line that terminates the header; a single LF is accepted as line end, too
+            final byte[] b = c.head.array();
+            final int end = c.head.position();
+            for (int p = start; p < end; p++) {
+                if (b[p] == serverCore.LF) {
+                    if (++c.lineEnds == 2) return true;
+                } else if (b[p] != serverCore.CR) {
+                    c.lineEnds = 0;
+                }
+            }
+            return false;
+        } catch (final IOException e) {
+            close(c);
+            return false;
+        }
+    }
+
+    /**
+     * hand a connection with a complete request header over to the workers
+     */
+    private void dispatch(final Connection c) {
+        final byte[] head = new byte[c.head.position()];
+        c.head.flip();
+        c.head.get(head);
+        recycle(c.head);
+        c.head = null;
+        c.lineEnds = 0;
+        try {
+            c.channel.configureBlocking(true);
+            this.workers.execute(new Worker(c, head));
+        } catch (final RejectedExecutionException e) {
+            this.log.logWarning("all " + this.workers.getMaximumPoolSize() + " workers busy, refusing request from " + c.clientIP);
+            try {
+                c.channel.write(ByteBuffer.wrap(BUSY));
+            } catch (final IOException ee) {}
+            close(c);
+        } catch (final IOException e) {
+            close(c);
+        }
+    }
+
+    private void recycle(final ByteBuffer buffer) {
+        if (buffer.capacity() != headBufferSize || this.bufferPool.size() >= maxPooledBuffers) return;
+        buffer.clear();
+        this.bufferPool.add(buffer);
+    }
+
+    private void closeIdle(final long now) {
+        for (final SelectionKey key: this.selector.keys()) {
+            if (!(key.attachment() instanceof Connection)) continue;
+            final Connection c = (Connection) key.attachment();
+            // connections that never sent a request get the socket timeout, persistent connections the keep-alive timeout
+            final long limit = (c.session == null || c.head != null) ? this.timeout : keepAliveTimeout;
+            if (now - c.lastActivity > limit) {
+                key.cancel();
+                close(c);
+            }
+        }
+    }
+
+    private void close(final Connection c) {
+        if (c.head != null) {
+            recycle(c.head);
+            c.head = null;
+        }
+        try {
+            c.channel.close();
+        } catch (final IOException e) {}
+    }
+
+    private final class Worker implements Runnable {
+        private final Connection c;
+        private final byte[] head;
+        private Worker(final Connection c, final byte[] head) {
+            this.c = c;
+            this.head = head;
+        }
+        public void run() {
+            final Socket socket = this.c.channel.socket();
+            if (this.c.session == null) this.c.session = serverSelector.this.core.new Session(socket, serverSelector.this.timeout);
+            final serverCore.Session session = this.c.session;
+            serverSelector.this.active.put(session, this.c);
+            boolean keepAlive = false;
+            try {
+                // the header has already been read by the selector; the body follows on the socket
+                final PushbackInputStream in = new PushbackInputStream(new SequenceInputStream(new ByteArrayInputStream(this.head), socket.getInputStream()));
+                do {
+                    keepAlive = session.serve(in);
+                } while (keepAlive && in.available() > 0); // pipelined requests
+            } catch (final IOException e) {
+                keepAlive = false;
+            } catch (final Exception e) {
+                Log.logException(e);
+                keepAlive = false;
+            } finally {
+                serverSelector.this.active.remove(session);
+            }
+            if (keepAlive && serverSelector.this.server.isOpen()) {
+                this.c.lastActivity = System.currentTimeMillis();
+                serverSelector.this.resumed.add(this.c);
+                serverSelector.this.selector.wakeup();
+            } else {
+                session.closeConnection();
+            }
+        }
+    }
+
+    /**
+     * @return the sessions that are currently processing a request
+     */
+    public Collection<serverCore.Session> sessions() {
+        return this.active.keySet();
+    }
+
+    public int sessionCount() {
+        return this.active.size();
+    }
+
+    /**
+     * @return the number of connections which are waiting at the selector, including idle persistent connections
+     */
+    public int connectionCount() {
+        return Math.max(0, this.selector.keys().size() - 1);
+    }
+
+    public void setMaxWorkers(final int maxWorkers) {
+        if (maxWorkers > this.workers.getMaximumPoolSize()) {
+            this.workers.setMaximumPoolSize(maxWorkers);
+            this.workers.setCorePoolSize(maxWorkers);
+        } else {
+            this.workers.setCorePoolSize(maxWorkers);
+            this.workers.setMaximumPoolSize(maxWorkers);
+        }
+    }
+
+    /**
+     * close the server channel and stop the workers; the connections that wait at the selector
+     * are closed by the selector thread, which then leaves select() with a ClosedSelectorException
+     */
+    public void close() {
+        try {
+            this.server.close();
+        } catch (final IOException e) {
+            this.log.logWarning("Unable to close the server channel.");
+        }
+        this.selector.wakeup();
+        this.workers.shutdownNow();
+        for (final serverCore.Session session: this.active.keySet()) session.close();
+    }
+
+    private void shutdown() {
+        for (final SelectionKey key: this.selector.keys()) {
+            if (key.attachment() instanceof Connection) close((Connection) key.attachment());
+        }
+        try {
+            this.selector.close();
+        } catch (final IOException e) {}
+    }
+
+    public boolean isOpen() {
+        return this.server.isOpen();
+    }
+}
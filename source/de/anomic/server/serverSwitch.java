@@ -445,7 +445,7 @@ public class serverSwitch {
         
         for (final Session s: ((serverCore) st).getJobList()) {
             if (
-                (s.isAlive()) &&
+                (s.isAlive() || s.isRunning()) &&
                 (s.getName().equals(sessionName))
             ) {
                 // try to stop session
@@ -457,7 +457,7 @@ public class serverSwitch {
                 try { Thread.sleep(100); } catch (final InterruptedException ex) {}
                 
                 // try to close socket
-                if (s.isAlive()) {
+                if (s.isAlive() || s.isRunning()) {
                     s.close();
                 }
                 
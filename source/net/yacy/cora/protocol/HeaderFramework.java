@@ -198,6 +198,7 @@ public class HeaderFramework extends TreeMap<String, String> implements Map<Stri
     public static final String CONNECTION_PROP_URL = "URL";
     public static final String CONNECTION_PROP_ARGS = "ARGS";
     public static final String CONNECTION_PROP_CLIENTIP = "CLIENTIP";
+    public static final String CONNECTION_PROP_CHANNEL = "CHANNEL"; // the socket channel, if the connection has one
     public static final String CONNECTION_PROP_PERSISTENT = "PERSISTENT";
     public static final String CONNECTION_PROP_KEEP_ALIVE_COUNT = "KEEP-ALIVE_COUNT";
     public static final String CONNECTION_PROP_REQUESTLINE = "REQUESTLINE";
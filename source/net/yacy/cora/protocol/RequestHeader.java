@@ -49,6 +49,7 @@ public class RequestHeader extends HeaderFramework {
     public static final String COOKIE = "Cookie";
 
     public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String IF_NONE_MATCH = "If-None-Match";
     public static final String IF_RANGE = "If-Range";
     public static final String REFERER = "Referer";
 
@@ -127,6 +127,15 @@ public class WeakPriorityBlockingQueue<E> {
         assert this.queue.size() >= this.enqueued.availablePermits() : "(put) queue.size() = " + this.queue.size() + ", enqueued.availablePermits() = " + this.enqueued.availablePermits();
     }
     
+    /**
+     * if the stack is full, return the element that would be removed by the next put
+     * @return the last element if the stack has reached its maximum size, null otherwise
+     */
+    public synchronized Element<E> evictionCandidate() {
+        if (this.maxsize < 0 || this.queue.size() < this.maxsize) return null;
+        return this.queue.last();
+    }
+
     /**
      * return the element with the smallest weight and remove it from the stack
      * @return null if no element is on the queue or the head of the queue
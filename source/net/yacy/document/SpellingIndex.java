@@ -0,0 +1,217 @@
+/**
+ *  SpellingIndex
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * a spelling index finds all words of a word list that have an edit distance of one to a given word.
+ * The index uses the symmetric delete method: for each word the word itself and all variants with one
+ * deleted character are stored. Two words have the distance one (changing, adding or deleting one letter
+ * or reversing two consecutive letters) only if they share such a variant. The variants are stored as
+ * hashes together with the number of their word in one sorted long array; candidates are verified with
+ * the edit distance, so hash collisions do not produce wrong results.
+ * Each word has a frequency which is used to rank the suggestions. The index is immutable and
+ * needs no IO to find suggestions.
+ */
+public final class SpellingIndex {
+
+    private static final int idBits = 24;
+    private static final long idMask = (1L << idBits) - 1;
+    public  static final int maxWords = (int) idMask;
+
+    private final String[] words;     // all words in natural order
+    private final int[] frequency;    // the frequency of each word
+    private final long[] variants;    // sorted; (variant hash << idBits) | number of the word
+
+    /**
+     * create a spelling index
+     * @param wordFrequencies a mapping from words in lower case to their frequency; words with a frequency of zero are omitted
+     */
+    public SpellingIndex(final Map<String, Integer> wordFrequencies) {
+        final List<String> w = new ArrayList<String>(wordFrequencies.size());
+        for (final Map.Entry<String, Integer> entry: wordFrequencies.entrySet()) {
+            if (entry.getValue().intValue() > 0) w.add(entry.getKey());
+            if (w.size() >= maxWords) break;
+        }
+        Collections.sort(w);
+        this.words = w.toArray(new String[w.size()]);
+        this.frequency = new int[this.words.length];
+        int count = 0;
+        for (int i = 0; i < this.words.length; i++) {
+            this.frequency[i] = wordFrequencies.get(this.words[i]).intValue();
+            count += this.words[i].length() + 1;
+        }
+
+        // compute the variants of all words
+        long[] v = new long[count];
+        int p = 0;
+        for (int i = 0; i < this.words.length; i++) {
+            final String word = this.words[i];
+            v[p++] = (hash(word, -1) << idBits) | i;
+            for (int d = 0; d < word.length(); d++) {
+                // a double letter produces the same variant twice; it is stored only once
+                if (d > 0 && word.charAt(d) == word.charAt(d - 1)) continue;
+                v[p++] = (hash(word, d) << idBits) | i;
+            }
+        }
+        if (p < v.length) v = Arrays.copyOf(v, p);
+        Arrays.sort(v);
+        this.variants = v;
+    }
+
+    /**
+     * the number of words in the index
+     * @return the number of words
+     */
+    public int size() {
+        return this.words.length;
+    }
+
+    /**
+     * the memory that is used by the index
+     * @return the number of bytes of the arrays of the index
+     */
+    public long mem() {
+        long m = 8L * this.variants.length + 4L * this.frequency.length;
+        for (final String w: this.words) m += 40 + 2 * w.length();
+        return m;
+    }
+
+    /**
+     * get the frequency of a word
+     * @param word
+     * @return the frequency or zero if the word is not in the index
+     */
+    public int frequency(final String word) {
+        final int i = Arrays.binarySearch(this.words, word.toLowerCase(Locale.ENGLISH));
+        return i < 0 ? 0 : this.frequency[i];
+    }
+
+    /**
+     * find all words that have an edit distance of one to a given word
+     * @param word the given word
+     * @return the words of the index with an edit distance of one, the word itself is not included
+     */
+    public List<String> suggest(final String word) {
+        final String s = word.toLowerCase(Locale.ENGLISH);
+        final List<String> result = new ArrayList<String>();
+        collect(hash(s, -1), s, result);
+        for (int d = 0; d < s.length(); d++) {
+            if (d > 0 && s.charAt(d) == s.charAt(d - 1)) continue;
+            collect(hash(s, d), s, result);
+        }
+        return result;
+    }
+
+    private void collect(final long h, final String s, final List<String> result) {
+        final long first = h << idBits;
+        int p = Arrays.binarySearch(this.variants, first);
+        if (p < 0) p = -p - 1;
+        while (p < this.variants.length && (this.variants[p] & ~idMask) == first) {
+            final String candidate = this.words[(int) (this.variants[p] & idMask)];
+            if (!result.contains(candidate) && oneEdit(s, candidate)) result.add(candidate);
+            p++;
+        }
+    }
+
+    /**
+     * a 40-bit hash of a word where one character may be deleted
+     * @param word
+     * @param deleted the position of the deleted character or -1 if no character is deleted
+     * @return a hash value in the range 0 .. 2^40-1
+     */
+    private static long hash(final String word, final int deleted) {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < word.length(); i++) {
+            if (i == deleted) continue;
+            h ^= word.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h >>> (64 - 40);
+    }
+
+    /**
+     * test if two words differ by one changed, added or deleted letter or by two reversed consecutive letters
+     * @param a
+     * @param b
+     * @return true if the edit distance is exactly one
+     */
+    private static boolean oneEdit(final String a, final String b) {
+        final int la = a.length(), lb = b.length();
+        if (Math.abs(la - lb) > 1) return false;
+        int i = 0;
+        while (i < la && i < lb && a.charAt(i) == b.charAt(i)) i++;
+        if (la == lb) {
+            if (i == la) return false; // same word
+            // changed letter or reversed letters
+            if (a.substring(i + 1).equals(b.substring(i + 1))) return true;
+            return i + 1 < la && a.charAt(i) == b.charAt(i + 1) && a.charAt(i + 1) == b.charAt(i) && a.substring(i + 2).equals(b.substring(i + 2));
+        }
+        // added or deleted letter
+        return la < lb ? a.substring(i).equals(b.substring(i + 1)) : a.substring(i + 1).equals(b.substring(i));
+    }
+
+    /**
+     * a micro benchmark for the index: create an index of random words and look up
+     * misspelled variants of these words
+     * @param args the number of words and the number of lookups
+     */
+    public static void main(final String[] args) {
+        final int count = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        final int tests = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        final Random r = new Random(0);
+        final Map<String, Integer> words = new HashMap<String, Integer>();
+        final StringBuilder sb = new StringBuilder();
+        while (words.size() < count) {
+            sb.setLength(0);
+            final int length = 4 + r.nextInt(9);
+            for (int i = 0; i < length; i++) sb.append((char) ('a' + r.nextInt(26)));
+            words.put(sb.toString(), Integer.valueOf(1 + r.nextInt(1000)));
+        }
+        long t = System.currentTimeMillis();
+        final SpellingIndex index = new SpellingIndex(words);
+        System.out.println("indexed " + index.size() + " words in " + (System.currentTimeMillis() - t) + " milliseconds, " + (index.mem() / 1024 / 1024) + " MB");
+
+        // misspelled words: one letter of a known word is changed
+        final String[] w = words.keySet().toArray(new String[words.size()]);
+        final String[] misspelled = new String[10000];
+        for (int i = 0; i < misspelled.length; i++) {
+            final char[] c = w[r.nextInt(w.length)].toCharArray();
+            c[r.nextInt(c.length)] = (char) ('a' + r.nextInt(26));
+            misspelled[i] = new String(c);
+        }
+        int found = 0;
+        t = System.nanoTime();
+        for (int i = 0; i < tests; i++) found += index.suggest(misspelled[i % misspelled.length]).size();
+        t = System.nanoTime() - t;
+        System.out.println("looked up " + tests + " words, " + found + " suggestions, " + (t / tests / 1000) + " microseconds per word");
+    }
+
+}
@@ -26,8 +26,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -82,6 +84,19 @@ public class WordCache {
         }
     }
 
+    /**
+     * get the words that had been learned from indexed texts and search queries
+     * @return a copy of the learned words in lower case
+     */
+    public static Set<String> commonWords() {
+        final Set<String> words = new HashSet<String>();
+        try {
+            final Iterator<StringBuilder> i = commonWords.iterator();
+            while (i.hasNext()) words.add(i.next().toString().toLowerCase());
+        } catch (final ConcurrentModificationException e) {}
+        return words;
+    }
+
     /**
      * scan the input directory and load all dictionaries (again)
      */
@@ -187,6 +202,14 @@ public class WordCache {
         return false;
     }
 
+    /**
+     * get the words of the dictionary
+     * @return the dictionary words in lower case
+     */
+    public Set<StringBuilder> words() {
+        return Collections.unmodifiableSet(this.dict);
+    }
+
     /**
      * the size of the dictionay
      * @return the number of words in the dictionary
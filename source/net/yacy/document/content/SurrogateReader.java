@@ -72,6 +72,7 @@ public class SurrogateReader extends DefaultHandler implements Runnable {
     private SAXParser saxParser;
     private final InputSource inputSource;
     private final InputStream inputStream;
+    private volatile boolean stopped;
     
     public SurrogateReader(final InputStream stream, int queueSize) throws IOException {
         this.buffer = new StringBuilder(300);
@@ -84,6 +85,7 @@ public class SurrogateReader extends DefaultHandler implements Runnable {
         this.inputSource = new InputSource(reader);
         this.inputSource.setEncoding("UTF-8");
         this.inputStream = stream;
+        this.stopped = false;
         
         final SAXParserFactory factory = SAXParserFactory.newInstance();
         try {
@@ -103,7 +105,7 @@ public class SurrogateReader extends DefaultHandler implements Runnable {
         } catch (SAXParseException e) {
             Log.logException(e);
         } catch (SAXException e) {
-            Log.logException(e);
+            if (!this.stopped) Log.logException(e);
         } catch (IOException e) {
             Log.logException(e);
         } finally {
@@ -137,10 +139,11 @@ public class SurrogateReader extends DefaultHandler implements Runnable {
         }
     }
 
-    public void endElement(final String uri, final String name, String tag) {
+    public void endElement(final String uri, final String name, String tag) throws SAXException {
         if (tag == null) return;
         tag = tag.toLowerCase();
         if ("record".equals(tag) || "document".equals(tag)) {
+            if (this.stopped) throw new SAXException("surrogate reader stopped");
             //System.out.println("A Title: " + this.surrogate.title());
             try {
                 this.surrogates.put(this.surrogate);
@@ -185,6 +188,15 @@ public class SurrogateReader extends DefaultHandler implements Runnable {
         }
     }
 
+    /**
+     * stop parsing after the current record. The records that are already queued are discarded;
+     * the reader then finishes with the poison entry, therefore take() must be called until it returns the poison.
+     */
+    public void stop() {
+        this.stopped = true;
+        this.surrogates.clear();
+    }
+
     public DCEntry take() {
         try {
             return this.surrogates.take();
@@ -30,10 +30,13 @@ import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -46,10 +49,12 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.date.GenericFormatter;
 import net.yacy.cora.document.ASCII;
 import net.yacy.cora.document.UTF8;
+import net.yacy.kelondro.index.BloomFilter;
 import net.yacy.kelondro.index.RowSpaceExceededException;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.ByteOrder;
@@ -62,7 +67,9 @@ import net.yacy.kelondro.rwi.ReferenceFactory;
 import net.yacy.kelondro.rwi.ReferenceIterator;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.LookAheadIterator;
+import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.NamePrefixThreadFactory;
+import net.yacy.kelondro.workflow.StartupInitializer;
 
 
 public class ArrayStack implements BLOB {
@@ -94,6 +101,11 @@ public class ArrayStack implements BLOB {
     private final String         prefix;
     private final int            buffersize;
     private final boolean        trimall;
+    private final boolean        keyfilter;
+    private       long           lastNewBLOB; // the time of the latest file name from newBLOB()
+
+    // statistics for the key filter: a hit is a probe that passed the filter, a miss is a probe that was avoided
+    private final AtomicLong     keyFilterHits, keyFilterMisses, keyFilterFalsePositives;
 
     // the thread pool for the keeperOf executor service
     private final ExecutorService executor;
@@ -109,6 +121,29 @@ public class ArrayStack implements BLOB {
             final int keylength,
             final int buffersize,
             final boolean trimall) throws IOException {
+        this(heapLocation, prefix, ordering, keylength, buffersize, trimall, false);
+    }
+
+    /**
+     * open a BLOB array
+     * @param heapLocation
+     * @param prefix
+     * @param ordering
+     * @param keylength
+     * @param buffersize
+     * @param trimall
+     * @param keyfilter if true, a bloom filter is kept for each read-only BLOB file. The filter is
+     * checked before a BLOB is probed for a key. The filter is stored next to the .idx and .gap dumps.
+     * @throws IOException
+     */
+    public ArrayStack(
+            final File heapLocation,
+            final String prefix,
+            final ByteOrder ordering,
+            final int keylength,
+            final int buffersize,
+            final boolean trimall,
+            final boolean keyfilter) throws IOException {
         this.keylength = keylength;
         this.prefix = prefix;
         this.ordering = ordering;
@@ -119,6 +154,10 @@ public class ArrayStack implements BLOB {
         this.repositoryAgeMax = Long.MAX_VALUE;
         this.repositorySizeMax = Long.MAX_VALUE;
         this.trimall = trimall;
+        this.keyfilter = keyfilter;
+        this.keyFilterHits = new AtomicLong(0);
+        this.keyFilterMisses = new AtomicLong(0);
+        this.keyFilterFalsePositives = new AtomicLong(0);
 
         // init the thread pool for the keeperOf executor service
         this.executor = new ThreadPoolExecutor(
@@ -147,7 +186,7 @@ public class ArrayStack implements BLOB {
                 FileUtils.deletedelete(new File(heapLocation, file));
                 deletions = true;
             }
-            if (file.endsWith(".idx") || file.endsWith(".gap")) {
+            if (file.endsWith(".idx") || file.endsWith(".gap") || file.endsWith(".blm")) {
                 final String s = file.substring(0, file.length() - 17);
                 if (!fh.contains(s)) {
                     FileUtils.deletedelete(new File(heapLocation, file));
@@ -177,8 +216,6 @@ public class ArrayStack implements BLOB {
 
         // find maximum time: the file with this time will be given a write buffer
         final TreeMap<Long, blobItem> sortedItems = new TreeMap<Long, blobItem>();
-        BLOB oneBlob;
-        File f;
         long maxtime = 0;
         for (final String file : files) {
             if (file.length() >= 22 && file.startsWith(prefix) && file.endsWith(".blob")) {
@@ -190,23 +227,37 @@ public class ArrayStack implements BLOB {
             }
         }
 
-        // open all blob files
+        // open all blob files; the files are opened concurrently because
+        // each file may have to load or generate its index and key filter
+        final StartupInitializer initializer = new StartupInitializer(prefix + ".open");
+        final List<Future<blobItem>> openedItems = new ArrayList<Future<blobItem>>();
         for (final String file : files) {
             if (file.length() >= 22 && file.startsWith(prefix) && file.endsWith(".blob")) {
                 try {
                    d = my_SHORT_MILSEC_FORMATTER.parse(file.substring(prefix.length() + 1, prefix.length() + 18));
-                   f = new File(heapLocation, file);
-                   time = d.getTime();
-                   if (time == maxtime && !trimall) {
-                       oneBlob = new Heap(f, keylength, ordering, buffersize);
-                   } else {
-                       oneBlob = new HeapModifier(f, keylength, ordering);
-                       oneBlob.trim(); // no writings here, can be used with minimum memory
-                   }
-                   sortedItems.put(Long.valueOf(time), new blobItem(d, f, oneBlob));
                } catch (final ParseException e) {continue;}
+               final Date creation = d;
+               final File f = new File(heapLocation, file);
+               final boolean writable = d.getTime() == maxtime && !trimall;
+               openedItems.add(initializer.start(new Callable<blobItem>() {
+                   public blobItem call() throws IOException {
+                       final BLOB oneBlob;
+                       if (writable) {
+                           oneBlob = new Heap(f, keylength, ordering, buffersize);
+                       } else {
+                           oneBlob = new HeapModifier(f, keylength, ordering);
+                           oneBlob.trim(); // no writings here, can be used with minimum memory
+                       }
+                       return new blobItem(creation, f, oneBlob);
+                   }
+               }));
             }
         }
+        initializer.shutdown();
+        for (final Future<blobItem> item: openedItems) {
+            final blobItem bi = StartupInitializer.await(item);
+            sortedItems.put(Long.valueOf(bi.creation.getTime()), bi);
+        }
 
         // read the blob tree in a sorted way and write them into an array
         this.blobs = new CopyOnWriteArrayList<blobItem>();
@@ -217,10 +268,54 @@ public class ArrayStack implements BLOB {
 
     public long mem() {
         long m = 0;
-        if (this.blobs != null) for (final blobItem b: this.blobs) m += b.blob.mem();
+        if (this.blobs != null) for (final blobItem b: this.blobs) {
+            m += b.blob.mem();
+            if (b.filter != null) m += b.filter.mem();
+        }
         return m;
     }
 
+    /**
+     * the number of key probes that passed a key filter
+     * @return number of probes where the key filter did not exclude the BLOB
+     */
+    public long keyFilterHits() {
+        return this.keyFilterHits.get();
+    }
+
+    /**
+     * the number of key probes that have been omitted because of a key filter
+     * @return number of probes where the key filter excluded the BLOB
+     */
+    public long keyFilterMisses() {
+        return this.keyFilterMisses.get();
+    }
+
+    /**
+     * the number of key probes that passed a key filter but the BLOB did not contain the key
+     * @return number of false positive answers of the key filters
+     */
+    public long keyFilterFalsePositives() {
+        return this.keyFilterFalsePositives.get();
+    }
+
+    /**
+     * check the key filter of a blob item
+     * @param bi
+     * @param key
+     * @return false if the blob does not contain the key, true if it may contain the key
+     */
+    private boolean mayContain(final blobItem bi, final byte[] key) {
+        final BloomFilter filter = bi.filter;
+        if (filter == null) return true;
+        if (filter.contains(HeapReader.normalizeKey(key, this.keylength))) {
+            this.keyFilterHits.incrementAndGet();
+            return true;
+        }
+        this.keyFilterMisses.incrementAndGet();
+        return false;
+    }
+
     public void trim() {
         // trim shall not be called for ArrayStacks because the characteristics of an ArrayStack is that the 'topmost' BLOB on the stack
         // is used for write operations and all other shall be trimmed automatically since they are not used for writing. And the
@@ -266,6 +361,29 @@ public class ArrayStack implements BLOB {
         Log.logSevere("BLOBArray", "file " + location + " cannot be unmounted. The file " + ((location.exists()) ? "exists." : "does not exist."));
     }
 
+    /**
+     * unmount a set of files at once, i.e. to merge them
+     * @param locations
+     * @return true if all files were mounted and are now unmounted; false if any file was not mounted; then no file is unmounted
+     */
+    public synchronized boolean unmountBLOBs(final File[] locations) {
+        final HashSet<String> mounted = new HashSet<String>();
+        for (final blobItem bi: this.blobs) mounted.add(bi.location.getAbsolutePath());
+        for (final File f: locations) if (!mounted.contains(f.getAbsolutePath())) return false;
+        for (final File f: locations) unmountBLOB(f, false);
+        return true;
+    }
+
+    /**
+     * the files of the array
+     * @return the locations of all mounted files, the oldest file first
+     */
+    public synchronized File[] files() {
+        final File[] files = new File[this.blobs.size()];
+        for (int i = 0; i < files.length; i++) files[i] = this.blobs.get(i).location;
+        return files;
+    }
+
     private File unmount(final int idx) {
         final blobItem b = this.blobs.remove(idx);
         b.blob.close(false);
@@ -326,6 +444,34 @@ public class ArrayStack implements BLOB {
         return new File[]{f0, f1};
     }
 
+    /**
+     * unmount the smallest files of the array for a merge of many files at once
+     * @param maxCount the maximum number of files
+     * @param maxResultSize the maximum sum of the file sizes
+     * @return the unmounted files or null if there are less than three files that match
+     */
+    public synchronized File[] unmountSmallest(final int maxCount, final long maxResultSize) {
+        if (this.blobs.size() < 3) return null;
+        final List<File> files = new ArrayList<File>(this.blobs.size());
+        for (final blobItem bi: this.blobs) files.add(bi.location);
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(final File f0, final File f1) {
+                final long l0 = f0.length(), l1 = f1.length();
+                return l0 < l1 ? -1 : l0 > l1 ? 1 : 0;
+            }
+        });
+        final List<File> selected = new ArrayList<File>();
+        long size = 0;
+        for (final File f: files) {
+            if (selected.size() >= maxCount || size + f.length() > maxResultSize) break;
+            selected.add(f);
+            size += f.length();
+        }
+        if (selected.size() < 3) return null;
+        for (final File f: selected) unmountBLOB(f, false);
+        return selected.toArray(new File[selected.size()]);
+    }
+
     public synchronized File unmountSmallestBLOB(final long maxResultSize) {
         return smallestBLOB(null, maxResultSize);
     }
@@ -371,7 +517,13 @@ public class ArrayStack implements BLOB {
      */
     public synchronized File newBLOB(final Date creation) {
         //return new File(heapLocation, DateFormatter.formatShortSecond(creation) + "." + blobSalt + ".blob");
-        return new File(this.heapLocation, this.prefix + "." + my_SHORT_MILSEC_FORMATTER.format(creation) + ".blob");
+        // the names must be unique even if several files are requested within the same millisecond,
+        // i.e. when concurrent merge jobs are queued
+        long t = Math.max(creation.getTime(), this.lastNewBLOB + 1);
+        File f;
+        while ((f = new File(this.heapLocation, this.prefix + "." + my_SHORT_MILSEC_FORMATTER.format(new Date(t)) + ".blob")).exists()) t++;
+        this.lastNewBLOB = t;
+        return f;
     }
 
     public String name() {
@@ -428,17 +580,63 @@ public class ArrayStack implements BLOB {
         Date creation;
         File location;
         BLOB blob;
+        BloomFilter filter;
         public blobItem(final Date creation, final File location, final BLOB blob) {
             assert blob != null;
             this.creation = creation;
             this.location = location;
             this.blob = blob;
+            // writable heaps get no filter because new keys may be added
+            this.filter = (ArrayStack.this.keyfilter && !(blob instanceof Heap)) ? initKeyFilter(location, blob) : null;
+            // heaps that are not written any more can be read concurrently
+            if (blob instanceof HeapModifier && !(blob instanceof Heap)) try {
+                ((HeapModifier) blob).seal();
+            } catch (final IOException e) {
+                Log.logWarning("ArrayStack", "cannot open " + location.getName() + " for concurrent read: " + e.getMessage());
+            }
         }
         public blobItem(final int buffer) throws IOException {
             // make a new blob file and assign it in this item
             this.creation = new Date();
             this.location = newBLOB(this.creation);
             this.blob = (buffer == 0) ? new HeapModifier(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering) : new Heap(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering, buffer);
+            this.filter = null;
+        }
+    }
+
+    /**
+     * load the key filter of a BLOB file from its dump or generate a new one from the index of the BLOB.
+     * Because the dump file name contains the fingerprint of the BLOB, a filter for a different
+     * version of the file is never used. Deletions from a BLOB do not invalidate the filter.
+     * @param location
+     * @param blob
+     * @return the filter or null if it could not be generated
+     */
+    private static BloomFilter initKeyFilter(final File location, final BLOB blob) {
+        final String fingerprint = location.exists() ? HeapReader.fingerprintFileHash(location) : null;
+        final File filterFile = (fingerprint == null) ? null : HeapWriter.fingerprintFilterFile(location, fingerprint);
+        if (filterFile != null && filterFile.exists()) {
+            try {
+                return new BloomFilter(filterFile);
+            } catch (final IOException e) {
+                Log.logWarning("ArrayStack", "cannot read key filter dump " + filterFile.getName() + ", re-building filter: " + e.getMessage());
+                FileUtils.deletedelete(filterFile);
+            }
+        }
+        try {
+            final long start = System.currentTimeMillis();
+            final BloomFilter filter = new BloomFilter(blob.size(), blob.keys(true, false));
+            if (filterFile != null && blob.size() > 3) {
+                filter.dump(filterFile);
+                Log.logInfo("ArrayStack", "wrote a key filter dump for the " + blob.size() + " keys of " + location.getName() + " in " + (System.currentTimeMillis() - start) + " milliseconds.");
+            }
+            return filter;
+        } catch (final IOException e) {
+            Log.logWarning("ArrayStack", "cannot generate a key filter for " + location.getName() + ": " + e.getMessage());
+            return null;
+        } catch (final OutOfMemoryError e) {
+            Log.logWarning("ArrayStack", "not enough memory for a key filter for " + location.getName());
+            return null;
         }
     }
 
@@ -536,6 +734,19 @@ public class ArrayStack implements BLOB {
         //return false;
     }
 
+    /**
+     * check if a blobItem contains a key; the key filter is consulted first
+     * @param bi
+     * @param key
+     * @return true if the blob contains the key
+     */
+    private boolean containsKey(final blobItem bi, final byte[] key) {
+        if (!mayContain(bi, key)) return false;
+        final boolean contains = bi.blob.containsKey(key);
+        if (!contains && bi.filter != null) this.keyFilterFalsePositives.incrementAndGet();
+        return contains;
+    }
+
     /**
      * find the blobItem that holds the key
      * if no blobItem is found, then return null
@@ -546,7 +757,7 @@ public class ArrayStack implements BLOB {
         if (this.blobs.size() == 0) return null;
         if (this.blobs.size() == 1) {
             final blobItem bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+            if (containsKey(bi, key)) return bi;
             return null;
         }
 
@@ -554,10 +765,11 @@ public class ArrayStack implements BLOB {
         final CompletionService<blobItem> cs = new ExecutorCompletionService<blobItem>(this.executor);
         int accepted = 0;
         for (final blobItem bi : this.blobs) {
+            if (!mayContain(bi, key)) continue;
             try {
                 cs.submit(new Callable<blobItem>() {
                     public blobItem call() {
-                        if (bi.blob.containsKey(key)) return bi;
+                        if (containsKey(bi, key)) return bi;
                         return null;
                     }
                 });
@@ -565,7 +777,7 @@ public class ArrayStack implements BLOB {
             } catch (final RejectedExecutionException e) {
                 // the executor is either shutting down or the blocking queue is full
                 // execute the search direct here without concurrency
-                if (bi.blob.containsKey(key)) return bi;
+                if (containsKey(bi, key)) return bi;
             }
         }
 
@@ -603,7 +815,7 @@ public class ArrayStack implements BLOB {
         if (this.blobs.size() == 0) return null;
         if (this.blobs.size() == 1) {
             final blobItem bi = this.blobs.get(0);
-            return bi.blob.get(key);
+            return mayContain(bi, key) ? bi.blob.get(key) : null;
         }
 
         final blobItem bi = keeperOf(key);
@@ -654,11 +866,13 @@ public class ArrayStack implements BLOB {
 
         protected byte[] next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
+                final blobItem bi = this.bii.next();
+                final BLOB b = bi.blob;
+                if (b == null || !mayContain(bi, this.key)) continue;
                 try {
                     final byte[] n = b.get(this.key);
                     if (n != null) return n;
+                    if (bi.filter != null) ArrayStack.this.keyFilterFalsePositives.incrementAndGet();
                 } catch (final IOException e) {
                     Log.logSevere("ArrayStack", "BlobValues - IOException: " + e.getMessage(), e);
                     return null;
@@ -680,6 +894,7 @@ public class ArrayStack implements BLOB {
     public synchronized long length(final byte[] key) throws IOException {
         long l;
         for (final blobItem bi: this.blobs) {
+            if (!mayContain(bi, key)) continue;
             l = bi.blob.length(key);
             if (l >= 0) return l;
         }
@@ -697,6 +912,27 @@ public class ArrayStack implements BLOB {
         return new BlobLengths(key);
     }
 
+    /**
+     * compute a signature of all records of a key. Each record is identified by the name of its BLOB file,
+     * which is unique because newBLOB() never repeats a file name, and by its length. The signature therefore
+     * changes if a BLOB with the key is mounted, merged or unmounted, even if a merged record has the same
+     * length as the record that it replaces, and if a record is reduced or deleted.
+     * @param key
+     * @return the signature
+     * @throws IOException
+     */
+    public long signature(final byte[] key) throws IOException {
+        long s = 1;
+        for (final blobItem bi: this.blobs) {
+            if (bi.blob == null || !mayContain(bi, key)) continue;
+            final long l = bi.blob.length(key);
+            if (l < 0) continue;
+            s = 31 * s + bi.location.getName().hashCode();
+            s = 31 * s + l;
+        }
+        return s;
+    }
+
     public class BlobLengths extends LookAheadIterator<Long> {
 
         private final Iterator<blobItem> bii;
@@ -709,11 +945,13 @@ public class ArrayStack implements BLOB {
 
         protected Long next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
+                final blobItem bi = this.bii.next();
+                final BLOB b = bi.blob;
+                if (b == null || !mayContain(bi, this.key)) continue;
                 try {
                     final long l = b.length(this.key);
                     if (l >= 0) return Long.valueOf(l);
+                    if (bi.filter != null) ArrayStack.this.keyFilterFalsePositives.incrementAndGet();
                 } catch (final IOException e) {
                     Log.logSevere("ArrayStack", "", e);
                     return null;
@@ -732,6 +970,7 @@ public class ArrayStack implements BLOB {
     public synchronized long lengthAdd(final byte[] key) throws IOException {
         long l = 0;
         for (final blobItem bi: this.blobs) {
+            if (!mayContain(bi, key)) continue;
             l += bi.blob.length(key);
         }
         return l;
@@ -773,6 +1012,7 @@ public class ArrayStack implements BLOB {
     public synchronized int replace(final byte[] key, final Rewriter rewriter) throws IOException, RowSpaceExceededException {
         int d = 0;
         for (final blobItem bi: this.blobs) {
+            if (!mayContain(bi, key)) continue;
             d += bi.blob.replace(key, rewriter);
         }
         return d;
@@ -787,6 +1027,7 @@ public class ArrayStack implements BLOB {
     public synchronized int reduce(final byte[] key, final Reducer reduce) throws IOException, RowSpaceExceededException {
         int d = 0;
         for (final blobItem bi: this.blobs) {
+            if (!mayContain(bi, key)) continue;
             d += bi.blob.reduce(key, reduce);
         }
         return d;
@@ -799,15 +1040,17 @@ public class ArrayStack implements BLOB {
      */
     public synchronized void delete(final byte[] key) throws IOException {
         final long m = mem();
-        if (this.blobs.size() == 0) {
+        final List<blobItem> candidates = new ArrayList<blobItem>(this.blobs.size());
+        for (final blobItem bi: this.blobs) if (mayContain(bi, key)) candidates.add(bi);
+        if (candidates.size() == 0) {
             // do nothing
-        } else if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
+        } else if (candidates.size() == 1) {
+            final blobItem bi = candidates.get(0);
             bi.blob.delete(key);
         } else {
-            final Thread[] t = new Thread[this.blobs.size() - 1];
+            final Thread[] t = new Thread[candidates.size() - 1];
             int i = 0;
-            for (final blobItem bi: this.blobs) {
+            for (final blobItem bi: candidates) {
                 if (i < t.length) {
                     // run this in a concurrent thread
                     final blobItem bi0 = bi;
@@ -832,11 +1075,32 @@ public class ArrayStack implements BLOB {
      * close the BLOB
      */
     public synchronized void close(final boolean writeIDX) {
-        for (final blobItem bi: this.blobs) bi.blob.close(writeIDX);
+        for (final blobItem bi: this.blobs) {
+            bi.blob.close(writeIDX);
+            if (writeIDX && bi.filter != null) dumpKeyFilter(bi);
+        }
         this.blobs.clear();
         this.blobs = null;
     }
 
+    /**
+     * write the key filter of a blob item if there is not already a dump for the current version of the file.
+     * This is necessary if the file was modified by deletions which changes the fingerprint of the file.
+     * @param bi
+     */
+    private static void dumpKeyFilter(final blobItem bi) {
+        if (bi.location == null || !bi.location.exists()) return;
+        final String fingerprint = HeapReader.fingerprintFileHash(bi.location);
+        if (fingerprint == null) return;
+        final File filterFile = HeapWriter.fingerprintFilterFile(bi.location, fingerprint);
+        if (filterFile.exists()) return;
+        try {
+            bi.filter.dump(filterFile);
+        } catch (final IOException e) {
+            Log.logWarning("ArrayStack", "cannot write key filter dump " + filterFile.getName() + ": " + e.getMessage());
+        }
+    }
+
     /**
      * merge two blob files into one. If the second file is given as null,
      * then the first file is only rewritten into a new one.
@@ -885,6 +1149,37 @@ public class ArrayStack implements BLOB {
         }
     }
 
+    /**
+     * merge any number of blob files into one with a single pass over all files.
+     * This avoids that the same references are rewritten in many pairwise merges
+     * if a large number of small files must be combined.
+     * @param files the files to merge; one file is rewritten, two files use the pairwise merge
+     * @param factory
+     * @param newFile
+     * @param writeBuffer
+     * @return the target file where the given files are merged in
+     */
+    public File mergeMount(final File[] files,
+            final ReferenceFactory<? extends Reference> factory,
+            final File newFile, final int writeBuffer) {
+        if (files.length == 1) return mergeMount(files[0], null, factory, newFile, writeBuffer);
+        if (files.length == 2) return mergeMount(files[0], files[1], factory, newFile, writeBuffer);
+        Log.logInfo("BLOBArray", "merging " + files.length + " files");
+        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, files, newFile, writeBuffer);
+        if (resultFile == null) {
+            Log.logWarning("BLOBArray", "merge of " + files.length + " files returned null. newFile = " + newFile);
+            return null;
+        }
+        try {
+            mountBLOB(resultFile, false);
+        } catch (final IOException e) {
+            Log.logWarning("BLOBArray", "merge of " + files.length + " files successfull, but read failed. resultFile = " + resultFile);
+            return null;
+        }
+        Log.logInfo("BLOBArray", "merged " + files.length + " files into " + resultFile);
+        return resultFile;
+    }
+
     private static <ReferenceType extends Reference> File mergeWorker(
                     final ReferenceFactory<ReferenceType> factory,
                     final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer) {
@@ -947,6 +1242,97 @@ public class ArrayStack implements BLOB {
         }
     }
 
+    private static <ReferenceType extends Reference> File mergeWorker(
+                    final ReferenceFactory<ReferenceType> factory,
+                    final int keylength, final ByteOrder order, final File[] files, final File newFile, final int writeBuffer) {
+        // all files are read at the same time: share the read buffer among them
+        final int readBuffer = (int) Math.max(256L * 1024L, Math.min(8L * 1024L * 1024L, MemoryControl.available() / 8 / files.length));
+        final List<ReferenceIterator<ReferenceType>> iterators = new ArrayList<ReferenceIterator<ReferenceType>>(files.length);
+        final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+        int count;
+        try {
+            for (final File f: files) iterators.add(new ReferenceIterator<ReferenceType>(f, factory, readBuffer));
+            final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
+            count = merge(iterators, order, writer);
+            writer.close(true);
+        } catch (final IOException e) {
+            Log.logSevere("ArrayStack", "cannot merge " + files.length + " files, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
+            HeapWriter.delete(tmpFile);
+            HeapWriter.delete(newFile);
+            return null;
+        } catch (final RowSpaceExceededException e) {
+            Log.logSevere("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
+            HeapWriter.delete(tmpFile);
+            HeapWriter.delete(newFile);
+            return null;
+        } finally {
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
+        }
+        // we don't need the old files any more
+        for (final File f: files) HeapWriter.delete(f);
+        if (count == 0) {
+            HeapWriter.delete(newFile);
+            return null;
+        }
+        return newFile;
+    }
+
+    /**
+     * the current container of an iterator in a k-way merge
+     */
+    private static final class MergeHead<ReferenceType extends Reference> {
+        private final CloneableIterator<ReferenceContainer<ReferenceType>> i;
+        private ReferenceContainer<ReferenceType> c;
+        private MergeHead(final CloneableIterator<ReferenceContainer<ReferenceType>> i) {
+            this.i = i;
+            this.c = i.next();
+        }
+        private boolean advance(final ByteOrder ordering) {
+            if (!this.i.hasNext()) return false;
+            final byte[] clh = this.c.getTermHash();
+            this.c = this.i.next();
+            assert ordering.compare(this.c.getTermHash(), clh) > 0;
+            return true;
+        }
+    }
+
+    /**
+     * merge sorted container streams: the current containers of all streams are kept in a heap
+     * which is ordered by the term hash. Containers with the same term hash are merged.
+     * @return the number of written containers
+     */
+    private static <ReferenceType extends Reference> int merge(
+            final List<? extends CloneableIterator<ReferenceContainer<ReferenceType>>> iterators,
+            final ByteOrder ordering, final HeapWriter writer) throws IOException, RowSpaceExceededException {
+        final PriorityQueue<MergeHead<ReferenceType>> heads = new PriorityQueue<MergeHead<ReferenceType>>(Math.max(1, iterators.size()), new Comparator<MergeHead<ReferenceType>>() {
+            public int compare(final MergeHead<ReferenceType> h0, final MergeHead<ReferenceType> h1) {
+                return ordering.compare(h0.c.getTermHash(), h1.c.getTermHash());
+            }
+        });
+        for (final CloneableIterator<ReferenceContainer<ReferenceType>> i: iterators) {
+            if (i.hasNext()) heads.add(new MergeHead<ReferenceType>(i));
+        }
+        MergeHead<ReferenceType> h;
+        ReferenceContainer<ReferenceType> c;
+        int s, count = 0;
+        while (!heads.isEmpty()) {
+            h = heads.poll();
+            c = h.c;
+            if (h.advance(ordering)) heads.add(h);
+            // merge all containers with the same term
+            while (!heads.isEmpty() && ordering.compare(heads.peek().c.getTermHash(), c.getTermHash()) == 0) {
+                h = heads.poll();
+                c = c.merge(h.c);
+                if (h.advance(ordering)) heads.add(h);
+            }
+            s = c.shrinkReferences();
+            if (s > 0) Log.logInfo("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
+            writer.add(c.getTermHash(), c.exportCollection());
+            count++;
+        }
+        return count;
+    }
+
     private static <ReferenceType extends Reference> File rewriteWorker(
             final ReferenceFactory<ReferenceType> factory,
             final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer) {
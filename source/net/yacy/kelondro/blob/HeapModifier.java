@@ -63,6 +63,7 @@ public class HeapModifier extends HeapReader implements BLOB {
      * @throws IOException
      */
     public synchronized void clear() throws IOException {
+        unseal();
         this.index.clear();
         this.free.clear();
         this.file.close();
@@ -77,6 +78,7 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void close(boolean writeIDX) {
+        unseal();
         shrinkWithGapsAtEnd();
         super.close(writeIDX);
     }
@@ -122,20 +124,25 @@ public class HeapModifier extends HeapReader implements BLOB {
             }
             super.deleteFingerprint();
             
-            // add entry to free array
-            this.free.put(seek, size);
-            
-            // fill zeros to the content
-            int l = size; byte[] fill = new byte[size];
-            while (l-- > 0) fill[l] = 0;
-            this.file.write(fill, 0, size);
-            
-            // remove entry from index
-            this.index.remove(key);
-            
-            // recursively merge gaps
-            tryMergeNextGaps(seek, size);
-            tryMergePreviousGap(seek);
+            beginModification();
+            try {
+                // add entry to free array
+                this.free.put(seek, size);
+                
+                // fill zeros to the content
+                int l = size; byte[] fill = new byte[size];
+                while (l-- > 0) fill[l] = 0;
+                this.file.write(fill, 0, size);
+                
+                // remove entry from index
+                this.index.remove(key);
+                
+                // recursively merge gaps
+                tryMergeNextGaps(seek, size);
+                tryMergePreviousGap(seek);
+            } finally {
+                endModification();
+            }
         }
     }
     
@@ -284,35 +291,41 @@ public class HeapModifier extends HeapReader implements BLOB {
             // rewrite the entry
             blob = reducer.rewrite(blob);
             int reduction = len - blob.length;
-            if (reduction == 0) {
-                // even if the reduction is zero then it is still be possible that the record has been changed
-                this.file.seek(pos + 4 + key.length);
-                file.write(blob);
-                return 0;
-            }
             
             // the new entry must be smaller than the old entry and must at least be 4 bytes smaller
             // because that is the space needed to write a new empty entry record at the end of the gap
-            if (blob.length > len - 4) throw new IOException("replace of BLOB for key " + UTF8.String(key) + " failed (too large): new size = " + blob.length + ", old size = " + (len - 4));
+            if (reduction != 0 && blob.length > len - 4) throw new IOException("replace of BLOB for key " + UTF8.String(key) + " failed (too large): new size = " + blob.length + ", old size = " + (len - 4));
             
-            // replace old content
-            this.file.seek(pos);
-            file.writeInt(blob.length + key.length);
-            file.write(key);
-            file.write(blob);
-            
-            // define the new empty entry
-            final int newfreereclen = reduction - 4;
-            assert newfreereclen >= 0;
-            file.writeInt(newfreereclen);
-            
-            // fill zeros to the content
-            int l = newfreereclen; byte[] fill = new byte[newfreereclen];
-            while (l-- > 0) fill[l] = 0;
-            this.file.write(fill, 0, newfreereclen);
-            
-            // add a new free entry
-            this.free.put(pos + 4 + blob.length + key.length, newfreereclen);
+            beginModification();
+            try {
+                if (reduction == 0) {
+                    // even if the reduction is zero then it is still be possible that the record has been changed
+                    this.file.seek(pos + 4 + key.length);
+                    file.write(blob);
+                    return 0;
+                }
+                
+                // replace old content
+                this.file.seek(pos);
+                file.writeInt(blob.length + key.length);
+                file.write(key);
+                file.write(blob);
+                
+                // define the new empty entry
+                final int newfreereclen = reduction - 4;
+                assert newfreereclen >= 0;
+                file.writeInt(newfreereclen);
+                
+                // fill zeros to the content
+                int l = newfreereclen; byte[] fill = new byte[newfreereclen];
+                while (l-- > 0) fill[l] = 0;
+                this.file.write(fill, 0, newfreereclen);
+                
+                // add a new free entry
+                this.free.put(pos + 4 + blob.length + key.length, newfreereclen);
+            } finally {
+                endModification();
+            }
             
             assert mem() <= m : "m = " + m + ", mem() = " + mem();
             return reduction;
@@ -29,6 +29,9 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
@@ -66,11 +69,19 @@ public class HeapReader {
     protected HandleMap          index;      // key/seek relation for used records
     protected Gap                free;       // set of {seek, size} pairs denoting space and position of free records
     private   File               fingerprintFileIdx, fingerprintFileGap; // files with dumped indexes. Will be deleted if file is written
+
+    // read-only access for sealed heap files
+    private   RandomAccessFile   sealedFile;    // a second, read-only access to the heap file
+    private volatile FileChannel sealedChannel; // positional reads on this channel do not need a lock
+    protected volatile long      modifications; // a sequence counter; odd while the file is modified
     
     public HeapReader(
             final File heapFile,
             final int keylength,
             final ByteOrder ordering) throws IOException {
+        this.modifications = 0;
+        this.sealedFile = null;
+        this.sealedChannel = null;
         this.ordering = ordering;
         this.heapFile = heapFile;
         this.keylength = keylength;
@@ -231,6 +242,7 @@ public class HeapReader {
             if (exception2 != null && l[i].equals(exception2)) continue;
             if (l[i].endsWith(".idx") ||
                 l[i].endsWith(".gap") ||
+                l[i].endsWith(".blm") ||
                 l[i].endsWith(".idx.gz") ||
                 l[i].endsWith(".gap.gz")
                ) FileUtils.deletedelete(new File(d, l[i]));
@@ -340,6 +352,68 @@ public class HeapReader {
     public File location() {
         return this.heapFile;
     }
+
+    /**
+     * switch the heap into a concurrent read mode. This shall be used for heap files that are not written
+     * any more, i.e. after a HeapWriter finished the file. In this mode get() and length() read the file
+     * with positional reads on a read-only file channel and do not synchronize on the index, so any
+     * number of threads can read at the same time. Deletions and reductions of a HeapModifier are still
+     * possible; concurrent readers detect them with the modification counter and repeat the read.
+     * @throws IOException
+     */
+    public void seal() throws IOException {
+        synchronized (this.index) {
+            if (this.sealedChannel != null) return;
+            this.sealedFile = new RandomAccessFile(this.heapFile, "r");
+            this.sealedChannel = this.sealedFile.getChannel();
+        }
+    }
+
+    /**
+     * @return true if the heap is in concurrent read mode
+     */
+    public boolean isSealed() {
+        return this.sealedChannel != null;
+    }
+
+    /**
+     * switch off the concurrent read mode
+     */
+    protected void unseal() {
+        final RandomAccessFile f = this.sealedFile;
+        this.sealedChannel = null;
+        this.sealedFile = null;
+        if (f != null) try {
+            f.close();
+        } catch (final IOException e) {
+            Log.logException(e);
+        }
+    }
+
+    /**
+     * must be called before any write to the heap file that may be visible to readers of a sealed heap;
+     * must be called while the caller holds the write lock of the heap
+     */
+    protected void beginModification() {
+        this.modifications++;
+    }
+
+    /**
+     * must be called after a write to the heap file which was announced with beginModification()
+     */
+    protected void endModification() {
+        this.modifications++;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer b, final long pos) throws IOException {
+        long p = pos;
+        int c;
+        while (b.hasRemaining()) {
+            c = channel.read(b, p);
+            if (c < 0) throw new IOException("EOF at position " + p);
+            p += c;
+        }
+    }
     
     /**
      * the number of BLOBs in the heap
@@ -367,7 +441,10 @@ public class HeapReader {
     public boolean containsKey(byte[] key) {
         assert index != null;
         key = normalizeKey(key);
-        
+
+        // the index is thread-safe; in concurrent read mode it is not necessary to synchronize with file access
+        if (this.sealedChannel != null) return this.index.get(key) >= 0;
+
         synchronized (this.index) {
             // check if the file index contains the key
             return index.get(key) >= 0;
@@ -443,7 +520,62 @@ public class HeapReader {
     public byte[] get(byte[] key) throws IOException, RowSpaceExceededException {
         if (this.index == null) return null;
         key = normalizeKey(key);
-       
+
+        final FileChannel channel = this.sealedChannel;
+        if (channel != null) {
+            // concurrent read mode: read without a lock and repeat the read if the file was modified meanwhile
+            final int pkl = this.keylength;
+            final ByteBuffer head = ByteBuffer.allocate(4 + pkl);
+            for (int retry = 0; retry < 3; retry++) {
+                final long mod = this.modifications;
+                if ((mod & 1) != 0) {
+                    Thread.yield();
+                    continue;
+                }
+                final long pos = this.index.get(key);
+                if (pos < 0) return null;
+                head.clear();
+                try {
+                    readFully(channel, head, pos);
+                } catch (final IOException e) {
+                    if (this.modifications != mod || this.sealedChannel == null) continue;
+                    throw e;
+                }
+                final int len = head.getInt(0) - pkl;
+                boolean keyok = len >= 0;
+                for (int i = 0; keyok && i < pkl; i++) keyok = head.get(4 + i) == key[i];
+                if (!keyok) {
+                    if (this.modifications != mod) continue;
+                    // a corrupted or outdated record: the locked access handles that
+                    break;
+                }
+                final long memr = len + pkl + 64;
+                if (MemoryControl.available() < memr) {
+                    if (!MemoryControl.request(memr, true)) throw new RowSpaceExceededException(memr, "HeapReader.get()/check"); // not enough memory available for this blob
+                }
+                byte[] blob;
+                try {
+                    blob = new byte[len];
+                } catch (final OutOfMemoryError e) {
+                    throw new RowSpaceExceededException(len, "HeapReader.get()/blob");
+                }
+                try {
+                    readFully(channel, ByteBuffer.wrap(blob), pos + 4 + pkl);
+                } catch (final IOException e) {
+                    if (this.modifications != mod || this.sealedChannel == null) continue;
+                    throw e;
+                }
+                if (this.modifications == mod) return blob;
+            }
+            // fall back to a read that is synchronized with modifications of the file
+            synchronized (this) {
+                return getSynchronized(key);
+            }
+        }
+        return getSynchronized(key);
+    }
+
+    private byte[] getSynchronized(final byte[] key) throws IOException, RowSpaceExceededException {
         synchronized (this.index) {
             // check if the index contains the key
             final long pos = index.get(key);
@@ -529,7 +661,36 @@ public class HeapReader {
      */
     public long length(byte[] key) throws IOException {
         key = normalizeKey(key);
-        
+
+        final FileChannel channel = this.sealedChannel;
+        if (channel != null) {
+            final ByteBuffer head = ByteBuffer.allocate(4);
+            for (int retry = 0; retry < 3; retry++) {
+                final long mod = this.modifications;
+                if ((mod & 1) != 0) {
+                    Thread.yield();
+                    continue;
+                }
+                final long pos = this.index.get(key);
+                if (pos < 0) return -1;
+                head.clear();
+                try {
+                    readFully(channel, head, pos);
+                } catch (final IOException e) {
+                    if (this.modifications != mod || this.sealedChannel == null) continue;
+                    throw e;
+                }
+                if (this.modifications == mod) return head.getInt(0) - this.keylength;
+            }
+            // fall back to a read that is synchronized with modifications of the file
+            synchronized (this) {
+                return lengthSynchronized(key);
+            }
+        }
+        return lengthSynchronized(key);
+    }
+
+    private long lengthSynchronized(final byte[] key) throws IOException {
         synchronized (this.index) {
             // check if the index contains the key
             final long pos = index.get(key);
@@ -546,6 +707,7 @@ public class HeapReader {
      */
     public void close(boolean writeIDX) {
         synchronized (this.index) {
+            unseal();
             if (file != null)
     			try {
     				file.close();
@@ -662,9 +824,13 @@ public class HeapReader {
         private final File blobFile;
         
         public entries(final File blobFile, final int keylen) throws IOException {
+            this(blobFile, keylen, 8*1024*1024);
+        }
+
+        public entries(final File blobFile, final int keylen, final int readBuffer) throws IOException {
             if (!(blobFile.exists())) throw new IOException("file " + blobFile + " does not exist");
             try {
-                this.is = new DataInputStream(new BufferedInputStream(new FileInputStream(blobFile), 8*1024*1024));
+                this.is = new DataInputStream(new BufferedInputStream(new FileInputStream(blobFile), readBuffer));
             } catch (OutOfMemoryError e) {
                 this.is = new DataInputStream(new FileInputStream(blobFile));
             }
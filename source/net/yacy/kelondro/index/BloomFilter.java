@@ -0,0 +1,213 @@
+/**
+ *  BloomFilter
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * a bloom filter for fixed-length keys.
+ * The filter answers the question if a key is possibly in a set or definitely not in the set.
+ * It is used in front of index structures that must be probed in large numbers, i.e. all
+ * BLOB files of an ArrayStack, to omit the probing of structures that cannot contain the key.
+ * The filter can be dumped to a file and read again.
+ */
+public final class BloomFilter {
+
+    public static final int defaultBitsPerKey = 10; // with 7 hash functions this gives a false positive rate of about 1%
+    private static final int magic = 0x424c4d31; // 'BLM1'
+
+    private final long[] bits;
+    private final long bitcount;
+    private final int hashcount;
+
+    /**
+     * initialize an empty bloom filter
+     * @param expectedKeys the number of keys that will be added to the filter
+     * @param bitsPerKey the number of bits that are reserved for each key
+     */
+    public BloomFilter(final int expectedKeys, final int bitsPerKey) {
+        final long m = Math.max(64L, (long) Math.max(1, expectedKeys) * bitsPerKey);
+        this.bits = new long[(int) ((m + 63) >>> 6)];
+        this.bitcount = ((long) this.bits.length) << 6;
+        this.hashcount = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * 0.6931471805599453d)));
+    }
+
+    /**
+     * initialize a bloom filter with all keys from a given key iterator
+     * @param expectedKeys
+     * @param keys
+     */
+    public BloomFilter(final int expectedKeys, final Iterator<byte[]> keys) {
+        this(expectedKeys, defaultBitsPerKey);
+        while (keys.hasNext()) add(keys.next());
+    }
+
+    private BloomFilter(final int hashcount, final long[] bits) {
+        this.bits = bits;
+        this.bitcount = ((long) bits.length) << 6;
+        this.hashcount = hashcount;
+    }
+
+    /**
+     * initialize a bloom filter with the content of a dump
+     * @param file
+     * @throws IOException
+     */
+    public BloomFilter(final File file) throws IOException {
+        DataInputStream is;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+        } catch (final OutOfMemoryError e) {
+            is = new DataInputStream(new FileInputStream(file));
+        }
+        try {
+            if (is.readInt() != magic) throw new IOException("file " + file + " is not a bloom filter dump");
+            this.hashcount = is.readInt();
+            final int words = is.readInt();
+            if (this.hashcount <= 0 || words <= 0 || file.length() != 12L + 8L * words) throw new IOException("bloom filter dump " + file + " is corrupted");
+            this.bits = new long[words];
+            this.bitcount = ((long) words) << 6;
+            for (int i = 0; i < words; i++) this.bits[i] = is.readLong();
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * dump the filter to a file
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        DataOutputStream os;
+        try {
+            os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1024 * 1024));
+        } catch (final OutOfMemoryError e) {
+            os = new DataOutputStream(new FileOutputStream(tmp));
+        }
+        try {
+            write(os);
+            os.flush();
+        } finally {
+            os.close();
+        }
+        if (file.exists()) FileUtils.deletedelete(file);
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+    }
+
+    /**
+     * write the filter to a stream, using the same format as a dump file.
+     * This can be used to embed the filter into other files.
+     * @param os
+     * @throws IOException
+     */
+    public synchronized void write(final DataOutputStream os) throws IOException {
+        os.writeInt(magic);
+        os.writeInt(this.hashcount);
+        os.writeInt(this.bits.length);
+        for (final long w: this.bits) os.writeLong(w);
+    }
+
+    /**
+     * read a filter from a stream that was written with write()
+     * @param is
+     * @return the bloom filter
+     * @throws IOException
+     */
+    public static BloomFilter read(final DataInputStream is) throws IOException {
+        if (is.readInt() != magic) throw new IOException("stream does not contain a bloom filter");
+        final int hashcount = is.readInt();
+        final int words = is.readInt();
+        if (hashcount <= 0 || words <= 0) throw new IOException("bloom filter is corrupted");
+        final long[] bits = new long[words];
+        for (int i = 0; i < words; i++) bits[i] = is.readLong();
+        return new BloomFilter(hashcount, bits);
+    }
+
+    /**
+     * add a key to the filter
+     * @param key
+     */
+    public synchronized void add(final byte[] key) {
+        final long h = hash(key);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32);
+        long p;
+        for (int i = 0; i < this.hashcount; i++) {
+            p = ((h1 + (long) i * h2) & Long.MAX_VALUE) % this.bitcount;
+            this.bits[(int) (p >>> 6)] |= 1L << (p & 63);
+        }
+    }
+
+    /**
+     * test if a key is possibly in the filter.
+     * @param key
+     * @return false if the key was never added to the filter, true if it may have been added
+     */
+    public boolean contains(final byte[] key) {
+        final long h = hash(key);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32);
+        long p;
+        for (int i = 0; i < this.hashcount; i++) {
+            p = ((h1 + (long) i * h2) & Long.MAX_VALUE) % this.bitcount;
+            if ((this.bits[(int) (p >>> 6)] & (1L << (p & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * the memory that is used for the filter
+     * @return number of bytes in the bit field
+     */
+    public long mem() {
+        return 8L * this.bits.length;
+    }
+
+    /**
+     * a 64-bit FNV-1a hash with a final avalanche step
+     */
+    private static long hash(final byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (final byte b: key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ *  HandleIndex
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.index;
+
+import java.util.List;
+
+import net.yacy.kelondro.order.CloneableIterator;
+
+/**
+ * the index types that can be used as storage for a HandleMap.
+ * These are RAM-only structures that do not produce IOExceptions, therefore
+ * the methods of the Index interface are declared here without them.
+ */
+interface HandleIndex extends Index {
+
+    public Row.Entry get(byte[] key, boolean forcecopy);
+    public Row.Entry replace(Row.Entry row) throws RowSpaceExceededException;
+    public boolean put(Row.Entry row) throws RowSpaceExceededException;
+    public void addUnique(Row.Entry row) throws RowSpaceExceededException;
+    public List<RowCollection> removeDoubles() throws RowSpaceExceededException;
+    public boolean delete(byte[] key);
+    public Row.Entry remove(byte[] key);
+    public Row.Entry removeOne();
+    public List<Row.Entry> top(int count);
+    public CloneableIterator<byte[]> keys(boolean up, byte[] firstKey);
+    public CloneableIterator<Row.Entry> rows(boolean up, byte[] firstKey);
+    public CloneableIterator<Row.Entry> rows();
+    public void clear();
+    public void trim();
+
+}
@@ -52,8 +52,15 @@ import net.yacy.kelondro.order.CloneableIterator;
 
 public final class HandleMap implements Iterable<Row.Entry> {
 
+    /**
+     * if this is true, index dumps are loaded into an OffHeapIndex, which stores the rows
+     * outside of the java heap. This reduces the heap usage and the startup time because
+     * the sorted dump can be read in one bulk operation.
+     */
+    public static boolean offHeapDumps = false;
+
     private   final Row rowdef;
-    private RAMIndexCluster index;
+    private HandleIndex index;
 
     /**
      * initialize a HandleMap
@@ -64,7 +71,7 @@ public final class HandleMap implements Iterable<Row.Entry> {
      * @param space
      */
     public HandleMap(final int keylength, final ByteOrder objectOrder, final int idxbytes, final int expectedspace, final String name) {
-        this.rowdef = new Row(new Column[]{new Column("key", Column.celltype_binary, Column.encoder_bytes, keylength, "key"), new Column("long c-" + idxbytes + " {b256}")}, objectOrder);
+        this.rowdef = handleRow(keylength, objectOrder, idxbytes);
         this.index = new RAMIndexCluster(name, this.rowdef, spread(expectedspace));
     }
 
@@ -77,7 +84,18 @@ public final class HandleMap implements Iterable<Row.Entry> {
      * @throws RowSpaceExceededException
      */
     public HandleMap(final int keylength, final ByteOrder objectOrder, final int idxbytes, final File file) throws IOException, RowSpaceExceededException {
-        this(keylength, objectOrder, idxbytes, (int) (file.length() / (keylength + idxbytes)), file.getAbsolutePath());
+        this.rowdef = handleRow(keylength, objectOrder, idxbytes);
+        if (offHeapDumps) {
+            try {
+                this.index = new OffHeapIndex(file.getAbsolutePath(), this.rowdef, file);
+                return;
+            } catch (final IOException e) {
+                Log.logWarning("HandleMap", "cannot load " + file.getName() + " off-heap, loading into RAM: " + e.getMessage());
+            } catch (final RowSpaceExceededException e) {
+                Log.logWarning("HandleMap", "cannot load " + file.getName() + " off-heap, loading into RAM: " + e.getMessage());
+            }
+        }
+        this.index = new RAMIndexCluster(file.getAbsolutePath(), this.rowdef, spread((int) (file.length() / (keylength + idxbytes))));
         // read the index dump and fill the index
         InputStream is;
         try {
@@ -100,6 +118,10 @@ public final class HandleMap implements Iterable<Row.Entry> {
         assert this.index.size() == file.length() / (keylength + idxbytes);
     }
 
+    private static Row handleRow(final int keylength, final ByteOrder objectOrder, final int idxbytes) {
+        return new Row(new Column[]{new Column("key", Column.celltype_binary, Column.encoder_bytes, keylength, "key"), new Column("long c-" + idxbytes + " {b256}")}, objectOrder);
+    }
+
     public void trim() {
         this.index.trim();
     }
@@ -265,7 +287,7 @@ public final class HandleMap implements Iterable<Row.Entry> {
         int c;
         long l;
         final int initialSize = size();
-        final ArrayList<RowCollection> rd = this.index.removeDoubles();
+        final List<RowCollection> rd = this.index.removeDoubles();
         for (final RowCollection rowset: rd) {
             is = new long[rowset.size()];
             c = 0;
@@ -299,7 +321,7 @@ public final class HandleMap implements Iterable<Row.Entry> {
             indexentry = this.index.remove(key);
             assert (indexentry != null);
             assert this.index.size() < s : "s = " + s + ", index.size() = " + this.index.size();
-            assert this.index.mem() <= m : "m = " + m + ", index.mem() = " + this.index.mem();
+            assert this.index instanceof OffHeapIndex || this.index.mem() <= m : "m = " + m + ", index.mem() = " + this.index.mem();
         }
         if (indexentry == null) return -1;
         return indexentry.getColLong(1);
@@ -0,0 +1,611 @@
+/**
+ *  OffHeapIndex
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+
+import net.yacy.kelondro.logging.Log;
+import net.yacy.kelondro.order.CloneableIterator;
+import net.yacy.kelondro.order.MergeIterator;
+import net.yacy.kelondro.util.LookAheadIterator;
+
+/**
+ * an index that stores its rows outside of the java heap.
+ * The index consists of a sorted run of rows that is stored in direct byte buffers
+ * and a small RAMIndex that holds all rows that had been added or changed after the run
+ * was created. Rows of the run that are removed or overwritten are marked in a HandleSet.
+ * The run is loaded in one bulk read from an index dump as written by HandleMap.dump(),
+ * which is already sorted, so no sorting and no object allocation is necessary for each row.
+ * When the number of changes becomes large compared to the run, both are merged into a new run.
+ */
+public final class OffHeapIndex implements HandleIndex {
+
+    private static final int chunkBytes = 1 << 26; // the size of the direct buffers; 64MB
+    private static final int transferBytes = 1 << 16; // the size of the read buffer when a dump is loaded
+    private static final int compactionMinimum = 10000; // the number of changes that are always kept in the delta
+
+    private final String name;
+    private final Row rowdef;
+    private final Row.EntryComparator entryComparator;
+    private final ReentrantReadWriteLock lock;
+    private Run run;
+    private RAMIndex delta;
+    private HandleSet removed;
+
+    /**
+     * initialize an index with the content of a dumped index.
+     * The dump must be sorted; if it is not, an IOException is thrown
+     * and the dump must be read with an index that sorts the rows.
+     * @param name
+     * @param rowdef
+     * @param file the dump, may be gzipped if the file name ends with .gz
+     * @throws IOException
+     * @throws RowSpaceExceededException if there is not enough direct memory to store the run
+     */
+    public OffHeapIndex(final String name, final Row rowdef, final File file) throws IOException, RowSpaceExceededException {
+        this(name, rowdef);
+        InputStream is;
+        try {
+            is = new BufferedInputStream(new FileInputStream(file), 1024 * 1024);
+        } catch (final OutOfMemoryError e) {
+            is = new FileInputStream(file);
+        }
+        try {
+            if (file.getName().endsWith(".gz")) {
+                is = new GZIPInputStream(is);
+                this.run = new Run(rowdef, is, -1);
+            } else {
+                this.run = new Run(rowdef, is, (int) (file.length() / rowdef.objectsize));
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * initialize an empty index
+     * @param name
+     * @param rowdef
+     */
+    public OffHeapIndex(final String name, final Row rowdef) {
+        this.name = name;
+        this.rowdef = rowdef;
+        this.entryComparator = new Row.EntryComparator(rowdef.objectOrder);
+        this.lock = new ReentrantReadWriteLock();
+        this.run = new Run(rowdef);
+        this.delta = new RAMIndex(name + ".delta", rowdef, 0);
+        this.removed = new HandleSet(rowdef.primaryKeyLength, rowdef.objectOrder, 0);
+    }
+
+    public String filename() {
+        return this.name;
+    }
+
+    public Row row() {
+        return this.rowdef;
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.run.size - this.removed.size() + this.delta.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * the memory on the java heap that is used by this index
+     */
+    public long mem() {
+        return this.delta.mem() + (long) this.removed.size() * this.rowdef.primaryKeyLength;
+    }
+
+    /**
+     * the memory outside of the java heap that is used by the run
+     * @return number of bytes in the direct buffers
+     */
+    public long offHeapMem() {
+        return (long) this.run.size * this.rowdef.objectsize;
+    }
+
+    public byte[] smallestKey() {
+        final CloneableIterator<byte[]> i = keys(true, null);
+        return i.hasNext() ? i.next() : null;
+    }
+
+    public byte[] largestKey() {
+        this.lock.readLock().lock();
+        try {
+            final RunIterator i = new RunIterator(this.run, this.removed, false, null);
+            final byte[] r = i.hasNext() ? i.next().getPrimaryKeyBytes() : null;
+            final byte[] d = this.delta.isEmpty() ? null : this.delta.largestKey();
+            if (r == null) return d;
+            if (d == null) return r;
+            return this.rowdef.objectOrder.largest(r, d);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public boolean has(final byte[] key) {
+        this.lock.readLock().lock();
+        try {
+            if (this.delta.has(key)) return true;
+            return !this.removed.has(key) && this.run.find(key) >= 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public Row.Entry get(final byte[] key, final boolean forcecopy) {
+        this.lock.readLock().lock();
+        try {
+            final Row.Entry entry = this.delta.get(key, forcecopy);
+            if (entry != null || this.removed.has(key)) return entry;
+            final int p = this.run.find(key);
+            return p < 0 ? null : this.run.entry(p);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public Map<byte[], Row.Entry> get(final Collection<byte[]> keys, final boolean forcecopy) {
+        final Map<byte[], Row.Entry> map = new TreeMap<byte[], Row.Entry>(this.rowdef.objectOrder);
+        Row.Entry entry;
+        for (final byte[] key: keys) {
+            entry = get(key, forcecopy);
+            if (entry != null) map.put(key, entry);
+        }
+        return map;
+    }
+
+    public Row.Entry replace(final Row.Entry row) throws RowSpaceExceededException {
+        assert row != null;
+        final byte[] key = row.getPrimaryKeyBytes();
+        this.lock.writeLock().lock();
+        try {
+            if (!this.removed.has(key)) {
+                final int p = this.run.find(key);
+                if (p >= 0) {
+                    // the row of the run is shadowed by the new row in the delta
+                    final Row.Entry old = this.run.entry(p);
+                    this.removed.put(key);
+                    this.delta.put(row);
+                    compactIfNecessary();
+                    return old;
+                }
+            }
+            final Row.Entry old = this.delta.replace(row);
+            if (old == null) compactIfNecessary();
+            return old;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public boolean put(final Row.Entry row) throws RowSpaceExceededException {
+        return replace(row) == null;
+    }
+
+    public void addUnique(final Row.Entry row) throws RowSpaceExceededException {
+        this.lock.writeLock().lock();
+        try {
+            this.delta.addUnique(row);
+            compactIfNecessary();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public List<RowCollection> removeDoubles() throws RowSpaceExceededException {
+        // the run cannot contain doubles, only rows that are added with addUnique can be double
+        this.lock.writeLock().lock();
+        try {
+            return this.delta.removeDoubles();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public boolean delete(final byte[] key) {
+        return remove(key) != null;
+    }
+
+    public Row.Entry remove(final byte[] key) {
+        this.lock.writeLock().lock();
+        try {
+            final Row.Entry entry = this.delta.remove(key);
+            if (entry != null || this.removed.has(key)) return entry;
+            final int p = this.run.find(key);
+            if (p < 0) return null;
+            final Row.Entry old = this.run.entry(p);
+            try {
+                this.removed.put(key);
+            } catch (final RowSpaceExceededException e) {
+                // we cannot mark the row as removed: merge the changes into the run and try again
+                if (!compact()) {
+                    Log.logWarning("OffHeapIndex", "cannot remove a row from " + this.name + ": " + e.getMessage());
+                    return null;
+                }
+                return remove(key);
+            }
+            compactIfNecessary();
+            return old;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public Row.Entry removeOne() {
+        this.lock.writeLock().lock();
+        try {
+            if (!this.delta.isEmpty()) return this.delta.removeOne();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        final byte[] key = largestKey();
+        return key == null ? null : remove(key);
+    }
+
+    public List<Row.Entry> top(final int count) {
+        final List<Row.Entry> list = new ArrayList<Row.Entry>();
+        final Iterator<Row.Entry> i = rows(false, null);
+        while (list.size() < count && i.hasNext()) list.add(i.next());
+        return list;
+    }
+
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        this.lock.readLock().lock();
+        try {
+            return new MergeIterator<byte[]>(
+                    new KeyIterator(new RunIterator(this.run, this.removed, up, firstKey)),
+                    this.delta.keys(up, firstKey),
+                    this.rowdef.objectOrder,
+                    MergeIterator.simpleMerge,
+                    up);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public CloneableIterator<Row.Entry> rows(final boolean up, final byte[] firstKey) {
+        this.lock.readLock().lock();
+        try {
+            return new MergeIterator<Row.Entry>(
+                    new RunIterator(this.run, this.removed, up, firstKey),
+                    this.delta.rows(up, firstKey),
+                    this.entryComparator,
+                    MergeIterator.simpleMerge,
+                    up);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public CloneableIterator<Row.Entry> rows() {
+        return rows(true, null);
+    }
+
+    public Iterator<Row.Entry> iterator() {
+        return rows();
+    }
+
+    public void trim() {
+        this.delta.trim();
+    }
+
+    public void deleteOnExit() {
+        // do nothing, there is no file
+    }
+
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.run = new Run(this.rowdef);
+            this.delta.clear();
+            this.removed.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void close() {
+        this.lock.writeLock().lock();
+        try {
+            this.run = new Run(this.rowdef);
+            this.delta.close();
+            this.removed.close();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * merge the run with the changes if the changes become too large
+     */
+    private void compactIfNecessary() {
+        if (this.delta.size() + this.removed.size() > Math.max(compactionMinimum, this.run.size / 8)) compact();
+    }
+
+    /**
+     * merge the run with the delta and the removed keys into a new run.
+     * If there is not enough direct memory for the new run, the old run is kept.
+     * @return true if the run was replaced
+     */
+    private boolean compact() {
+        assert this.lock.isWriteLockedByCurrentThread();
+        final Run newrun;
+        try {
+            newrun = new Run(this.rowdef, rows(true, null), this.run.size - this.removed.size() + this.delta.size());
+        } catch (final RowSpaceExceededException e) {
+            Log.logWarning("OffHeapIndex", "cannot compact " + this.name + ": " + e.getMessage());
+            return false;
+        }
+        this.run = newrun;
+        this.delta = new RAMIndex(this.name + ".delta", this.rowdef, 0);
+        this.removed = new HandleSet(this.rowdef.primaryKeyLength, this.rowdef.objectOrder, 0);
+        return true;
+    }
+
+    /**
+     * a sorted sequence of rows in direct byte buffers.
+     * A run is never changed after it was created.
+     */
+    private static final class Run {
+
+        private final Row rowdef;
+        private final ByteBuffer[] chunks;
+        private final int rowsPerChunk;
+        private final int size;
+
+        /**
+         * an empty run
+         */
+        private Run(final Row rowdef) {
+            this.rowdef = rowdef;
+            this.chunks = new ByteBuffer[0];
+            this.rowsPerChunk = rowsPerChunk(rowdef);
+            this.size = 0;
+        }
+
+        /**
+         * read a run from a stream that contains sorted rows
+         * @param rowdef
+         * @param is
+         * @param expectedRows the number of rows in the stream or -1 if unknown
+         */
+        private Run(final Row rowdef, final InputStream is, final int expectedRows) throws IOException, RowSpaceExceededException {
+            this.rowdef = rowdef;
+            this.rowsPerChunk = rowsPerChunk(rowdef);
+            final int rowsize = rowdef.objectsize;
+            final int keylength = rowdef.primaryKeyLength;
+            final List<ByteBuffer> c = new ArrayList<ByteBuffer>();
+            final byte[] transfer = new byte[Math.max(1, transferBytes / rowsize) * rowsize];
+            final byte[] lastkey = new byte[keylength];
+            ByteBuffer chunk = null;
+            int count = 0, fill = 0, p;
+            while (true) {
+                // fill the transfer buffer with complete rows
+                fill = readFully(is, transfer, fill);
+                if (fill < rowsize) break;
+                p = 0;
+                while (p + rowsize <= fill) {
+                    // rows that are not well-formed are left out, as in HandleMap
+                    if (rowdef.objectOrder.wellformed(transfer, p, keylength)) {
+                        if (count > 0 && rowdef.objectOrder.compare(lastkey, 0, transfer, p, keylength) >= 0) {
+                            throw new IOException("index dump is not sorted at row " + count);
+                        }
+                        System.arraycopy(transfer, p, lastkey, 0, keylength);
+                        if (chunk == null || !chunk.hasRemaining()) {
+                            chunk = allocate(expectedRows < 0 ? this.rowsPerChunk : Math.min(this.rowsPerChunk, Math.max(1, expectedRows - count)), rowsize);
+                            c.add(chunk);
+                        }
+                        chunk.put(transfer, p, rowsize);
+                        count++;
+                    }
+                    p += rowsize;
+                }
+                // keep the remainder of an incomplete row
+                System.arraycopy(transfer, p, transfer, 0, fill - p);
+                fill -= p;
+            }
+            this.chunks = c.toArray(new ByteBuffer[c.size()]);
+            this.size = count;
+        }
+
+        /**
+         * write all rows from an iterator into a new run
+         * @param rowdef
+         * @param rows an iterator of rows in ascending order
+         * @param expectedRows
+         */
+        private Run(final Row rowdef, final Iterator<Row.Entry> rows, final int expectedRows) throws RowSpaceExceededException {
+            this.rowdef = rowdef;
+            this.rowsPerChunk = rowsPerChunk(rowdef);
+            final List<ByteBuffer> c = new ArrayList<ByteBuffer>();
+            ByteBuffer chunk = null;
+            int count = 0;
+            while (rows.hasNext()) {
+                if (chunk == null || !chunk.hasRemaining()) {
+                    chunk = allocate(Math.min(this.rowsPerChunk, Math.max(1, expectedRows - count)), rowdef.objectsize);
+                    c.add(chunk);
+                }
+                chunk.put(rows.next().bytes(), 0, rowdef.objectsize);
+                count++;
+            }
+            this.chunks = c.toArray(new ByteBuffer[c.size()]);
+            this.size = count;
+        }
+
+        private static int rowsPerChunk(final Row rowdef) {
+            return Math.max(1, chunkBytes / rowdef.objectsize);
+        }
+
+        private static ByteBuffer allocate(final int rows, final int rowsize) throws RowSpaceExceededException {
+            try {
+                return ByteBuffer.allocateDirect(rows * rowsize);
+            } catch (final OutOfMemoryError e) {
+                throw new RowSpaceExceededException((long) rows * rowsize, "OffHeapIndex.Run", e);
+            }
+        }
+
+        private static int readFully(final InputStream is, final byte[] b, int off) throws IOException {
+            int c;
+            while (off < b.length) {
+                c = is.read(b, off, b.length - off);
+                if (c <= 0) break;
+                off += c;
+            }
+            return off;
+        }
+
+        /**
+         * copy the key of a row into a byte array
+         */
+        private void key(final int p, final byte[] b) {
+            final ByteBuffer chunk = this.chunks[p / this.rowsPerChunk].duplicate();
+            chunk.position((p % this.rowsPerChunk) * this.rowdef.objectsize);
+            chunk.get(b, 0, this.rowdef.primaryKeyLength);
+        }
+
+        /**
+         * get a copy of a row
+         */
+        private Row.Entry entry(final int p) {
+            final byte[] b = new byte[this.rowdef.objectsize];
+            final ByteBuffer chunk = this.chunks[p / this.rowsPerChunk].duplicate();
+            chunk.position((p % this.rowsPerChunk) * this.rowdef.objectsize);
+            chunk.get(b);
+            return this.rowdef.newEntry(b);
+        }
+
+        /**
+         * binary search for a key
+         * @return the position of the row with the key or -1 if the key is not in the run
+         */
+        private int find(final byte[] key) {
+            final int p = lowerBound(key);
+            if (p >= this.size) return -1;
+            final byte[] k = new byte[this.rowdef.primaryKeyLength];
+            key(p, k);
+            return this.rowdef.objectOrder.compare(k, 0, key, 0, k.length) == 0 ? p : -1;
+        }
+
+        /**
+         * find the first position of a row with a key that is equal or greater than the given key
+         * @return a position within 0..size
+         */
+        private int lowerBound(final byte[] key) {
+            final byte[] k = new byte[this.rowdef.primaryKeyLength];
+            int l = 0, r = this.size, m;
+            while (l < r) {
+                m = (l + r) >>> 1;
+                key(m, k);
+                if (this.rowdef.objectOrder.compare(k, 0, key, 0, k.length) < 0) l = m + 1; else r = m;
+            }
+            return l;
+        }
+    }
+
+    /**
+     * iterates the rows of a run in both directions and leaves out all rows that are marked as removed
+     */
+    private static final class RunIterator extends LookAheadIterator<Row.Entry> implements CloneableIterator<Row.Entry> {
+
+        private final Run run;
+        private final HandleSet removed;
+        private final boolean up;
+        private int p;
+
+        private RunIterator(final Run run, final HandleSet removed, final boolean up, final byte[] firstKey) {
+            this.run = run;
+            this.removed = removed;
+            this.up = up;
+            if (firstKey == null) {
+                this.p = up ? 0 : run.size - 1;
+            } else {
+                final int b = run.lowerBound(firstKey);
+                this.p = up ? b : (b < run.size && run.find(firstKey) == b ? b : b - 1);
+            }
+        }
+
+        public CloneableIterator<Row.Entry> clone(final Object modifier) {
+            return new RunIterator(this.run, this.removed, this.up, (byte[]) modifier);
+        }
+
+        @Override
+        protected Row.Entry next0() {
+            Row.Entry entry;
+            while (this.p >= 0 && this.p < this.run.size) {
+                entry = this.run.entry(this.p);
+                this.p += this.up ? 1 : -1;
+                if (entry != null && !this.removed.has(entry.getPrimaryKeyBytes())) return entry;
+            }
+            return null;
+        }
+    }
+
+    private static final class KeyIterator implements CloneableIterator<byte[]> {
+
+        private final CloneableIterator<Row.Entry> rows;
+
+        private KeyIterator(final CloneableIterator<Row.Entry> rows) {
+            this.rows = rows;
+        }
+
+        public CloneableIterator<byte[]> clone(final Object modifier) {
+            return new KeyIterator(this.rows.clone(modifier));
+        }
+
+        public boolean hasNext() {
+            return this.rows.hasNext();
+        }
+
+        public byte[] next() {
+            return this.rows.next().getPrimaryKeyBytes();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -39,7 +39,7 @@ import net.yacy.kelondro.order.MergeIterator;
 import net.yacy.kelondro.order.StackIterator;
 
 
-public final class RAMIndexCluster implements Index, Iterable<Row.Entry>, Cloneable {
+public final class RAMIndexCluster implements HandleIndex, Iterable<Row.Entry>, Cloneable {
 
     private final String             name;
     private final Row                rowdef;
@@ -341,6 +341,40 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>
         return l;
     }
 
+    /**
+     * galloping search: find the position of the first entry that is not smaller than the key,
+     * starting at a given position. The distance from the start position is probed in exponentially
+     * growing steps and the last step is refined with a binary search, so the cost depends on the
+     * distance to the result and not on the size of the set. This is used to intersect a small set
+     * with a large set. The set must be sorted.
+     * @param key
+     * @param astart the start position of the key in the key array
+     * @param from the position where the search starts
+     * @return the position of the key or of the next greater entry; size() if all entries are smaller
+     */
+    public final synchronized int gallop(final byte[] key, final int astart, final int from) {
+        assert this.sortBound == this.chunkcount : "sortBound = " + this.sortBound + ", chunkcount = " + this.chunkcount;
+        if (from >= this.sortBound) return this.sortBound;
+        if (compare(key, astart, from) <= 0) return from;
+        // the entry at l is always smaller than the key
+        int l = from;
+        int step = 1;
+        int r = from + 1;
+        while (r < this.sortBound && compare(key, astart, r) > 0) {
+            l = r;
+            step = step << 1;
+            r = l + step;
+        }
+        if (r > this.sortBound) r = this.sortBound;
+        l++;
+        int p;
+        while (l < r) {
+            p = (l + r) >>> 1;
+            if (compare(key, astart, p) > 0) l = p + 1; else r = p;
+        }
+        return l;
+    }
+
     public final synchronized Iterator<byte[]> keys() {
         sort();
         return super.keys(true);
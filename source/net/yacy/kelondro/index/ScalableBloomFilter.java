@@ -0,0 +1,202 @@
+/**
+ *  ScalableBloomFilter
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * a bloom filter that grows with the number of keys that are added.
+ * A bloom filter must be sized for a fixed number of keys; if more keys are added, the false
+ * positive rate increases quickly. This filter is a chain of bloom filters; whenever the last filter
+ * has reached its capacity, a new filter with twice the capacity and one more bit per key is appended.
+ * A key is possibly contained in the set if any of the filters contains it; the additional bit in each
+ * new stage keeps the sum of the false positive rates of all stages close to the rate of the first stage.
+ * The filter is bounded by a maximum memory size: if a new filter would exceed that size, all further
+ * keys are added to the last filter. This increases the false positive rate but the filter never
+ * produces false negatives, which means a 'false' from contains() is always correct.
+ * The filter can be dumped to a file and read again.
+ * add() is synchronized and contains() is not; the bit fields are published with the volatile
+ * size counter, which add() writes after it has set the bits of a key and contains() reads before
+ * it tests the bits. Therefore contains() sees all keys of the add() calls that were finished before.
+ */
+public final class ScalableBloomFilter {
+
+    private static final int magic = 0x53424c31; // 'SBL1'
+
+    private final List<BloomFilter> stages;
+    private int stageBitsPerKey; // the number of bits per key of the last stage
+    private final long maxBytes;
+    private volatile BloomFilter[] stagesCache; // a copy of the stages list for unsynchronized read access
+    private int stageCapacity; // the number of keys that the last stage was made for
+    private int stageKeys; // the number of keys that had been added to the last stage
+    private volatile long size; // the number of add operations; written after the bits of a key, read before the bits are tested
+
+    /**
+     * initialize an empty filter
+     * @param initialKeys the capacity of the first stage
+     * @param bitsPerKey the number of bits for each key in the first stage
+     * @param maxBytes the maximum size of all bit fields; new stages are only created within that limit
+     */
+    public ScalableBloomFilter(final int initialKeys, final int bitsPerKey, final long maxBytes) {
+        this.stages = new ArrayList<BloomFilter>();
+        this.stageBitsPerKey = bitsPerKey;
+        this.maxBytes = maxBytes;
+        this.stageCapacity = Math.max(1024, initialKeys);
+        this.stageKeys = 0;
+        this.size = 0;
+        this.stages.add(new BloomFilter(this.stageCapacity, this.stageBitsPerKey));
+        this.stagesCache = this.stages.toArray(new BloomFilter[this.stages.size()]);
+    }
+
+    /**
+     * initialize a filter with the content of a dump
+     * @param file
+     * @param maxBytes the maximum size of all bit fields; this may be different from the limit at the time of the dump
+     * @throws IOException
+     */
+    public ScalableBloomFilter(final File file, final long maxBytes) throws IOException {
+        DataInputStream is;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+        } catch (final OutOfMemoryError e) {
+            is = new DataInputStream(new FileInputStream(file));
+        }
+        try {
+            if (is.readInt() != magic) throw new IOException("file " + file + " is not a scalable bloom filter dump");
+            this.stageBitsPerKey = is.readInt();
+            this.stageCapacity = is.readInt();
+            this.stageKeys = is.readInt();
+            this.size = is.readLong();
+            final int count = is.readInt();
+            if (this.stageBitsPerKey <= 0 || this.stageCapacity <= 0 || count <= 0) throw new IOException("scalable bloom filter dump " + file + " is corrupted");
+            this.stages = new ArrayList<BloomFilter>(count);
+            for (int i = 0; i < count; i++) this.stages.add(BloomFilter.read(is));
+        } finally {
+            is.close();
+        }
+        this.maxBytes = maxBytes;
+        this.stagesCache = this.stages.toArray(new BloomFilter[this.stages.size()]);
+    }
+
+    /**
+     * dump the filter to a file
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        DataOutputStream os;
+        try {
+            os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1024 * 1024));
+        } catch (final OutOfMemoryError e) {
+            os = new DataOutputStream(new FileOutputStream(tmp));
+        }
+        try {
+            os.writeInt(magic);
+            os.writeInt(this.stageBitsPerKey);
+            os.writeInt(this.stageCapacity);
+            os.writeInt(this.stageKeys);
+            os.writeLong(this.size);
+            os.writeInt(this.stages.size());
+            for (final BloomFilter stage: this.stages) stage.write(os);
+            os.flush();
+        } finally {
+            os.close();
+        }
+        if (file.exists()) FileUtils.deletedelete(file);
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+    }
+
+    /**
+     * add a key to the filter
+     * @param key
+     */
+    public synchronized void add(final byte[] key) {
+        if (this.stageKeys >= this.stageCapacity) {
+            final int nextBitsPerKey = this.stageBitsPerKey + 1;
+            final int nextCapacity = (int) Math.min(Integer.MAX_VALUE / nextBitsPerKey, 2L * this.stageCapacity);
+            if (mem() + ((long) nextCapacity) * nextBitsPerKey / 8 <= this.maxBytes) {
+                this.stageCapacity = nextCapacity;
+                this.stageBitsPerKey = nextBitsPerKey;
+                this.stageKeys = 0;
+                this.stages.add(new BloomFilter(this.stageCapacity, this.stageBitsPerKey));
+                this.stagesCache = this.stages.toArray(new BloomFilter[this.stages.size()]);
+            }
+        }
+        this.stagesCache[this.stagesCache.length - 1].add(key);
+        this.stageKeys++;
+        this.size++;
+    }
+
+    /**
+     * test if a key is possibly in the filter
+     * @param key
+     * @return false if the key was never added to the filter, true if it may have been added
+     */
+    public boolean contains(final byte[] key) {
+        if (this.size == 0) return false; // the volatile read makes the bits of all finished add() calls visible
+        final BloomFilter[] s = this.stagesCache;
+        for (int i = s.length - 1; i >= 0; i--) {
+            if (s[i].contains(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * the number of add operations on this filter; keys that had been added more than once are counted each time
+     * @return number of added keys
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+    /**
+     * the number of bloom filters in the chain
+     * @return number of stages
+     */
+    public int stages() {
+        return this.stagesCache.length;
+    }
+
+    /**
+     * the memory that is used for the filter
+     * @return number of bytes in all bit fields
+     */
+    public long mem() {
+        long m = 0;
+        for (final BloomFilter stage: this.stagesCache) m += stage.mem();
+        return m;
+    }
+
+}
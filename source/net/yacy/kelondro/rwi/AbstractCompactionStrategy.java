@@ -0,0 +1,98 @@
+/**
+ *  AbstractCompactionStrategy
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.kelondro.logging.Log;
+
+public abstract class AbstractCompactionStrategy implements CompactionStrategy {
+
+    public static final String HEURISTIC = "heuristic";
+    public static final String TIERED    = "tiered";
+    public static final String LEVELED   = "leveled";
+
+    private final AtomicLong merges;
+
+    protected AbstractCompactionStrategy() {
+        this.merges = new AtomicLong(0);
+    }
+
+    /**
+     * create a compaction strategy from its name
+     * @param name one of HEURISTIC, TIERED or LEVELED
+     * @return a new strategy object; the heuristic strategy if the name is unknown
+     */
+    public static CompactionStrategy newStrategy(final String name) {
+        if (TIERED.equals(name)) return new SizeTieredCompaction();
+        if (LEVELED.equals(name)) return new LeveledCompaction();
+        if (name != null && name.length() > 0 && !HEURISTIC.equals(name)) {
+            Log.logWarning("CompactionStrategy", "unknown compaction strategy '" + name + "', using " + HEURISTIC);
+        }
+        return new HeuristicCompaction();
+    }
+
+    public long mergeCount() {
+        return this.merges.get();
+    }
+
+    /**
+     * count a merge job that was scheduled by the strategy
+     */
+    protected void countMerge() {
+        this.merges.incrementAndGet();
+    }
+
+    /**
+     * hand over files to a merge job
+     * @return true if the job was scheduled
+     */
+    protected boolean merge(final ReferenceContainerArray<? extends Reference> array, final IODispatcher merger, final File[] files) {
+        if (files.length < 2) return false;
+        if (!array.merge(merger, files)) return false;
+        countMerge();
+        return true;
+    }
+
+    /**
+     * the files of an array, sorted by size, the smallest file first
+     */
+    protected static File[] filesBySize(final ReferenceContainerArray<? extends Reference> array) {
+        final File[] files = array.files();
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(final File f0, final File f1) {
+                final long l0 = f0.length(), l1 = f1.length();
+                return l0 < l1 ? -1 : l0 > l1 ? 1 : 0;
+            }
+        });
+        return files;
+    }
+
+    public String toString() {
+        return name();
+    }
+
+}
@@ -28,7 +28,12 @@
 package net.yacy.kelondro.rwi;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -138,7 +143,7 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         final TreeMap<byte[], ReferenceContainer<ReferenceType>> containers = new TreeMap<byte[], ReferenceContainer<ReferenceType>>(Base64Order.enhancedCoder);
         byte[] singleHash;
         ReferenceContainer<ReferenceType> singleContainer;
-        final Iterator<byte[]> i = wordHashes.iterator();
+        final Iterator<byte[]> i = smallestFirst(wordHashes).iterator();
         while (i.hasNext()) {
 
             // get next word hash:
@@ -160,6 +165,27 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         return containers;
     }
 
+    /**
+     * order the word hashes by the number of their references, the rarest term first.
+     * A conjunction stops as soon as a term has no references, so the large containers
+     * of frequent terms are not loaded if a rare term is not found.
+     * @param wordHashes
+     * @return the word hashes in ascending order of their reference count
+     */
+    protected List<byte[]> smallestFirst(final HandleSet wordHashes) {
+        final List<byte[]> hashes = new ArrayList<byte[]>(wordHashes.size());
+        for (final byte[] h: wordHashes) hashes.add(h);
+        if (hashes.size() < 2) return hashes;
+        final Map<byte[], Integer> counts = new TreeMap<byte[], Integer>(Base64Order.enhancedCoder);
+        for (final byte[] h: hashes) counts.put(h, count(h));
+        Collections.sort(hashes, new Comparator<byte[]>() {
+            public int compare(final byte[] h0, final byte[] h1) {
+                return counts.get(h0).compareTo(counts.get(h1));
+            }
+        });
+        return hashes;
+    }
+
     /**
      * collect containers for given word hashes and join them as they are retrieved.
      * This collection stops if a single container does not contain any references
@@ -181,7 +207,7 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         // retrieve entities that belong to the hashes
         ReferenceContainer<ReferenceType> resultContainer = null;
         ReferenceContainer<ReferenceType> singleContainer;
-        for (final byte[] wordHash: wordHashes) {
+        for (final byte[] wordHash: smallestFirst(wordHashes)) {
             // retrieve index
             try {
                 singleContainer = get(wordHash, urlselection);
@@ -0,0 +1,54 @@
+/**
+ *  CompactionStrategy
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.rwi;
+
+/**
+ * a compaction strategy decides which BLOB files of a ReferenceContainerArray are merged.
+ * The choice is a trade-off between the write amplification (how often each reference is
+ * rewritten) and the read amplification (how many files must be read to get all references
+ * of a term). A strategy object belongs to a single index and may keep statistics.
+ */
+public interface CompactionStrategy {
+
+    /**
+     * the name of the strategy as used in the configuration
+     * @return
+     */
+    public String name();
+
+    /**
+     * select files for merging and hand them over to the merger
+     * @param array the files of the index
+     * @param merger
+     * @param targetFileSize the preferred size of merged files
+     * @param maxFileSize the maximum size of merged files
+     * @return true if any merge was scheduled
+     */
+    public boolean shrink(ReferenceContainerArray<? extends Reference> array, IODispatcher merger, long targetFileSize, long maxFileSize);
+
+    /**
+     * @return the number of merge jobs that were scheduled by this strategy
+     */
+    public long mergeCount();
+
+}
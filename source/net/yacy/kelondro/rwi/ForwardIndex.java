@@ -0,0 +1,163 @@
+/**
+ *  ForwardIndex
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.cora.document.ASCII;
+import net.yacy.kelondro.blob.Heap;
+import net.yacy.kelondro.index.HandleSet;
+import net.yacy.kelondro.index.RowSpaceExceededException;
+import net.yacy.kelondro.logging.Log;
+import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.order.ByteOrder;
+
+/**
+ * the forward index stores for each document (url hash) the sorted set of term hashes that the
+ * document was indexed with. It is the inverse of the reverse word index and is used to delete
+ * all references of a document without loading and parsing the document again.
+ * The term hashes are stored in a heap file; base64 term hashes are packed to 3/4 of their size.
+ */
+public final class ForwardIndex {
+
+    private static final byte FORMAT_RAW = 'R';    // the term hashes are stored as they are
+    private static final byte FORMAT_PACKED = 'P'; // each base64 term hash is decoded to termSize * 3 / 4 bytes
+
+    private final Heap heap;
+    private final int termSize;
+    private final ByteOrder termOrder;
+
+    /**
+     * open or create a forward index
+     * @param heapFile the file of the heap that stores the term hashes
+     * @param keylength the length of the document (url) hashes
+     * @param termSize the length of the term hashes
+     * @param termOrder the order of the term hashes
+     * @throws IOException
+     */
+    public ForwardIndex(final File heapFile, final int keylength, final int termSize, final ByteOrder termOrder) throws IOException {
+        this.heap = new Heap(heapFile, keylength, Base64Order.enhancedCoder, 1024 * 1024);
+        this.termSize = termSize;
+        this.termOrder = termOrder;
+    }
+
+    /**
+     * store the term hashes of a document and return the term hashes that had been stored for it before
+     * @param urlhash the document
+     * @param termHashes the terms of the document
+     * @return the term hashes that had been stored before or null if the document was not known
+     * @throws IOException
+     */
+    public synchronized HandleSet put(final byte[] urlhash, final HandleSet termHashes) throws IOException {
+        final HandleSet old = get(urlhash);
+        if (termHashes.isEmpty()) {
+            this.heap.delete(urlhash);
+        } else {
+            this.heap.insert(urlhash, encode(termHashes));
+        }
+        return old;
+    }
+
+    /**
+     * get the term hashes of a document
+     * @param urlhash the document
+     * @return the sorted term hashes or null if the document is not known
+     * @throws IOException
+     */
+    public HandleSet get(final byte[] urlhash) throws IOException {
+        byte[] b;
+        try {
+            b = this.heap.get(urlhash);
+        } catch (final RowSpaceExceededException e) {
+            Log.logException(e);
+            return null;
+        }
+        if (b == null) return null;
+        try {
+            return decode(b);
+        } catch (final RowSpaceExceededException e) {
+            Log.logException(e);
+            return null;
+        }
+    }
+
+    /**
+     * remove a document from the forward index
+     * @param urlhash the document
+     * @return the term hashes of the document or null if the document was not known
+     * @throws IOException
+     */
+    public synchronized HandleSet remove(final byte[] urlhash) throws IOException {
+        final HandleSet terms = get(urlhash);
+        if (terms != null) this.heap.delete(urlhash);
+        return terms;
+    }
+
+    public boolean has(final byte[] urlhash) {
+        return this.heap.containsKey(urlhash);
+    }
+
+    public int size() {
+        return this.heap.size();
+    }
+
+    public void clear() throws IOException {
+        this.heap.clear();
+    }
+
+    public void close() {
+        this.heap.close(true);
+    }
+
+    private byte[] encode(final HandleSet termHashes) {
+        // the packed format is only possible if all hashes are base64 and the hash length is a multiple of 4
+        boolean packed = this.termSize % 4 == 0;
+        if (packed) for (final byte[] h: termHashes) {
+            if (!Base64Order.enhancedCoder.wellformed(h)) {packed = false; break;}
+        }
+        final int size = packed ? this.termSize * 3 / 4 : this.termSize;
+        final byte[] b = new byte[1 + termHashes.size() * size];
+        b[0] = packed ? FORMAT_PACKED : FORMAT_RAW;
+        int p = 1;
+        for (final byte[] h: termHashes) {
+            System.arraycopy(packed ? Base64Order.enhancedCoder.decode(ASCII.String(h)) : h, 0, b, p, size);
+            p += size;
+        }
+        return b;
+    }
+
+    private HandleSet decode(final byte[] b) throws RowSpaceExceededException {
+        final boolean packed = b[0] == FORMAT_PACKED;
+        final int size = packed ? this.termSize * 3 / 4 : this.termSize;
+        final int count = (b.length - 1) / size;
+        final HandleSet termHashes = new HandleSet(this.termSize, this.termOrder, count);
+        final byte[] h = new byte[size];
+        for (int p = 1; p + size <= b.length; p += size) {
+            System.arraycopy(b, p, h, 0, size);
+            // the hashes were stored in order, therefore they can be appended without sorting
+            termHashes.putUnique(packed ? ASCII.getBytes(Base64Order.enhancedCoder.encode(h)) : h.clone());
+        }
+        return termHashes;
+    }
+
+}
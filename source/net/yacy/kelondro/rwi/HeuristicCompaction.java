@@ -0,0 +1,76 @@
+/**
+ *  HeuristicCompaction
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.rwi;
+
+/**
+ * the compaction that YaCy always did: a set of rules that merge small files first,
+ * then files of similar size and finally old files. This causes little read amplification
+ * but rewrites the references of large files often.
+ */
+public class HeuristicCompaction extends AbstractCompactionStrategy implements CompactionStrategy {
+
+    private static final int maxMergeFiles = 64; // the maximum number of files that are merged in one pass
+
+    public String name() {
+        return HEURISTIC;
+    }
+
+    public boolean shrink(final ReferenceContainerArray<? extends Reference> array, final IODispatcher merger, final long targetFileSize, final long maxFileSize) {
+        if (array.entries() < 2) return false;
+        boolean donesomething = false;
+
+        // if there are many files, merge the small files in one pass;
+        // pairwise merges would rewrite the same references many times
+        int term = 10;
+        while (term-- > 0 && array.entries() > 50 && merger.queueLength() < 1) {
+            if (!array.shrinkManySmallFiles(merger, maxMergeFiles, maxFileSize)) break; else {donesomething = true; countMerge();}
+        }
+
+        // then try to merge small files that match
+        term = 10;
+        while (term-- > 0 && (merger.queueLength() < 3 || array.entries() >= 50)) {
+            if (!array.shrinkBestSmallFiles(merger, targetFileSize)) break; else {donesomething = true; countMerge();}
+        }
+
+        // then try to merge simply any small file
+        term = 10;
+        while (term-- > 0 && (merger.queueLength() < 2)) {
+            if (!array.shrinkAnySmallFiles(merger, targetFileSize)) break; else {donesomething = true; countMerge();}
+        }
+
+        // if there is no small file, then merge matching files up to limit
+        term = 10;
+        while (term-- > 0 && (merger.queueLength() < 1)) {
+            if (!array.shrinkUpToMaxSizeFiles(merger, maxFileSize)) break; else {donesomething = true; countMerge();}
+        }
+
+        // rewrite old files (hack from sixcooler, see http://forum.yacy-websuche.de/viewtopic.php?p=15004#p15004)
+        term = 10;
+        while (term-- > 0 && (merger.queueLength() < 1)) {
+            if (!array.shrinkOldFiles(merger, targetFileSize)) break; else {donesomething = true; countMerge();}
+        }
+
+        return donesomething;
+    }
+
+}
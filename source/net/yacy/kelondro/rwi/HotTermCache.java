@@ -0,0 +1,180 @@
+/**
+ *  HotTermCache
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.rwi;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.yacy.cora.storage.ComparableARC;
+import net.yacy.kelondro.order.ByteOrder;
+import net.yacy.kelondro.util.ByteArray;
+import net.yacy.kelondro.util.MemoryControl;
+
+/**
+ * a cache for the merged BLOB containers of frequently searched terms.
+ * The cache is bounded by the number of bytes of the cached containers, not by the number of terms.
+ * Every cached container carries a signature of the BLOB records that it had been merged from
+ * (see ReferenceContainerArray.signature()); a container is only returned if the signature is unchanged,
+ * so dumps, merges and reductions of the BLOB files invalidate the entries of the affected terms implicitly.
+ * IndexCell also removes the entry of a term when references are added to it.
+ * A term is admitted to the cache when it is requested the second time, so single queries do not push
+ * the popular terms out of the cache.
+ */
+public final class HotTermCache<ReferenceType extends Reference> {
+
+    private final Map<ByteArray, Entry<ReferenceType>> cache;
+    private final ComparableARC<byte[], Boolean> requested;
+    private final long maxBytes;
+    private long bytes;
+    private long hit, miss, insert, delete;
+
+    private static class Entry<ReferenceType extends Reference> {
+        private final ReferenceContainer<ReferenceType> container;
+        private final long signature;
+        private final long bytes;
+        private Entry(final ReferenceContainer<ReferenceType> container, final long signature) {
+            this.container = container;
+            this.signature = signature;
+            this.bytes = container.mem();
+        }
+    }
+
+    public HotTermCache(final long maxBytes, final ByteOrder termOrder) {
+        this.cache = new LinkedHashMap<ByteArray, Entry<ReferenceType>>(100, 0.75f, true);
+        this.requested = new ComparableARC<byte[], Boolean>(1000, termOrder);
+        this.maxBytes = maxBytes;
+        this.bytes = 0;
+        this.hit = 0;
+        this.miss = 0;
+        this.insert = 0;
+        this.delete = 0;
+    }
+
+    /**
+     * get a cached container. The container is shared, it must not be modified
+     * @param termHash
+     * @param signature the current signature of the BLOB records of the term
+     * @return the container or null if the term is not cached or the signature has changed
+     */
+    public synchronized ReferenceContainer<ReferenceType> get(final byte[] termHash, final long signature) {
+        final ByteArray key = new ByteArray(termHash);
+        final Entry<ReferenceType> entry = this.cache.get(key);
+        if (entry == null) {
+            this.miss++;
+            return null;
+        }
+        if (entry.signature != signature) {
+            this.cache.remove(key);
+            this.bytes -= entry.bytes;
+            this.delete++;
+            this.miss++;
+            return null;
+        }
+        this.hit++;
+        return entry.container;
+    }
+
+    /**
+     * offer a merged container to the cache; it is only stored if the term had been requested before
+     * @param termHash
+     * @param signature the signature of the BLOB records, computed before the container was read
+     * @param container the container; it must not be modified afterwards if it was stored
+     * @return true if the container was stored
+     */
+    public boolean put(final byte[] termHash, final long signature, final ReferenceContainer<ReferenceType> container) {
+        if (container == null || this.maxBytes <= 0) return false;
+        if (this.requested.get(termHash) == null) {
+            this.requested.insert(termHash, Boolean.TRUE);
+            return false;
+        }
+        final Entry<ReferenceType> entry = new Entry<ReferenceType>(container, signature);
+        if (entry.bytes > this.maxBytes / 4) return false; // a single term shall not flush the whole cache
+        synchronized (this) {
+            if (MemoryControl.shortStatus()) {
+                clear();
+                return false;
+            }
+            final Entry<ReferenceType> old = this.cache.put(new ByteArray(termHash), entry);
+            if (old != null) this.bytes -= old.bytes;
+            this.bytes += entry.bytes;
+            this.insert++;
+            // remove the least recently used terms
+            final Iterator<Entry<ReferenceType>> i = this.cache.values().iterator();
+            while (this.bytes > this.maxBytes && i.hasNext()) {
+                this.bytes -= i.next().bytes;
+                i.remove();
+                this.delete++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * remove a term after a write operation on the term
+     * @param termHash
+     */
+    public synchronized void remove(final byte[] termHash) {
+        final Entry<ReferenceType> entry = this.cache.remove(new ByteArray(termHash));
+        if (entry == null) return;
+        this.bytes -= entry.bytes;
+        this.delete++;
+    }
+
+    public synchronized void clear() {
+        this.delete += this.cache.size();
+        this.cache.clear();
+        this.bytes = 0;
+    }
+
+    public synchronized int size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the number of bytes of all cached containers
+     */
+    public synchronized long mem() {
+        return this.bytes;
+    }
+
+    public long maxMem() {
+        return this.maxBytes;
+    }
+
+    public synchronized long hits() {
+        return this.hit;
+    }
+
+    public synchronized long misses() {
+        return this.miss;
+    }
+
+    public synchronized long inserts() {
+        return this.insert;
+    }
+
+    public synchronized long deletes() {
+        return this.delete;
+    }
+
+}
@@ -22,202 +22,304 @@
 // along with this program; if not, write to the Free Software
 // Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
 
+
 package net.yacy.kelondro.rwi;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
 
 /**
  * this is a concurrent merger that can merge single files that are queued for merging.
  * when several ReferenceContainerArray classes host their ReferenceContainer file arrays,
  * they may share a single ReferenceContainerMerger object which does the sharing for all
- * of them. This is the best way to do the merging, because it does heavy IO access and
- * such access should not be performed concurrently, but queued. This class is the
- * manaagement class for queueing of merge jobs.
+ * of them. This class is the management class for queueing of dump and merge jobs.
+ *
+ * dumps of the RAM cache and merges of BLOB files are executed in two separate lanes,
+ * each with an own thread pool and queue, so a dump never has to wait for a long-running
+ * merge. Because merges do heavy IO access, the number of concurrent merges that write
+ * into the same directory is limited for all dispatchers together.
  *
  * to use this class, first instantiate a object and then start the concurrent execution
  * of merging with a call to the start() - method. To shut down all mergings, call terminate()
  * only once.
  */
-public class IODispatcher extends Thread {
+public class IODispatcher {
+
+    // default settings for new dispatchers; these can be overwritten with values from the configuration
+    public static int dumpThreads = 1;       // the number of concurrent dumps for each dispatcher
+    public static int mergeThreads = 2;      // the number of concurrent merges for each dispatcher
+    public static int mergesPerLocation = 1; // the number of concurrent merges into the same directory for all dispatchers
 
-    private   Semaphore                    controlQueue;
-    private   final Semaphore              termination;
-    private   ArrayBlockingQueue<MergeJob> mergeQueue;
-    private   ArrayBlockingQueue<DumpJob<? extends Reference>> dumpQueue;
-    //private ReferenceFactory<ReferenceType> factory;
-    private   boolean                      terminate;
-    private final int                          writeBufferSize;
+    private static final Map<String, Semaphore> locationLocks = new HashMap<String, Semaphore>();
+    private static final long memoryWaitMax = 600000; // maximum time that a merge waits for free memory
+
+    private final Lane             dumpLane;
+    private final Lane             mergeLane;
+    private final int              writeBufferSize;
+    private volatile boolean       running;
 
     public IODispatcher(final int dumpQueueLength, final int mergeQueueLength, final int writeBufferSize) {
-        this.termination = new Semaphore(0);
-        this.controlQueue = new Semaphore(0);
-        this.dumpQueue = new ArrayBlockingQueue<DumpJob<? extends Reference>>(dumpQueueLength);
-        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(mergeQueueLength);
+        this(dumpThreads, dumpQueueLength, mergeThreads, mergeQueueLength, writeBufferSize);
+    }
+
+    /**
+     * create a dispatcher
+     * @param dumpThreads the number of dumps that can run concurrently
+     * @param dumpQueueLength the number of dumps that can wait for execution; more dumps block the caller
+     * @param mergeThreads the number of merges that can run concurrently
+     * @param mergeQueueLength the number of merges that can wait for execution; more merges block the caller
+     * @param writeBufferSize
+     */
+    public IODispatcher(final int dumpThreads, final int dumpQueueLength, final int mergeThreads, final int mergeQueueLength, final int writeBufferSize) {
+        this.dumpLane = new Lane("dump", dumpThreads, dumpQueueLength);
+        this.mergeLane = new Lane("merge", mergeThreads, mergeQueueLength);
         this.writeBufferSize = writeBufferSize;
-        this.terminate = false;
+        this.running = false;
     }
 
+    public void start() {
+        this.running = true;
+    }
+
+    public boolean isAlive() {
+        return this.running;
+    }
+
+    /**
+     * stop accepting new jobs and wait until all queued jobs are finished
+     */
     public void terminate() {
-        if (this.termination != null && this.controlQueue != null && isAlive()) {
-            this.terminate = true;
-            this.controlQueue.release();
-            // await termination
-            try {
-                this.termination.acquire();
-            } catch (final InterruptedException e) {
-                Log.logException(e);
-            }
-        }
+        if (!this.running) return;
+        this.running = false;
+        Log.logInfo("IODispatcher", "caught termination signal");
+        this.dumpLane.terminate();
+        this.mergeLane.terminate();
+        Log.logInfo("IODispatcher", "terminated dispatcher");
     }
 
-    @SuppressWarnings("unchecked")
-	protected synchronized void dump(final ReferenceContainerCache<? extends Reference> cache, final File file, final ReferenceContainerArray<? extends Reference> array) {
-        if (this.dumpQueue == null || this.controlQueue == null || !isAlive()) {
-            Log.logWarning("IODispatcher", "emergency dump of file " + file.getName());
-             if (!cache.isEmpty()) cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
+    /**
+     * the lane that executes dumps of RAM caches
+     */
+    public Lane dumpLane() {
+        return this.dumpLane;
+    }
+
+    /**
+     * the lane that executes merges of BLOB files
+     */
+    public Lane mergeLane() {
+        return this.mergeLane;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected void dump(final ReferenceContainerCache<? extends Reference> cache, final File file, final ReferenceContainerArray<? extends Reference> array) {
+        final DumpJob<? extends Reference> job = new DumpJob(cache, file, array);
+        if (this.running && this.dumpLane.submit(job)) {
+            Log.logInfo("IODispatcher", "appended dump job for file " + file.getName());
         } else {
-            @SuppressWarnings("rawtypes")
-            final
-            DumpJob<? extends Reference> job = new DumpJob(cache, file, array);
-            // check if the dispatcher is running
-            if (isAlive()) {
-                try {
-                    this.dumpQueue.put(job);
-                    Log.logInfo("IODispatcher", "appended dump job for file " + file.getName());
-                } catch (final InterruptedException e) {
-                    Log.logException(e);
-                    cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
-                } finally {
-                    this.controlQueue.release();
-                }
-            } else {
-                job.dump();
-                Log.logWarning("IODispatcher", "dispatcher is not alive, just dumped file " + file.getName());
-            }
+            Log.logWarning("IODispatcher", "emergency dump of file " + file.getName());
+            job.run();
         }
     }
 
-    protected synchronized int queueLength() {
-        return (this.controlQueue == null || !isAlive()) ? 0 : this.controlQueue.availablePermits();
+    /**
+     * the number of merge jobs that are waiting for execution
+     * @return
+     */
+    protected int queueLength() {
+        return this.running ? this.mergeLane.queueSize() : 0;
+    }
+
+    protected void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        merge(f2 == null ? new File[]{f1} : new File[]{f1, f2}, factory, array, newFile);
     }
 
-    protected synchronized void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
-        if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
-            if (f2 == null) {
-                Log.logWarning("IODispatcher", "emergency rewrite of file " + f1.getName() + " to " + newFile.getName());
+    /**
+     * merge any number of files into one; a single file is rewritten
+     * @param files
+     * @param factory
+     * @param array
+     * @param newFile
+     */
+    protected void merge(final File[] files, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        final MergeJob job = new MergeJob(files, factory, array, newFile);
+        if (this.running && this.mergeLane.submit(job)) {
+            if (files.length == 1) {
+                Log.logInfo("IODispatcher", "appended rewrite job of file " + files[0].getName() + " to " + newFile.getName());
             } else {
-                Log.logWarning("IODispatcher", "emergency merge of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
+                Log.logInfo("IODispatcher", "appended merge job of files " + names(files) + " to " + newFile.getName());
             }
-            array.mergeMount(f1, f2, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
         } else {
-            final MergeJob job = new MergeJob(f1, f2, factory, array, newFile);
-            if (isAlive()) {
-                try {
-                    this.mergeQueue.put(job);
-                    if (f2 == null) {
-                        Log.logInfo("IODispatcher", "appended rewrite job of file " + f1.getName() + " to " + newFile.getName());
-                    } else {
-                        Log.logInfo("IODispatcher", "appended merge job of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-                    }
-                } catch (final InterruptedException e) {
-                    Log.logWarning("IODispatcher", "interrupted: " + e.getMessage(), e);
-                    array.mergeMount(f1, f2, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
-                } finally {
-                    this.controlQueue.release();
-                }
+            if (files.length == 1) {
+                Log.logWarning("IODispatcher", "emergency rewrite of file " + files[0].getName() + " to " + newFile.getName());
             } else {
-                job.merge();
-                if (f2 == null) {
-                    Log.logWarning("IODispatcher", "dispatcher not running, merged files " + f1.getName() + " to " + newFile.getName());
-                } else {
-                    Log.logWarning("IODispatcher", "dispatcher not running, rewrote file " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-                }
+                Log.logWarning("IODispatcher", "emergency merge of files " + names(files) + " to " + newFile.getName());
             }
+            job.run();
         }
     }
 
-    @Override
-    public void run() {
-        MergeJob mergeJob;
-        DumpJob<? extends Reference> dumpJob;
-        try {
-            loop: while (true) try {
-                this.controlQueue.acquire();
-
-                // prefer dump actions to flush memory to disc
-                if (!this.dumpQueue.isEmpty()) {
-                	File f = null;
-                    try {
-                        dumpJob = this.dumpQueue.take();
-                        f = dumpJob.file;
-                        dumpJob.dump();
-                    } catch (final InterruptedException e) {
-                        Log.logSevere("IODispatcher", "main run job was interrupted (1)", e);
-                        Log.logException(e);
-                    } catch (final Throwable e) {
-                        Log.logSevere("IODispatcher", "main run job had errors (1), dump to " + f + " failed.", e);
-                        Log.logException(e);
-                    }
-                    continue loop;
-                }
+    private static String names(final File[] files) {
+        final StringBuilder sb = new StringBuilder(files.length * 40);
+        for (final File f: files) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(f.getName());
+        }
+        return sb.toString();
+    }
+
+    private static Semaphore locationLock(final File f) {
+        final String location = f.getAbsoluteFile().getParent();
+        synchronized (locationLocks) {
+            Semaphore s = locationLocks.get(location);
+            if (s == null) {
+                s = new Semaphore(Math.max(1, mergesPerLocation), true);
+                locationLocks.put(location, s);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * a lane is a thread pool with a bounded number of waiting jobs.
+     * It counts the executed jobs, the written bytes and the time that was used for the jobs.
+     */
+    public static final class Lane {
+
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final Semaphore slots;
+        private final AtomicInteger waiting, active;
+        private final AtomicLong jobs, bytes, time;
+
+        private Lane(final String name, final int threads, final int queueLength) {
+            this.name = name;
+            this.executor = new ThreadPoolExecutor(
+                    Math.max(1, threads),
+                    Math.max(1, threads), 10000,
+                    TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamePrefixThreadFactory("IODispatcher." + name));
+            this.executor.allowCoreThreadTimeOut(true);
+            this.slots = new Semaphore(Math.max(1, threads) + Math.max(0, queueLength), true);
+            this.waiting = new AtomicInteger(0);
+            this.active = new AtomicInteger(0);
+            this.jobs = new AtomicLong(0);
+            this.bytes = new AtomicLong(0);
+            this.time = new AtomicLong(0);
+        }
 
-                // otherwise do a merge operation
-                if (!this.mergeQueue.isEmpty() && !MemoryControl.shortStatus()) {
-                	File f = null, f1 = null, f2 = null;
-                    try {
-                        mergeJob = this.mergeQueue.take();
-                        f = mergeJob.newFile;
-                        f1 = mergeJob.f1;
-                        f2 = mergeJob.f2;
-                        mergeJob.merge();
-                    } catch (final InterruptedException e) {
-                        Log.logSevere("IODispatcher", "main run job was interrupted (2)", e);
-                        Log.logException(e);
-                    } catch (final Throwable e) {
-                        if (f2 == null) {
-                        Log.logSevere("IODispatcher", "main run job had errors (2), dump to " + f + " failed. Input file is " + f1, e);
-                        } else {
-                            Log.logSevere("IODispatcher", "main run job had errors (2), dump to " + f + " failed. Input files are " + f1 + " and " + f2, e);
+        /**
+         * put a job into the lane. This blocks if all threads are busy and the queue is full.
+         * @param job
+         * @return true if the job was accepted, false if the job must be executed by the caller
+         */
+        private boolean submit(final Job job) {
+            try {
+                this.slots.acquire();
+            } catch (final InterruptedException e) {
+                return false;
+            }
+            this.waiting.incrementAndGet();
+            try {
+                this.executor.execute(new Runnable() {
+                    public void run() {
+                        Lane.this.waiting.decrementAndGet();
+                        Lane.this.active.incrementAndGet();
+                        final long start = System.currentTimeMillis();
+                        try {
+                            final File f = job.call();
+                            Lane.this.jobs.incrementAndGet();
+                            if (f != null) Lane.this.bytes.addAndGet(f.length());
+                        } catch (final Throwable e) {
+                            Log.logSevere("IODispatcher", Lane.this.name + " job had errors, write to " + job.target() + " failed", e);
+                        } finally {
+                            Lane.this.time.addAndGet(System.currentTimeMillis() - start);
+                            Lane.this.active.decrementAndGet();
+                            Lane.this.slots.release();
                         }
-                        Log.logException(e);
                     }
-                    continue loop;
-                }
+                });
+                return true;
+            } catch (final RejectedExecutionException e) {
+                this.waiting.decrementAndGet();
+                this.slots.release();
+                return false;
+            }
+        }
 
-                // check termination
-                if (this.terminate) {
-                    Log.logInfo("IODispatcher", "caught termination signal");
-                    break;
+        private void terminate() {
+            this.executor.shutdown();
+            try {
+                while (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    Log.logInfo("IODispatcher", "waiting for " + (this.waiting.get() + this.active.get()) + " " + this.name + " jobs to terminate");
                 }
-
-                Log.logSevere("IODispatcher", "main loop in bad state, dumpQueue.size() = " + this.dumpQueue.size() + ", mergeQueue.size() = " + this.mergeQueue.size() + ", controlQueue.availablePermits() = " + this.controlQueue.availablePermits());
-                assert false : "this process statt should not be reached"; // this should never happen
-            } catch (final Throwable e) {
-                Log.logSevere("IODispatcher", "main run job failed (X)", e);
+            } catch (final InterruptedException e) {
                 Log.logException(e);
             }
-            Log.logInfo("IODispatcher", "loop terminated");
-        } catch (final Throwable e) {
-            Log.logSevere("IODispatcher", "main run job failed (4)", e);
-            Log.logException(e);
-        } finally {
-            Log.logInfo("IODispatcher", "terminating run job");
-            this.controlQueue = null;
-            this.dumpQueue = null;
-            this.mergeQueue = null;
-            this.termination.release();
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        /**
+         * @return the number of jobs that wait for execution
+         */
+        public int queueSize() {
+            return this.waiting.get();
+        }
+
+        /**
+         * @return the number of jobs that are running
+         */
+        public int activeCount() {
+            return this.active.get();
+        }
+
+        /**
+         * @return the number of finished jobs
+         */
+        public long jobCount() {
+            return this.jobs.get();
+        }
+
+        /**
+         * @return the number of bytes that were written by all finished jobs
+         */
+        public long bytes() {
+            return this.bytes.get();
+        }
+
+        /**
+         * @return the written bytes per second of job execution time
+         */
+        public long throughput() {
+            final long t = this.time.get();
+            return t == 0 ? 0 : this.bytes.get() * 1000L / t;
         }
     }
 
-    private class DumpJob<ReferenceType extends Reference> {
+    private interface Job {
+        public File call() throws Exception;
+        public File target();
+    }
+
+    private class DumpJob<ReferenceType extends Reference> implements Job {
         private final ReferenceContainerCache<ReferenceType> cache;
         private final File file;
         private final ReferenceContainerArray<ReferenceType> array;
@@ -226,45 +328,75 @@ public class IODispatcher extends Thread {
             this.file = file;
             this.array = array;
         }
-        private void dump() {
+        public File target() {
+            return this.file;
+        }
+        public File call() throws Exception {
+            if (!this.cache.isEmpty()) this.cache.dump(this.file, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), true);
+            final long length = this.file.length();
+            this.array.mountBLOBFile(this.file);
+            return length == 0 ? null : this.file;
+        }
+        private void run() {
             try {
-                if (!this.cache.isEmpty()) this.cache.dump(this.file, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), true);
-                this.array.mountBLOBFile(this.file);
-            } catch (final IOException e) {
+                call();
+            } catch (final Exception e) {
                 Log.logException(e);
             }
         }
     }
 
-    private class MergeJob {
+    private class MergeJob implements Job {
 
-        private final File f1, f2, newFile;
+        private final File[] files;
+        private final File newFile;
         private final ArrayStack array;
         private final ReferenceFactory<? extends Reference> factory;
 
         private MergeJob(
-                final File f1,
-                final File f2,
+                final File[] files,
                 final ReferenceFactory<? extends Reference> factory,
                 final ArrayStack array,
                 final File newFile) {
-            this.f1 = f1;
-            this.f2 = f2;
+            this.files = files;
             this.factory = factory;
             this.newFile = newFile;
             this.array = array;
         }
 
+        public File target() {
+            return this.newFile;
+        }
+
+        public File call() throws InterruptedException {
+            // wait until there is enough memory for a merge; dumps free memory meanwhile
+            final long timeout = System.currentTimeMillis() + memoryWaitMax;
+            while (MemoryControl.shortStatus() && System.currentTimeMillis() < timeout) Thread.sleep(1000);
+            final Semaphore lock = locationLock(this.newFile);
+            lock.acquire();
+            try {
+                return merge();
+            } finally {
+                lock.release();
+            }
+        }
+
+        private void run() {
+            try {
+                merge();
+            } catch (final Throwable e) {
+                Log.logException(e);
+            }
+        }
+
         private File merge() {
-        	if (!this.f1.exists()) {
-        		Log.logWarning("IODispatcher", "merge of file (1) " + this.f1.getName() + " failed: file does not exists");
-        		return null;
-        	}
-        	if (this.f2 != null && !this.f2.exists()) {
-        		Log.logWarning("IODispatcher", "merge of file (2) " + this.f2.getName() + " failed: file does not exists");
-        		return null;
-        	}
-            return this.array.mergeMount(this.f1, this.f2, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize));
+            for (int i = 0; i < this.files.length; i++) {
+                if (!this.files[i].exists()) {
+                    Log.logWarning("IODispatcher", "merge of file (" + (i + 1) + ") " + this.files[i].getName() + " failed: file does not exists");
+                    return null;
+                }
+            }
+            return this.array.mergeMount(this.files, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize));
         }
     }
 
@@ -28,6 +28,7 @@ package net.yacy.kelondro.rwi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
@@ -62,10 +63,14 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     private static final long cleanupCycle =  60000;
     private static final long dumpCycle    = 600000;
 
+    // the number of bytes of the merged BLOB containers that are cached for frequently searched terms
+    public static long hotTermCacheBytes = 0;
+
     // class variables
     private final ReferenceContainerArray<ReferenceType> array;
     private       ReferenceContainerCache<ReferenceType> ram;
     private final ComparableARC<byte[], Integer>         countCache;
+    private final HotTermCache<ReferenceType>            termCache;
     private       int                                    maxRamEntries;
     private final IODispatcher                           merger;
     private       long                                   lastCleanup;
@@ -75,6 +80,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     private final Map<byte[], HandleSet>                 removeDelayedURLs; // mapping from word hashes to a list of url hashes
     private       boolean                                cleanupShallRun;
     private final Thread                                 cleanupThread;
+    private       CompactionStrategy                     compaction;
 
     public IndexCell(
             final File cellPath,
@@ -93,6 +99,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.array = new ReferenceContainerArray<ReferenceType>(cellPath, prefix, factory, termOrder, termSize);
         this.ram = new ReferenceContainerCache<ReferenceType>(factory, termOrder, termSize);
         this.countCache = new ComparableARC<byte[], Integer>(1000, termOrder);
+        this.termCache = new HotTermCache<ReferenceType>(hotTermCacheBytes, termOrder);
         this.maxRamEntries = maxRamEntries;
         this.merger.start();
         this.lastCleanup = System.currentTimeMillis();
@@ -101,6 +108,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         this.maxFileSize = maxFileSize;
         this.writeBufferSize = writeBufferSize;
         this.removeDelayedURLs = new TreeMap<byte[], HandleSet>(URIMetadataRow.rowdef.objectOrder);
+        this.compaction = new HeuristicCompaction();
         this.cleanupShallRun = true;
         this.cleanupThread = new CleanupThread();
         this.cleanupThread.start();
@@ -173,34 +181,19 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     }
 
     public boolean shrink(final long targetFileSize, final long maxFileSize) {
-        if (this.array.entries() < 2) return false;
-        boolean donesomething = false;
-
-        // first try to merge small files that match
-        int term = 10;
-        while (term-- > 0 && (this.merger.queueLength() < 3 || this.array.entries() >= 50)) {
-            if (!this.array.shrinkBestSmallFiles(this.merger, targetFileSize)) break; else donesomething = true;
-        }
-
-        // then try to merge simply any small file
-        term = 10;
-        while (term-- > 0 && (this.merger.queueLength() < 2)) {
-            if (!this.array.shrinkAnySmallFiles(this.merger, targetFileSize)) break; else donesomething = true;
-        }
-
-        // if there is no small file, then merge matching files up to limit
-        term = 10;
-        while (term-- > 0 && (this.merger.queueLength() < 1)) {
-            if (!this.array.shrinkUpToMaxSizeFiles(this.merger, maxFileSize)) break; else donesomething = true;
-        }
+        return this.compaction.shrink(this.array, this.merger, targetFileSize, maxFileSize);
+    }
 
-        // rewrite old files (hack from sixcooler, see http://forum.yacy-websuche.de/viewtopic.php?p=15004#p15004)
-        term = 10;
-        while (term-- > 0 && (this.merger.queueLength() < 1)) {
-            if (!this.array.shrinkOldFiles(this.merger, targetFileSize)) break; else donesomething = true;
-        }
+    /**
+     * set the strategy that selects the BLOB files for merging
+     * @param compaction
+     */
+    public void setCompactionStrategy(final CompactionStrategy compaction) {
+        this.compaction = compaction;
+    }
 
-        return donesomething;
+    public CompactionStrategy getCompactionStrategy() {
+        return this.compaction;
     }
 
     /*
@@ -221,6 +214,8 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
      * @throws RowSpaceExceededException
      */
     public void add(final ReferenceContainer<ReferenceType> newEntries) throws IOException, RowSpaceExceededException {
+        // new references may replace references of the cached BLOB part, so the cached container is dropped
+        this.termCache.remove(newEntries.getTermHash());
         try {
             this.ram.add(newEntries);
             final long t = System.currentTimeMillis();
@@ -234,7 +229,25 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     }
 
+    /**
+     * add a batch of containers to the RAM part of the cell in one step.
+     * This is the bulk ingest path for index transmissions; each term is sorted and merged only once.
+     * @throws IOException
+     * @throws RowSpaceExceededException
+     */
+    public void add(final Collection<ReferenceContainer<ReferenceType>> newEntries) throws IOException, RowSpaceExceededException {
+        for (final ReferenceContainer<ReferenceType> container: newEntries) this.termCache.remove(container.getTermHash());
+        try {
+            this.ram.add(newEntries);
+            EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
+        } catch (final RowSpaceExceededException e) {
+            EventTracker.update(EventTracker.EClass.WORDCACHE, Long.valueOf(this.ram.size()), true);
+            this.ram.add(newEntries);
+        }
+    }
+
     public void add(final byte[] termHash, final ReferenceType entry) throws IOException, RowSpaceExceededException {
+        this.termCache.remove(termHash);
         try {
             this.ram.add(termHash, entry);
             final long t = System.currentTimeMillis();
@@ -298,8 +311,21 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
     public ReferenceContainer<ReferenceType> get(final byte[] termHash, final HandleSet urlselection) throws IOException {
         final ReferenceContainer<ReferenceType> c0 = this.ram.get(termHash, null);
         ReferenceContainer<ReferenceType> c1 = null;
+        boolean shared = false; // a container from the hot term cache must not be altered
         try {
-            c1 = this.array.get(termHash);
+            if (this.termCache.maxMem() > 0) {
+                // the signature must be taken before the BLOBs are read
+                final long signature = this.array.signature(termHash);
+                c1 = this.termCache.get(termHash, signature);
+                if (c1 == null) {
+                    c1 = this.array.get(termHash);
+                    shared = this.termCache.put(termHash, signature, c1);
+                } else {
+                    shared = true;
+                }
+            } else {
+                c1 = this.array.get(termHash);
+            }
         } catch (final RowSpaceExceededException e2) {
             Log.logException(e2);
         }
@@ -312,14 +338,23 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
                 try {
                     result = c1.merge(c0);
                 } catch (final RowSpaceExceededException e1) {
-                    // go silently over the problem
-                    result = (c1.size() > c0.size()) ? c1: c0;
+                    // go silently over the problem; a container from the hot term cache is cloned because the delayed removals below alter it
+                    try {
+                        result = (c1.size() > c0.size()) ? (shared ? c1.topLevelClone() : c1) : c0;
+                    } catch (final RowSpaceExceededException e2) {
+                        result = c0;
+                    }
                 }
             }
         } else if (c0 != null) {
             result = c0;
         } else if (c1 != null) {
-            result = c1;
+            try {
+                result = shared ? c1.topLevelClone() : c1;
+            } catch (final RowSpaceExceededException e) {
+                Log.logException(e);
+                return null;
+            }
         }
         if (result == null) return null;
         // remove the failed urls
@@ -337,6 +372,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
      */
     public ReferenceContainer<ReferenceType> delete(final byte[] termHash) throws IOException {
         removeDelayed();
+        this.termCache.remove(termHash);
         ReferenceContainer<ReferenceType> c1 = null;
         try {
             c1 = this.array.get(termHash);
@@ -424,6 +460,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
      */
     public int remove(final byte[] termHash, final HandleSet urlHashes) throws IOException {
         this.countCache.remove(termHash);
+        this.termCache.remove(termHash);
         final int removed = this.ram.remove(termHash, urlHashes);
         int reduced;
         //final long am = this.array.mem();
@@ -439,6 +476,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
 
     public boolean remove(final byte[] termHash, final byte[] urlHashBytes) throws IOException {
         this.countCache.remove(termHash);
+        this.termCache.remove(termHash);
         final boolean removed = this.ram.remove(termHash, urlHashBytes);
         int reduced;
         //final long am = this.array.mem();
@@ -521,6 +559,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
      */
     public synchronized void clear() throws IOException {
         this.countCache.clear();
+        this.termCache.clear();
         this.removeDelayedURLs.clear();
         this.ram.clear();
         this.array.clear();
@@ -533,6 +572,7 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
      */
     public synchronized void close() {
         this.countCache.clear();
+        this.termCache.clear();
         try {removeDelayed();} catch (final IOException e) {}
         if (!this.ram.isEmpty()) this.ram.dump(this.array.newContainerBLOBFile(), (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
         // close all
@@ -555,6 +595,81 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         return asr;
     }
 
+    /**
+     * statistics of the key filters in front of the BLOB files
+     * @return the number of term probes that passed a key filter and therefore accessed a BLOB
+     */
+    public long getKeyFilterHits() {
+        return this.array.keyFilterHits();
+    }
+
+    /**
+     * statistics of the key filters in front of the BLOB files
+     * @return the number of term probes that had been omitted because a key filter excluded the BLOB
+     */
+    public long getKeyFilterMisses() {
+        return this.array.keyFilterMisses();
+    }
+
+    /**
+     * statistics of the key filters in front of the BLOB files
+     * @return the number of term probes that passed a key filter but the BLOB did not contain the term
+     */
+    public long getKeyFilterFalsePositives() {
+        return this.array.keyFilterFalsePositives();
+    }
+
+    /**
+     * the cache of merged BLOB containers for frequently searched terms
+     * @return the cache, to be used for statistics
+     */
+    public HotTermCache<ReferenceType> getHotTermCache() {
+        return this.termCache;
+    }
+
+    /**
+     * statistics of the dump lane of the IO dispatcher
+     * @return the lane that writes the RAM cache to BLOB files
+     */
+    public IODispatcher.Lane getDumpLane() {
+        return this.merger.dumpLane();
+    }
+
+    /**
+     * @return the number of BLOB files of the cell
+     */
+    public int getBLOBCount() {
+        return this.array.entries();
+    }
+
+    /**
+     * the write amplification of the BLOB files
+     * @return the number of bytes written by dumps and merges per byte written by dumps
+     */
+    public double getWriteAmplification() {
+        final long dumped = this.merger.dumpLane().bytes();
+        if (dumped == 0) return 1.0d;
+        return ((double) (dumped + this.merger.mergeLane().bytes())) / dumped;
+    }
+
+    /**
+     * the read amplification of the BLOB files
+     * @return the average number of BLOB files that had to be read for a term
+     */
+    public double getFilesPerLookup() {
+        final long lookups = this.array.lookups();
+        if (lookups == 0) return 0.0d;
+        return ((double) this.array.lookupFiles()) / lookups;
+    }
+
+    /**
+     * statistics of the merge lane of the IO dispatcher
+     * @return the lane that merges BLOB files
+     */
+    public IODispatcher.Lane getMergeLane() {
+        return this.merger.mergeLane();
+    }
+
     public int sizesMax() {
         int m = 0;
         final int[] s = sizes();
@@ -0,0 +1,117 @@
+/**
+ *  LeveledCompaction
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * leveled compaction: every file belongs to a level according to its size, where the size
+ * limit of a level is fanout times the limit of the level below. If a level has too many
+ * files, they are merged together with the smallest file of the next level. This keeps the
+ * number of files (and therefore the number of file reads for each term lookup) small at
+ * the cost of rewriting references more often, which is a good choice for SSDs.
+ * Unlike in other leveled stores the files of a ReferenceContainerArray are not partitioned
+ * by key range; each file covers the whole term space, so a level is a set of runs of one size class.
+ */
+public class LeveledCompaction extends AbstractCompactionStrategy implements CompactionStrategy {
+
+    private static final int fanout    = 10; // the size ratio between two levels
+    private static final int maxLevels = 8;
+
+    public String name() {
+        return LEVELED;
+    }
+
+    public boolean shrink(final ReferenceContainerArray<? extends Reference> array, final IODispatcher merger, final long targetFileSize, final long maxFileSize) {
+        if (array.entries() < 2) return false;
+        boolean donesomething = false;
+        int term = 10;
+        while (term-- > 0 && merger.queueLength() < 1) {
+            final File[] files = select(filesBySize(array), targetFileSize, maxFileSize);
+            if (files == null || !merge(array, merger, files)) break;
+            donesomething = true;
+        }
+
+        // rewrite old files to get rid of deleted references
+        if (!donesomething && merger.queueLength() < 1 && array.shrinkOldFiles(merger, targetFileSize)) {
+            countMerge();
+            donesomething = true;
+        }
+        return donesomething;
+    }
+
+    /**
+     * the size limits of the levels
+     */
+    private static long[] limits(final long targetFileSize, final long maxFileSize) {
+        final long[] limits = new long[maxLevels];
+        long limit = Math.max(1L, targetFileSize / fanout);
+        for (int i = 0; i < maxLevels; i++) {
+            limits[i] = Math.min(limit, maxFileSize);
+            if (limit < Long.MAX_VALUE / fanout) limit *= fanout;
+        }
+        return limits;
+    }
+
+    /**
+     * find the lowest level that has too many files
+     * @param files all files, sorted by size
+     * @return the files that shall be merged or null if all levels are within their limits
+     */
+    private static File[] select(final File[] files, final long targetFileSize, final long maxFileSize) {
+        final long[] limits = limits(targetFileSize, maxFileSize);
+        @SuppressWarnings("unchecked")
+        final List<File>[] levels = new List[maxLevels];
+        for (int i = 0; i < maxLevels; i++) levels[i] = new ArrayList<File>();
+        for (final File f: files) {
+            final long l = f.length();
+            int level = 0;
+            while (level < maxLevels - 1 && l > limits[level]) level++;
+            levels[level].add(f);
+        }
+        for (int level = 0; level < maxLevels - 1; level++) {
+            final List<File> candidates = levels[level];
+            if (candidates.size() <= (level == 0 ? 4 : 2)) continue;
+            final long limit = limits[level + 1];
+
+            // add the smallest file of the next level, if it fits
+            final List<File> selection = new ArrayList<File>();
+            long sum = 0;
+            for (final File f: candidates) {
+                if (sum + f.length() > limit && selection.size() >= 2) break;
+                selection.add(f);
+                sum += f.length();
+            }
+            if (selection.size() == candidates.size() && !levels[level + 1].isEmpty()) {
+                final File next = levels[level + 1].get(0);
+                if (sum + next.length() <= limit) selection.add(next);
+            }
+            if (selection.size() < 2 || sum > maxFileSize) continue;
+            return selection.toArray(new File[selection.size()]);
+        }
+        return null;
+    }
+
+}
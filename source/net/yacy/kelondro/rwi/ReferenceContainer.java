@@ -166,6 +166,47 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return x;
     }
 
+    /**
+     * merge the references of c with this container in one sequential pass over both sorted row sets.
+     * In contrast to putAllRecent this does not look up and insert every single entry but produces a new container.
+     * If a url hash occurs more than once, the most recent reference is kept, as in putRecent.
+     * Both input containers are sorted but not altered otherwise.
+     * @param c
+     * @return a new sorted container without double url hashes
+     * @throws RowSpaceExceededException
+     */
+    public ReferenceContainer<ReferenceType> mergeRecent(final ReferenceContainer<ReferenceType> c) throws RowSpaceExceededException {
+        final ReferenceContainer<ReferenceType> r = new ReferenceContainer<ReferenceType>(this.factory, this.termHash, size() + c.size());
+        sort();
+        c.sort();
+        final int objectsize = this.rowdef.objectsize;
+        final int keylength = this.rowdef.primaryKeyLength;
+        final byte[] target = r.chunkcache; // the constructor allocated space for both containers
+        int i0 = 0, i1 = 0, n = 0, p, last;
+        byte[] source;
+        while (i0 < this.chunkcount || i1 < c.chunkcount) {
+            if (i1 >= c.chunkcount || (i0 < this.chunkcount && this.rowdef.objectOrder.compare(this.chunkcache, i0 * objectsize, c.chunkcache, i1 * objectsize, keylength) <= 0)) {
+                source = this.chunkcache;
+                p = objectsize * i0++;
+            } else {
+                source = c.chunkcache;
+                p = objectsize * i1++;
+            }
+            last = objectsize * (n - 1);
+            if (n > 0 && this.rowdef.objectOrder.compare(target, last, source, p, keylength) == 0) {
+                // double occurrence: a more recent entry is not replaced
+                if (this.factory.produceSlow(this.rowdef.newEntry(source, p, false)).isOlder(this.factory.produceSlow(this.rowdef.newEntry(target, last, false)))) continue;
+                System.arraycopy(source, p, target, last, objectsize);
+                continue;
+            }
+            System.arraycopy(source, p, target, objectsize * n++, objectsize);
+        }
+        r.chunkcount = n;
+        r.sortBound = n;
+        r.lastTimeWrote = Math.max(this.lastTimeWrote, c.updated());
+        return r;
+    }
+
     public ReferenceType getReference(final byte[] urlHash) {
         final Row.Entry entry = super.get(urlHash, false);
         if (entry == null) return null;
@@ -399,6 +440,17 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         final int stepsTest = 12 * log2(high) * low;
 
         // start most efficient method
+        if (i1.rowdef.getOrdering().signature().equals(i2.rowdef.getOrdering().signature())) {
+            // both containers can be intersected in order; if the sizes are skewed, gallop over the large one
+            final int stepsGallop = 12 * (2 * log2(high / low) + 1) * low;
+            if (stepsEnum > stepsGallop) {
+                if (i1.size() < i2.size())
+                    return joinConstructiveByGalloping(factory, i1, i2, maxDistance);
+                else
+                    return joinConstructiveByGalloping(factory, i2, i1, maxDistance);
+            }
+            return joinConstructiveByEnumeration(factory, i1, i2, maxDistance);
+        }
         if (stepsEnum > stepsTest) {
             if (i1.size() < i2.size())
                 return joinConstructiveByTest(factory, i1, i2, maxDistance);
@@ -437,6 +489,37 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return conj;
     }
 
+    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByGalloping(
+            final ReferenceFactory<ReferenceType> factory,
+            final ReferenceContainer<ReferenceType> small,
+            final ReferenceContainer<ReferenceType> large,
+            final int maxDistance) throws RowSpaceExceededException {
+        //System.out.println("DEBUG: JOIN METHOD BY GALLOPING, maxdistance = " + maxDistance);
+        assert small.rowdef.equals(large.rowdef) : "small = " + small.rowdef.toString() + "; large = " + large.rowdef.toString();
+        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
+        small.sort();
+        large.sort();
+        final int ls = small.size(), ll = large.size();
+        int p = 0;
+        Row.Entry se;
+        byte[] urlhash;
+        ReferenceType ie;
+        for (int i = 0; i < ls && p < ll; i++) {
+            se = small.get(i, false);
+            urlhash = se.getPrimaryKeyBytes();
+            // the position in the large container only grows, so each search starts where the last one ended
+            p = large.gallop(urlhash, 0, p);
+            if (p < ll && large.match(urlhash, 0, p)) {
+                // we have found the same urls in different searches!
+                ie = factory.produceFast(factory.produceSlow(se));
+                ie.join(factory.produceSlow(large.get(p, false)));
+                if (ie.distance() <= maxDistance) conj.add(ie);
+                p++;
+            }
+        }
+        return conj;
+    }
+
     private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByEnumeration(
             final ReferenceFactory<ReferenceType> factory,
             final ReferenceContainer<ReferenceType> i1,
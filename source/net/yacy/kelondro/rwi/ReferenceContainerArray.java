@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.ranking.Rating;
 import net.yacy.kelondro.blob.ArrayStack;
@@ -45,6 +46,7 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
     protected final ReferenceFactory<ReferenceType> factory;
     protected final ArrayStack array;
+    private final AtomicLong lookups, lookupFiles; // statistics for the read amplification
 
     /**
      * open a index container array based on BLOB dumps. The content of the BLOBs will not be read
@@ -69,7 +71,10 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
             termOrder,
             termSize,
             0,
+            true,
             true);
+        this.lookups = new AtomicLong(0);
+        this.lookupFiles = new AtomicLong(0);
     }
 
     public void close() {
@@ -88,6 +93,18 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return (this.array == null) ? new int[0] : this.array.sizes();
     }
 
+    public long keyFilterHits() {
+        return this.array.keyFilterHits();
+    }
+
+    public long keyFilterMisses() {
+        return this.array.keyFilterMisses();
+    }
+
+    public long keyFilterFalsePositives() {
+        return this.array.keyFilterFalsePositives();
+    }
+
     public ByteOrder ordering() {
         return this.array.ordering();
     }
@@ -274,9 +291,11 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     public ReferenceContainer<ReferenceType> get(final byte[] termHash) throws IOException, RowSpaceExceededException {
         final long timeout = System.currentTimeMillis() + 3000;
         final Iterator<byte[]> entries = this.array.getAll(termHash).iterator();
+        this.lookups.incrementAndGet();
     	if (entries == null || !entries.hasNext()) return null;
     	final byte[] a = entries.next();
     	int k = 1;
+    	this.lookupFiles.incrementAndGet();
     	ReferenceContainer<ReferenceType> c = new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(a, this.factory.getRow()));
     	if (System.currentTimeMillis() > timeout) {
     	    Log.logWarning("ReferenceContainerArray", "timout in index retrieval (1): " + k + " tables searched. timeout = 3000");
@@ -285,6 +304,7 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	while (entries.hasNext()) {
     		c = c.merge(new ReferenceContainer<ReferenceType>(this.factory, termHash, RowSet.importRowSet(entries.next(), this.factory.getRow())));
     		k++;
+    		this.lookupFiles.incrementAndGet();
     		if (System.currentTimeMillis() > timeout) {
     		    Log.logWarning("ReferenceContainerArray", "timout in index retrieval (2): " + k + " tables searched. timeout = 3000");
     		    return c;
@@ -293,12 +313,26 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	return c;
     }
 
+    /**
+     * compute a signature of the BLOB records of a term. The signature changes if a BLOB that contains
+     * the term is mounted, merged or unmounted or if the record of the term is reduced or deleted.
+     * Only the key indexes of the BLOBs are accessed, not the records.
+     * @param termHash
+     * @return the signature
+     * @throws IOException
+     */
+    public long signature(final byte[] termHash) throws IOException {
+        return this.array.signature(termHash);
+    }
+
     public int count(final byte[] termHash) throws IOException {
         final long timeout = System.currentTimeMillis() + 3000;
         final Iterator<Long> entries = this.array.lengthAll(termHash).iterator();
+        this.lookups.incrementAndGet();
         if (entries == null || !entries.hasNext()) return 0;
         final Long a = entries.next();
         int k = 1;
+        this.lookupFiles.incrementAndGet();
         int c = RowSet.importRowCount(a, this.factory.getRow());
         assert c >= 0;
         if (System.currentTimeMillis() > timeout) {
@@ -309,6 +343,7 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
             c += RowSet.importRowCount(entries.next(), this.factory.getRow());
             assert c >= 0;
             k++;
+            this.lookupFiles.incrementAndGet();
             if (System.currentTimeMillis() > timeout) {
                 Log.logWarning("ReferenceContainerArray", "timout in index retrieval (2): " + k + " tables searched. timeout = 3000");
                 return c;
@@ -375,6 +410,43 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return this.array.entries();
     }
 
+    /**
+     * the BLOB files of the array
+     * @return the files, the oldest file first
+     */
+    public File[] files() {
+        return this.array.files();
+    }
+
+    /**
+     * unmount the given files and hand them over to a merge job
+     * @param merger
+     * @param files
+     * @return true if the merge was scheduled, false if any file was not mounted any more
+     */
+    public boolean merge(final IODispatcher merger, final File[] files) {
+        if (!this.array.unmountBLOBs(files)) return false;
+        Log.logInfo("RICELL-merge", "unmountBLOBs(): " + files.length + " files");
+        merger.merge(files, this.factory, this.array, newContainerBLOBFile());
+        return true;
+    }
+
+    /**
+     * statistics for the read amplification
+     * @return the number of get and count operations
+     */
+    public long lookups() {
+        return this.lookups.get();
+    }
+
+    /**
+     * statistics for the read amplification
+     * @return the number of BLOB files that had to be read in all get and count operations
+     */
+    public long lookupFiles() {
+        return this.lookupFiles.get();
+    }
+
     public boolean shrinkBestSmallFiles(final IODispatcher merger, final long targetFileSize) {
         final File[] ff = this.array.unmountBestMatch(2.0f, targetFileSize);
         if (ff == null) return false;
@@ -391,6 +463,14 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return true;
     }
 
+    public boolean shrinkManySmallFiles(final IODispatcher merger, final int maxCount, final long maxFileSize) {
+        final File[] ff = this.array.unmountSmallest(maxCount, maxFileSize);
+        if (ff == null) return false;
+        Log.logInfo("RICELL-shrinkN", "unmountSmallest(" + maxCount + ", " + maxFileSize + "): " + ff.length + " files");
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile());
+        return true;
+    }
+
     public boolean shrinkUpToMaxSizeFiles(final IODispatcher merger, final long maxFileSize) {
         final File[] ff = this.array.unmountBestMatch(2.0f, maxFileSize);
         if (ff == null) return false;
@@ -29,11 +29,13 @@ package net.yacy.kelondro.rwi;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import net.yacy.cora.ranking.Rating;
@@ -480,6 +482,9 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
 
     public void removeDelayed() {}
 
+    // a cached container is copied in a merge only if it is not much larger than the new references
+    private static final int MERGE_FACTOR = 1024;
+
     public void add(final ReferenceContainer<ReferenceType> container) throws RowSpaceExceededException {
         // this puts the entries into the cache
         if (this.cache == null || container == null || container.isEmpty()) return;
@@ -503,6 +508,45 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         }
     }
 
+    /**
+     * bulk ingest of a batch of containers, i.e. from a DHT transmission.
+     * The rows are grouped per term and each group is sorted and merged with the cached container
+     * in one step (see ReferenceContainer.mergeRecent) instead of putting every reference separately.
+     * The containers of the batch are sorted during that process but not altered otherwise.
+     * @param containers
+     * @throws RowSpaceExceededException
+     */
+    public void add(final Collection<ReferenceContainer<ReferenceType>> containers) throws RowSpaceExceededException {
+        if (this.cache == null || containers == null || containers.isEmpty()) return;
+
+        // group the batch per term; a term may appear more than once in a batch
+        final TreeMap<byte[], ReferenceContainer<ReferenceType>> batch = new TreeMap<byte[], ReferenceContainer<ReferenceType>>(this.termOrder);
+        ReferenceContainer<ReferenceType> group;
+        for (final ReferenceContainer<ReferenceType> container: containers) {
+            if (container == null || container.isEmpty()) continue;
+            group = batch.get(container.getTermHash());
+            if (group == null) group = ReferenceContainer.emptyContainer(this.factory, container.getTermHash());
+            batch.put(container.getTermHash(), group.mergeRecent(container));
+        }
+
+        // merge the groups into the cache
+        for (final ReferenceContainer<ReferenceType> g: batch.values()) {
+            final ByteArray tha = new ByteArray(g.getTermHash());
+            synchronized (this.cache) {
+                final ReferenceContainer<ReferenceType> entries = this.cache.get(tha);
+                if (entries == null) {
+                    this.cache.put(tha, g);
+                } else if (entries.size() > g.size() * MERGE_FACTOR) {
+                    // copying a very large container for a few new references is more expensive than inserting them
+                    entries.putAllRecent(g);
+                    this.cache.put(tha, entries);
+                } else {
+                    this.cache.put(tha, entries.mergeRecent(g));
+                }
+            }
+        }
+    }
+
     public void add(final byte[] termHash, final ReferenceType newEntry) throws RowSpaceExceededException {
         assert this.cache != null;
         if (this.cache == null) return;
@@ -51,6 +51,19 @@ public class ReferenceIterator <ReferenceType extends Reference> extends LookAhe
         this.factory = factory;
     }
 
+    /**
+     * create an iterator with a given read buffer size; use this if many files are read at the same time
+     * @param blobFile
+     * @param factory
+     * @param readBuffer
+     * @throws IOException
+     */
+    public ReferenceIterator(final File blobFile, final ReferenceFactory<ReferenceType> factory, final int readBuffer) throws IOException {
+        this.blobs = new HeapReader.entries(blobFile, factory.getRow().primaryKeyLength, readBuffer);
+        this.blobFile = blobFile;
+        this.factory = factory;
+    }
+
     /**
      * return an index container
      * because they may get very large, it is wise to deallocate some memory before calling next()
@@ -0,0 +1,101 @@
+/**
+ *  SizeTieredCompaction
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * size-tiered compaction: files of similar size are collected in buckets and a bucket is
+ * merged as a whole once it contains enough files. Every reference is rewritten only about
+ * once per tier, so the write amplification is low; a term may be spread over several files
+ * of each tier, which makes lookups more expensive. This is a good choice for spinning disks
+ * with a high write load.
+ */
+public class SizeTieredCompaction extends AbstractCompactionStrategy implements CompactionStrategy {
+
+    private static final int    minThreshold  = 4;    // minimum number of files in a bucket to start a merge
+    private static final int    maxThreshold  = 32;   // maximum number of files that are merged in one pass
+    private static final double bucketLow     = 0.5;  // files between bucketLow and bucketHigh of the bucket average belong to the bucket
+    private static final double bucketHigh    = 1.5;
+    private static final long   minBucketSize = 4L * 1024L * 1024L; // all files below this size are in the same bucket
+
+    public String name() {
+        return TIERED;
+    }
+
+    public boolean shrink(final ReferenceContainerArray<? extends Reference> array, final IODispatcher merger, final long targetFileSize, final long maxFileSize) {
+        if (array.entries() < 2) return false;
+        boolean donesomething = false;
+        int term = 10;
+        while (term-- > 0 && merger.queueLength() < 1) {
+            final File[] bucket = bucket(filesBySize(array), maxFileSize);
+            if (bucket == null || !merge(array, merger, bucket)) break;
+            donesomething = true;
+        }
+
+        // rewrite old files to get rid of deleted references
+        if (!donesomething && merger.queueLength() < 1 && array.shrinkOldFiles(merger, targetFileSize)) {
+            countMerge();
+            donesomething = true;
+        }
+        return donesomething;
+    }
+
+    /**
+     * find the bucket of the smallest files that has enough files for a merge
+     * @param files all files, sorted by size
+     * @param maxFileSize
+     * @return the files that shall be merged or null if there is no such bucket
+     */
+    private static File[] bucket(final File[] files, final long maxFileSize) {
+        List<File> bucket = new ArrayList<File>();
+        long sum = 0;
+        for (final File f: files) {
+            final long l = f.length();
+            if (l > maxFileSize / 2) break; // the result would be too large
+            final double avg = bucket.isEmpty() ? 0.0d : ((double) sum) / bucket.size();
+            if (bucket.isEmpty() || l < minBucketSize || (l >= avg * bucketLow && l <= avg * bucketHigh)) {
+                bucket.add(f);
+                sum += l;
+                if (bucket.size() >= maxThreshold) break;
+                continue;
+            }
+            // the file starts a new bucket
+            if (bucket.size() >= minThreshold) break;
+            bucket = new ArrayList<File>();
+            bucket.add(f);
+            sum = l;
+        }
+        if (bucket.size() < minThreshold) return null;
+
+        // cut the bucket if the merged file would become too large
+        sum = 0;
+        int c = 0;
+        while (c < bucket.size() && sum + bucket.get(c).length() <= maxFileSize) sum += bucket.get(c++).length();
+        if (c < minThreshold) return null;
+        return bucket.subList(0, c).toArray(new File[c]);
+    }
+
+}
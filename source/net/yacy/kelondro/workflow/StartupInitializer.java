@@ -0,0 +1,97 @@
+/**
+ *  StartupInitializer
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.kelondro.workflow;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * a startup initializer opens independent data structures concurrently.
+ * Each opening job is started with start() and returns a future; a job that depends on the
+ * result of another job, or the code that needs the result, waits for it with await().
+ * With a concurrency of one, all jobs are executed at once in the calling thread,
+ * which is the same as opening the data structures one after another.
+ */
+public class StartupInitializer {
+
+    // the number of threads of each initializer; 1 means that all jobs are executed in the calling thread
+    public static int concurrency = Runtime.getRuntime().availableProcessors();
+
+    private final ExecutorService executor;
+
+    /**
+     * create an initializer
+     * @param name the prefix of the thread names
+     */
+    public StartupInitializer(final String name) {
+        this.executor = concurrency <= 1 ? null : Executors.newFixedThreadPool(concurrency, new NamePrefixThreadFactory(name));
+    }
+
+    /**
+     * start a job
+     * @param job
+     * @return the future of the job result
+     */
+    public <T> Future<T> start(final Callable<T> job) {
+        if (this.executor == null) {
+            final FutureTask<T> task = new FutureTask<T>(job);
+            task.run();
+            return task;
+        }
+        return this.executor.submit(job);
+    }
+
+    /**
+     * finish the initializer: the running jobs are completed, but no new jobs can be started
+     */
+    public void shutdown() {
+        if (this.executor != null) this.executor.shutdown();
+    }
+
+    /**
+     * wait for the result of a job
+     * @param job the future of the job
+     * @return the result of the job
+     * @throws IOException if the job has thrown an IOException
+     */
+    public static <T> T await(final Future<T> job) throws IOException {
+        try {
+            return job.get();
+        } catch (final InterruptedException e) {
+            throw new IOException("interrupted while waiting for initialization: " + e.getMessage());
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause == null ? e.getMessage() : cause.getMessage());
+        }
+    }
+
+}
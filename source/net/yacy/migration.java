@@ -38,6 +38,7 @@ public class migration {
     public static final int TAGDB_WITH_TAGHASH=1635; //tagDB keys are tagHashes instead of plain tagname.
     public static final int NEW_OVERLAYS=4422;
     public static final int IDX_HOST=7724; // api for index retrieval: host index
+    public static final int RWI_BINARY=8200; // transferRWI accepts the binary RWI format
 
     public static void migrate(final Switchboard sb, final int fromRev, final int toRev){
         if(fromRev < toRev){
@@ -91,6 +91,7 @@ import net.yacy.kelondro.rwi.ReferenceContainerCache;
 import net.yacy.kelondro.util.ByteBuffer;
 import net.yacy.kelondro.util.EventTracker;
 import net.yacy.kelondro.util.FileUtils;
+import net.yacy.peers.dht.RWIBinaryFormat;
 import net.yacy.peers.graphics.ProfilingGraph;
 import net.yacy.peers.graphics.WebStructureGraph;
 import net.yacy.peers.graphics.WebStructureGraph.HostReference;
@@ -955,11 +956,17 @@ public final class Protocol {
             gzipBody = false;
         }
 
+        // peers that know the binary format get the rows in their native layout, all others the property form
+        final boolean binary = targetSeed.getRevision() >= migration.RWI_BINARY;
         int indexcount = 0;
-        final StringBuilder entrypost = new StringBuilder(indexes.size() * 73);
+        final StringBuilder entrypost = new StringBuilder(binary ? 0 : indexes.size() * 73);
         Iterator<WordReference> eenum;
         Reference entry;
         for (final ReferenceContainer<WordReference> ic: indexes) {
+            if (binary) {
+                indexcount += ic.size();
+                continue;
+            }
             eenum = ic.entries();
             while (eenum.hasNext()) {
                 entry = eenum.next();
@@ -981,7 +988,12 @@ public final class Protocol {
             final Map<String,ContentBody> parts = basicRequestParts(Switchboard.getSwitchboard(), targetSeed.hash, salt);
             parts.put("wordc", UTF8.StringBody(Integer.toString(indexes.size())));
             parts.put("entryc", UTF8.StringBody(Integer.toString(indexcount)));
-            parts.put("indexes", UTF8.StringBody(entrypost.toString()));
+            if (binary) {
+                entrypost.append(RWIBinaryFormat.encodeString(indexes));
+                parts.put("indexesBinary", UTF8.StringBody(entrypost.toString()));
+            } else {
+                parts.put("indexes", UTF8.StringBody(entrypost.toString()));
+            }
             // final byte[] content = HTTPConnector.getConnector(MultiProtocolURI.yacybotUserAgent).post(new MultiProtocolURI("http://" + address + "/yacy/transferRWI.html"), timeout, targetSeed.getHexHash() + ".yacyh", parts, gzipBody);
             final HTTPClient httpClient = new HTTPClient(ClientIdentification.getUserAgent(), timeout);
             final byte[] content = httpClient.POSTbytes(new MultiProtocolURI("http://" + address + "/yacy/transferRWI.html"), targetSeed.getHexHash() + ".yacyh", parts, gzipBody);
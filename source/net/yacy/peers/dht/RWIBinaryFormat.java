@@ -0,0 +1,139 @@
+/**
+ *  RWIBinaryFormat
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.peers.dht;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.index.RowSet;
+import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.search.index.Segment;
+
+/**
+ * binary wire format for the transmission of RWIs with transferRWI.
+ * Instead of one text line with the property form of every reference, the references
+ * are grouped per term and sent in their native row layout. The stream is deflated.
+ * layout (before compression):
+ *  magic 'R', version byte, row size (int), term hash length (byte), container count (int),
+ *  then for each container: term hash, entry count (int), entry count * row size bytes.
+ * Because the servlet arguments are strings, the compressed stream is transported base64-encoded.
+ */
+public final class RWIBinaryFormat {
+
+    public static final byte VERSION = 1;
+    private static final byte MAGIC = 'R';
+
+    /**
+     * write the containers into a compressed binary stream
+     * @param containers
+     * @return the compressed bytes
+     * @throws IOException
+     */
+    public static byte[] encode(final Iterable<ReferenceContainer<WordReference>> containers) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(4096);
+        final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(baos));
+        final int rowsize = WordReferenceRow.urlEntryRow.objectsize;
+        int count = 0;
+        for (final ReferenceContainer<WordReference> c: containers) if (!c.isEmpty()) count++;
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(rowsize);
+        out.writeByte(Word.commonHashLength);
+        out.writeInt(count);
+        final byte[] row = new byte[rowsize];
+        for (final ReferenceContainer<WordReference> c: containers) {
+            final int size = c.size();
+            if (size == 0) continue;
+            assert c.getTermHash().length == Word.commonHashLength;
+            out.write(c.getTermHash(), 0, Word.commonHashLength);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                c.get(i, false).writeToArray(row, 0);
+                out.write(row);
+            }
+        }
+        out.close();
+        return baos.toByteArray();
+    }
+
+    public static String encodeString(final Iterable<ReferenceContainer<WordReference>> containers) throws IOException {
+        return Base64Order.enhancedCoder.encode(encode(containers));
+    }
+
+    /**
+     * read containers from a compressed binary stream
+     * @param b the compressed bytes as produced by encode()
+     * @param maxEntries the maximum number of references that are read; all following are ignored
+     * @return the containers in the order of the stream
+     * @throws IOException if the stream has an unknown version or does not fit to our row layout
+     */
+    public static List<ReferenceContainer<WordReference>> decode(final byte[] b, final int maxEntries) throws IOException {
+        final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(b)));
+        try {
+            if (in.readByte() != MAGIC) throw new IOException("no RWI stream");
+            final byte version = in.readByte();
+            if (version != VERSION) throw new IOException("unsupported RWI stream version " + version);
+            final int rowsize = in.readInt();
+            if (rowsize != WordReferenceRow.urlEntryRow.objectsize) throw new IOException("wrong row size " + rowsize);
+            final int hashlength = in.readByte();
+            if (hashlength != Word.commonHashLength) throw new IOException("wrong term hash length " + hashlength);
+            final int count = in.readInt();
+            if (count < 0) throw new IOException("wrong container count " + count);
+            final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>(Math.min(count, 1000));
+            int remaining = maxEntries;
+            for (int c = 0; c < count && remaining > 0; c++) {
+                final byte[] termHash = new byte[hashlength];
+                in.readFully(termHash);
+                final int size = in.readInt();
+                if (size < 0) throw new IOException("wrong container size " + size);
+                final int take = Math.min(size, remaining); // protection against flooding
+                final byte[] rows = new byte[take * rowsize];
+                in.readFully(rows);
+                remaining -= take;
+                containers.add(new ReferenceContainer<WordReference>(Segment.wordReferenceFactory, termHash, new RowSet(WordReferenceRow.urlEntryRow, take, rows, 0)));
+                if (take < size) break;
+            }
+            return containers;
+        } catch (final EOFException e) {
+            throw new IOException("truncated RWI stream");
+        } finally {
+            in.close();
+        }
+    }
+
+    public static List<ReferenceContainer<WordReference>> decodeString(final String s, final int maxEntries) throws IOException {
+        return decode(Base64Order.enhancedCoder.decode(s), maxEntries);
+    }
+
+}
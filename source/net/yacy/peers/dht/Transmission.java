@@ -43,6 +43,7 @@ import net.yacy.kelondro.order.Base64Order;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceContainerCache;
 import net.yacy.kelondro.workflow.WorkflowJob;
+import net.yacy.migration;
 import net.yacy.peers.Protocol;
 import net.yacy.peers.Seed;
 import net.yacy.peers.SeedDB;
@@ -53,6 +54,8 @@ public class Transmission {
     // The number of RWIs we can be sure a remote peer will accept
     // anything beyond that might get discarded without notice
     public static final int maxRWIsCount = 1000; // since SVN 7993 hardcoded in htroot/yacy/transferRWI.java:161
+    // peers that receive the binary transfer format do not need to parse the entries and accept larger chunks
+    public static final int maxRWIsCountBinary = 4000;
 
     protected Log log;
     protected Segment segment;
@@ -93,6 +96,7 @@ public class Transmission {
         private final SortedMap<byte[], URIMetadataRow> references;
         private final HandleSet                       badReferences;
         private final List<Seed>             targets;
+        private final int                       maxRWIs;
         private int                             hit, miss;
 
         /**
@@ -109,6 +113,15 @@ public class Transmission {
             this.references = new TreeMap<byte[], URIMetadataRow>(Base64Order.enhancedCoder);
             this.badReferences = new HandleSet(WordReferenceRow.urlEntryRow.primaryKeyLength, WordReferenceRow.urlEntryRow.objectOrder, 0);
             this.targets    = targets;
+            // the chunk may be sent to any of the targets, so it must fit into the smallest accepted size
+            int max = maxRWIsCountBinary;
+            for (final Seed target: targets) {
+                if (target.getRevision() < migration.RWI_BINARY) {
+                    max = maxRWIsCount;
+                    break;
+                }
+            }
+            this.maxRWIs = max;
             this.hit = 0;
             this.miss = 0;
         }
@@ -153,7 +166,7 @@ public class Transmission {
          * @throws RowSpaceExceededException
          */
         public void add(final ReferenceContainer<WordReference> container) throws RowSpaceExceededException {
-            int remaining = maxRWIsCount;
+            int remaining = this.maxRWIs;
             for (final ReferenceContainer<WordReference> ic : this) remaining -= ic.size();
             if (remaining <= 0) {
                 // No space left in this chunk
@@ -34,10 +34,9 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import net.yacy.kelondro.data.meta.DigestURI;
 import net.yacy.kelondro.data.meta.URIMetadataRow;
@@ -94,6 +93,9 @@ public class Blacklist {
     private final Map<String, HandleSet> cachedUrlHashs;
     private final Map<String, Map<String, List<String>>> hostpaths_matchable; // key=host, value=path; mapped url is http://host/path; path does not start with '/' here
     private final Map<String, Map<String, List<String>>> hostpaths_notmatchable; // key=host, value=path; mapped url is http://host/path; path does not start with '/' here
+    private final Map<String, BlacklistMatcher> matchers; // compiled form of the host/path maps; key=blacklist type
+    private final Map<String, Object> compilers; // one lock for each blacklist type to compile the host/path maps only once
+    private long changes; // counts the changes of the host/path maps; a matcher is only stored if there was no change during its compilation
 
     public Blacklist(final File rootPath) {
 
@@ -103,11 +105,15 @@ public class Blacklist {
         this.hostpaths_matchable = new HashMap<String, Map<String, List<String>>>();
         this.hostpaths_notmatchable = new HashMap<String, Map<String, List<String>>>();
         this.cachedUrlHashs = new HashMap<String, HandleSet>();
+        this.matchers = new ConcurrentHashMap<String, BlacklistMatcher>();
+        this.compilers = new HashMap<String, Object>();
+        this.changes = 0;
 
         for (final String blacklistType : BLACKLIST_TYPES) {
             this.hostpaths_matchable.put(blacklistType, new HashMap<String, List<String>>());
             this.hostpaths_notmatchable.put(blacklistType, new HashMap<String, List<String>>());
             this.cachedUrlHashs.put(blacklistType, new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 0));
+            this.compilers.put(blacklistType, new Object());
         }
     }
 
@@ -147,7 +153,7 @@ public class Blacklist {
         return this.cachedUrlHashs.get(blacklistType);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         for (final Map<String, List<String>> entry : this.hostpaths_matchable.values()) {
             entry.clear();
         }
@@ -157,9 +163,54 @@ public class Blacklist {
         for (final HandleSet entry : this.cachedUrlHashs.values()) {
             entry.clear();
         }
+        this.matchers.clear();
+        this.changes++;
     }
 
-    public int size() {
+    /**
+     * get the compiled matcher for a blacklist type; it is created if the blacklist has been changed.
+     * All changes of the blacklist maps are synchronized on this object. The maps are copied under
+     * that lock and the copy is compiled without it, so changes and lookups of other blacklist types
+     * are not blocked by a compilation. Concurrent lookups of the same type wait for one compilation.
+     * If the blacklist was changed during the compilation, the matcher is used for the current lookup
+     * but it is not stored; the next lookup compiles the changed maps.
+     * @param blacklistType
+     * @return the matcher
+     */
+    private BlacklistMatcher getMatcher(final String blacklistType) {
+        BlacklistMatcher matcher = this.matchers.get(blacklistType);
+        if (matcher != null) return matcher;
+        final Object compiler = this.compilers.get(blacklistType);
+        if (compiler == null) {
+            throw new IllegalArgumentException("Unknown blacklist type: " + blacklistType + ".");
+        }
+        synchronized (compiler) {
+            matcher = this.matchers.get(blacklistType);
+            if (matcher != null) return matcher;
+            final Map<String, List<String>> matchable, notmatchable;
+            final long version;
+            synchronized (this) {
+                matchable = copy(getBlacklistMap(blacklistType, true));
+                notmatchable = copy(getBlacklistMap(blacklistType, false));
+                version = this.changes;
+            }
+            matcher = new BlacklistMatcher(matchable, notmatchable);
+            synchronized (this) {
+                if (version == this.changes) this.matchers.put(blacklistType, matcher);
+            }
+        }
+        return matcher;
+    }
+
+    private static Map<String, List<String>> copy(final Map<String, List<String>> hostpaths) {
+        final Map<String, List<String>> c = new HashMap<String, List<String>>(hostpaths.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, List<String>> entry : hostpaths.entrySet()) {
+            c.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+        }
+        return c;
+    }
+
+    public synchronized int size() {
         int size = 0;
         for (final String entry : this.hostpaths_matchable.keySet()) {
             for (final List<String> ientry : this.hostpaths_matchable.get(entry).values()) {
@@ -180,7 +231,7 @@ public class Blacklist {
         }
     }
 
-    private void loadList(final BlacklistFile blFile, final String sep) {
+    private synchronized void loadList(final BlacklistFile blFile, final String sep) {
         final Map<String, List<String>> blacklistMapMatch = getBlacklistMap(blFile.getType(), true);
         final Map<String, List<String>> blacklistMapNotMatch = getBlacklistMap(blFile.getType(), false);
         Set<Map.Entry<String, List<String>>> loadedBlacklist;
@@ -217,6 +268,9 @@ public class Blacklist {
                 }
             }
         }
+
+        this.matchers.remove(blFile.getType());
+        this.changes++;
     }
 
     public void loadList(final String blacklistType, final String fileNames, final String sep) {
@@ -224,14 +278,19 @@ public class Blacklist {
         final BlacklistFile blFile = new BlacklistFile(fileNames, blacklistType);
 
         loadList(blFile, sep);
+
+        // compile the changed blacklist; this is done without the lock on the blacklist, see getMatcher
+        getMatcher(blacklistType);
     }
 
-    public void removeAll(final String blacklistType, final String host) {
+    public synchronized void removeAll(final String blacklistType, final String host) {
         getBlacklistMap(blacklistType, true).remove(host);
         getBlacklistMap(blacklistType, false).remove(host);
+        this.matchers.remove(blacklistType);
+        this.changes++;
     }
 
-    public void remove(final String blacklistType, final String host, final String path) {
+    public synchronized void remove(final String blacklistType, final String host, final String path) {
 
         final Map<String, List<String>> blacklistMap = getBlacklistMap(blacklistType, true);
         List<String> hostList = blacklistMap.get(host);
@@ -250,9 +309,11 @@ public class Blacklist {
                 blacklistMapNotMatch.remove(host);
             }
         }
+        this.matchers.remove(blacklistType);
+        this.changes++;
     }
 
-    public void add(final String blacklistType, final String host, final String path) {
+    public synchronized void add(final String blacklistType, final String host, final String path) {
         if (host == null) {
             throw new IllegalArgumentException("host may not be null");
         }
@@ -274,6 +335,8 @@ public class Blacklist {
         }
 
         hostList.add(p);
+        this.matchers.remove(blacklistType);
+        this.changes++;
     }
 
     public int blacklistCacheSize() {
@@ -289,7 +352,7 @@ public class Blacklist {
         return getCacheUrlHashsSet(blacklistType).has(urlHash);
     }
 
-    public boolean contains(final String blacklistType, final String host, final String path) {
+    public synchronized boolean contains(final String blacklistType, final String host, final String path) {
         boolean ret = false;
 
         if (blacklistType != null && host != null && path != null) {
@@ -331,12 +394,16 @@ public class Blacklist {
         return true;
     }
 
+    private static final Pattern simpleDomain = Pattern.compile("^[a-z0-9.-]*$");
+    private static final Pattern leadingWildcard = Pattern.compile("^\\*\\.[a-z0-9-.]*$");
+    private static final Pattern trailingWildcard = Pattern.compile("^[a-z0-9-.]*\\.\\*$");
+
     public static boolean isMatchable(final String host) {
 
         return (
-                (Pattern.matches("^[a-z0-9.-]*$", host))            // simple Domain (yacy.net or www.yacy.net)
-                || (Pattern.matches("^\\*\\.[a-z0-9-.]*$", host))   // start with *. (not .* and * must follow a dot)
-                || (Pattern.matches("^[a-z0-9-.]*\\.\\*$", host))   // ends with .* (not *. and before * must be a dot)
+                (simpleDomain.matcher(host).matches())          // simple Domain (yacy.net or www.yacy.net)
+                || (leadingWildcard.matcher(host).matches())    // start with *. (not .* and * must follow a dot)
+                || (trailingWildcard.matcher(host).matches())   // ends with .* (not *. and before * must be a dot)
                 );
     }
 
@@ -352,82 +419,8 @@ public class Blacklist {
             throw new IllegalArgumentException("path may not be null");
         }
 
-        // getting the proper blacklist
-        final Map<String, List<String>> blacklistMapMatched = getBlacklistMap(blacklistType, true);
-
         final String p = (path.length() > 0 && path.charAt(0) == '/') ? path.substring(1) : path;
-
-        List<String> app;
-        boolean matched = false;
-        String pp = ""; // path-pattern
-
-        // try to match complete domain
-        if (!matched && (app = blacklistMapMatched.get(hostlow)) != null) {
-            for (int i = app.size() - 1; !matched && i > -1; i--) {
-                pp = app.get(i);
-                if (pp.indexOf("?*",0) > 0) {
-                    // prevent "Dangling meta character '*'" exception
-                    Log.logWarning("Blacklist", "ignored blacklist path to prevent 'Dangling meta character' exception: " + pp);
-                    continue;
-                }
-                matched |= (("*".equals(pp)) || (p.matches(pp)));
-            }
-        }
-        // first try to match the domain with wildcard '*'
-        // [TL] While "." are found within the string
-        int index = 0;
-        while (!matched && (index = hostlow.indexOf('.', index + 1)) != -1) {
-            if ((app = blacklistMapMatched.get(hostlow.substring(0, index + 1) + "*")) != null) {
-                for (int i = app.size() - 1; !matched && i > -1; i--) {
-                    pp = app.get(i);
-                    matched |= (("*".equals(pp)) || (p.matches(pp)));
-                }
-            }
-            if ((app = blacklistMapMatched.get(hostlow.substring(0, index))) != null) {
-                for (int i = app.size() - 1; !matched && i > -1; i--) {
-                    pp = app.get(i);
-                    matched |= (("*".equals(pp)) || (p.matches(pp)));
-                }
-            }
-        }
-        index = hostlow.length();
-        while (!matched && (index = hostlow.lastIndexOf('.', index - 1)) != -1) {
-            if ((app = blacklistMapMatched.get("*" + hostlow.substring(index, hostlow.length()))) != null) {
-                for (int i = app.size() - 1; !matched && i > -1; i--) {
-                    pp = app.get(i);
-                    matched |= (("*".equals(pp)) || (p.matches(pp)));
-                }
-            }
-            if ((app = blacklistMapMatched.get(hostlow.substring(index + 1, hostlow.length()))) != null) {
-                for (int i = app.size() - 1; !matched && i > -1; i--) {
-                    pp = app.get(i);
-                    matched |= (("*".equals(pp)) || (p.matches(pp)));
-                }
-            }
-        }
-
-
-        // loop over all Regexentrys
-        if (!matched) {
-            final Map<String, List<String>> blacklistMapNotMatched = getBlacklistMap(blacklistType, false);
-            String key;
-            for (final Entry<String, List<String>> entry : blacklistMapNotMatched.entrySet()) {
-                key = entry.getKey();
-                try {
-                    if (Pattern.matches(key, hostlow)) {
-                        app = entry.getValue();
-                        for (int i = 0; i < app.size(); i++) {
-                            if (Pattern.matches(app.get(i), p)) {
-                                return true;
-                            }
-                        }
-                    }
-                } catch (final PatternSyntaxException e) {
-                    //System.out.println(e.toString());
-                }
-            }
-        }
-        return matched;
+        return getMatcher(blacklistType).isListed(hostlow, p);
     }
 
     public BlacklistError checkError(final String element, final Map<String, String> properties) {
@@ -0,0 +1,287 @@
+/**
+ *  BlacklistMatcher
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.yacy.kelondro.logging.Log;
+
+/**
+ * a compiled form of the host and path patterns of one blacklist type.
+ * The matchable host keys are stored in two tries of host labels: a trie of the labels in reverse
+ * order for domains and '*.domain' keys and a trie of the labels in forward order for 'host.*' keys;
+ * a lookup walks each trie once along the labels of the host. The path patterns of a host key are
+ * compiled once and split into literals, literal prefixes and regular expressions.
+ * A matcher is immutable; it must be created again if the blacklist changes.
+ */
+public final class BlacklistMatcher {
+
+    private final Node suffixes; // host labels in reverse order: com -> example -> www
+    private final Node prefixes; // host labels in forward order: www -> example -> com
+    private final List<Pattern> regexHosts; // host keys that are regular expressions
+    private final List<PathMatcher> regexPaths;
+
+    /**
+     * compile the blacklist maps
+     * @param matchable mapping from host keys that are domains or domains with a leading or trailing wildcard to path patterns
+     * @param notmatchable mapping from host keys that are regular expressions to path patterns
+     */
+    public BlacklistMatcher(final Map<String, List<String>> matchable, final Map<String, List<String>> notmatchable) {
+        this.suffixes = new Node();
+        this.prefixes = new Node();
+        this.regexHosts = new ArrayList<Pattern>();
+        this.regexPaths = new ArrayList<PathMatcher>();
+        for (final Map.Entry<String, List<String>> entry: matchable.entrySet()) {
+            final String key = entry.getKey();
+            if (key.startsWith("*.")) {
+                // matches all sub-domains of the domain
+                this.suffixes.reverse(key.substring(2), true).wildcard().addAll(entry.getValue());
+            } else if (key.endsWith(".*")) {
+                // matches all hosts that start with the given labels
+                this.prefixes.forward(key.substring(0, key.length() - 2), true).wildcard().addAll(entry.getValue());
+            } else {
+                // matches the host, all sub-domains and all hosts that start with the given labels
+                this.suffixes.reverse(key, true).exact().addAll(entry.getValue());
+                this.prefixes.forward(key, true).exact().addAll(entry.getValue());
+            }
+        }
+        for (final Map.Entry<String, List<String>> entry: notmatchable.entrySet()) {
+            try {
+                final Pattern host = Pattern.compile(entry.getKey());
+                final PathMatcher paths = new PathMatcher();
+                paths.addAll(entry.getValue());
+                this.regexHosts.add(host);
+                this.regexPaths.add(paths);
+            } catch (final PatternSyntaxException e) {
+                Log.logWarning("Blacklist", "ignored blacklist host with wrong pattern: " + entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * check if an url is matched by the blacklist
+     * @param hostlow the host of the url in lower case
+     * @param path the path of the url without a leading '/'
+     * @return true if the url is listed
+     */
+    public boolean isListed(final String hostlow, final String path) {
+        final String[] labels = hostlow.split("\\.", -1);
+
+        // the host and its super-domains
+        Node node = this.suffixes;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            node = node.child(labels[i]);
+            if (node == null) break;
+            if (node.exact != null && node.exact.matches(path)) return true;
+            if (i > 0 && node.wildcard != null && node.wildcard.matches(path)) return true;
+        }
+
+        // the leading labels of the host
+        node = this.prefixes;
+        for (int i = 0; i < labels.length - 1; i++) {
+            node = node.child(labels[i]);
+            if (node == null) break;
+            if (node.exact != null && node.exact.matches(path)) return true;
+            if (node.wildcard != null && node.wildcard.matches(path)) return true;
+        }
+
+        // hosts that are regular expressions
+        for (int i = 0; i < this.regexHosts.size(); i++) {
+            if (this.regexHosts.get(i).matcher(hostlow).matches() && this.regexPaths.get(i).matches(path)) return true;
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        private Map<String, Node> children = null;
+        private PathMatcher exact = null, wildcard = null;
+
+        private Node child(final String label) {
+            return this.children == null ? null : this.children.get(label);
+        }
+
+        private Node child(final String label, final boolean create) {
+            Node n = child(label);
+            if (n == null && create) {
+                if (this.children == null) this.children = new HashMap<String, Node>();
+                n = new Node();
+                this.children.put(label, n);
+            }
+            return n;
+        }
+
+        private Node reverse(final String host, final boolean create) {
+            final String[] labels = host.split("\\.", -1);
+            Node n = this;
+            for (int i = labels.length - 1; i >= 0 && n != null; i--) n = n.child(labels[i], create);
+            return n;
+        }
+
+        private Node forward(final String host, final boolean create) {
+            final String[] labels = host.split("\\.", -1);
+            Node n = this;
+            for (int i = 0; i < labels.length && n != null; i++) n = n.child(labels[i], create);
+            return n;
+        }
+
+        private PathMatcher exact() {
+            if (this.exact == null) this.exact = new PathMatcher();
+            return this.exact;
+        }
+
+        private PathMatcher wildcard() {
+            if (this.wildcard == null) this.wildcard = new PathMatcher();
+            return this.wildcard;
+        }
+    }
+
+    /**
+     * the path patterns of a host key. Patterns without meta characters are matched
+     * with hash lookups, all other patterns are compiled once.
+     */
+    private static final class PathMatcher {
+
+        private static final Pattern metaCharacters = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+        private boolean all = false;
+        private Set<String> literals = null;
+        private Set<String> prefixes = null;
+        private int[] prefixLengths = new int[0];
+        private List<Pattern> patterns = null;
+
+        private void addAll(final List<String> paths) {
+            for (final String p: paths) add(p);
+        }
+
+        private void add(final String pattern) {
+            if (this.all) return;
+            if ("*".equals(pattern) || ".*".equals(pattern)) {
+                this.all = true;
+                this.literals = null;
+                this.prefixes = null;
+                this.patterns = null;
+                return;
+            }
+            if (!metaCharacters.matcher(pattern).find()) {
+                if (this.literals == null) this.literals = new HashSet<String>();
+                this.literals.add(pattern);
+                return;
+            }
+            if (pattern.endsWith(".*") && !metaCharacters.matcher(pattern.substring(0, pattern.length() - 2)).find()) {
+                final String prefix = pattern.substring(0, pattern.length() - 2);
+                if (this.prefixes == null) this.prefixes = new HashSet<String>();
+                if (this.prefixes.add(prefix)) {
+                    boolean known = false;
+                    for (final int l: this.prefixLengths) if (l == prefix.length()) known = true;
+                    if (!known) {
+                        final int[] a = new int[this.prefixLengths.length + 1];
+                        System.arraycopy(this.prefixLengths, 0, a, 0, this.prefixLengths.length);
+                        a[this.prefixLengths.length] = prefix.length();
+                        this.prefixLengths = a;
+                    }
+                }
+                return;
+            }
+            try {
+                if (this.patterns == null) this.patterns = new ArrayList<Pattern>();
+                this.patterns.add(Pattern.compile(pattern));
+            } catch (final PatternSyntaxException e) {
+                Log.logWarning("Blacklist", "ignored blacklist path with wrong pattern: " + pattern);
+            }
+        }
+
+        private boolean matches(final String path) {
+            if (this.all) return true;
+            if (this.literals != null && this.literals.contains(path)) return true;
+            if (this.prefixes != null) {
+                for (final int l: this.prefixLengths) {
+                    if (l <= path.length() && this.prefixes.contains(path.substring(0, l))) return true;
+                }
+            }
+            if (this.patterns != null) {
+                for (final Pattern p: this.patterns) if (p.matcher(path).matches()) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * a micro benchmark for the matcher: create a blacklist with the given number
+     * of entries and test random urls against it
+     * @param args the number of blacklist entries and the number of tested urls
+     */
+    public static void main(final String[] args) {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int tests = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        final Random r = new Random(0);
+        final String[] tld = new String[]{"com", "net", "org", "de", "info"};
+        final Map<String, List<String>> matchable = new HashMap<String, List<String>>();
+        final Map<String, List<String>> notmatchable = new HashMap<String, List<String>>();
+        for (int i = 0; i < entries; i++) {
+            final String domain = "d" + r.nextInt(entries * 4) + "." + tld[r.nextInt(tld.length)];
+            String key;
+            String path;
+            switch (r.nextInt(10)) {
+                case 0:  key = "*." + domain; path = ".*"; break;
+                case 1:  key = "www." + domain.substring(0, domain.indexOf('.')) + ".*"; path = ".*"; break;
+                case 2:  key = domain; path = "ads/.*"; break;
+                case 3:  key = domain; path = ".*banner.*"; break;
+                default: key = domain; path = ".*";
+            }
+            List<String> paths = matchable.get(key);
+            if (paths == null) {paths = new ArrayList<String>(); matchable.put(key, paths);}
+            paths.add(path);
+        }
+        for (int i = 0; i < 20; i++) {
+            final List<String> paths = new ArrayList<String>();
+            paths.add(".*");
+            notmatchable.put(".*spam" + i + ".*", paths);
+        }
+        long t = System.currentTimeMillis();
+        final BlacklistMatcher matcher = new BlacklistMatcher(matchable, notmatchable);
+        System.out.println("compiled " + entries + " entries in " + (System.currentTimeMillis() - t) + " milliseconds");
+
+        final String[] hosts = new String[1000];
+        final String[] paths = new String[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = (r.nextBoolean() ? "www." : "") + "d" + r.nextInt(entries * 4) + "." + tld[r.nextInt(tld.length)];
+            paths[i] = r.nextBoolean() ? "ads/x" + i + ".html" : "index" + i + ".html";
+        }
+        int listed = 0;
+        t = System.nanoTime();
+        for (int i = 0; i < tests; i++) {
+            if (matcher.isListed(hosts[i % hosts.length], paths[i % paths.length])) listed++;
+        }
+        t = System.nanoTime() - t;
+        System.out.println("tested " + tests + " urls, " + listed + " listed, " + (t / tests) + " nanoseconds per url");
+    }
+}
@@ -39,9 +39,8 @@ package net.yacy.search;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -54,21 +53,29 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -110,21 +117,26 @@ import net.yacy.kelondro.data.meta.DigestURI;
 import net.yacy.kelondro.data.meta.URIMetadataRow;
 import net.yacy.kelondro.data.meta.URIMetadataRow.Components;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.HandleMap;
 import net.yacy.kelondro.index.HandleSet;
 import net.yacy.kelondro.index.RowSpaceExceededException;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Base64Order;
 import net.yacy.kelondro.order.Digest;
 import net.yacy.kelondro.order.NaturalOrder;
+import net.yacy.kelondro.rwi.IODispatcher;
+import net.yacy.kelondro.rwi.IndexCell;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.EventTracker;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.MemoryTracker;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 import net.yacy.kelondro.util.OS;
 import net.yacy.kelondro.util.SetTools;
 import net.yacy.kelondro.workflow.BusyThread;
 import net.yacy.kelondro.workflow.InstantBusyThread;
+import net.yacy.kelondro.workflow.StartupInitializer;
 import net.yacy.kelondro.workflow.WorkflowJob;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.kelondro.workflow.WorkflowThread;
@@ -167,6 +179,7 @@ import de.anomic.crawler.retrieval.Response;
 import de.anomic.data.BlogBoard;
 import de.anomic.data.BlogBoardComments;
 import de.anomic.data.BookmarksDB;
+import de.anomic.data.DidYouMean;
 import de.anomic.data.ListManager;
 import de.anomic.data.MessageBoard;
 import de.anomic.data.URLLicense;
@@ -213,6 +226,9 @@ public final class Switchboard extends serverSwitch {
     public  File                           queuesRoot;
     public  File                           surrogatesInPath;
     public  File                           surrogatesOutPath;
+    private final ExecutorService          surrogateExecutor;
+    private final Set<String>              surrogatesInProcess;
+    private volatile boolean               surrogatesTerminate = false;
     public  Segments                       indexSegments;
     public  LoaderDispatcher               loader;
     public  CrawlSwitchboard               crawler;
@@ -305,6 +321,11 @@ public final class Switchboard extends serverSwitch {
             this.exceed134217727 = true;
         }
 
+        // independent databases are opened concurrently; the initializer threads end after startup
+        final int startupConcurrency = getConfigInt(SwitchboardConstants.STARTUP_CONCURRENCY, 0);
+        if (startupConcurrency > 0) StartupInitializer.concurrency = startupConcurrency;
+        final StartupInitializer initializer = new StartupInitializer("startup");
+
         // load values from configs
         final File indexPath = getDataPath(SwitchboardConstants.INDEX_PRIMARY_PATH, SwitchboardConstants.INDEX_PATH_DEFAULT);
         this.log.logConfig("Index Primary Path: " + indexPath.toString());
@@ -326,8 +347,13 @@ public final class Switchboard extends serverSwitch {
         this.log.logConfig("Loading sessionid file " + sessionidNamesFile);
         MultiProtocolURI.initSessionIDNames(FileUtils.loadList(new File(getAppPath(), sessionidNamesFile)));
 
-        // init tables
-        this.tables = new WorkTables(this.workPath);
+        // init tables; they are needed first by the robots.txt db
+        final Future<WorkTables> tablesJob = initializer.start(new Callable<WorkTables>() {
+            @Override
+            public WorkTables call() throws IOException {
+                return new WorkTables(Switchboard.this.workPath);
+            }
+        });
 
         // init libraries
         this.log.logConfig("initializing libraries");
@@ -356,19 +382,30 @@ public final class Switchboard extends serverSwitch {
         this.networkRoot.mkdirs();
         this.queuesRoot.mkdirs();
         final File mySeedFile = new File(this.networkRoot, SeedDB.DBFILE_OWN_SEED);
-        this.peers = new SeedDB(
-                this.networkRoot,
-                "seed.new.heap",
-                "seed.old.heap",
-                "seed.pot.heap",
-                mySeedFile,
-                redundancy,
-                partitionExponent,
-                this.useTailCache,
-                this.exceed134217727);
+        final Future<SeedDB> peersJob = initializer.start(new Callable<SeedDB>() {
+            @Override
+            public SeedDB call() {
+                return new SeedDB(
+                        Switchboard.this.networkRoot,
+                        "seed.new.heap",
+                        "seed.old.heap",
+                        "seed.pot.heap",
+                        mySeedFile,
+                        redundancy,
+                        partitionExponent,
+                        Switchboard.this.useTailCache,
+                        Switchboard.this.exceed134217727);
+            }
+        });
 
         // initialize index
         ReferenceContainer.maxReferences = getConfigInt("index.maxReferences", 0);
+        HandleMap.offHeapDumps = getConfigBool("index.offHeap", true);
+        IndexCell.hotTermCacheBytes = getConfigLong("index.hotTermCache", 32) * 1024L * 1024L;
+        Segment.textStoreMaxLength = getConfigInt("index.textStore.maxLength", 0);
+        IODispatcher.dumpThreads = (int) getConfigLong("index.dispatcher.dumpThreads", 1);
+        IODispatcher.mergeThreads = (int) getConfigLong("index.dispatcher.mergeThreads", 2);
+        IODispatcher.mergesPerLocation = (int) getConfigLong("index.dispatcher.mergesPerLocation", 1);
         final File oldSingleSegment = new File(new File(indexPath, networkName), "TEXT");
         final File newSegmentsPath = new File(new File(indexPath, networkName), "SEGMENTS");
         Segments.migrateOld(oldSingleSegment, newSegmentsPath, getConfig(SwitchboardConstants.SEGMENT_PUBLIC, "default"));
@@ -382,6 +419,16 @@ public final class Switchboard extends serverSwitch {
         // set the default segment names
         setDefaultSegments();
 
+        // open the assigned segments in the background; the first access of a segment waits for its opening
+        for (final Segments.Process process: Segments.Process.values()) {
+            initializer.start(new Callable<Segment>() {
+                @Override
+                public Segment call() {
+                    return Switchboard.this.indexSegments.segment(process);
+                }
+            });
+        }
+
         // load domainList
         try {
         	this.domainList = null;
@@ -404,6 +451,7 @@ public final class Switchboard extends serverSwitch {
 
         // start yacy core
         this.log.logConfig("Starting YaCy Protocol Core");
+        this.peers = StartupInitializer.await(peersJob);
         this.yc = new Network(this);
         InstantBusyThread.oneTimeJob(this, "loadSeedLists", Network.log, 0);
         //final long startedSeedListAquisition = System.currentTimeMillis();
@@ -515,6 +563,8 @@ public final class Switchboard extends serverSwitch {
 
         // load the robots.txt db
         this.log.logConfig("Initializing robots.txt DB");
+        this.tables = StartupInitializer.await(tablesJob);
+        initializer.shutdown();
         this.robots = new RobotsTxt(this.tables);
         this.log.logConfig("Loaded robots.txt DB: " +  this.robots.size() + " entries");
 
@@ -534,6 +584,8 @@ public final class Switchboard extends serverSwitch {
         this.surrogatesOutPath = getDataPath(SwitchboardConstants.SURROGATES_OUT_PATH, SwitchboardConstants.SURROGATES_OUT_PATH_DEFAULT);
         this.log.logInfo("surrogates.out Path = " + this.surrogatesOutPath.getAbsolutePath());
         this.surrogatesOutPath.mkdirs();
+        this.surrogateExecutor = Executors.newCachedThreadPool(new NamePrefixThreadFactory("surrogates"));
+        this.surrogatesInProcess = Collections.synchronizedSet(new HashSet<String>());
 
         // create the release download directory
         this.releasePath = getDataPath(SwitchboardConstants.RELEASE_PATH, SwitchboardConstants.RELEASE_PATH_DEFAULT);
@@ -664,6 +716,7 @@ public final class Switchboard extends serverSwitch {
         InstantBusyThread.oneTimeJob(ResourceObserver.class, "initThread", ResourceObserver.log, 0);
 
         // initializing the stackCrawlThread
+        CrawlStacker.seenFilterMaxBytes = getConfigLong("crawler.seenFilter.maxMem", 64) * 1024L * 1024L;
         this.crawlStacker = new CrawlStacker(
                 this.crawlQueues,
                 this.crawler,
@@ -671,7 +724,8 @@ public final class Switchboard extends serverSwitch {
                 this.peers,
                 isIntranetMode(),
                 isGlobalMode(),
-                this.domainList); // Intranet and Global mode may be both true!
+                this.domainList, // Intranet and Global mode may be both true!
+                new File(this.queuesRoot, "urlSeen.bloom"));
 
         // possibly switch off localIP check
         Domains.setNoLocalCheck(isAllIPMode());
@@ -819,6 +873,15 @@ public final class Switchboard extends serverSwitch {
         this.indexSegments.setSegment(Segments.Process.LOCALCRAWLING,  getConfig(SwitchboardConstants.SEGMENT_LOCALCRAWLING, "default"));
         this.indexSegments.setSegment(Segments.Process.REMOTECRAWLING, getConfig(SwitchboardConstants.SEGMENT_REMOTECRAWLING, "default"));
         this.indexSegments.setSegment(Segments.Process.PUBLIC,         getConfig(SwitchboardConstants.SEGMENT_PUBLIC, "default"));
+
+        // set the compaction strategies of the term indexes; a segment may override the default
+        this.indexSegments.setCompaction(null, getConfig("index.compaction", "heuristic"));
+        final Iterator<String> keys = configKeys();
+        String key;
+        while (keys.hasNext()) {
+            key = keys.next();
+            if (key.startsWith("index.compaction.")) this.indexSegments.setCompaction(key.substring(17), getConfig(key, "heuristic"));
+        }
     }
 
     public int getIndexingProcessorsQueueSize() {
@@ -1004,6 +1067,7 @@ public final class Switchboard extends serverSwitch {
             // set the default segment names
             setDefaultSegments();
             this.crawlQueues.relocate(this.queuesRoot); // cannot be closed because the busy threads are working with that object
+            this.crawlStacker.dumpSeenFilter(); // the old url stacks and the old index are closed now
 
             // create a crawler
             this.crawler = new CrawlSwitchboard(
@@ -1043,7 +1107,8 @@ public final class Switchboard extends serverSwitch {
                     this.peers,
                     "local.any".indexOf(getConfig(SwitchboardConstants.NETWORK_DOMAIN, "global")) >= 0,
                     "global.any".indexOf(getConfig(SwitchboardConstants.NETWORK_DOMAIN, "global")) >= 0,
-                    this.domainList);
+                    this.domainList,
+                    new File(this.queuesRoot, "urlSeen.bloom"));
 
         }
         Domains.setNoLocalCheck(isAllIPMode()); // possibly switch off localIP check
@@ -1295,7 +1360,13 @@ public final class Switchboard extends serverSwitch {
     public void close() {
         this.log.logConfig("SWITCHBOARD SHUTDOWN STEP 1: sending termination signal to managed threads:");
         MemoryTracker.stopSystemProfiling();
+        this.surrogatesTerminate = true;
         terminateAllThreads(true);
+        // the surrogate readers are not interrupted; they stop after their current entry and leave unfinished files in the input directory
+        this.surrogateExecutor.shutdown();
+        try {
+            this.surrogateExecutor.awaitTermination(10000, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {}
         net.yacy.gui.framework.Switchboard.shutdown();
         this.log.logConfig("SWITCHBOARD SHUTDOWN STEP 2: sending termination signal to threaded indexing");
         // closing all still running db importer jobs
@@ -1322,6 +1393,7 @@ public final class Switchboard extends serverSwitch {
         this.crawler.close();
         this.log.logConfig("SWITCHBOARD SHUTDOWN STEP 3: sending termination signal to database manager (stand by...)");
         this.indexSegments.close();
+        this.crawlStacker.dumpSeenFilter(); // after all url stacks and the index that add urls to the filter are closed
         this.peers.close();
         Cache.close();
         this.tables.close();
@@ -1413,28 +1485,30 @@ public final class Switchboard extends serverSwitch {
         final File outfile = new File(this.surrogatesOutPath, s);
         //if (outfile.exists()) return false;
         boolean moved = false;
+        // a file is moved only if it was read completely; a file that was stopped at shutdown is read again after a restart
+        boolean complete = true;
         if (s.endsWith("xml.zip")) {
             // open the zip file with all the xml files in it
             try {
                 final InputStream is = new BufferedInputStream(new FileInputStream(infile));
                 final ZipInputStream zis = new ZipInputStream(is);
+                // the entries are parsed directly from the zip stream; the reader must not close the zip stream
+                final InputStream entryStream = new FilterInputStream(zis) {
+                    @Override
+                    public void close() {}
+                };
                 ZipEntry entry;
-                while ((entry = zis.getNextEntry()) != null) {
-                    int size;
-                    final byte[] buffer = new byte[2048];
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    while ((size = zis.read(buffer, 0, buffer.length)) != -1) {
-                        baos.write(buffer, 0, size);
+                try {
+                    while (complete && (entry = zis.getNextEntry()) != null) {
+                        complete = processSurrogate(entryStream, entry.getName());
                     }
-                    baos.flush();
-                    processSurrogate(new ByteArrayInputStream(baos.toByteArray()), entry.getName());
-                    baos.close();
+                } finally {
+                    zis.close();
                 }
             } catch (final IOException e) {
                 Log.logException(e);
-            } finally {
-                moved = infile.renameTo(outfile);
             }
+            if (complete) moved = infile.renameTo(outfile);
             return moved;
         } else {
             try {
@@ -1442,10 +1516,11 @@ public final class Switchboard extends serverSwitch {
                 if (s.endsWith(".gz")) {
                     is = new GZIPInputStream(is);
                 }
-                processSurrogate(is, infile.getName());
+                complete = processSurrogate(is, infile.getName());
             } catch (final IOException e) {
                 Log.logException(e);
-            } finally {
+            }
+            if (complete) {
                 moved = infile.renameTo(outfile);
                 if (moved) {
                     // check if this file is already compressed, if not, compress now
@@ -1471,15 +1546,26 @@ public final class Switchboard extends serverSwitch {
         }
     }
 
-    public void processSurrogate(final InputStream is, final String name) throws IOException {
+    /**
+     * read the surrogate entries from a stream and put them into the indexing queue.
+     * After a close of the switchboard the reading stops between two entries.
+     * The method returns after the reader thread has finished, so the stream may be used again,
+     * i.e. for the next entry of a zip file.
+     * @param is
+     * @param name
+     * @return true if all entries were read, false if the reading was stopped
+     * @throws IOException
+     */
+    public boolean processSurrogate(final InputStream is, final String name) throws IOException {
         final SurrogateReader reader = new SurrogateReader(is, 100);
         final Thread readerThread = new Thread(reader, name);
         readerThread.start();
         DCEntry surrogate;
         Response response;
         while ((surrogate = reader.take()) != DCEntry.poison) {
+            if (surrogate == null || this.surrogatesTerminate) break;
+
             // check if url is in accepted domain
-            assert surrogate != null;
             assert this.crawlStacker != null;
             final String urlRejectReason = this.crawlStacker.urlInAcceptedDomain(surrogate.getIdentifier(true));
             if (urlRejectReason != null) {
@@ -1512,6 +1598,18 @@ public final class Switchboard extends serverSwitch {
                 break;
             }
         }
+        final boolean complete = surrogate == DCEntry.poison;
+        if (!complete) {
+            // the reader stops after its current entry; the entries that it has already read are discarded
+            reader.stop();
+            while (reader.take() != DCEntry.poison) {}
+        }
+        try {
+            readerThread.join();
+        } catch (final InterruptedException e) {
+            return false;
+        }
+        return complete;
     }
 
     public int surrogateQueueSize() {
@@ -1549,17 +1647,39 @@ public final class Switchboard extends serverSwitch {
             // check surrogates
             final String[] surrogatelist = this.surrogatesInPath.list();
             if (surrogatelist.length > 0) {
+                int concurrency = getConfigInt(SwitchboardConstants.SURROGATES_CONCURRENCY, 0);
+                if (concurrency <= 0) concurrency = WorkflowProcessor.availableCPU;
+                boolean started = false;
                 // look if the is any xml inside
                 for (final String surrogate: surrogatelist) {
 
                     // check for interruption
                     checkInterruption();
+                    if (this.surrogatesTerminate) return started;
 
                     if (surrogate.endsWith(".xml") || surrogate.endsWith(".xml.gz") || surrogate.endsWith(".xml.zip")) {
                         // read the surrogate file and store entry in index
-                        if (processSurrogate(surrogate)) return true;
+                        if (concurrency == 1) {
+                            if (processSurrogate(surrogate)) return true;
+                            continue;
+                        }
+
+                        // read several surrogate files concurrently; the readers block if the indexing queue is full
+                        if (this.surrogatesInProcess.size() >= concurrency) return started;
+                        if (!this.surrogatesInProcess.add(surrogate)) continue; // this file is already read
+                        this.surrogateExecutor.execute(new Runnable() {
+                            public void run() {
+                                try {
+                                    processSurrogate(surrogate);
+                                } finally {
+                                    Switchboard.this.surrogatesInProcess.remove(surrogate);
+                                }
+                            }
+                        });
+                        started = true;
                     }
                 }
+                return started;
             }
 
         } catch (final InterruptedException e) {
@@ -1659,6 +1779,12 @@ public final class Switchboard extends serverSwitch {
                 Log.logException(e);
             }
 
+            // update the spelling index for the did-you-mean suggestions
+            if (getConfigBool("search.spellingIndex", true)) {
+                final Segment publicSegment = this.indexSegments.segment(Segments.Process.PUBLIC);
+                if (publicSegment != null) DidYouMean.updateSpellingIndex(publicSegment.termIndex());
+            }
+
             // execute scheduled API actions
             Tables.Row row;
             final List<String> pks = new ArrayList<String>();
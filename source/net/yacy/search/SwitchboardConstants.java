@@ -336,6 +336,9 @@ public final class SwitchboardConstants {
     public static final String SURROGATES_IN_PATH_DEFAULT  = "DATA/SURROGATES/in";
     public static final String SURROGATES_OUT_PATH         = "surrogates.out";
     public static final String SURROGATES_OUT_PATH_DEFAULT = "DATA/SURROGATES/out";
+    public static final String SURROGATES_CONCURRENCY      = "surrogates.concurrency";
+
+    public static final String STARTUP_CONCURRENCY         = "startup.concurrency";
 
     public static final String DICTIONARY_SOURCE_PATH         = "dictionaries";
     public static final String DICTIONARY_SOURCE_PATH_DEFAULT = "DATA/DICTIONARIES";
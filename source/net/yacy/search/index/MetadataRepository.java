@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 
@@ -55,6 +56,7 @@ import net.yacy.kelondro.index.HandleSet;
 import net.yacy.kelondro.index.Index;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowSpaceExceededException;
+import net.yacy.kelondro.index.ScalableBloomFilter;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.CloneableIterator;
 import net.yacy.kelondro.table.SplitTable;
@@ -62,8 +64,13 @@ import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.repository.Blacklist;
 import de.anomic.crawler.CrawlStacker;
 
+import org.apache.solr.common.SolrDocument;
+
 public final class MetadataRepository implements Iterable<byte[]> {
 
+    // the number of url hashes that are looked up in the solr index with a single query
+    private static final int solrChunkSize = 256;
+
     // class objects
     protected     Index               urlIndexFile;
     private       Export              exportthread; // will have a export thread assigned if exporter is running
@@ -71,6 +78,7 @@ public final class MetadataRepository implements Iterable<byte[]> {
     private final String              tablename;
     private       ArrayList<HostStat> statsDump;
     private       SolrConnector       solr;
+    private       ScalableBloomFilter seenFilter;
 
     public MetadataRepository(
             final File path,
@@ -85,6 +93,15 @@ public final class MetadataRepository implements Iterable<byte[]> {
         this.exportthread = null; // will have a export thread assigned if exporter is running
         this.statsDump = null;
         this.solr = null;
+        this.seenFilter = null;
+    }
+
+    /**
+     * connect a filter that is informed about all urls that are stored
+     * @param seenFilter
+     */
+    public void connectSeenFilter(final ScalableBloomFilter seenFilter) {
+        this.seenFilter = seenFilter;
     }
 
     public void connectSolr(final SolrConnector solr) {
@@ -166,6 +183,7 @@ public final class MetadataRepository implements Iterable<byte[]> {
         // Check if there is a more recent Entry already in the DB
         URIMetadataRow oldEntry;
         if (this.urlIndexFile == null) return; // case may happen during shutdown or startup
+        if (this.seenFilter != null) this.seenFilter.add(entry.hash());
         try {
             final Row.Entry oe = this.urlIndexFile.get(entry.hash(), false);
             oldEntry = (oe == null) ? null : new URIMetadataRow(oe, null, 0);
@@ -213,6 +231,49 @@ public final class MetadataRepository implements Iterable<byte[]> {
         return this.urlIndexFile.has(urlHash);
     }
 
+    /**
+     * check the existence of a batch of urls, i.e. all urls that are referenced in a DHT transmission.
+     * The local url index is asked first; the urls that are not stored locally are looked up in the solr index
+     * with one query for each chunk of solrChunkSize url hashes.
+     * @param urlHashes
+     * @return the subset of the given url hashes that is known
+     */
+    public HandleSet exists(final HandleSet urlHashes) {
+        final HandleSet known = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, urlHashes.size());
+        final Index index = this.urlIndexFile;
+        if (index == null) return known; // case may happen during shutdown
+        final SolrConnector connector = this.solr;
+        final List<String> missing = new ArrayList<String>();
+        try {
+            for (final byte[] urlHash: urlHashes) {
+                if (index.has(urlHash)) {
+                    known.put(urlHash);
+                } else if (connector != null) {
+                    missing.add(ASCII.String(urlHash));
+                }
+            }
+            for (int i = 0; i < missing.size(); i += solrChunkSize) {
+                final List<String> chunk = missing.subList(i, Math.min(missing.size(), i + solrChunkSize));
+                final StringBuilder query = new StringBuilder(chunk.size() * (URIMetadataRow.rowdef.primaryKeyLength + 8));
+                for (final String id: chunk) {
+                    if (query.length() > 0) query.append(" OR ");
+                    query.append("id:\"").append(id).append('"');
+                }
+                try {
+                    for (final SolrDocument doc: connector.get(query.toString(), 0, chunk.size())) {
+                        final String id = connector.getScheme().solrGetID(doc);
+                        if (id != null) known.put(ASCII.getBytes(id));
+                    }
+                } catch (final IOException e) {
+                    Log.logWarning("MetadataRepository", "solr url existence check failed: " + e.getMessage());
+                }
+            }
+        } catch (final RowSpaceExceededException e) {
+            Log.logWarning("MetadataRepository", "not enough memory for url existence check: " + e.getMessage());
+        }
+        return known;
+    }
+
     public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
         try {
             return this.urlIndexFile.keys(up, firstKey);
@@ -350,8 +411,16 @@ public final class MetadataRepository implements Iterable<byte[]> {
         }
     }
 
-    public BlacklistCleaner getBlacklistCleaner(final Blacklist blacklist, final CrawlStacker crawlStacker) {
-        return new BlacklistCleaner(blacklist, crawlStacker);
+    /**
+     * get a cleaner thread that removes blacklisted urls
+     * @param blacklist
+     * @param crawlStacker
+     * @param segment the segment that holds this repository; if given, the references of the removed urls are also
+     *   deleted from the word index using the forward index of the segment. May be null.
+     * @return the cleaner thread, must be started by the caller
+     */
+    public BlacklistCleaner getBlacklistCleaner(final Blacklist blacklist, final CrawlStacker crawlStacker, final Segment segment) {
+        return new BlacklistCleaner(blacklist, crawlStacker, segment);
     }
 
     public class BlacklistCleaner extends Thread {
@@ -366,10 +435,17 @@ public final class MetadataRepository implements Iterable<byte[]> {
         public String lastHash = "";
         private final Blacklist blacklist;
         private final CrawlStacker crawlStacker;
+        private final Segment segment;
 
-        public BlacklistCleaner(final Blacklist blacklist, final CrawlStacker crawlStacker) {
+        public BlacklistCleaner(final Blacklist blacklist, final CrawlStacker crawlStacker, final Segment segment) {
             this.blacklist = blacklist;
             this.crawlStacker = crawlStacker;
+            this.segment = segment;
+        }
+
+        private void removeURL(final byte[] urlHash) {
+            // remove the references as well if the words of the url are known; otherwise only the url entry is removed
+            if (this.segment == null || this.segment.removeAllUrlReferences(urlHash) < 0) remove(urlHash);
         }
 
         public void run() {
@@ -398,12 +474,12 @@ public final class MetadataRepository implements Iterable<byte[]> {
                         this.totalSearchedUrls++;
                         if (metadata == null) {
                             if (Log.isFine("URLDBCLEANER")) Log.logFine("URLDBCLEANER", "corrupted entry for hash = " + ASCII.String(entry.hash()));
-                            remove(entry.hash());
+                            removeURL(entry.hash());
                             continue;
                         }
                         if (metadata.url() == null) {
                             if (Log.isFine("URLDBCLEANER")) Log.logFine("URLDBCLEANER", ++this.blacklistedUrls + " blacklisted (" + ((double) this.blacklistedUrls / this.totalSearchedUrls) * 100 + "%): " + ASCII.String(entry.hash()) + "URL == null");
-                            remove(entry.hash());
+                            removeURL(entry.hash());
                             continue;
                         }
                         if (this.blacklist.isListed(Blacklist.BLACKLIST_CRAWLER, metadata.url()) ||
@@ -412,7 +488,7 @@ public final class MetadataRepository implements Iterable<byte[]> {
                             this.lastBlacklistedUrl = metadata.url().toNormalform(true, true);
                             this.lastBlacklistedHash = ASCII.String(entry.hash());
                             if (Log.isFine("URLDBCLEANER")) Log.logFine("URLDBCLEANER", ++this.blacklistedUrls + " blacklisted (" + ((double) this.blacklistedUrls / this.totalSearchedUrls) * 100 + "%): " + ASCII.String(entry.hash()) + " " + metadata.url().toNormalform(false, true));
-                            remove(entry.hash());
+                            removeURL(entry.hash());
                             if (this.blacklistedUrls % 100 == 0) {
                                 Log.logInfo("URLDBCLEANER", "Deleted " + this.blacklistedUrls + " URLs until now. Last deleted URL-Hash: " + this.lastBlacklistedUrl);
                             }
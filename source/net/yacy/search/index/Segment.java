@@ -33,6 +33,8 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import net.yacy.cora.document.ASCII;
 import net.yacy.cora.document.MultiProtocolURI;
@@ -56,10 +58,12 @@ import net.yacy.kelondro.index.RowSpaceExceededException;
 import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Base64Order;
 import net.yacy.kelondro.order.ByteOrder;
+import net.yacy.kelondro.rwi.ForwardIndex;
 import net.yacy.kelondro.rwi.IndexCell;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceFactory;
 import net.yacy.kelondro.util.ISO639;
+import net.yacy.kelondro.workflow.StartupInitializer;
 import net.yacy.repository.Blacklist;
 import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.Switchboard;
@@ -76,6 +80,9 @@ public class Segment {
     public static final long targetFileSize  = 256 * 1024 * 1024; // 256 MB
     public static final int  writeBufferSize = 4 * 1024 * 1024;
 
+    // the maximum number of text bytes that are stored for each document in the text store; 0 = no text store
+    public static int textStoreMaxLength = 0;
+
     // the reference factory
     public static final ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
     public static final ReferenceFactory<NavigationReference> navigationReferenceFactory = new NavigationReferenceFactory();
@@ -85,6 +92,8 @@ public class Segment {
     protected final IndexCell<WordReference>       termIndex;
     //private   final IndexCell<NavigationReference> authorNavIndex;
     protected final MetadataRepository             urlMetadata;
+    protected final ForwardIndex                   forwardIndex;
+    protected final TextStore                      textStore;
     private   final File                           segmentPath;
 
     public Segment(
@@ -103,16 +112,22 @@ public class Segment {
         this.log = log;
         this.segmentPath = segmentPath;
 
-        this.termIndex = new IndexCell<WordReference>(
-                segmentPath,
-                "text.index",
-                wordReferenceFactory,
-                wordOrder,
-                Word.commonHashLength,
-                entityCacheMaxSize,
-                targetFileSize,
-                maxFileSize,
-                writeBufferSize);
+        // the stores of the segment are independent and are opened concurrently
+        final StartupInitializer initializer = new StartupInitializer("Segment.open");
+        final Future<IndexCell<WordReference>> termIndexJob = initializer.start(new Callable<IndexCell<WordReference>>() {
+            public IndexCell<WordReference> call() throws IOException {
+                return new IndexCell<WordReference>(
+                        segmentPath,
+                        "text.index",
+                        wordReferenceFactory,
+                        wordOrder,
+                        Word.commonHashLength,
+                        entityCacheMaxSize,
+                        targetFileSize,
+                        maxFileSize,
+                        writeBufferSize);
+            }
+        });
         /*
         this.authorNavIndex = new IndexCell<NavigationReference>(
                 new File(new File(segmentPath, "nav_author"), "idx"),
@@ -127,7 +142,38 @@ public class Segment {
         */
 
         // create LURL-db
-        this.urlMetadata = new MetadataRepository(segmentPath, "text.urlmd", useTailCache, exceed134217727);
+        final Future<MetadataRepository> urlMetadataJob = initializer.start(new Callable<MetadataRepository>() {
+            public MetadataRepository call() {
+                return new MetadataRepository(segmentPath, "text.urlmd", useTailCache, exceed134217727);
+            }
+        });
+
+        // the forward index to find the words of a document for its deletion
+        final Future<ForwardIndex> forwardIndexJob = initializer.start(new Callable<ForwardIndex>() {
+            public ForwardIndex call() throws IOException {
+                return new ForwardIndex(
+                        new File(segmentPath, "text.forward.heap"),
+                        URIMetadataRow.rowdef.primaryKeyLength,
+                        Word.commonHashLength,
+                        wordOrder);
+            }
+        });
+
+        // the text store to compute snippets without loading and parsing the document again
+        final Future<TextStore> textStoreJob = textStoreMaxLength <= 0 ? null : initializer.start(new Callable<TextStore>() {
+            public TextStore call() throws IOException {
+                return new TextStore(
+                        new File(segmentPath, "text.sentences.heap"),
+                        URIMetadataRow.rowdef.primaryKeyLength,
+                        textStoreMaxLength);
+            }
+        });
+
+        initializer.shutdown();
+        this.termIndex = StartupInitializer.await(termIndexJob);
+        this.urlMetadata = StartupInitializer.await(urlMetadataJob);
+        this.forwardIndex = StartupInitializer.await(forwardIndexJob);
+        this.textStore = textStoreJob == null ? null : StartupInitializer.await(textStoreJob);
     }
 
     public void connectSolr(final SolrConnector solr) {
@@ -168,6 +214,18 @@ public class Segment {
         return this.urlMetadata;
     }
 
+    public ForwardIndex forwardIndex() {
+        return this.forwardIndex;
+    }
+
+    /**
+     * the text store of the segment
+     * @return the text store or null if the texts of the documents are not stored
+     */
+    public TextStore textStore() {
+        return this.textStore;
+    }
+
     public IndexCell<WordReference> termIndex() {
         return this.termIndex;
     }
@@ -180,6 +238,8 @@ public class Segment {
         try {
             this.termIndex.clear();
             this.urlMetadata.clear();
+            this.forwardIndex.clear();
+            if (this.textStore != null) this.textStore.clear();
         } catch (final IOException e) {
             Log.logException(e);
         }
@@ -270,6 +330,8 @@ public class Segment {
     public void close() {
         this.termIndex.close();
         this.urlMetadata.close();
+        this.forwardIndex.close();
+        if (this.textStore != null) this.textStore.close();
     }
 
     public URIMetadataRow storeDocument(
@@ -364,6 +426,26 @@ public class Segment {
 
         final long storageEndTime = System.currentTimeMillis();
 
+        // STORE THE WORDS OF THE PAGE INTO THE FORWARD INDEX
+        // if the page had been indexed before, words that are not on the page any more are removed from the word index
+        final HandleSet wordhashes = Word.words2hashesHandles(condenser.words().keySet());
+        try {
+            final HandleSet stalehashes = this.forwardIndex.put(url.hash(), wordhashes);
+            if (stalehashes != null) {
+                stalehashes.excludeDestructive(wordhashes);
+                if (!stalehashes.isEmpty()) this.termIndex.removeDelayed(stalehashes, url.hash());
+            }
+        } catch (final IOException e) {
+            Log.logException(e);
+        }
+
+        // STORE THE TEXT OF THE PAGE FOR SNIPPET COMPUTATION
+        if (this.textStore != null) try {
+            this.textStore.put(url.hash(), document.getTextBytes());
+        } catch (final IOException e) {
+            Log.logException(e);
+        }
+
         // STORE PAGE INDEX INTO WORD INDEX DB
         final int words = addPageIndex(
                 url,                                          // document url
@@ -408,9 +490,31 @@ public class Segment {
     }
 
     /**
-     * find all the words in a specific resource and remove the url reference from every word index
+     * remove the url reference from every word index using the words that are stored for the url in the forward index
      * finally, delete the url entry
      * @param urlhash the hash of the url that shall be removed
+     * @return number of removed words or -1 if the url is not in the forward index
+     */
+    public int removeAllUrlReferences(final byte[] urlhash) {
+        if (urlhash == null) return 0;
+        try {
+            final HandleSet words = this.forwardIndex.remove(urlhash);
+            if (words == null) return -1;
+            final int count = termIndex().remove(words, urlhash);
+            if (this.textStore != null) this.textStore.remove(urlhash);
+            urlMetadata().remove(urlhash);
+            return count;
+        } catch (final IOException e) {
+            Log.logException(e);
+            return 0;
+        }
+    }
+
+    /**
+     * find all the words in a specific resource and remove the url reference from every word index
+     * finally, delete the url entry.
+     * The words are taken from the forward index; only if the url is not there the resource is loaded and parsed again
+     * @param urlhash the hash of the url that shall be removed
      * @param loader
      * @param cacheStrategy
      * @return number of removed words
@@ -418,6 +522,13 @@ public class Segment {
     public int removeAllUrlReferences(final byte[] urlhash, final LoaderDispatcher loader, final CacheStrategy cacheStrategy) {
 
         if (urlhash == null) return 0;
+        final int forwardcount = removeAllUrlReferences(urlhash);
+        if (forwardcount >= 0) return forwardcount;
+        if (loader == null) {
+            // delete just the url entry
+            urlMetadata().remove(urlhash);
+            return 0;
+        }
         // determine the url string
         final URIMetadataRow entry = urlMetadata().load(urlhash);
         if (entry == null) return 0;
@@ -34,6 +34,7 @@ import java.util.Map;
 
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.logging.Log;
+import net.yacy.kelondro.rwi.AbstractCompactionStrategy;
 import net.yacy.kelondro.rwi.IndexCell;
 
 
@@ -68,6 +69,8 @@ public class Segments implements Iterable<Segment> {
     private final HashMap<Process, String> process_assignment;
     private final boolean useTailCache;
     private final boolean exceed134217727;
+    private final Map<String, String> compaction; // mapping from segment names to compaction strategy names
+    private       String defaultCompaction;
 
     public Segments(
             final Log log,
@@ -84,6 +87,8 @@ public class Segments implements Iterable<Segment> {
         this.exceed134217727 = exceed134217727;
         this.segments = new HashMap<String, Segment>();
         this.process_assignment = new HashMap<Process, String>();
+        this.compaction = new HashMap<String, String>();
+        this.defaultCompaction = AbstractCompactionStrategy.HEURISTIC;
 
         // assign default segment names for the processes
         this.process_assignment.put(Process.RECEIPTS,       "default");
@@ -101,6 +106,27 @@ public class Segments implements Iterable<Segment> {
         this.process_assignment.put(process, segmentName);
     }
 
+    /**
+     * set the compaction strategy of the term index
+     * @param segmentName the name of the segment or null to set the strategy for all segments without an own setting
+     * @param strategy the name of the strategy, see AbstractCompactionStrategy
+     */
+    public synchronized void setCompaction(final String segmentName, final String strategy) {
+        if (segmentName == null) this.defaultCompaction = strategy; else this.compaction.put(segmentName, strategy);
+        if (this.segments == null) return;
+        for (final Map.Entry<String, Segment> entry: this.segments.entrySet()) {
+            if (segmentName == null ? !this.compaction.containsKey(entry.getKey()) : segmentName.equals(entry.getKey())) {
+                setCompaction(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void setCompaction(final String segmentName, final Segment segment) {
+        final String strategy = this.compaction.containsKey(segmentName) ? this.compaction.get(segmentName) : this.defaultCompaction;
+        if (strategy.equals(segment.termIndex().getCompactionStrategy().name())) return;
+        segment.termIndex().setCompactionStrategy(AbstractCompactionStrategy.newStrategy(strategy));
+    }
+
     public static void migrateOld(final File oldSingleSegment, final File newSegmentsPath, final String newSegmentName) {
         if (!oldSingleSegment.exists()) return;
         final File newSegmentPath = new File(newSegmentsPath, newSegmentName);
@@ -128,7 +154,7 @@ public class Segments implements Iterable<Segment> {
         return segment(this.process_assignment.get(process));
     }
 
-    public Segment segment(final String segmentName) {
+    public synchronized Segment segment(final String segmentName) {
         if (this.segments == null) return null;
         Segment segment = this.segments.get(segmentName);
         if (segment == null) {
@@ -145,6 +171,7 @@ public class Segments implements Iterable<Segment> {
                 Log.logException(e);
                 return null;
             }
+            setCompaction(segmentName, segment);
             this.segments.put(segmentName, segment);
         }
         return segment;
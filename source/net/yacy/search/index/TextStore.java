@@ -0,0 +1,116 @@
+/**
+ *  TextStore
+ *
+ *  $LastChangedDate$
+ *  $LastChangedRevision$
+ *  $LastChangedBy$
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.search.index;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.cora.document.UTF8;
+import net.yacy.kelondro.blob.Compressor;
+import net.yacy.kelondro.blob.Heap;
+import net.yacy.kelondro.index.RowSpaceExceededException;
+import net.yacy.kelondro.logging.Log;
+import net.yacy.kelondro.order.Base64Order;
+
+/**
+ * the text store keeps the plain text of each indexed document (url hash) in a compressed heap.
+ * Text snippets are computed from the stored text, so a search result does not need to load
+ * and parse its document again. Only the first maxLength bytes of a text are stored.
+ */
+public final class TextStore {
+
+    private final Compressor blob;
+    private final int maxLength;
+
+    /**
+     * open or create a text store
+     * @param heapFile the file of the heap that stores the text
+     * @param keylength the length of the document (url) hashes
+     * @param maxLength the maximum number of bytes that are stored for one document
+     * @throws IOException
+     */
+    public TextStore(final File heapFile, final int keylength, final int maxLength) throws IOException {
+        this.blob = new Compressor(new Heap(heapFile, keylength, Base64Order.enhancedCoder, 1024 * 1024), 2 * 1024 * 1024);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * store the text of a document; the text is shortened to maxLength bytes
+     * @param urlhash the document
+     * @param text the UTF-8 encoded text of the document
+     * @throws IOException
+     */
+    public void put(final byte[] urlhash, final byte[] text) throws IOException {
+        if (text == null || text.length == 0) {
+            this.blob.delete(urlhash);
+            return;
+        }
+        if (text.length <= this.maxLength) {
+            this.blob.insert(urlhash, text);
+            return;
+        }
+        // do not cut the text within a UTF-8 sequence
+        int l = this.maxLength;
+        while (l > 0 && (text[l] & 0xC0) == 0x80) l--;
+        final byte[] b = new byte[l];
+        System.arraycopy(text, 0, b, 0, l);
+        this.blob.insert(urlhash, b);
+    }
+
+    /**
+     * get the text of a document
+     * @param urlhash the document
+     * @return the stored text or null if the document is not known
+     */
+    public String get(final byte[] urlhash) {
+        try {
+            final byte[] b = this.blob.get(urlhash);
+            return b == null ? null : UTF8.String(b);
+        } catch (final IOException e) {
+            Log.logException(e);
+        } catch (final RowSpaceExceededException e) {
+            Log.logException(e);
+        }
+        return null;
+    }
+
+    public void remove(final byte[] urlhash) throws IOException {
+        this.blob.delete(urlhash);
+    }
+
+    public boolean has(final byte[] urlhash) {
+        return this.blob.containsKey(urlhash);
+    }
+
+    public int size() {
+        return this.blob.size();
+    }
+
+    public void clear() throws IOException {
+        this.blob.clear();
+    }
+
+    public void close() {
+        this.blob.close(true);
+    }
+
+}
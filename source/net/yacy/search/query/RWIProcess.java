@@ -74,6 +74,7 @@ public final class RWIProcess extends Thread {
     private final int[] flagcount; // flag counter
     private final HandleSet misses; // contains url-hashes that could not been found in the LURL-DB
     private       int sortout; // counter for referenced that had been sorted out for other reasons
+    private       int pruned; // counter for references that were not put on the stack because they could not be better than its worst entry
     //private final int[] domZones;
     private SortedMap<byte[], ReferenceContainer<WordReference>> localSearchInclusion;
 
@@ -115,6 +116,7 @@ public final class RWIProcess extends Thread {
         this.urlhashes = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 100);
         this.misses = new HandleSet(URIMetadataRow.rowdef.primaryKeyLength, URIMetadataRow.rowdef.objectOrder, 100);
         this.sortout = 0;
+        this.pruned = 0;
         this.flagcount = new int[32];
         for (int i = 0; i < 32; i++) {this.flagcount[i] = 0;}
         this.hostNavigator = new ConcurrentScoreMap<String>();
@@ -197,6 +199,8 @@ public final class RWIProcess extends Thread {
         // apply all constraints
         try {
             WordReferenceVars iEntry;
+            WeakPriorityBlockingQueue.Element<WordReferenceVars> worst;
+            long r;
             final String pattern = this.query.urlMask.pattern();
             final boolean httpPattern = pattern.equals("http://.*");
             final boolean noHttpButProtocolPattern = pattern.equals("https://.*") || pattern.equals("ftp://.*") || pattern.equals("smb://.*") || pattern.equals("file://.*");
@@ -264,7 +268,18 @@ public final class RWIProcess extends Thread {
                     this.urlhashes.putUnique(iEntry.urlhash());
                     rankingtryloop: while (true) {
                         try {
-                            this.stack.put(new ReverseElement<WordReferenceVars>(iEntry, this.order.cardinal(iEntry))); // inserts the element and removes the worst (which is smallest)
+                            // if the stack is full, skip entries that cannot be better than the worst entry on the stack
+                            worst = this.stack.evictionCandidate();
+                            if (worst == null) {
+                                r = this.order.cardinal(iEntry);
+                            } else {
+                                r = this.order.cardinal(iEntry, worst.getWeight());
+                                if (r == Long.MIN_VALUE) {
+                                    this.pruned++;
+                                    break rankingtryloop;
+                                }
+                            }
+                            this.stack.put(new ReverseElement<WordReferenceVars>(iEntry, r)); // inserts the element and removes the worst (which is smallest)
                             break rankingtryloop;
                         } catch (final ArithmeticException e) {
                             // this may happen if the concurrent normalizer changes values during cardinal computation
@@ -615,6 +630,11 @@ public final class RWIProcess extends Thread {
         return this.sortout;
     }
 
+    public int getPrunedCount() {
+        // the number of references that were not put on the result stack because they could not be better than its worst entry
+        return this.pruned;
+    }
+
     public ScoreMap<String> getNamespaceNavigator() {
         if (!this.query.navigators.equals("all") && this.query.navigators.indexOf("namespace",0) < 0) return new ClusteredScoreMap<String>();
         if (this.namespaceNavigator.sizeSmaller(2)) this.namespaceNavigator.clear(); // navigators with one entry are not useful
@@ -144,6 +144,13 @@ public class SnippetProcess {
         final long finishTime = System.currentTimeMillis() + timeout;
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEvent.Type.ONERESULT, "started, item = " + item + ", available = " + this.result.sizeAvailable(), 0, 0), false);
 
+        // the position of a drained item is fixed, i.e. it was taken by arrivedResult; waiting for a better ranking cannot change it
+        if (item < this.result.sizeDrained()) {
+            final ResultEntry re = this.result.element(item).getElement();
+            EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEvent.Type.ONERESULT, "drained, item = " + item + ", available = " + this.result.sizeAvailable() + ": " + re.urlstring(), 0, 0), false);
+            return re;
+        }
+
         // we must wait some time until the first result page is full to get enough elements for ranking
         final long waittimeout = System.currentTimeMillis() + 300;
         if (item == 0) while (
@@ -164,6 +171,25 @@ public class SnippetProcess {
         }
 
         // finally wait until enough results are there produced from the snippet fetch process
+        return waitResult(item, finishTime);
+    }
+
+    /**
+     * take the next result entry from the result queue as soon as a snippet worker puts it there.
+     * In contrast to oneResult this does not wait until the first result page is complete; the entries get their
+     * position in the order in which they arrive. An entry that arrives later is not placed before an entry that was
+     * already taken, even if its ranking is better. Once taken, oneResult returns the same entry for this position.
+     * @param item the position of the entry
+     * @param timeout the maximum time to wait for the entry
+     * @return the result entry or null if no entry arrived within the timeout or no more entries can be produced
+     */
+    public ResultEntry arrivedResult(final int item, final long timeout) {
+        EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEvent.Type.ONERESULT, "arrival, item = " + item + ", available = " + this.result.sizeAvailable(), 0, 0), false);
+        return waitResult(item, System.currentTimeMillis() + timeout);
+    }
+
+    private ResultEntry waitResult(final int item, final long finishTime) {
+        // the result queue releases a waiting element() call as soon as a worker puts an entry into the queue
         WeakPriorityBlockingQueue.Element<ResultEntry> entry = null;
         while (System.currentTimeMillis() < finishTime) {
 
@@ -466,10 +492,14 @@ public class SnippetProcess {
         if (metadata == null) return null;
         final long dbRetrievalTime = System.currentTimeMillis() - startTime;
 
+        // without a solr text we try the text store; then the snippet is computed without loading and parsing the document
+        final String storedText = solrText == null && this.query.getSegment().textStore() != null ? this.query.getSegment().textStore().get(page.hash()) : null;
+
         if (cacheStrategy == null) {
             final TextSnippet snippet = new TextSnippet(
                     null,
                     solrText,
+                    storedText,
                     metadata,
                     this.snippetFetchWordHashes,
                     null,
@@ -487,6 +517,7 @@ public class SnippetProcess {
             final TextSnippet snippet = new TextSnippet(
                     this.loader,
                     solrText,
+                    storedText,
                     metadata,
                     this.snippetFetchWordHashes,
                     cacheStrategy,
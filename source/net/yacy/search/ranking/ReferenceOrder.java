@@ -26,12 +26,15 @@
 
 package net.yacy.search.ranking;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.yacy.cora.ranking.ConcurrentScoreMap;
 import net.yacy.document.Condenser;
@@ -44,11 +47,26 @@ import net.yacy.kelondro.logging.Log;
 import net.yacy.kelondro.order.Bitfield;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.ByteBuffer;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
 
 public class ReferenceOrder {
 
     private static int cores = Runtime.getRuntime().availableProcessors();
+    private static final int minPartSize = 100; // containers are split into ranges of at least this size
+
+    /**
+     * the normalization of all searches shares one executor; if all threads are busy and
+     * the queue is full, a search normalizes its container range in the calling thread
+     */
+    private static final ThreadPoolExecutor normalizer = new ThreadPoolExecutor(
+            cores, cores, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(cores * 64),
+            new NamePrefixThreadFactory("ReferenceOrder.normalizer"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    static {
+        normalizer.allowCoreThreadTimeOut(true);
+    }
 
     private       int maxdomcount;
     private       WordReferenceVars min, max;
@@ -67,99 +85,62 @@ public class ReferenceOrder {
 
     public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container) {
         final LinkedBlockingQueue<WordReferenceVars> out = new LinkedBlockingQueue<WordReferenceVars>();
-        int threads = cores;
-        if (container.size() < 100) threads = 2;
-        final Thread distributor = new NormalizeDistributor(container, out, threads);
-        distributor.start();
-        try {
-            distributor.join(10); // let the distributor work for at least 10 milliseconds
-        } catch (final InterruptedException e) {
+        final int size = container.size();
+        if (size < minPartSize * 2) {
+            // normalize without concurrency to omit the task overhead
+            new NormalizeTask(container, 0, size, out, new AtomicInteger(1)).run();
+            return out;
         }
 
-        // return the resulting queue while the processing queues are still working
-        return out;
-    }
-
-    private final class NormalizeDistributor extends Thread {
-
-        ReferenceContainer<WordReference> container;
-        LinkedBlockingQueue<WordReferenceVars> out;
-        private final int threads;
-
-        public NormalizeDistributor(final ReferenceContainer<WordReference> container, final LinkedBlockingQueue<WordReferenceVars> out, final int threads) {
-            this.container = container;
-            this.out = out;
-            this.threads = threads;
+        // split the container into ranges that are normalized concurrently in the shared executor
+        final int parts = Math.min(cores, size / minPartSize);
+        final AtomicInteger running = new AtomicInteger(parts);
+        int from = 0;
+        for (int i = 0; i < parts; i++) {
+            final int to = (i == parts - 1) ? size : from + size / parts;
+            normalizer.execute(new NormalizeTask(container, from, to, out, running));
+            from = to;
         }
 
-        @Override
-        public void run() {
-            // transform the reference container into a stream of parsed entries
-            final BlockingQueue<WordReferenceVars> vars = WordReferenceVars.transform(this.container);
-
-            // start the transformation threads
-            final Semaphore termination = new Semaphore(this.threads);
-            final NormalizeWorker[] worker = new NormalizeWorker[this.threads];
-            for (int i = 0; i < this.threads; i++) {
-                worker[i] = new NormalizeWorker(this.out, termination);
-                worker[i].start();
-            }
-
-            // fill the queue
-            WordReferenceVars iEntry;
-            int p = 0;
-            try {
-                while ((iEntry = vars.take()) != WordReferenceVars.poison) {
-                    worker[p % this.threads].add(iEntry);
-                    p++;
-                }
-            } catch (final InterruptedException e) {
-            }
-
-            // insert poison to stop the queues
-            for (int i = 0; i < this.threads; i++) worker[i].add(WordReferenceVars.poison);
-
-            // wait for termination but not too long to make it possible that this
-            // is called from outside with a join to get some normalization results
-            // before going on
-            for (int i = 0; i < this.threads; i++) try {worker[i].join(100);} catch (final InterruptedException e) {}
-        }
+        // return the resulting queue while the normalization tasks are still working
+        return out;
     }
 
     /**
-     * normalize ranking: find minimum and maximum of separate ranking criteria
+     * normalize ranking: find minimum and maximum of separate ranking criteria.
+     * Each task decodes a range of the container; the minimum, maximum and domain counts are collected
+     * for the range and merged into the ReferenceOrder before the entries of the range are released,
+     * so min/max are never null in cardinal(). The last task that finishes writes the poison.
      */
-    private class NormalizeWorker extends Thread {
+    private final class NormalizeTask implements Runnable {
 
+        private final ReferenceContainer<WordReference> container;
+        private final int from, to;
         private final BlockingQueue<WordReferenceVars> out;
-        private final Semaphore termination;
-        private final BlockingQueue<WordReferenceVars> decodedEntries;
+        private final AtomicInteger running;
 
-        public NormalizeWorker(final BlockingQueue<WordReferenceVars> out, final Semaphore termination) {
+        public NormalizeTask(final ReferenceContainer<WordReference> container, final int from, final int to, final BlockingQueue<WordReferenceVars> out, final AtomicInteger running) {
+            this.container = container;
+            this.from = from;
+            this.to = to;
             this.out = out;
-            this.termination = termination;
-            this.decodedEntries = new LinkedBlockingQueue<WordReferenceVars>();
-        }
-
-        public void add(final WordReferenceVars entry) {
-            try {
-                this.decodedEntries.put(entry);
-            } catch (final InterruptedException e) {
-            }
+            this.running = running;
         }
 
         public void run() {
             try {
-                WordReferenceVars iEntry;
+                final List<WordReferenceVars> entries = new ArrayList<WordReferenceVars>(this.to - this.from);
                 final Map<String, Integer> doms0 = new HashMap<String, Integer>();
+                WordReferenceVars iEntry, min0 = null, max0 = null;
                 String dom;
                 Integer count;
                 final Integer int1 = 1;
-                while ((iEntry = this.decodedEntries.take()) != WordReferenceVars.poison) {
+                for (int p = this.from; p < this.to; p++) {
+                    iEntry = new WordReferenceVars(new WordReferenceRow(this.container.get(p, false)));
+                    entries.add(iEntry);
                     // find min/max
-                    if (ReferenceOrder.this.min == null) ReferenceOrder.this.min = iEntry.clone(); else ReferenceOrder.this.min.min(iEntry);
-                    if (ReferenceOrder.this.max == null) ReferenceOrder.this.max = iEntry.clone(); else ReferenceOrder.this.max.max(iEntry);
-                    this.out.put(iEntry); // must be after the min/max check to prevent that min/max is null in cardinal()
+                    if (min0 == null) min0 = iEntry.clone(); else min0.min(iEntry);
+                    if (max0 == null) max0 = iEntry.clone(); else max0.max(iEntry);
                     // update domcount
                     dom = iEntry.hosthash();
                     count = doms0.get(dom);
@@ -170,23 +151,25 @@ public class ReferenceOrder {
                     }
                 }
 
+                // merge min/max; must be done before the entries are released to prevent that min/max is null in cardinal()
+                if (min0 != null) synchronized (ReferenceOrder.this) {
+                    if (ReferenceOrder.this.min == null) ReferenceOrder.this.min = min0; else ReferenceOrder.this.min.min(min0);
+                    if (ReferenceOrder.this.max == null) ReferenceOrder.this.max = max0; else ReferenceOrder.this.max.max(max0);
+                }
+
                 // update domain score
-                Map.Entry<String, Integer> entry;
-                final Iterator<Map.Entry<String, Integer>> di = doms0.entrySet().iterator();
-                while (di.hasNext()) {
-                    entry = di.next();
-                    ReferenceOrder.this.doms.inc(entry.getKey(), (entry.getValue()).intValue());
+                for (final Map.Entry<String, Integer> entry: doms0.entrySet()) {
+                    ReferenceOrder.this.doms.inc(entry.getKey(), entry.getValue().intValue());
                 }
                 if (!ReferenceOrder.this.doms.isEmpty()) ReferenceOrder.this.maxdomcount = ReferenceOrder.this.doms.getMaxScore();
-            } catch (final InterruptedException e) {
-                Log.logException(e);
+
+                this.out.addAll(entries);
             } catch (final Exception e) {
                 Log.logException(e);
             } finally {
                 // insert poison to signal the termination to next queue
-                try {
-                    this.termination.acquire();
-                    if (this.termination.availablePermits() == 0) this.out.put(WordReferenceVars.poison);
+                if (this.running.decrementAndGet() == 0) try {
+                    this.out.put(WordReferenceVars.poison);
                 } catch (final InterruptedException e) {}
             }
         }
@@ -203,6 +186,43 @@ public class ReferenceOrder {
      * @return a ranking: the higher the number, the better is the ranking
      */
     public long cardinal(final WordReferenceVars t) {
+        return staticCardinal(t) + lookupCardinal(t);
+    }
+
+    /**
+     * return the ranking of a given word entry if it is not lower than a given minimum.
+     * The static part of the ranking is computed only once; the block rank and the host authority
+     * need table lookups and are only added if the static part plus their maximum values reaches the minimum.
+     * With coeff_ybr and coeff_authority not above 12, as in the default profiles, there are no lookups
+     * and the bound is the ranking itself.
+     * @param t
+     * @param minimum the worst ranking in a full result stack
+     * @return the ranking as computed by cardinal(t) or Long.MIN_VALUE if the ranking is lower than the minimum
+     */
+    public long cardinal(final WordReferenceVars t, final long minimum) {
+        final long s = staticCardinal(t);
+        if (s + maxLookupCardinal() < minimum) return Long.MIN_VALUE;
+        final long r = s + lookupCardinal(t);
+        return (r < minimum) ? Long.MIN_VALUE : r;
+    }
+
+    /**
+     * the part of the ranking that needs the block rank and the host authority
+     */
+    private long lookupCardinal(final WordReferenceVars t) {
+        return ((this.ranking.coeff_ybr > 12) ? ((256 - (BlockRank.ranking(t.urlhash()) << 4)) << this.ranking.coeff_ybr) : 0)
+             + ((this.ranking.coeff_authority > 12) ? (authority(t.hosthash()) << this.ranking.coeff_authority) : 0);
+    }
+
+    private long maxLookupCardinal() {
+        return ((this.ranking.coeff_ybr > 12) ? (256 << this.ranking.coeff_ybr) : 0)
+             + ((this.ranking.coeff_authority > 12) ? (256 << this.ranking.coeff_authority) : 0);
+    }
+
+    /**
+     * the part of the ranking that can be computed from the entry and the normalization values only
+     */
+    private long staticCardinal(final WordReferenceVars t) {
         //return Long.MAX_VALUE - preRanking(ranking, iEntry, this.entryMin, this.entryMax, this.searchWords);
         // the normalizedEntry must be a normalized indexEntry
         final Bitfield flags = t.flags();
@@ -216,7 +236,6 @@ public class ReferenceOrder {
         final int minminpos = this.min.minposition();
         final long r =
              ((256 - DigestURI.domLengthNormalized(t.urlhash())) << this.ranking.coeff_domlength)
-           + ((this.ranking.coeff_ybr > 12) ? ((256 - (BlockRank.ranking(t.urlhash()) << 4)) << this.ranking.coeff_ybr) : 0)
            + ((this.max.urlcomps()      == this.min.urlcomps()   )   ? 0 : (256 - (((t.urlcomps()     - this.min.urlcomps()     ) << 8) / (this.max.urlcomps()     - this.min.urlcomps())     )) << this.ranking.coeff_urlcomps)
            + ((this.max.urllength()     == this.min.urllength()  )   ? 0 : (256 - (((t.urllength()    - this.min.urllength()    ) << 8) / (this.max.urllength()    - this.min.urllength())    )) << this.ranking.coeff_urllength)
            + ((maxmaxpos == minminpos)                               ? 0 : (256 - (((t.minposition() - minminpos) << 8) / (maxmaxpos - minminpos))) << this.ranking.coeff_posintext)
@@ -231,7 +250,6 @@ public class ReferenceOrder {
            + ((this.max.lother()        == this.min.lother())        ? 0 : (((t.lother()       - this.min.lother()        ) << 8) / (this.max.lother()       - this.min.lother())        ) << this.ranking.coeff_lother)
            + ((this.max.hitcount()      == this.min.hitcount())      ? 0 : (((t.hitcount()     - this.min.hitcount()      ) << 8) / (this.max.hitcount()     - this.min.hitcount())      ) << this.ranking.coeff_hitcount)
            + tf
-           + ((this.ranking.coeff_authority > 12) ? (authority(t.hosthash()) << this.ranking.coeff_authority) : 0)
            + ((flags.get(WordReferenceRow.flag_app_dc_identifier))  ? 255 << this.ranking.coeff_appurl             : 0)
            + ((flags.get(WordReferenceRow.flag_app_dc_title))       ? 255 << this.ranking.coeff_app_dc_title       : 0)
            + ((flags.get(WordReferenceRow.flag_app_dc_creator))     ? 255 << this.ranking.coeff_app_dc_creator     : 0)
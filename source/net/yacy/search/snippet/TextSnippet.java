@@ -144,6 +144,7 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
     public TextSnippet(
             final LoaderDispatcher loader,
             final String solrText,
+            final String storedText,
             final URIMetadataRow.Components comp,
             final HandleSet queryhashes,
             final CacheStrategy cacheStrategy,
@@ -181,6 +182,9 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
             if (solrText != null) {
                 // compute sentences from solr query
                 sentences = Document.getSentences(pre, new ByteArrayInputStream(UTF8.getBytes(solrText)));
+            } else if (storedText != null && containsAllHashes(storedText, queryhashes)) {
+                // compute sentences from the text store; a stored text may be shortened, therefore it is only used if it contains all words
+                sentences = Document.getSentences(pre, new ByteArrayInputStream(UTF8.getBytes(storedText)));
             }
 
             // if then no sentences are found, we fail-over to get the content from the re-loaded document
@@ -0,0 +1,166 @@
+package de.anomic.http.server;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import net.yacy.cora.document.UTF8;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * renders templates with TemplateEngine and CompiledTemplate and compares the results.
+ * Static includes are resolved by HTTPDFileHandler, which needs a running switchboard; therefore
+ * the static includes of the repository templates are inserted into the template text and the
+ * dynamic includes are removed before both engines render it.
+ * Some malformed inputs are not compared because TemplateEngine does not handle them: it does not
+ * terminate with an unterminated #( tag, and where it reads beyond the end of its input (after a single
+ * '#' or a #{key}# tag at the very end of a template or of a #{..}# body) it writes the end-of-stream
+ * marker as a 0xFF byte.
+ */
+public class CompiledTemplateTest extends TestCase {
+
+    private static final byte[] dflt = UTF8.getBytes("-");
+    private static final Pattern include = Pattern.compile("#%([^%]*)%#");
+
+    /**
+     * a pattern map that has the same value for every key
+     */
+    private static final class ConstantMap extends HashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+        private final String value;
+        private ConstantMap(final String value) {
+            this.value = value;
+        }
+        @Override
+        public boolean containsKey(final Object key) {
+            return true;
+        }
+        @Override
+        public String get(final Object key) {
+            return this.value;
+        }
+    }
+
+    private static List<Map<String, String>> patterns() {
+        final List<Map<String, String>> patterns = new ArrayList<Map<String, String>>();
+        patterns.add(new HashMap<String, String>());
+        patterns.add(new ConstantMap("0"));
+        patterns.add(new ConstantMap("1"));
+        patterns.add(new ConstantMap("2"));
+        return patterns;
+    }
+
+    private static String render(final byte[] template, final Map<String, String> pattern, final boolean compiled) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (compiled) {
+            CompiledTemplate.compile(template).writeTemplate(out, pattern, dflt);
+        } else {
+            TemplateEngine.writeTemplate(new ByteArrayInputStream(template), out, pattern, dflt);
+        }
+        return UTF8.String(out.toByteArray());
+    }
+
+    private static void assertSameOutput(final String name, final byte[] template, final Map<String, String> pattern) throws IOException {
+        assertEquals(name + " with " + pattern, render(template, pattern, false), render(template, pattern, true));
+    }
+
+    private static void assertSameOutput(final String template) throws IOException {
+        for (final Map<String, String> pattern: patterns()) assertSameOutput(template, UTF8.getBytes(template), pattern);
+    }
+
+    /**
+     * read an include file in the same way as the template engines, with CRLF line endings
+     */
+    private static String readInclude(final File file) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) sb.append(line).append("\r\n");
+        } finally {
+            br.close();
+        }
+        return sb.toString();
+    }
+
+    private static String insertIncludes(final String template, final File root, final int depth) throws IOException {
+        final Matcher m = include.matcher(template);
+        final StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            final File file = new File(root, m.group(1));
+            final String text = depth < 8 && !m.group(1).startsWith("[") && file.isFile() ? insertIncludes(readInclude(file), root, depth + 1) : "";
+            m.appendReplacement(sb, Matcher.quoteReplacement(text));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static void collect(final File dir, final List<File> files) {
+        final File[] list = dir.listFiles();
+        if (list == null) return;
+        for (final File f: list) {
+            if (f.isDirectory()) {
+                collect(f, files);
+            } else {
+                final String name = f.getName();
+                if (name.endsWith(".html") || name.endsWith(".xml") || name.endsWith(".json") || name.endsWith(".rss") || name.endsWith(".template") || name.endsWith(".inc")) files.add(f);
+            }
+        }
+    }
+
+    public void testRepositoryTemplates() throws IOException {
+        final File root = new File("htroot");
+        final List<File> files = new ArrayList<File>();
+        collect(root, files);
+        assertTrue(files.size() > 100);
+        for (final File file: files) {
+            final byte[] template = UTF8.getBytes(insertIncludes(UTF8.String(FileUtils.read(file)), root, 0));
+            for (final Map<String, String> pattern: patterns()) assertSameOutput(file.getPath(), template, pattern);
+        }
+    }
+
+    public void testWellFormed() throws IOException {
+        assertSameOutput("a #[b]# c #[d]#");
+        assertSameOutput("#{list}#\n<li>#[name]# #(on)#off::on::other#(/on)#</li>\n#{/list}#\nend");
+        assertSameOutput("#(outer)#none::#(inner)#a::b#(/inner)#::two#(/outer)# tail");
+        assertSameOutput("#{a}##{b}#[#[x]#]#{/b}#\n#{/a}#\n");
+        assertSameOutput("single # hash ## and #x and #/ here");
+        final Map<String, String> byName = new HashMap<String, String>();
+        byName.put("alt", "second");
+        byName.put("alt_x", "value");
+        assertSameOutput("byName", UTF8.getBytes("a #(alt)#%%first one::%%second two #[x]#::%%third#(/alt)# b"), byName);
+    }
+
+    public void testMalformed() throws IOException {
+        assertSameOutput("a #[b c");
+        assertSameOutput("a #[b]# c #[d");
+        assertSameOutput("a #{b c");
+        assertSameOutput("a #{b}#\nc d");
+        assertSameOutput("a #%b c");
+        assertSameOutput("x #{l}#a #[b c#{/l}# d");
+        assertSameOutput("x #{l}#a #{m c#{/l}# d");
+        assertSameOutput("x #{l}#a #%m c#{/l}# d");
+        assertSameOutput("x #(a)#one::two #[b#(/a)# tail");
+        assertSameOutput("x #(a)#one #[b::two#(/a)# tail");
+        assertSameOutput("x #(a)#one::two #{b#(/a)# tail");
+    }
+
+    public void testZeroBytes() throws IOException {
+        // the stream based engine stops at a zero byte; an unterminated #[ tag copies the bytes after it
+        assertSameOutput("a\0b #[c]#");
+        assertSameOutput("a #[b]#\0c");
+        assertSameOutput("a #[b\0c #[d]# e");
+    }
+
+}
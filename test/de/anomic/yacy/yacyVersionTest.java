@@ -32,4 +32,14 @@ public class yacyVersionTest extends TestCase {
         assertEquals("dev/00000",       yacyVersion.combined2prettyVersion("99999.003456789"));  // input is too long
     }
 
+    /**
+     * the revision of neighbouring combined versions must be distinguished; their float values are the same
+     */
+    public void testRevision() {
+        assertEquals(8199, yacyVersion.revision("1.00008199"));
+        assertEquals(8200, yacyVersion.revision("1.00008200"));
+        assertEquals(Float.parseFloat("1.00008199"), Float.parseFloat("1.00008200"));
+        assertEquals(0, yacyVersion.revision("0"));
+    }
+
 }
@@ -0,0 +1,56 @@
+package net.yacy.document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class SpellingIndexTest extends TestCase {
+
+    private static SpellingIndex index(final String... words) {
+        final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+        for (int i = 0; i < words.length; i++) frequencies.put(words[i], Integer.valueOf(i + 1));
+        return new SpellingIndex(frequencies);
+    }
+
+    private static void assertSuggestions(final SpellingIndex index, final String word, final String... expected) {
+        final List<String> suggestions = index.suggest(word);
+        assertEquals(word + " -> " + suggestions, expected.length, suggestions.size());
+        for (final String e: expected) assertTrue(word + " -> " + suggestions + " misses " + e, suggestions.contains(e));
+    }
+
+    public void testEditOperations() {
+        final SpellingIndex index = index("search", "engine", "peer", "index", "crawler");
+        assertSuggestions(index, "serch", "search");       // deleted letter
+        assertSuggestions(index, "seaarch", "search");     // added letter
+        assertSuggestions(index, "seerch", "search");      // changed letter
+        assertSuggestions(index, "saerch", "search");      // reversed letters
+        assertSuggestions(index, "Crawlre", "crawler");    // reversed letters at the end, upper case
+        assertSuggestions(index, "search");                // the word itself is not suggested
+        assertSuggestions(index, "sarch", "search");
+        assertSuggestions(index, "srach");                 // edit distance two
+        assertSuggestions(index, "xyz");
+    }
+
+    public void testDoubleLetters() {
+        // variants of words with double letters are stored once but must still be found
+        final SpellingIndex index = index("peer", "pee", "per", "peers", "beer");
+        assertSuggestions(index, "peer", "pee", "per", "peers", "beer");
+        assertSuggestions(index, "pere", "peer", "per", "pee");
+        assertSuggestions(index, "pr", "per");
+    }
+
+    public void testFrequency() {
+        final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+        frequencies.put("yacy", Integer.valueOf(42));
+        frequencies.put("unused", Integer.valueOf(0));
+        final SpellingIndex index = new SpellingIndex(frequencies);
+        assertEquals(1, index.size());
+        assertEquals(42, index.frequency("YaCy"));
+        assertEquals(0, index.frequency("unused"));
+        assertEquals(0, index.frequency("other"));
+        assertTrue(index.suggest("unuses").isEmpty());
+    }
+
+}
@@ -0,0 +1,41 @@
+package net.yacy.kelondro.index;
+
+import static net.yacy.kelondro.index.IndexFixture.key;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class BloomFilterTest extends TestCase {
+
+    public void testNoFalseNegatives() {
+        final int count = 20000;
+        final BloomFilter filter = new BloomFilter(count, BloomFilter.defaultBitsPerKey);
+        for (int i = 0; i < count; i++) filter.add(key(2 * i));
+        for (int i = 0; i < count; i++) assertTrue(filter.contains(key(2 * i)));
+
+        // keys that were not added are mostly rejected; the expected rate is about 1%
+        int falsePositives = 0;
+        for (int i = 0; i < count; i++) if (filter.contains(key(2 * i + 1))) falsePositives++;
+        assertTrue("false positives: " + falsePositives, falsePositives < count / 20);
+    }
+
+    public void testOverfilledFilter() {
+        // a filter that gets more keys than expected becomes less selective but never misses a key
+        final BloomFilter filter = new BloomFilter(100, 4);
+        for (int i = 0; i < 5000; i++) filter.add(key(i));
+        for (int i = 0; i < 5000; i++) assertTrue(filter.contains(key(i)));
+    }
+
+    public void testDump() throws Exception {
+        final BloomFilter filter = new BloomFilter(1000, BloomFilter.defaultBitsPerKey);
+        for (int i = 0; i < 1000; i++) filter.add(key(3 * i));
+        final File file = IndexFixture.dumpFile(getClass());
+        filter.dump(file);
+        final BloomFilter read = new BloomFilter(file);
+        assertEquals(filter.mem(), read.mem());
+        for (int i = 0; i < 3000; i++) assertEquals(filter.contains(key(i)), read.contains(key(i)));
+        file.delete();
+    }
+
+}
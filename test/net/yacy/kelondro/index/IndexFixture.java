@@ -0,0 +1,31 @@
+package net.yacy.kelondro.index;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.kelondro.order.Base64Order;
+
+/**
+ * keys and dump files for the tests of the index structures
+ */
+final class IndexFixture {
+
+    static final int keylength = 12;
+
+    /**
+     * a key that sorts like the given number
+     */
+    static byte[] key(final long i) {
+        return Base64Order.enhancedCoder.encodeLongBA(i, keylength);
+    }
+
+    /**
+     * a file for a dump that is deleted when the test terminates
+     */
+    static File dumpFile(final Class<?> test) throws IOException {
+        final File file = File.createTempFile(test.getSimpleName(), ".dump");
+        file.deleteOnExit();
+        return file;
+    }
+
+}
@@ -0,0 +1,146 @@
+package net.yacy.kelondro.index;
+
+import static net.yacy.kelondro.index.IndexFixture.key;
+import static net.yacy.kelondro.index.IndexFixture.keylength;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.order.Base64Order;
+
+public class OffHeapIndexTest extends TestCase {
+
+    private static final int idxbytes = 4;
+
+    private final Row rowdef = new Row(new Column[]{new Column("key", Column.celltype_binary, Column.encoder_bytes, keylength, "key"), new Column("long c-" + idxbytes + " {b256}")}, Base64Order.enhancedCoder);
+
+    private Entry row(final long i, final long value) {
+        final Entry entry = this.rowdef.newEntry();
+        entry.setCol(0, key(i));
+        entry.setCol(1, value);
+        return entry;
+    }
+
+    private long value(final OffHeapIndex index, final long i) {
+        final Entry entry = index.get(key(i), false);
+        return entry == null ? -1 : entry.getColLong(1);
+    }
+
+    /**
+     * write a sorted index dump with the keys 0, 2, 4, .. (2 * count - 2) and the value 1 for each key
+     */
+    private File dump(final int count) throws Exception {
+        final HandleMap map = new HandleMap(keylength, Base64Order.enhancedCoder, idxbytes, count, "test");
+        for (int i = 0; i < count; i++) map.putUnique(key(2 * i), 1);
+        final File file = IndexFixture.dumpFile(getClass());
+        map.dump(file);
+        map.close();
+        return file;
+    }
+
+    private static long number(final byte[] key) {
+        return Base64Order.enhancedCoder.decodeLong(key, 0, keylength);
+    }
+
+    /**
+     * the numbers of the keys of an iteration
+     */
+    private static List<Long> numbers(final Iterator<Entry> rows) {
+        final List<Long> l = new ArrayList<Long>();
+        while (rows.hasNext()) l.add(Long.valueOf(number(rows.next().getPrimaryKeyBytes())));
+        return l;
+    }
+
+    private static List<Long> numbers(final long... n) {
+        final List<Long> l = new ArrayList<Long>();
+        for (final long i: n) l.add(Long.valueOf(i));
+        return l;
+    }
+
+    public void testRunLookup() throws Exception {
+        // the binary search in the run finds the first and the last key and no key in the gaps or outside the run
+        final int count = 1000;
+        final OffHeapIndex index = new OffHeapIndex("test", this.rowdef, dump(count));
+        assertEquals(count * this.rowdef.objectsize, index.offHeapMem());
+        assertTrue(index.mem() < index.offHeapMem()); // the run is not on the java heap
+        for (int i = 0; i < count; i++) {
+            assertTrue(index.has(key(2 * i)));
+            assertFalse(index.has(key(2 * i + 1)));
+        }
+        assertFalse(index.has(key(2 * count)));
+        assertNull(index.get(key(2 * count + 1), false));
+        assertEquals(0, number(index.smallestKey()));
+        assertEquals(2 * count - 2, number(index.largestKey()));
+        index.close();
+    }
+
+    public void testIterationOrder() throws Exception {
+        // the run has the keys 0, 2, .. 18; the delta has 5 and 21, the removed keys are 0 and 8
+        final OffHeapIndex index = new OffHeapIndex("test", this.rowdef, dump(10));
+        index.put(row(21, 3));
+        index.put(row(5, 3));
+        index.remove(key(8));
+        index.remove(key(0));
+        assertEquals(numbers(2, 4, 5, 6, 10, 12, 14, 16, 18, 21), numbers(index.rows(true, null)));
+        assertEquals(numbers(5, 6, 10, 12, 14, 16, 18, 21), numbers(index.rows(true, key(5))));
+        assertEquals(numbers(10, 12, 14, 16, 18, 21), numbers(index.rows(true, key(7))));
+        assertEquals(21, number(index.largestKey()));
+        assertEquals(2, number(index.smallestKey()));
+        index.close();
+    }
+
+    public void testPutGetRemove() throws Exception {
+        final OffHeapIndex index = new OffHeapIndex("test", this.rowdef, dump(100));
+        assertEquals(100, index.size());
+        assertEquals(1, value(index, 0));
+        assertEquals(1, value(index, 198));
+        assertFalse(index.has(key(1)));
+
+        // a new row goes into the delta
+        assertTrue(index.put(row(1, 7)));
+        assertEquals(7, value(index, 1));
+        assertEquals(101, index.size());
+
+        // a row of the run is overwritten
+        assertFalse(index.put(row(2, 8)));
+        assertEquals(8, value(index, 2));
+        assertEquals(101, index.size());
+
+        // remove rows from the run and from the delta
+        assertEquals(1, index.remove(key(4)).getColLong(1));
+        assertEquals(7, index.remove(key(1)).getColLong(1));
+        assertNull(index.remove(key(4)));
+        assertNull(index.remove(key(3)));
+        assertFalse(index.has(key(4)));
+        assertFalse(index.has(key(1)));
+        assertEquals(99, index.size());
+
+        // a removed row of the run can be added again
+        assertTrue(index.put(row(4, 9)));
+        assertEquals(9, value(index, 4));
+        assertEquals(100, index.size());
+        index.close();
+    }
+
+    public void testCompaction() throws Exception {
+        // more changes than the compaction minimum cause a merge of the delta into a new, larger run
+        final int count = 20000;
+        final OffHeapIndex index = new OffHeapIndex("test", this.rowdef, dump(count));
+        final long runBefore = index.offHeapMem();
+        for (int i = 0; i < count; i++) index.put(row(2 * i + 1, 3));
+        for (int i = 0; i < count; i += 4) index.remove(key(2 * i));
+        assertTrue(index.offHeapMem() > runBefore);
+        assertEquals(2 * count - count / 4, index.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 4 == 0 ? -1 : 1, value(index, 2 * i));
+            assertEquals(3, value(index, 2 * i + 1));
+        }
+        assertEquals(2 * count - count / 4, numbers(index.rows(true, null)).size());
+        index.close();
+    }
+
+}
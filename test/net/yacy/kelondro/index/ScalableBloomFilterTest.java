@@ -0,0 +1,80 @@
+package net.yacy.kelondro.index;
+
+import static net.yacy.kelondro.index.IndexFixture.key;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class ScalableBloomFilterTest extends TestCase {
+
+    /**
+     * the memory of the first stages of a filter with 1024 keys and 10 bits per key in the first stage;
+     * each stage has twice the capacity and one more bit per key than the stage before
+     */
+    private static long mem(final int stages) {
+        long m = 0;
+        for (int i = 0; i < stages; i++) m += new BloomFilter(1024 << i, 10 + i).mem();
+        return m;
+    }
+
+    public void testStageGrowth() {
+        final ScalableBloomFilter filter = new ScalableBloomFilter(1024, 10, Long.MAX_VALUE);
+        int added = 0;
+        int capacity = 0;
+        for (int stages = 1; stages <= 5; stages++) {
+            // a new stage is appended with the first key that exceeds the capacity of the last stage
+            capacity += 1024 << (stages - 1);
+            while (added < capacity) filter.add(key(added++));
+            assertEquals(stages, filter.stages());
+            assertEquals(mem(stages), filter.mem());
+            filter.add(key(added++));
+            assertEquals(stages + 1, filter.stages());
+        }
+        assertEquals(added, filter.size());
+
+        // the keys are distributed over all stages
+        for (int i = 0; i < added; i++) assertTrue(filter.contains(key(i)));
+    }
+
+    public void testByteBound() {
+        // the first two stages have 1280 + 2816 bytes; the third stage does not fit into 4096 bytes
+        assertEquals(4096, mem(2));
+        final ScalableBloomFilter filter = new ScalableBloomFilter(1024, 10, 4096);
+        for (int i = 0; i < 20000; i++) filter.add(key(i));
+        assertEquals(2, filter.stages());
+        assertEquals(4096, filter.mem());
+
+        // the last stage is overfilled but no key is missed
+        for (int i = 0; i < 20000; i++) assertTrue(filter.contains(key(i)));
+
+        // the first stage is always created, even if it exceeds the bound
+        final ScalableBloomFilter small = new ScalableBloomFilter(1024, 10, 1000);
+        for (int i = 0; i < 5000; i++) small.add(key(i));
+        assertEquals(1, small.stages());
+        assertEquals(mem(1), small.mem());
+    }
+
+    public void testDumpContinuesGrowth() throws Exception {
+        // 5000 keys fill the stages with 1024 and 2048 keys and 1928 keys of the stage with 4096 keys
+        final ScalableBloomFilter filter = new ScalableBloomFilter(1024, 10, Long.MAX_VALUE);
+        for (int i = 0; i < 5000; i++) filter.add(key(i));
+        assertEquals(3, filter.stages());
+        final File file = IndexFixture.dumpFile(getClass());
+        filter.dump(file);
+        final ScalableBloomFilter read = new ScalableBloomFilter(file, Long.MAX_VALUE);
+        assertEquals(3, read.stages());
+        assertEquals(5000, read.size());
+        assertEquals(filter.mem(), read.mem());
+
+        // the read filter knows how many keys are in its last stage
+        for (int i = 5000; i < 1024 + 2048 + 4096; i++) read.add(key(i));
+        assertEquals(3, read.stages());
+        read.add(key(1024 + 2048 + 4096));
+        assertEquals(4, read.stages());
+        assertEquals(mem(4), read.mem());
+        for (int i = 0; i <= 1024 + 2048 + 4096; i++) assertTrue(read.contains(key(i)));
+        file.delete();
+    }
+
+}
@@ -0,0 +1,96 @@
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import net.yacy.cora.document.ASCII;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.util.FileUtils;
+
+public class HotTermCacheTest extends TestCase {
+
+    private static final long day = 24L * 60L * 60L * 1000L;
+    private static final long now = System.currentTimeMillis();
+    private static final byte[] termHash = ASCII.getBytes("AAAAAAAAAAAA");
+    private static final WordReferenceFactory factory = new WordReferenceFactory();
+
+    private File dir;
+    private ReferenceContainerArray<WordReference> array;
+
+    @Override
+    protected void setUp() throws Exception {
+        this.dir = File.createTempFile("HotTermCacheTest", "");
+        FileUtils.deletedelete(this.dir);
+        this.dir.mkdirs();
+        this.array = new ReferenceContainerArray<WordReference>(this.dir, "text.index", factory, Base64Order.enhancedCoder, 12);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.array.close();
+        FileUtils.deletedelete(this.dir);
+    }
+
+    /**
+     * write a BLOB with one reference of url 1 for the term, as a dump of the RAM cache does it
+     */
+    private void dump(final int ageDays, final int wordcount) throws Exception {
+        final ReferenceContainerCache<WordReference> ram = new ReferenceContainerCache<WordReference>(factory, Base64Order.enhancedCoder, 12);
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, termHash, 1);
+        c.add(new WordReferenceRow(Base64Order.enhancedCoder.encodeLongBA(1, 12), 20, 2, 30, wordcount, 10, now - ageDays * day, now, null, 'h', 0, 0));
+        ram.add(c);
+        final File f = this.array.newContainerBLOBFile();
+        ram.dump(f, 4096, true);
+        this.array.mountBLOBFile(f);
+    }
+
+    private static int wordcount(final ReferenceContainer<WordReference> c) {
+        assertEquals(1, c.size());
+        return c.entries().next().wordsintext();
+    }
+
+    public void testDumpAndMerge() throws Exception {
+        final HotTermCache<WordReference> cache = new HotTermCache<WordReference>(1024 * 1024, Base64Order.enhancedCoder);
+        dump(10, 11);
+        final long s1 = this.array.signature(termHash);
+        final ReferenceContainer<WordReference> c1 = this.array.get(termHash);
+        assertFalse(cache.put(termHash, s1, c1)); // the first request is not admitted
+        assertTrue(cache.put(termHash, s1, c1));
+        assertEquals(11, wordcount(cache.get(termHash, s1)));
+
+        // a dump writes a refreshed reference for the same url; the record has the same length
+        dump(1, 12);
+        final long s2 = this.array.signature(termHash);
+        assertTrue(s1 != s2);
+
+        // the merge replaces both records by one record with the same length as the first one
+        final File[] files = this.array.files();
+        assertEquals(2, files.length);
+        assertTrue(this.array.merge(new IODispatcher(1, 1, 4096), files)); // the dispatcher is not started, so the merge is done at once
+        assertEquals(1, this.array.entries());
+        assertEquals(1, this.array.get(termHash).size());
+        final long s3 = this.array.signature(termHash);
+        assertTrue(s1 != s3);
+        assertNull(cache.get(termHash, s3));
+    }
+
+    public void testUnchangedBLOBs() throws Exception {
+        final HotTermCache<WordReference> cache = new HotTermCache<WordReference>(1024 * 1024, Base64Order.enhancedCoder);
+        dump(10, 11);
+        final long s = this.array.signature(termHash);
+        final ReferenceContainer<WordReference> c = this.array.get(termHash);
+        cache.put(termHash, s, c);
+        cache.put(termHash, s, c);
+        assertEquals(s, this.array.signature(termHash));
+        assertSame(c, cache.get(termHash, this.array.signature(termHash)));
+        assertEquals(s, this.array.signature(termHash));
+
+        // removing the term drops the entry
+        cache.remove(termHash);
+        assertNull(cache.get(termHash, s));
+    }
+
+}
@@ -0,0 +1,82 @@
+package net.yacy.kelondro.rwi;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import net.yacy.cora.document.ASCII;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.order.Base64Order;
+
+public class ReferenceContainerTest extends TestCase {
+
+    private static final long day = 24L * 60L * 60L * 1000L;
+    private static final long now = System.currentTimeMillis();
+    private static final byte[] termHash = ASCII.getBytes("AAAAAAAAAAAA");
+    private static final WordReferenceFactory factory = new WordReferenceFactory();
+
+    /**
+     * a reference for a url; the age in days is the age of the document,
+     * the word count is used to recognize the reference
+     */
+    private static WordReferenceRow reference(final long url, final int ageDays, final int wordcount) {
+        return new WordReferenceRow(Base64Order.enhancedCoder.encodeLongBA(url, 12), 20, 2, 30, wordcount, 10, now - ageDays * day, now, null, 'h', 0, 0);
+    }
+
+    private static ReferenceContainer<WordReference> container(final WordReferenceRow... references) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, termHash, references.length);
+        for (final WordReferenceRow r: references) c.add(r);
+        return c;
+    }
+
+    private static Map<Long, Integer> wordcounts(final ReferenceContainer<WordReference> c) {
+        final Map<Long, Integer> m = new HashMap<Long, Integer>();
+        final Iterator<WordReference> i = c.entries();
+        WordReference r;
+        while (i.hasNext()) {
+            r = i.next();
+            assertNull("double url hash", m.put(Long.valueOf(Base64Order.enhancedCoder.decodeLong(ASCII.String(r.urlhash()))), Integer.valueOf(r.wordsintext())));
+        }
+        return m;
+    }
+
+    public void testMergeRecentNewestWins() throws Exception {
+        // the containers are not sorted; urls 2 and 3 are in both containers
+        final ReferenceContainer<WordReference> a = container(reference(3, 10, 31), reference(1, 5, 11), reference(2, 1, 21));
+        final ReferenceContainer<WordReference> b = container(reference(4, 5, 42), reference(2, 20, 22), reference(3, 2, 32));
+        final ReferenceContainer<WordReference> merged = a.mergeRecent(b);
+        assertEquals(4, merged.size());
+        final Map<Long, Integer> m = wordcounts(merged);
+        assertEquals(11, m.get(Long.valueOf(1)).intValue());
+        assertEquals(21, m.get(Long.valueOf(2)).intValue()); // the reference in a is newer
+        assertEquals(32, m.get(Long.valueOf(3)).intValue()); // the reference in b is newer
+        assertEquals(42, m.get(Long.valueOf(4)).intValue());
+
+        // the result is sorted
+        final Iterator<WordReference> i = merged.entries();
+        byte[] last = null, h;
+        while (i.hasNext()) {
+            h = i.next().urlhash();
+            if (last != null) assertTrue(Base64Order.enhancedCoder.compare(last, h) < 0);
+            last = h;
+        }
+
+        // the result is the same as with putRecent
+        final ReferenceContainer<WordReference> put = container(reference(3, 10, 31), reference(1, 5, 11), reference(2, 1, 21));
+        final Iterator<WordReference> j = b.entries();
+        while (j.hasNext()) put.putRecent(j.next());
+        assertEquals(wordcounts(put), m);
+    }
+
+    public void testMergeRecentEmpty() throws Exception {
+        final ReferenceContainer<WordReference> a = container(reference(1, 5, 11), reference(2, 5, 21));
+        final ReferenceContainer<WordReference> empty = container();
+        assertEquals(wordcounts(a), wordcounts(a.mergeRecent(empty)));
+        assertEquals(wordcounts(a), wordcounts(empty.mergeRecent(a)));
+        assertEquals(0, empty.mergeRecent(container()).size());
+    }
+
+}
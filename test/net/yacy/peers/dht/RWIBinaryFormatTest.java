@@ -0,0 +1,120 @@
+package net.yacy.peers.dht;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import junit.framework.TestCase;
+import net.yacy.cora.document.ASCII;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.search.index.Segment;
+
+public class RWIBinaryFormatTest extends TestCase {
+
+    private static final int rowsize = WordReferenceRow.urlEntryRow.objectsize;
+
+    private static ReferenceContainer<WordReference> container(final String termHash, final int size) throws Exception {
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(Segment.wordReferenceFactory, ASCII.getBytes(termHash), size);
+        for (int i = 0; i < size; i++) {
+            c.add(new WordReferenceRow(Base64Order.enhancedCoder.encodeLongBA(i + 1, 12), 20 + i, 2, 30, 100 + i, 10, System.currentTimeMillis(), System.currentTimeMillis(), null, 'h', i, 0));
+        }
+        return c;
+    }
+
+    private static void assertSameRows(final ReferenceContainer<WordReference> expected, final ReferenceContainer<WordReference> actual, final int size) {
+        assertTrue(Arrays.equals(expected.getTermHash(), actual.getTermHash()));
+        assertEquals(size, actual.size());
+        for (int i = 0; i < size; i++) {
+            assertTrue(Arrays.equals(expected.get(i, false).bytes(), actual.get(i, false).bytes()));
+        }
+    }
+
+    /**
+     * a deflated stream with the given header fields and no containers
+     */
+    private static byte[] header(final int magic, final int version, final int rowsize, final int hashlength, final int count) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(baos));
+        out.writeByte(magic);
+        out.writeByte(version);
+        out.writeInt(rowsize);
+        out.writeByte(hashlength);
+        out.writeInt(count);
+        out.close();
+        return baos.toByteArray();
+    }
+
+    private static void assertRejected(final byte[] b) {
+        try {
+            RWIBinaryFormat.decode(b, Integer.MAX_VALUE);
+            fail("stream was accepted");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>();
+        containers.add(container("AAAAAAAAAAAA", 3));
+        containers.add(container("BBBBBBBBBBBB", 0)); // empty containers are not transmitted
+        containers.add(container("CCCCCCCCCCCC", 50));
+        final List<ReferenceContainer<WordReference>> decoded = RWIBinaryFormat.decodeString(RWIBinaryFormat.encodeString(containers), Integer.MAX_VALUE);
+        assertEquals(2, decoded.size());
+        assertSameRows(containers.get(0), decoded.get(0), 3);
+        assertSameRows(containers.get(2), decoded.get(1), 50);
+    }
+
+    public void testEmpty() throws Exception {
+        final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>();
+        assertTrue(RWIBinaryFormat.decode(RWIBinaryFormat.encode(containers), 100).isEmpty());
+    }
+
+    public void testMaxEntries() throws Exception {
+        final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>();
+        containers.add(container("AAAAAAAAAAAA", 10));
+        containers.add(container("BBBBBBBBBBBB", 10));
+        containers.add(container("CCCCCCCCCCCC", 10));
+        final byte[] b = RWIBinaryFormat.encode(containers);
+
+        // the limit is reached within the second container: it is cut and the third is ignored
+        List<ReferenceContainer<WordReference>> decoded = RWIBinaryFormat.decode(b, 15);
+        assertEquals(2, decoded.size());
+        assertSameRows(containers.get(0), decoded.get(0), 10);
+        assertSameRows(containers.get(1), decoded.get(1), 5);
+
+        // the limit is reached exactly at the end of a container
+        decoded = RWIBinaryFormat.decode(b, 10);
+        assertEquals(1, decoded.size());
+        assertSameRows(containers.get(0), decoded.get(0), 10);
+
+        assertTrue(RWIBinaryFormat.decode(b, 0).isEmpty());
+    }
+
+    public void testCorruptStreams() throws Exception {
+        assertRejected(new byte[0]);
+        assertRejected(ASCII.getBytes("not a deflated stream"));
+        assertRejected(header('X', RWIBinaryFormat.VERSION, rowsize, Word.commonHashLength, 0));
+        assertRejected(header('R', RWIBinaryFormat.VERSION + 1, rowsize, Word.commonHashLength, 0));
+        assertRejected(header('R', RWIBinaryFormat.VERSION, rowsize + 1, Word.commonHashLength, 0));
+        assertRejected(header('R', RWIBinaryFormat.VERSION, rowsize, Word.commonHashLength + 1, 0));
+        assertRejected(header('R', RWIBinaryFormat.VERSION, rowsize, Word.commonHashLength, -1));
+
+        // the header announces a container that is not in the stream
+        assertRejected(header('R', RWIBinaryFormat.VERSION, rowsize, Word.commonHashLength, 1));
+
+        // a stream that ends within the rows of a container
+        final List<ReferenceContainer<WordReference>> containers = new ArrayList<ReferenceContainer<WordReference>>();
+        containers.add(container("AAAAAAAAAAAA", 10));
+        final byte[] b = RWIBinaryFormat.encode(containers);
+        assertRejected(Arrays.copyOf(b, b.length / 2));
+    }
+
+}
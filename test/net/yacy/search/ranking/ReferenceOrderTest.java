@@ -0,0 +1,99 @@
+package net.yacy.search.ranking;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+
+import junit.framework.TestCase;
+import net.yacy.cora.document.ASCII;
+import net.yacy.cora.ranking.WeakPriorityBlockingQueue;
+import net.yacy.cora.ranking.WeakPriorityBlockingQueue.ReverseElement;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.order.Base64Order;
+import net.yacy.kelondro.order.Bitfield;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.search.snippet.ContentDomain;
+
+public class ReferenceOrderTest extends TestCase {
+
+    private static final long day = 24L * 60L * 60L * 1000L;
+    private static final long now = System.currentTimeMillis();
+    private static final byte[] termHash = ASCII.getBytes("AAAAAAAAAAAA");
+    private static final WordReferenceFactory factory = new WordReferenceFactory();
+    private static final int references = 5000;
+    private static final int stacksize = 100;
+
+    /**
+     * references with random ranking attributes on 50 hosts; the host hash is the second half of the url hash
+     */
+    private static ReferenceContainer<WordReference> container(final long seed) throws Exception {
+        final Random random = new Random(seed);
+        final ReferenceContainer<WordReference> c = new ReferenceContainer<WordReference>(factory, termHash, references);
+        for (int i = 0; i < references; i++) {
+            final byte[] urlhash = new byte[12];
+            Base64Order.enhancedCoder.encodeLong(i, urlhash, 0, 6);
+            Base64Order.enhancedCoder.encodeLong(random.nextInt(50), urlhash, 6, 6);
+            c.add(new WordReferenceRow(urlhash, 20 + random.nextInt(80), 1 + random.nextInt(8), random.nextInt(60),
+                    1 + random.nextInt(10), 100 + random.nextInt(1000), 10 + random.nextInt(100), 1 + random.nextInt(100), random.nextInt(20), random.nextInt(10),
+                    now - random.nextInt(1000) * day, now, ASCII.getBytes("en"), 'h', random.nextInt(20), random.nextInt(20), new Bitfield(4)));
+        }
+        return c;
+    }
+
+    /**
+     * rank the references as RWIProcess does it and return the url hashes on the stack
+     * @param pruned a counter for the references that were skipped with the ranking bound
+     */
+    private static Set<String> rank(final RankingProfile profile, final ReferenceContainer<WordReference> container, final boolean bound, final int[] pruned) throws Exception {
+        final ReferenceOrder order = new ReferenceOrder(profile, ASCII.getBytes("en"));
+        final BlockingQueue<WordReferenceVars> vars = order.normalizeWith(container);
+        final WeakPriorityBlockingQueue<WordReferenceVars> stack = new WeakPriorityBlockingQueue<WordReferenceVars>(stacksize);
+        WordReferenceVars iEntry;
+        WeakPriorityBlockingQueue.Element<WordReferenceVars> worst;
+        long r;
+        while ((iEntry = vars.take()) != WordReferenceVars.poison) {
+            worst = bound ? stack.evictionCandidate() : null;
+            if (worst == null) {
+                r = order.cardinal(iEntry);
+            } else {
+                r = order.cardinal(iEntry, worst.getWeight());
+                if (r == Long.MIN_VALUE) {
+                    pruned[0]++;
+                    continue;
+                }
+            }
+            stack.put(new ReverseElement<WordReferenceVars>(iEntry, r));
+        }
+        final Set<String> urls = new HashSet<String>();
+        for (final WeakPriorityBlockingQueue.Element<WordReferenceVars> e: stack.list()) urls.add(ASCII.String(e.getElement().urlhash()));
+        assertEquals(stacksize, urls.size());
+        return urls;
+    }
+
+    private static void assertSameRanking(final RankingProfile profile, final long seed) throws Exception {
+        final ReferenceContainer<WordReference> container = container(seed);
+        final int[] pruned = new int[1];
+        assertEquals(rank(profile, container, false, pruned), rank(profile, container, true, pruned));
+        assertTrue(pruned[0] > 0);
+        assertTrue(pruned[0] <= references - stacksize);
+    }
+
+    public void testDefaultProfile() throws Exception {
+        // coeff_ybr and coeff_authority are not above 12: the bound is the ranking itself
+        final RankingProfile profile = new RankingProfile(ContentDomain.TEXT);
+        assertTrue(profile.coeff_ybr <= 12 && profile.coeff_authority <= 12);
+        assertSameRanking(profile, 1);
+    }
+
+    public void testAuthorityProfile() throws Exception {
+        // the host authority is only computed for references that can reach the worst ranking on the stack
+        final RankingProfile profile = new RankingProfile(ContentDomain.TEXT);
+        profile.coeff_authority = 13;
+        assertSameRanking(profile, 2);
+    }
+
+}